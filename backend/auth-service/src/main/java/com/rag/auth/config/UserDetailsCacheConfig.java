@@ -0,0 +1,35 @@
+package com.rag.auth.config;
+
+import com.rag.auth.security.UserDetailsCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class UserDetailsCacheConfig {
+
+    @Value("${auth.user-details-cache.max-entries}")
+    private int maxEntries;
+
+    @Value("${auth.user-details-cache.ttl-seconds}")
+    private long ttlSeconds;
+
+    @Bean
+    public UserDetailsCache userDetailsCache(MeterRegistry meterRegistry) {
+        UserDetailsCache cache = new UserDetailsCache(maxEntries, ttlSeconds);
+
+        FunctionCounter.builder("rag.auth.user.cache.requests", cache, UserDetailsCache::hitCount)
+                .tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder("rag.auth.user.cache.requests", cache, UserDetailsCache::missCount)
+                .tag("result", "miss").register(meterRegistry);
+        FunctionCounter.builder("rag.auth.user.cache.evictions", cache, UserDetailsCache::evictionCount)
+                .description("Entries dropped because the user was updated or deleted")
+                .register(meterRegistry);
+        Gauge.builder("rag.auth.user.cache.size", cache, UserDetailsCache::size).register(meterRegistry);
+
+        return cache;
+    }
+}
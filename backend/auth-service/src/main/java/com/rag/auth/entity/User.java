@@ -1,6 +1,7 @@
 package com.rag.auth.entity;
 
 import jakarta.persistence.*;
+import com.rag.auth.security.UserCacheEvictionListener;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -17,7 +18,7 @@ import java.time.LocalDateTime;
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
-@EntityListeners(AuditingEntityListener.class)
+@EntityListeners({AuditingEntityListener.class, UserCacheEvictionListener.class})
 public class User {
 
     @Id
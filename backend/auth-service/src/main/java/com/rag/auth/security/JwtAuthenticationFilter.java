@@ -1,5 +1,7 @@
 package com.rag.auth.security;
 
+import com.rag.auth.service.TokenRevocationService;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -24,6 +26,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtTokenProvider tokenProvider;
     private final UserDetailsService userDetailsService;
+    private final TokenRevocationService tokenRevocationService;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request,
@@ -32,8 +35,10 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         try {
             String jwt = getJwtFromRequest(request);
 
-            if (StringUtils.hasText(jwt) && tokenProvider.validateToken(jwt)) {
-                String username = tokenProvider.getUsernameFromToken(jwt);
+            Claims claims = StringUtils.hasText(jwt) ? tokenProvider.getValidClaims(jwt) : null;
+
+            if (claims != null && isUsableAccessToken(claims)) {
+                String username = claims.getSubject();
 
                 UserDetails userDetails = userDetailsService.loadUserByUsername(username);
                 UsernamePasswordAuthenticationToken authentication =
@@ -49,6 +54,14 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
 
+    private boolean isUsableAccessToken(Claims claims) {
+        // Tokens issued before access tokens carried the family have none to check
+        String familyId = claims.get(JwtTokenProvider.FAMILY_CLAIM, String.class);
+        return JwtTokenProvider.ACCESS_TOKEN.equals(claims.get(JwtTokenProvider.TOKEN_TYPE_CLAIM, String.class))
+                && !tokenRevocationService.isRevoked(claims.getId())
+                && (familyId == null || !tokenRevocationService.isFamilyRevoked(familyId));
+    }
+
     private String getJwtFromRequest(HttpServletRequest request) {
         String bearerToken = request.getHeader("Authorization");
         if (StringUtils.hasText(bearerToken) && bearerToken.startsWith("Bearer ")) {
@@ -1,22 +1,41 @@
 package com.rag.auth.security;
 
+import com.rag.auth.entity.User;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Date;
+import java.util.UUID;
 
 @Slf4j
 @Component
 public class JwtTokenProvider {
 
+    /** User ID claim; the gateway forwards it as {@code X-User-Id}. */
+    public static final String USER_ID_CLAIM = "uid";
+
+    /** Role claim; the gateway forwards it as {@code X-User-Role}. */
+    public static final String ROLE_CLAIM = "role";
+
+    /** Token type claim, {@link #ACCESS_TOKEN} or {@link #REFRESH_TOKEN}. */
+    public static final String TOKEN_TYPE_CLAIM = "typ";
+
+    /**
+     * Token family: every token issued from the same login, through any number of refreshes,
+     * shares it, so all of them can be revoked together.
+     */
+    public static final String FAMILY_CLAIM = "fid";
+
+    public static final String ACCESS_TOKEN = "access";
+    public static final String REFRESH_TOKEN = "refresh";
+
     @Value("${jwt.secret}")
     private String jwtSecret;
 
@@ -27,67 +46,73 @@ public class JwtTokenProvider {
     private long refreshExpiration;
 
     private SecretKey key;
+    private JwtParser parser;
 
     @PostConstruct
     public void init() {
         this.key = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
+        this.parser = Jwts.parser()
+                .verifyWith(key)
+                .build();
     }
 
-    public String generateToken(Authentication authentication) {
-        UserDetails userDetails = (UserDetails) authentication.getPrincipal();
-        return generateToken(userDetails.getUsername());
+    /**
+     * @param familyId the family of the refresh token issued alongside
+     */
+    public String generateToken(User user, String familyId) {
+        return buildToken(user, ACCESS_TOKEN, UUID.randomUUID().toString(), familyId, jwtExpiration);
     }
 
-    public String generateToken(String username) {
-        Date now = new Date();
-        Date expiryDate = new Date(now.getTime() + jwtExpiration);
+    /**
+     * @param tokenId  the token's {@code jti}, under which its rotation state is kept
+     * @param familyId shared by all refresh tokens rotated from the same login
+     */
+    public String generateRefreshToken(User user, String tokenId, String familyId) {
+        return buildToken(user, REFRESH_TOKEN, tokenId, familyId, refreshExpiration);
+    }
 
-        return Jwts.builder()
-                .subject(username)
-                .issuedAt(now)
-                .expiration(expiryDate)
-                .signWith(key)
-                .compact();
+    public Duration getRefreshExpiration() {
+        return Duration.ofMillis(refreshExpiration);
     }
 
-    public String generateRefreshToken(String username) {
+    /**
+     * Signs a token for the user. The ID and role travel as claims so the gateway can identify
+     * the caller from the verified token alone, without asking this service; the {@code jti}
+     * lets a single token be revoked.
+     */
+    private String buildToken(User user, String type, String tokenId, String familyId, long validityMillis) {
         Date now = new Date();
-        Date expiryDate = new Date(now.getTime() + refreshExpiration);
-
-        return Jwts.builder()
-                .subject(username)
+        Date expiryDate = new Date(now.getTime() + validityMillis);
+
+        JwtBuilder builder = Jwts.builder()
+                .id(tokenId)
+                .subject(user.getUsername())
+                .claim(USER_ID_CLAIM, user.getId())
+                .claim(ROLE_CLAIM, user.getRole().name())
+                .claim(TOKEN_TYPE_CLAIM, type)
                 .issuedAt(now)
-                .expiration(expiryDate)
-                .signWith(key)
-                .compact();
-    }
-
-    public String getUsernameFromToken(String token) {
-        Claims claims = Jwts.parser()
-                .verifyWith(key)
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
-
-        return claims.getSubject();
+                .expiration(expiryDate);
+        if (familyId != null) {
+            builder.claim(FAMILY_CLAIM, familyId);
+        }
+        return builder.signWith(key).compact();
     }
 
-    public boolean validateToken(String token) {
+    /**
+     * Verifies the token's signature and expiry.
+     *
+     * @return its claims, or {@code null} if the token is invalid
+     */
+    public Claims getValidClaims(String token) {
         try {
-            Jwts.parser()
-                    .verifyWith(key)
-                    .build()
-                    .parseSignedClaims(token);
-            return true;
-        } catch (MalformedJwtException ex) {
-            log.error("Invalid JWT token");
+            return parser.parseSignedClaims(token).getPayload();
         } catch (ExpiredJwtException ex) {
             log.error("Expired JWT token");
-        } catch (UnsupportedJwtException ex) {
-            log.error("Unsupported JWT token");
+        } catch (JwtException ex) {
+            log.error("Invalid JWT token: {}", ex.getMessage());
         } catch (IllegalArgumentException ex) {
             log.error("JWT claims string is empty");
         }
-        return false;
+        return null;
     }
 }
@@ -0,0 +1,43 @@
+package com.rag.auth.security;
+
+import com.rag.auth.entity.User;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * JPA entity listener that evicts a user from the {@link UserDetailsCache} whenever the row is
+ * updated (password, role, enabled flag) or deleted.
+ * <p>
+ * The callback runs at flush, before commit, so a concurrent request could still load and cache
+ * the old row; the user is evicted once more after the transaction commits.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UserCacheEvictionListener {
+
+    private final UserDetailsCache userDetailsCache;
+
+    @PostUpdate
+    @PostRemove
+    public void userChanged(User user) {
+        Long userId = user.getId();
+        String username = user.getUsername();
+        userDetailsCache.evict(userId, username);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    userDetailsCache.evict(userId, username);
+                }
+            });
+        }
+        log.debug("Evicted cached details of user {}", username);
+    }
+}
@@ -0,0 +1,127 @@
+package com.rag.auth.security;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded in-memory cache of user details with LRU and TTL eviction, keyed by username.
+ * <p>
+ * Entries are immutable snapshots and every lookup builds a new {@link UserDetails}: Spring
+ * Security erases the password of the principal after authentication, which would otherwise
+ * wipe the cached hash and break the next login. Entries are evicted when the user row changes
+ * (see {@link UserCacheEvictionListener}); the TTL bounds staleness for changes made outside
+ * this service.
+ */
+public class UserDetailsCache {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+
+    // Guarded by itself
+    private final LinkedHashMap<String, Snapshot> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public UserDetailsCache(int maxEntries, long ttlSeconds) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Snapshot> eldest) {
+                return size() > UserDetailsCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return a fresh copy of the cached details, or {@code null} if absent or expired
+     */
+    public UserDetails getIfPresent(String username) {
+        Snapshot snapshot;
+        synchronized (entries) {
+            snapshot = entries.get(username);
+            if (snapshot != null && System.nanoTime() - snapshot.loadedAtNanos > ttlNanos) {
+                entries.remove(username);
+                snapshot = null;
+            }
+        }
+        if (snapshot == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return snapshot.toUserDetails();
+    }
+
+    public void put(Long userId, UserDetails details) {
+        if (maxEntries <= 0) {
+            return;
+        }
+        Snapshot snapshot = new Snapshot(userId, details.getUsername(), details.getPassword(),
+                List.copyOf(details.getAuthorities()), details.isEnabled(), details.isAccountNonLocked(),
+                System.nanoTime());
+        synchronized (entries) {
+            entries.put(details.getUsername(), snapshot);
+        }
+    }
+
+    /**
+     * Evicts the user by username and by ID, so a renamed user's old entry goes as well.
+     */
+    public void evict(Long userId, String username) {
+        synchronized (entries) {
+            boolean removed = entries.remove(username) != null;
+            if (userId != null) {
+                removed |= entries.values().removeIf(snapshot -> Objects.equals(snapshot.userId, userId));
+            }
+            if (removed) {
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    public long hitCount() {
+        return hits.get();
+    }
+
+    public long missCount() {
+        return misses.get();
+    }
+
+    public long evictionCount() {
+        return evictions.get();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private record Snapshot(Long userId, String username, String password,
+                            List<GrantedAuthority> authorities, boolean enabled, boolean accountNonLocked,
+                            long loadedAtNanos) {
+
+        UserDetails toUserDetails() {
+            return User.builder()
+                    .username(username)
+                    .password(password)
+                    .authorities(authorities)
+                    .accountExpired(false)
+                    .accountLocked(!accountNonLocked)
+                    .credentialsExpired(false)
+                    .disabled(!enabled)
+                    .build();
+        }
+    }
+}
@@ -6,6 +6,7 @@ import com.rag.auth.dto.SignupRequest;
 import com.rag.auth.entity.User;
 import com.rag.auth.repository.UserRepository;
 import com.rag.auth.security.JwtTokenProvider;
+import io.jsonwebtoken.Claims;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -16,6 +17,9 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Objects;
+import java.util.UUID;
+
 @Slf4j
 @Service
 @RequiredArgsConstructor
@@ -25,6 +29,7 @@ public class AuthService {
     private final PasswordEncoder passwordEncoder;
     private final AuthenticationManager authenticationManager;
     private final JwtTokenProvider tokenProvider;
+    private final TokenRevocationService tokenRevocationService;
 
     @Transactional
     public AuthResponse signup(SignupRequest request) {
@@ -52,17 +57,7 @@ public class AuthService {
         log.info("User registered successfully: {}", user.getUsername());
 
         // Generate tokens
-        String accessToken = tokenProvider.generateToken(user.getUsername());
-        String refreshToken = tokenProvider.generateRefreshToken(user.getUsername());
-
-        return AuthResponse.builder()
-                .accessToken(accessToken)
-                .refreshToken(refreshToken)
-                .userId(user.getId())
-                .username(user.getUsername())
-                .email(user.getEmail())
-                .role(user.getRole().name())
-                .build();
+        return issueTokens(user, UUID.randomUUID().toString());
     }
 
     @Transactional(readOnly = true)
@@ -79,37 +74,74 @@ public class AuthService {
         User user = userRepository.findByUsername(request.getUsername())
                 .orElseThrow(() -> new RuntimeException("User not found"));
 
-        String accessToken = tokenProvider.generateToken(authentication);
-        String refreshToken = tokenProvider.generateRefreshToken(user.getUsername());
-
         log.info("User logged in successfully: {}", user.getUsername());
 
-        return AuthResponse.builder()
-                .accessToken(accessToken)
-                .refreshToken(refreshToken)
-                .userId(user.getId())
-                .username(user.getUsername())
-                .email(user.getEmail())
-                .role(user.getRole().name())
-                .build();
+        return issueTokens(user, UUID.randomUUID().toString());
     }
 
+    /**
+     * Exchanges a refresh token for a new token pair. Each refresh token can be exchanged once;
+     * a second attempt revokes the whole family, which cuts off whoever else holds it.
+     */
     @Transactional(readOnly = true)
     public AuthResponse refreshToken(String refreshToken) {
-        if (!tokenProvider.validateToken(refreshToken)) {
+        Claims claims = tokenProvider.getValidClaims(refreshToken);
+        if (claims == null || !JwtTokenProvider.REFRESH_TOKEN.equals(
+                claims.get(JwtTokenProvider.TOKEN_TYPE_CLAIM, String.class))) {
             throw new RuntimeException("Invalid refresh token");
         }
 
-        String username = tokenProvider.getUsernameFromToken(refreshToken);
-        User user = userRepository.findByUsername(username)
+        String familyId = claims.get(JwtTokenProvider.FAMILY_CLAIM, String.class);
+        if (tokenRevocationService.isFamilyRevoked(familyId)) {
+            throw new RuntimeException("Refresh token has been revoked");
+        }
+        if (!tokenRevocationService.consumeRefreshToken(claims.getId())) {
+            tokenRevocationService.revokeFamily(familyId, tokenProvider.getRefreshExpiration());
+            log.warn("Refresh token reused for user {}, revoked its family", claims.getSubject());
+            throw new RuntimeException("Refresh token has already been used");
+        }
+
+        User user = userRepository.findByUsername(claims.getSubject())
                 .orElseThrow(() -> new RuntimeException("User not found"));
+        if (!Boolean.TRUE.equals(user.getEnabled())) {
+            throw new RuntimeException("User is disabled");
+        }
 
-        String newAccessToken = tokenProvider.generateToken(username);
-        String newRefreshToken = tokenProvider.generateRefreshToken(username);
+        return issueTokens(user, familyId);
+    }
+
+    /**
+     * Revokes the access token and, if given, the refresh token's family.
+     */
+    public void logout(String accessToken, String refreshToken) {
+        Claims access = tokenProvider.getValidClaims(accessToken);
+        if (access == null) {
+            throw new RuntimeException("Invalid access token");
+        }
+        tokenRevocationService.revoke(access.getId(), access.getExpiration());
+
+        if (refreshToken != null && !refreshToken.isEmpty()) {
+            Claims refresh = tokenProvider.getValidClaims(refreshToken);
+            if (refresh != null && Objects.equals(refresh.getSubject(), access.getSubject())
+                    && JwtTokenProvider.REFRESH_TOKEN.equals(
+                            refresh.get(JwtTokenProvider.TOKEN_TYPE_CLAIM, String.class))) {
+                tokenRevocationService.consumeRefreshToken(refresh.getId());
+                tokenRevocationService.revokeFamily(refresh.get(JwtTokenProvider.FAMILY_CLAIM, String.class),
+                        tokenProvider.getRefreshExpiration());
+            }
+        }
+        log.info("User logged out: {}", access.getSubject());
+    }
+
+    private AuthResponse issueTokens(User user, String familyId) {
+        String accessToken = tokenProvider.generateToken(user, familyId);
+        String refreshTokenId = UUID.randomUUID().toString();
+        String refreshToken = tokenProvider.generateRefreshToken(user, refreshTokenId, familyId);
+        tokenRevocationService.storeRefreshToken(refreshTokenId, familyId, tokenProvider.getRefreshExpiration());
 
         return AuthResponse.builder()
-                .accessToken(newAccessToken)
-                .refreshToken(newRefreshToken)
+                .accessToken(accessToken)
+                .refreshToken(refreshToken)
                 .userId(user.getId())
                 .username(user.getUsername())
                 .email(user.getEmail())
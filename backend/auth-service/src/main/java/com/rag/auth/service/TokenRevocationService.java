@@ -0,0 +1,107 @@
+package com.rag.auth.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Date;
+
+/**
+ * Revocation and rotation state for tokens, kept in Redis so every instance (and the gateway)
+ * sees it.
+ * <p>
+ * A revoked access token is stored under {@code auth:revoked:{jti}} until it would have expired
+ * anyway, indexed in the {@code auth:revoked-index} sorted set (scored by expiry) and announced
+ * on the {@code auth:revocations} channel. The gateway rebuilds its local filter from the index
+ * and keeps it current from the channel.
+ * <p>
+ * Every revocation takes the next number from {@code auth:revocation-seq} after it is indexed,
+ * and the message is {@code "<seq> <entry>"}. Pub/sub drops messages silently while a
+ * subscriber reconnects, so the gateway compares the messages it received with the counter and
+ * rebuilds when one is missing.
+ * <p>
+ * Refresh tokens are single-use: each issued one is recorded under {@code auth:refresh:{jti}} and
+ * removed when it is exchanged. Presenting one that was already exchanged means it leaked, so its
+ * whole family (every token issued from the same login, access tokens included) is revoked. A
+ * revoked family goes through the same index and channel as {@code family:{fid}}.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TokenRevocationService {
+
+    public static final String REVOKED_KEY_PREFIX = "auth:revoked:";
+    public static final String REVOKED_INDEX_KEY = "auth:revoked-index";
+    public static final String REVOCATION_CHANNEL = "auth:revocations";
+    public static final String REVOCATION_SEQUENCE_KEY = "auth:revocation-seq";
+    public static final String FAMILY_REVOKED_KEY_PREFIX = "auth:refresh-family-revoked:";
+    /** Prefix of revoked families in the index and on the channel; token IDs are UUIDs. */
+    public static final String FAMILY_ENTRY_PREFIX = "family:";
+
+    private static final String REFRESH_KEY_PREFIX = "auth:refresh:";
+
+    private final StringRedisTemplate redisTemplate;
+
+    /**
+     * Revokes an access token until its expiry.
+     */
+    public void revoke(String tokenId, Date expiration) {
+        long now = System.currentTimeMillis();
+        long remainingMillis = expiration.getTime() - now;
+        if (tokenId == null || remainingMillis <= 0) {
+            return;
+        }
+
+        redisTemplate.opsForValue().set(REVOKED_KEY_PREFIX + tokenId, "1", Duration.ofMillis(remainingMillis));
+        announce(tokenId, expiration.getTime());
+        log.info("Revoked token {}", tokenId);
+    }
+
+    public boolean isRevoked(String tokenId) {
+        return tokenId == null || Boolean.TRUE.equals(redisTemplate.hasKey(REVOKED_KEY_PREFIX + tokenId));
+    }
+
+    public void storeRefreshToken(String tokenId, String familyId, Duration validity) {
+        redisTemplate.opsForValue().set(REFRESH_KEY_PREFIX + tokenId, familyId, validity);
+    }
+
+    /**
+     * Marks the refresh token as used.
+     *
+     * @return {@code false} if it was already used (or never issued)
+     */
+    public boolean consumeRefreshToken(String tokenId) {
+        return tokenId != null && redisTemplate.opsForValue().getAndDelete(REFRESH_KEY_PREFIX + tokenId) != null;
+    }
+
+    /**
+     * Revokes every token of the family, access and refresh. Tokens issued from it live at most
+     * {@code validity}, so the mark can expire after that.
+     */
+    public void revokeFamily(String familyId, Duration validity) {
+        if (familyId == null) {
+            return;
+        }
+        redisTemplate.opsForValue().set(FAMILY_REVOKED_KEY_PREFIX + familyId, "1", validity);
+        announce(FAMILY_ENTRY_PREFIX + familyId, System.currentTimeMillis() + validity.toMillis());
+        log.info("Revoked token family {}", familyId);
+    }
+
+    /**
+     * Indexes the entry, then numbers and publishes it. Indexing first means that a gateway which
+     * reads the counter and then the index finds every entry numbered up to what it read.
+     */
+    private void announce(String entry, long expiresAtMillis) {
+        redisTemplate.opsForZSet().add(REVOKED_INDEX_KEY, entry, expiresAtMillis);
+        // Entries that have expired since are no longer needed by anyone
+        redisTemplate.opsForZSet().removeRangeByScore(REVOKED_INDEX_KEY, 0, System.currentTimeMillis());
+        Long sequence = redisTemplate.opsForValue().increment(REVOCATION_SEQUENCE_KEY);
+        redisTemplate.convertAndSend(REVOCATION_CHANNEL, sequence + " " + entry);
+    }
+
+    public boolean isFamilyRevoked(String familyId) {
+        return familyId == null || Boolean.TRUE.equals(redisTemplate.hasKey(FAMILY_REVOKED_KEY_PREFIX + familyId));
+    }
+}
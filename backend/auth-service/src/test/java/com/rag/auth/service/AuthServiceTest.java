@@ -0,0 +1,193 @@
+package com.rag.auth.service;
+
+import com.rag.auth.dto.AuthResponse;
+import com.rag.auth.dto.LoginRequest;
+import com.rag.auth.entity.User;
+import com.rag.auth.repository.UserRepository;
+import com.rag.auth.security.JwtAuthenticationFilter;
+import com.rag.auth.security.JwtTokenProvider;
+import io.jsonwebtoken.Claims;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AuthServiceTest {
+
+    private RedisServer server;
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate redisTemplate;
+    private RedisClient subscriberClient;
+    private final BlockingQueue<String> published = new LinkedBlockingQueue<>();
+
+    private JwtTokenProvider tokenProvider;
+    private TokenRevocationService tokenRevocationService;
+    private AuthService authService;
+    private JwtAuthenticationFilter authenticationFilter;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = new RedisServer(port);
+        server.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", port));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+
+        subscriberClient = RedisClient.create("redis://localhost:" + port);
+        StatefulRedisPubSubConnection<String, String> subscriber = subscriberClient.connectPubSub();
+        subscriber.addListener(new RedisPubSubAdapter<>() {
+            @Override
+            public void message(String channel, String message) {
+                published.add(message);
+            }
+        });
+        subscriber.sync().subscribe(TokenRevocationService.REVOCATION_CHANNEL);
+
+        tokenProvider = new JwtTokenProvider();
+        ReflectionTestUtils.setField(tokenProvider, "jwtSecret", "test-secret-key-that-is-at-least-256-bits-long-for-hs256");
+        ReflectionTestUtils.setField(tokenProvider, "jwtExpiration", 60_000L);
+        ReflectionTestUtils.setField(tokenProvider, "refreshExpiration", 600_000L);
+        tokenProvider.init();
+        tokenRevocationService = new TokenRevocationService(redisTemplate);
+
+        User user = User.builder()
+                .id(7L)
+                .username("alice")
+                .password("encoded")
+                .email("alice@example.com")
+                .role(User.Role.USER)
+                .enabled(true)
+                .build();
+        UserRepository userRepository = mock(UserRepository.class);
+        when(userRepository.findByUsername("alice")).thenReturn(Optional.of(user));
+        authService = new AuthService(userRepository, mock(PasswordEncoder.class), mock(AuthenticationManager.class),
+                tokenProvider, tokenRevocationService);
+
+        UserDetailsService userDetailsService = mock(UserDetailsService.class);
+        when(userDetailsService.loadUserByUsername(any())).thenReturn(
+                org.springframework.security.core.userdetails.User.withUsername("alice")
+                        .password("encoded")
+                        .roles("USER")
+                        .build());
+        authenticationFilter = new JwtAuthenticationFilter(tokenProvider, userDetailsService, tokenRevocationService);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        SecurityContextHolder.clearContext();
+        subscriberClient.shutdown();
+        connectionFactory.destroy();
+        server.stop();
+    }
+
+    @Test
+    void accessTokensCarryTheFamilyOfTheirRefreshToken() {
+        AuthResponse tokens = login();
+
+        String accessFamily = claims(tokens.getAccessToken()).get(JwtTokenProvider.FAMILY_CLAIM, String.class);
+        String refreshFamily = claims(tokens.getRefreshToken()).get(JwtTokenProvider.FAMILY_CLAIM, String.class);
+        assertThat(accessFamily).isNotNull().isEqualTo(refreshFamily);
+        assertThat(authenticates(tokens.getAccessToken())).isTrue();
+    }
+
+    @Test
+    void refreshRotatesWithinTheFamily() {
+        AuthResponse first = login();
+        AuthResponse second = authService.refreshToken(first.getRefreshToken());
+
+        assertThat(claims(second.getAccessToken()).get(JwtTokenProvider.FAMILY_CLAIM, String.class))
+                .isEqualTo(claims(first.getAccessToken()).get(JwtTokenProvider.FAMILY_CLAIM, String.class));
+        assertThat(authenticates(first.getAccessToken())).isTrue();
+        assertThat(authenticates(second.getAccessToken())).isTrue();
+    }
+
+    @Test
+    void reusedRefreshTokenRevokesTheWholeFamily() throws InterruptedException {
+        AuthResponse first = login();
+        AuthResponse second = authService.refreshToken(first.getRefreshToken());
+        String familyId = claims(first.getRefreshToken()).get(JwtTokenProvider.FAMILY_CLAIM, String.class);
+
+        assertThatThrownBy(() -> authService.refreshToken(first.getRefreshToken()))
+                .hasMessage("Refresh token has already been used");
+
+        // The current refresh token and every access token issued from the login are cut off
+        assertThatThrownBy(() -> authService.refreshToken(second.getRefreshToken()))
+                .hasMessage("Refresh token has been revoked");
+        assertThat(authenticates(first.getAccessToken())).isFalse();
+        assertThat(authenticates(second.getAccessToken())).isFalse();
+
+        // ... and so is every gateway, which reads the family from the index or the channel
+        String entry = TokenRevocationService.FAMILY_ENTRY_PREFIX + familyId;
+        assertThat(redisTemplate.opsForZSet().score(TokenRevocationService.REVOKED_INDEX_KEY, entry)).isNotNull();
+        assertThat(published.poll(5, TimeUnit.SECONDS)).isEqualTo("1 " + entry);
+    }
+
+    @Test
+    void numbersEveryRevocation() throws InterruptedException {
+        AuthResponse tokens = login();
+        String tokenId = claims(tokens.getAccessToken()).getId();
+        String familyId = claims(tokens.getRefreshToken()).get(JwtTokenProvider.FAMILY_CLAIM, String.class);
+
+        authService.logout(tokens.getAccessToken(), tokens.getRefreshToken());
+
+        assertThat(published.poll(5, TimeUnit.SECONDS)).isEqualTo("1 " + tokenId);
+        assertThat(published.poll(5, TimeUnit.SECONDS))
+                .isEqualTo("2 " + TokenRevocationService.FAMILY_ENTRY_PREFIX + familyId);
+        assertThat(redisTemplate.opsForValue().get(TokenRevocationService.REVOCATION_SEQUENCE_KEY)).isEqualTo("2");
+        assertThat(redisTemplate.opsForZSet().range(TokenRevocationService.REVOKED_INDEX_KEY, 0, -1))
+                .containsExactlyInAnyOrder(tokenId, TokenRevocationService.FAMILY_ENTRY_PREFIX + familyId);
+        assertThat(authenticates(tokens.getAccessToken())).isFalse();
+    }
+
+    private AuthResponse login() {
+        return authService.login(new LoginRequest("alice", "password"));
+    }
+
+    private Claims claims(String token) {
+        return tokenProvider.getValidClaims(token);
+    }
+
+    private boolean authenticates(String accessToken) {
+        SecurityContextHolder.clearContext();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/auth/me");
+        request.addHeader("Authorization", "Bearer " + accessToken);
+        try {
+            authenticationFilter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+        return SecurityContextHolder.getContext().getAuthentication() != null;
+    }
+}
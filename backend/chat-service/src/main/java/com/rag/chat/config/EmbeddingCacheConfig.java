@@ -0,0 +1,35 @@
+package com.rag.chat.config;
+
+import com.rag.ollama.EmbeddingCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class EmbeddingCacheConfig {
+
+    @Value("${ollama.embedding-cache.max-entries}")
+    private int maxEntries;
+
+    @Value("${ollama.embedding-cache.ttl-seconds}")
+    private long ttlSeconds;
+
+    @Bean
+    public EmbeddingCache queryEmbeddingCache(MeterRegistry meterRegistry) {
+        EmbeddingCache cache = new EmbeddingCache(maxEntries, ttlSeconds, EmbeddingCache.Precision.HALF);
+
+        FunctionCounter.builder("rag.embedding.cache.requests", cache, EmbeddingCache::hitCount)
+                .tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder("rag.embedding.cache.requests", cache, EmbeddingCache::missCount)
+                .tag("result", "miss").register(meterRegistry);
+        // Lookups that waited for an identical in-flight embedding call
+        FunctionCounter.builder("rag.embedding.cache.requests", cache, EmbeddingCache::coalescedCount)
+                .tag("result", "coalesced").register(meterRegistry);
+        Gauge.builder("rag.embedding.cache.size", cache, EmbeddingCache::size).register(meterRegistry);
+
+        return cache;
+    }
+}
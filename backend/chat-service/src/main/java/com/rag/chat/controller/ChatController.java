@@ -1,17 +1,21 @@
 package com.rag.chat.controller;
 
-import com.rag.chat.dto.ChatHistoryResponse;
+import com.rag.chat.dto.ChatHistoryPage;
 import com.rag.chat.dto.ChatRequest;
 import com.rag.chat.dto.ChatResponse;
 import com.rag.chat.service.ChatService;
+import com.rag.ollama.LlmOverloadedException;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
-import java.util.List;
 import java.util.Map;
 
 @Slf4j
@@ -29,6 +33,11 @@ public class ChatController {
         try {
             ChatResponse response = chatService.chat(request, userId);
             return ResponseEntity.ok(response);
+        } catch (LlmOverloadedException e) {
+            log.warn("Chat request rejected: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .body(Map.of("error", e.getMessage()));
         } catch (IOException e) {
             log.error("Failed to process chat request", e);
             return ResponseEntity.internalServerError()
@@ -36,12 +45,28 @@ public class ChatController {
         }
     }
 
+    /**
+     * Streams the answer over Server-Sent Events ({@code sources}, {@code token}..., {@code done}).
+     */
+    @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChat(
+            @Valid @RequestBody ChatRequest request,
+            @RequestHeader("X-User-Id") Long userId) {
+        return chatService.streamChat(request, userId);
+    }
+
     @GetMapping("/history")
-    public ResponseEntity<List<ChatHistoryResponse>> getChatHistory(
+    public ResponseEntity<?> getChatHistory(
             @RequestHeader("X-User-Id") Long userId,
-            @RequestParam(required = false) String sessionId) {
-        List<ChatHistoryResponse> history = chatService.getChatHistory(userId, sessionId);
-        return ResponseEntity.ok(history);
+            @RequestParam(required = false) String sessionId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        try {
+            ChatHistoryPage history = chatService.getChatHistory(userId, sessionId, cursor, limit);
+            return ResponseEntity.ok(history);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
     }
 
     @GetMapping("/health")
@@ -0,0 +1,17 @@
+package com.rag.chat.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatHistoryPage {
+    private List<ChatHistoryResponse> messages;
+    private String nextCursor; // Pass back as "cursor" to fetch older messages; null on the last page
+}
@@ -11,7 +11,10 @@ import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "chat_messages")
+@Table(name = "chat_messages", indexes = {
+        @Index(name = "idx_chat_messages_user_session_created", columnList = "user_id, session_id, created_at"),
+        @Index(name = "idx_chat_messages_user_created", columnList = "user_id, created_at")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -0,0 +1,51 @@
+package com.rag.chat.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import java.time.LocalDateTime;
+
+/**
+ * Running summary of a chat session's older messages. Messages with an ID up to
+ * {@code summarizedUntilMessageId} are represented by the summary and no longer replayed raw.
+ */
+@Entity
+@Table(name = "chat_session_summaries", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_chat_session_summaries_user_session", columnNames = {"user_id", "session_id"})
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@EntityListeners(AuditingEntityListener.class)
+public class ChatSessionSummary {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long userId;
+
+    @Column(nullable = false)
+    private String sessionId;
+
+    @Lob
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String summary;
+
+    @Column(nullable = false)
+    private Long summarizedUntilMessageId;
+
+    @Version
+    private Long version;
+
+    @LastModifiedDate
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+}
@@ -1,13 +1,46 @@
 package com.rag.chat.repository;
 
 import com.rag.chat.entity.ChatMessage;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
+/**
+ * History queries return the newest messages first and are bounded by the {@link Pageable}.
+ * Older pages are fetched with the {@code ...Before} keyset queries, which seek on
+ * (created_at, id) through the composite indexes instead of counting past an offset.
+ */
 @Repository
 public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long> {
-    List<ChatMessage> findByUserIdAndSessionIdOrderByCreatedAtAsc(Long userId, String sessionId);
-    List<ChatMessage> findByUserIdOrderByCreatedAtDesc(Long userId);
+    List<ChatMessage> findByUserIdAndSessionIdOrderByCreatedAtDescIdDesc(Long userId, String sessionId, Pageable pageable);
+    List<ChatMessage> findByUserIdOrderByCreatedAtDescIdDesc(Long userId, Pageable pageable);
+    List<ChatMessage> findByUserIdAndSessionIdAndIdGreaterThanOrderByIdAsc(Long userId, String sessionId, Long afterId, Pageable pageable);
+
+    @Query("""
+            SELECT m FROM ChatMessage m
+            WHERE m.userId = :userId AND m.sessionId = :sessionId
+              AND (m.createdAt < :createdAt OR (m.createdAt = :createdAt AND m.id < :id))
+            ORDER BY m.createdAt DESC, m.id DESC
+            """)
+    List<ChatMessage> findSessionMessagesBefore(@Param("userId") Long userId,
+                                                @Param("sessionId") String sessionId,
+                                                @Param("createdAt") LocalDateTime createdAt,
+                                                @Param("id") Long id,
+                                                Pageable pageable);
+
+    @Query("""
+            SELECT m FROM ChatMessage m
+            WHERE m.userId = :userId
+              AND (m.createdAt < :createdAt OR (m.createdAt = :createdAt AND m.id < :id))
+            ORDER BY m.createdAt DESC, m.id DESC
+            """)
+    List<ChatMessage> findUserMessagesBefore(@Param("userId") Long userId,
+                                             @Param("createdAt") LocalDateTime createdAt,
+                                             @Param("id") Long id,
+                                             Pageable pageable);
 }
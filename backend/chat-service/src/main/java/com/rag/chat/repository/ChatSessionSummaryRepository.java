@@ -0,0 +1,12 @@
+package com.rag.chat.repository;
+
+import com.rag.chat.entity.ChatSessionSummary;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface ChatSessionSummaryRepository extends JpaRepository<ChatSessionSummary, Long> {
+    Optional<ChatSessionSummary> findByUserIdAndSessionId(Long userId, String sessionId);
+}
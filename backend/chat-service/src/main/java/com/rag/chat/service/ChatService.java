@@ -1,19 +1,41 @@
 package com.rag.chat.service;
 
+import com.rag.chat.dto.ChatHistoryPage;
 import com.rag.chat.dto.ChatHistoryResponse;
 import com.rag.chat.dto.ChatRequest;
 import com.rag.chat.dto.ChatResponse;
 import com.rag.chat.entity.ChatMessage;
+import com.rag.chat.entity.ChatSessionSummary;
 import com.rag.chat.repository.ChatMessageRepository;
+import com.rag.ollama.LlmOverloadedException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -23,35 +45,243 @@ public class ChatService {
 
     private final ChatMessageRepository messageRepository;
     private final RagService ragService;
+    private final SemanticAnswerCache answerCache;
+    private final ConversationSummaryService summaryService;
+    private final MeterRegistry meterRegistry;
 
     @Value("${rag.max-history}")
     private int maxHistory;
 
-    @Transactional
+    @Value("${rag.stream.worker-threads}")
+    private int streamWorkerThreads;
+
+    @Value("${rag.stream.queue-capacity}")
+    private int streamQueueCapacity;
+
+    @Value("${rag.stream.timeout-ms}")
+    private long streamTimeoutMs;
+
+    @Value("${rag.history.page-size}")
+    private int historyPageSize;
+
+    @Value("${rag.history.max-page-size}")
+    private int historyMaxPageSize;
+
+    @Value("${rag.io-threads}")
+    private int ioThreads;
+
+    private ExecutorService streamWorkers;
+    private ExecutorService ioWorkers;
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadCount = new AtomicInteger();
+        streamWorkers = new ThreadPoolExecutor(streamWorkerThreads, streamWorkerThreads,
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(streamQueueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "chat-stream-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Runs the database and search branches of a chat turn alongside the calling thread
+        AtomicInteger ioThreadCount = new AtomicInteger();
+        ioWorkers = Executors.newFixedThreadPool(ioThreads, runnable -> {
+            Thread thread = new Thread(runnable, "chat-io-" + ioThreadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        streamWorkers.shutdownNow();
+        ioWorkers.shutdownNow();
+    }
+
+    /**
+     * Answers one chat message. Not transactional: each repository call commits on its own, so no
+     * database connection is held while the LLM generates.
+     */
     public ChatResponse chat(ChatRequest request, Long userId) throws IOException {
-        String sessionId = request.getSessionId();
-        if (sessionId == null || sessionId.isEmpty()) {
-            sessionId = UUID.randomUUID().toString();
+        Turn turn = startTurn(request, userId);
+
+        // Generate answer unless a semantically equivalent question was already answered
+        String answer = turn.cachedAnswer();
+        if (answer == null) {
+            long generationStart = System.nanoTime();
+            answer = stage("generate", () -> ragService.generateAnswer(request.getMessage(), turn.contexts(), turn.chatHistory(),
+                    turn.summary()));
+            cacheAnswer(turn, userId, answer, System.nanoTime() - generationStart);
         }
 
-        log.info("Processing chat request for user {} in session {}", userId, sessionId);
+        String finalAnswer = answer;
+        stage("save_answer", () -> saveAssistantMessage(turn, userId, finalAnswer));
+        summaryService.summarizeIfNeeded(userId, turn.sessionId(), turn.unsummarizedMessages() + 2);
+        log.info("Chat response generated for user {} in session {}", userId, turn.sessionId());
 
-        // Save user message
-        ChatMessage userMessage = ChatMessage.builder()
-                .userId(userId)
-                .sessionId(sessionId)
-                .type(ChatMessage.MessageType.USER)
-                .content(request.getMessage())
-                .createdAt(LocalDateTime.now())
+        return ChatResponse.builder()
+                .sessionId(turn.sessionId())
+                .response(answer)
+                .sources(turn.sources())
+                .timestamp(LocalDateTime.now())
                 .build();
-        messageRepository.save(userMessage);
+    }
+
+    /**
+     * Streams the answer as Server-Sent Events: a {@code sources} event as soon as retrieval is
+     * done, a {@code token} event per generated token, then {@code done}. The assistant message
+     * is saved once generation completes. Generation runs on the stream worker pool and is
+     * abandoned if the client disconnects.
+     */
+    public SseEmitter streamChat(ChatRequest request, Long userId) {
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        emitter.onTimeout(() -> cancelled.set(true));
+        emitter.onError(error -> cancelled.set(true));
+
+        try {
+            streamWorkers.execute(() -> streamTurn(request, userId, emitter, cancelled));
+        } catch (RejectedExecutionException e) {
+            log.warn("Chat stream rejected for user {}: worker pool is saturated", userId);
+            sendError(emitter, "Too many concurrent chat streams, please retry later");
+        }
+        return emitter;
+    }
+
+    private void streamTurn(ChatRequest request, Long userId, SseEmitter emitter, AtomicBoolean cancelled) {
+        long startNanos = System.nanoTime();
+        try {
+            Turn turn = startTurn(request, userId);
+
+            emitter.send(SseEmitter.event()
+                    .name("sources")
+                    .data(Map.of("sessionId", turn.sessionId(), "sources", turn.sources()), MediaType.APPLICATION_JSON));
+
+            String answer = turn.cachedAnswer();
+            if (answer != null) {
+                emitter.send(SseEmitter.event()
+                        .name("token")
+                        .data(Map.of("token", answer), MediaType.APPLICATION_JSON));
+            } else {
+                long generationStart = System.nanoTime();
+                AtomicBoolean firstToken = new AtomicBoolean(true);
+                answer = ragService.streamAnswer(request.getMessage(), turn.contexts(), turn.chatHistory(), turn.summary(), token -> {
+                    if (cancelled.get()) {
+                        throw new IOException("Client disconnected");
+                    }
+                    if (firstToken.compareAndSet(true, false)) {
+                        long elapsed = System.nanoTime() - startNanos;
+                        meterRegistry.timer("rag.chat.first.token").record(elapsed, TimeUnit.NANOSECONDS);
+                        log.debug("First token for session {} after {} ms", turn.sessionId(),
+                                TimeUnit.NANOSECONDS.toMillis(elapsed));
+                    }
+                    emitter.send(SseEmitter.event()
+                            .name("token")
+                            .data(Map.of("token", token), MediaType.APPLICATION_JSON));
+                });
+                cacheAnswer(turn, userId, answer, System.nanoTime() - generationStart);
+            }
+
+            String finalAnswer = answer;
+            stage("save_answer", () -> saveAssistantMessage(turn, userId, finalAnswer));
+            summaryService.summarizeIfNeeded(userId, turn.sessionId(), turn.unsummarizedMessages() + 2);
+            log.info("Chat response streamed for user {} in session {} in {} ms", userId, turn.sessionId(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+
+            emitter.send(SseEmitter.event()
+                    .name("done")
+                    .data(Map.of("sessionId", turn.sessionId(), "timestamp", LocalDateTime.now().toString()),
+                            MediaType.APPLICATION_JSON));
+            emitter.complete();
+        } catch (Exception e) {
+            if (cancelled.get()) {
+                log.info("Chat stream for user {} cancelled by client", userId);
+                emitter.complete();
+            } else if (e instanceof LlmOverloadedException) {
+                log.warn("Chat stream for user {} rejected: {}", userId, e.getMessage());
+                sendError(emitter, e.getMessage());
+            } else {
+                log.error("Failed to stream chat response", e);
+                sendError(emitter, "Failed to process chat request");
+            }
+        }
+    }
+
+    private void sendError(SseEmitter emitter, String message) {
+        try {
+            emitter.send(SseEmitter.event()
+                    .name("error")
+                    .data(Map.of("error", message), MediaType.APPLICATION_JSON));
+            emitter.complete();
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+        }
+    }
+
+    /**
+     * Saves the user message and gathers everything needed to answer it: the conversation summary,
+     * the chat history it does not cover, and retrieved context.
+     */
+    private Turn startTurn(ChatRequest request, Long userId) throws IOException {
+        String requestedSessionId = request.getSessionId();
+        String sessionId = requestedSessionId == null || requestedSessionId.isEmpty()
+                ? UUID.randomUUID().toString() : requestedSessionId;
+        String message = request.getMessage();
+
+        log.info("Processing chat request for user {} in session {}", userId, sessionId);
+
+        // Fan out the independent I/O: saving the message and loading history hit the database,
+        // while embedding the query hits Ollama
+        CompletableFuture<ChatMessage> savedUserMessage = stageAsync("save_user_message", () ->
+                messageRepository.save(ChatMessage.builder()
+                        .userId(userId)
+                        .sessionId(sessionId)
+                        .type(ChatMessage.MessageType.USER)
+                        .content(message)
+                        .createdAt(LocalDateTime.now())
+                        .build()));
+        // One extra row in case the window already includes the message being saved concurrently
+        CompletableFuture<List<ChatMessage>> history = stageAsync("load_history", () ->
+                messageRepository.findByUserIdAndSessionIdOrderByCreatedAtDescIdDesc(
+                        userId, sessionId, PageRequest.of(0, maxHistory + 1)));
+        CompletableFuture<ChatSessionSummary> summary = stageAsync("load_summary", () ->
+                summaryService.findSummary(userId, sessionId).orElse(null));
+        CompletableFuture<float[]> embedding = stageAsync("embed_query", () -> ragService.embedQuery(message));
+
+        // Fan in the database branches. The question itself goes into the prompt separately, so
+        // leave it out of the history whether or not the history query already saw it. Messages
+        // already folded into the summary are replaced by it
+        Long userMessageId = await(savedUserMessage).getId();
+        ChatSessionSummary sessionSummary = await(summary);
+        long summarizedUntil = sessionSummary == null ? 0L : sessionSummary.getSummarizedUntilMessageId();
+        List<ChatMessage> unsummarized = await(history).stream()
+                .filter(msg -> !msg.getId().equals(userMessageId) && msg.getId() > summarizedUntil)
+                .collect(Collectors.toList());
+        List<ChatMessage> recent = new ArrayList<>(unsummarized.subList(0, Math.min(maxHistory, unsummarized.size())));
+        Collections.reverse(recent);
 
-        // Retrieve chat history
-        List<ChatMessage> history = messageRepository
-                .findByUserIdAndSessionIdOrderByCreatedAtAsc(userId, sessionId);
+        // Answer from the cache if this user already asked the same thing about the same documents.
+        // Only the opening question of a session qualifies: a follow-up such as "what about the
+        // second one?" means something different in every conversation. The fingerprint is an
+        // OpenSearch aggregation, so it only runs for those, while the embedding is still in flight
+        boolean openingQuestion = unsummarized.isEmpty() && sessionSummary == null;
+        String documentSetFingerprint = openingQuestion ? stage("fingerprint", () -> documentSetFingerprint(userId)) : null;
+        float[] queryEmbedding = await(embedding);
+        SemanticAnswerCache.CachedAnswer cached = documentSetFingerprint == null
+                ? null : answerCache.lookup(userId, documentSetFingerprint, message, queryEmbedding);
 
-        List<Map<String, String>> chatHistory = history.stream()
-                .limit(maxHistory)
+        List<String> contexts;
+        List<String> sources;
+        if (cached != null) {
+            contexts = cached.contexts();
+            sources = cached.sources();
+        } else {
+            Map<String, Object> contextResult = stage("retrieve", () -> ragService.retrieveContext(queryEmbedding, userId));
+            contexts = (List<String>) contextResult.get("contexts");
+            sources = ((List<String>) contextResult.get("sources")).stream().distinct().collect(Collectors.toList());
+        }
+
+        List<Map<String, String>> chatHistory = recent.stream()
                 .map(msg -> {
                     Map<String, String> m = new HashMap<>();
                     m.put("role", msg.getType().name());
@@ -60,52 +290,161 @@ public class ChatService {
                 })
                 .collect(Collectors.toList());
 
-        // Retrieve relevant context
-        Map<String, Object> contextResult = ragService.retrieveContext(request.getMessage());
-        List<String> contexts = (List<String>) contextResult.get("contexts");
-        List<String> sources = (List<String>) contextResult.get("sources");
+        return new Turn(sessionId, message, chatHistory, sessionSummary == null ? null : sessionSummary.getSummary(),
+                unsummarized.size(), contexts, sources, queryEmbedding, documentSetFingerprint,
+                cached == null ? null : cached.answer());
+    }
+
+    /**
+     * Runs one pipeline stage on the calling thread and records its duration under
+     * {@code rag.chat.stage}.
+     */
+    private <T> T stage(String name, StageCall<T> call) throws IOException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            return call.call();
+        } finally {
+            sample.stop(Timer.builder("rag.chat.stage").tag("stage", name).register(meterRegistry));
+        }
+    }
+
+    private <T> CompletableFuture<T> stageAsync(String name, StageCall<T> call) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return stage(name, call);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, ioWorkers);
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw e;
+        }
+    }
+
+    private String documentSetFingerprint(Long userId) {
+        if (!answerCache.isEnabled()) {
+            return null;
+        }
+        try {
+            return ragService.documentSetFingerprint(userId);
+        } catch (IOException e) {
+            log.warn("Could not fingerprint documents of user {}, skipping answer cache: {}", userId, e.getMessage());
+            return null;
+        }
+    }
 
-        // Generate answer
-        String answer = ragService.generateAnswer(request.getMessage(), contexts, chatHistory);
+    private void cacheAnswer(Turn turn, Long userId, String answer, long generationNanos) {
+        if (turn.documentSetFingerprint() != null) {
+            answerCache.put(userId, turn.documentSetFingerprint(), turn.message(), turn.queryEmbedding(),
+                    new SemanticAnswerCache.CachedAnswer(answer, turn.contexts(), turn.sources(), generationNanos));
+        }
+    }
 
-        // Save assistant message
+    private ChatMessage saveAssistantMessage(Turn turn, Long userId, String answer) {
         ChatMessage assistantMessage = ChatMessage.builder()
                 .userId(userId)
-                .sessionId(sessionId)
+                .sessionId(turn.sessionId())
                 .type(ChatMessage.MessageType.ASSISTANT)
                 .content(answer)
-                .context(String.join("\n\n---\n\n", contexts))
+                .context(String.join("\n\n---\n\n", turn.contexts()))
                 .createdAt(LocalDateTime.now())
                 .build();
-        messageRepository.save(assistantMessage);
-
-        log.info("Chat response generated for user {} in session {}", userId, sessionId);
-
-        return ChatResponse.builder()
-                .sessionId(sessionId)
-                .response(answer)
-                .sources(sources.stream().distinct().collect(Collectors.toList()))
-                .timestamp(LocalDateTime.now())
-                .build();
+        return messageRepository.save(assistantMessage);
     }
 
+    /**
+     * Returns one page of history, newest page first. Session history is ordered oldest to newest
+     * within the page; history across all sessions newest first. {@code cursor} is the
+     * {@code nextCursor} of the previous page.
+     */
     @Transactional(readOnly = true)
-    public List<ChatHistoryResponse> getChatHistory(Long userId, String sessionId) {
+    public ChatHistoryPage getChatHistory(Long userId, String sessionId, String cursor, Integer limit) {
+        int pageSize = Math.min(limit == null || limit <= 0 ? historyPageSize : limit, historyMaxPageSize);
+        // Fetch one extra row to know whether an older page exists
+        PageRequest page = PageRequest.of(0, pageSize + 1);
+        boolean bySession = sessionId != null && !sessionId.isEmpty();
+
         List<ChatMessage> messages;
+        if (cursor == null || cursor.isEmpty()) {
+            messages = bySession
+                    ? messageRepository.findByUserIdAndSessionIdOrderByCreatedAtDescIdDesc(userId, sessionId, page)
+                    : messageRepository.findByUserIdOrderByCreatedAtDescIdDesc(userId, page);
+        } else {
+            HistoryCursor position = HistoryCursor.decode(cursor);
+            messages = bySession
+                    ? messageRepository.findSessionMessagesBefore(userId, sessionId, position.createdAt(), position.id(), page)
+                    : messageRepository.findUserMessagesBefore(userId, position.createdAt(), position.id(), page);
+        }
 
-        if (sessionId != null && !sessionId.isEmpty()) {
-            messages = messageRepository.findByUserIdAndSessionIdOrderByCreatedAtAsc(userId, sessionId);
+        String nextCursor = null;
+        if (messages.size() > pageSize) {
+            messages = new ArrayList<>(messages.subList(0, pageSize));
+            ChatMessage oldest = messages.get(messages.size() - 1);
+            nextCursor = new HistoryCursor(oldest.getCreatedAt(), oldest.getId()).encode();
         } else {
-            messages = messageRepository.findByUserIdOrderByCreatedAtDesc(userId);
+            messages = new ArrayList<>(messages);
+        }
+        if (bySession) {
+            Collections.reverse(messages);
         }
 
-        return messages.stream()
-                .map(msg -> ChatHistoryResponse.builder()
-                        .id(msg.getId())
-                        .type(msg.getType().name())
-                        .content(msg.getContent())
-                        .timestamp(msg.getCreatedAt())
-                        .build())
-                .collect(Collectors.toList());
+        return ChatHistoryPage.builder()
+                .messages(messages.stream()
+                        .map(msg -> ChatHistoryResponse.builder()
+                                .id(msg.getId())
+                                .type(msg.getType().name())
+                                .content(msg.getContent())
+                                .timestamp(msg.getCreatedAt())
+                                .build())
+                        .collect(Collectors.toList()))
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    /**
+     * Opaque keyset position: the (createdAt, id) of the oldest message on the previous page.
+     */
+    private record HistoryCursor(LocalDateTime createdAt, Long id) {
+
+        String encode() {
+            String raw = createdAt + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static HistoryCursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = raw.lastIndexOf('|');
+                return new HistoryCursor(LocalDateTime.parse(raw.substring(0, separator)),
+                        Long.parseLong(raw.substring(separator + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid history cursor");
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface StageCall<T> {
+        T call() throws IOException;
+    }
+
+    /**
+     * {@code documentSetFingerprint} is null when the answer cache does not apply to the turn.
+     */
+    private record Turn(String sessionId, String message, List<Map<String, String>> chatHistory,
+                        String summary, int unsummarizedMessages,
+                        List<String> contexts, List<String> sources,
+                        float[] queryEmbedding, String documentSetFingerprint, String cachedAnswer) {
     }
 }
@@ -0,0 +1,171 @@
+package com.rag.chat.service;
+
+import com.rag.chat.entity.ChatMessage;
+import com.rag.chat.entity.ChatSessionSummary;
+import com.rag.chat.repository.ChatMessageRepository;
+import com.rag.chat.repository.ChatSessionSummaryRepository;
+import com.rag.ollama.LlmScheduler;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps a rolling summary per chat session so prompts replay a summary plus the last few raw
+ * messages instead of the whole conversation.
+ * <p>
+ * Once a session has {@code rag.summary.trigger-messages} messages that are not yet summarized,
+ * all but the newest {@code rag.summary.recent-messages} of them are folded into the summary on
+ * a background thread. The chat turn that triggers it does not wait; the next turns pick up the
+ * new summary.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ConversationSummaryService {
+
+    private static final int MAX_MESSAGES_PER_FOLD = 100;
+    private static final int MAX_MESSAGE_TOKENS = 300;
+
+    private final ChatMessageRepository messageRepository;
+    private final ChatSessionSummaryRepository summaryRepository;
+    private final OllamaService ollamaService;
+
+    @Value("${rag.summary.enabled}")
+    private boolean enabled;
+
+    @Value("${rag.summary.trigger-messages}")
+    private int triggerMessages;
+
+    @Value("${rag.summary.recent-messages}")
+    private int recentMessages;
+
+    @Value("${rag.summary.max-tokens}")
+    private int maxSummaryTokens;
+
+    // Sessions with a fold queued or running, keyed by userId/sessionId
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    private ExecutorService workers;
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(100), runnable -> {
+            Thread thread = new Thread(runnable, "chat-summary-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        workers.shutdownNow();
+    }
+
+    public Optional<ChatSessionSummary> findSummary(Long userId, String sessionId) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        return summaryRepository.findByUserIdAndSessionId(userId, sessionId);
+    }
+
+    /**
+     * Schedules a fold if the session has reached the trigger. {@code unsummarizedMessages} is
+     * the caller's count of messages newer than the current summary.
+     */
+    public void summarizeIfNeeded(Long userId, String sessionId, int unsummarizedMessages) {
+        if (!enabled || unsummarizedMessages < triggerMessages) {
+            return;
+        }
+
+        String key = userId + "/" + sessionId;
+        if (!pending.add(key)) {
+            return;
+        }
+        try {
+            workers.execute(() -> {
+                try {
+                    fold(userId, sessionId);
+                } catch (OptimisticLockingFailureException e) {
+                    log.debug("Summary of session {} was updated concurrently, skipping fold", sessionId);
+                } catch (Exception e) {
+                    log.warn("Failed to summarize session {}: {}", sessionId, e.getMessage());
+                } finally {
+                    pending.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Retried on a later turn
+            pending.remove(key);
+        }
+    }
+
+    private void fold(Long userId, String sessionId) throws Exception {
+        ChatSessionSummary summary = summaryRepository.findByUserIdAndSessionId(userId, sessionId)
+                .orElseGet(() -> ChatSessionSummary.builder()
+                        .userId(userId)
+                        .sessionId(sessionId)
+                        .summary("")
+                        .summarizedUntilMessageId(0L)
+                        .build());
+
+        List<ChatMessage> unsummarized = messageRepository.findByUserIdAndSessionIdAndIdGreaterThanOrderByIdAsc(
+                userId, sessionId, summary.getSummarizedUntilMessageId(),
+                PageRequest.of(0, MAX_MESSAGES_PER_FOLD + recentMessages));
+        int foldCount = Math.min(MAX_MESSAGES_PER_FOLD, unsummarized.size() - recentMessages);
+        if (foldCount <= 0) {
+            return;
+        }
+        List<ChatMessage> toFold = unsummarized.subList(0, foldCount);
+
+        long start = System.nanoTime();
+        String updated = ollamaService.generateResponse(buildFoldPrompt(summary.getSummary(), toFold),
+                LlmScheduler.Priority.BACKGROUND).strip();
+        if (PromptBuilder.estimateTokens(updated) > maxSummaryTokens) {
+            updated = PromptBuilder.truncate(updated, maxSummaryTokens);
+        }
+
+        summary.setSummary(updated);
+        summary.setSummarizedUntilMessageId(toFold.get(toFold.size() - 1).getId());
+        summaryRepository.save(summary);
+
+        log.info("Folded {} messages of session {} into its summary in {} ms", foldCount, sessionId,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private String buildFoldPrompt(String currentSummary, List<ChatMessage> messages) {
+        StringBuilder prompt = new StringBuilder();
+        prompt.append("You maintain a running summary of a conversation between a user and an AI assistant. ");
+        prompt.append("Update the summary with the new messages. Keep facts, names, numbers, decisions and open ");
+        prompt.append("questions; drop pleasantries. Answer with the updated summary only, in at most ");
+        prompt.append(maxSummaryTokens * 3 / 4).append(" words.\n\n");
+
+        prompt.append("Current summary:\n");
+        prompt.append(currentSummary.isEmpty() ? "(none)" : currentSummary).append("\n\n");
+
+        prompt.append("New messages:\n");
+        for (ChatMessage message : messages) {
+            prompt.append(message.getType().name()).append(": ")
+                    .append(PromptBuilder.truncate(message.getContent(), MAX_MESSAGE_TOKENS)).append("\n");
+        }
+
+        prompt.append("\nUpdated summary: ");
+        return prompt.toString();
+    }
+}
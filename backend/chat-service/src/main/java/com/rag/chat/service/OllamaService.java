@@ -1,100 +1,58 @@
 package com.rag.chat.service;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
+import com.rag.ollama.LlmScheduler;
+import com.rag.ollama.OllamaClient;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import okhttp3.*;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
 
+/**
+ * Chat-side Ollama calls, admitted through the {@link LlmScheduler}.
+ */
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class OllamaService {
 
-    @Value("${ollama.url}")
-    private String ollamaUrl;
+    private final OllamaClient client;
+    private final LlmScheduler scheduler;
 
-    @Value("${ollama.model}")
-    private String model;
-
-    private final OkHttpClient client;
-    private final Gson gson;
-
-    public OllamaService() {
-        this.client = new OkHttpClient.Builder()
-                .connectTimeout(60, TimeUnit.SECONDS)
-                .readTimeout(60, TimeUnit.SECONDS)
-                .writeTimeout(60, TimeUnit.SECONDS)
-                .build();
-        this.gson = new Gson();
-    }
-
-    public List<Double> generateEmbedding(String text) throws IOException {
+    /**
+     * Embeds a query through {@code /api/embed}, the same endpoint the document service uses for
+     * chunk batches, so queries and chunks land in the same (normalized) vector space.
+     */
+    public float[] generateEmbedding(String text) throws IOException {
         log.debug("Generating embedding for text of length: {}", text.length());
-
-        JsonObject requestBody = new JsonObject();
-        requestBody.addProperty("model", model);
-        requestBody.addProperty("prompt", text);
-
-        RequestBody body = RequestBody.create(
-                gson.toJson(requestBody),
-                MediaType.parse("application/json")
-        );
-
-        Request request = new Request.Builder()
-                .url(ollamaUrl + "/api/embeddings")
-                .post(body)
-                .build();
-
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("Failed to generate embedding: " + response);
-            }
-
-            String responseBody = response.body().string();
-            JsonObject jsonResponse = gson.fromJson(responseBody, JsonObject.class);
-
-            List<Double> embedding = gson.fromJson(
-                    jsonResponse.get("embedding"),
-                    List.class
-            );
-
-            log.debug("Generated embedding with dimension: {}", embedding.size());
-            return embedding;
-        }
+        List<float[]> embeddings = scheduler.call(LlmScheduler.Operation.EMBED, LlmScheduler.Priority.INTERACTIVE,
+                () -> client.embed(List.of(text)));
+        return embeddings.get(0);
     }
 
     public String generateResponse(String prompt) throws IOException {
-        log.debug("Generating response for prompt");
-
-        JsonObject requestBody = new JsonObject();
-        requestBody.addProperty("model", model);
-        requestBody.addProperty("prompt", prompt);
-        requestBody.addProperty("stream", false);
-
-        RequestBody body = RequestBody.create(
-                gson.toJson(requestBody),
-                MediaType.parse("application/json")
-        );
-
-        Request request = new Request.Builder()
-                .url(ollamaUrl + "/api/generate")
-                .post(body)
-                .build();
-
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("Failed to generate response: " + response);
-            }
+        return generateResponse(prompt, LlmScheduler.Priority.INTERACTIVE);
+    }
 
-            String responseBody = response.body().string();
-            JsonObject jsonResponse = gson.fromJson(responseBody, JsonObject.class);
+    /**
+     * Generates a response at the given scheduling priority; background work such as summaries
+     * waits behind chat requests.
+     */
+    public String generateResponse(String prompt, LlmScheduler.Priority priority) throws IOException {
+        log.debug("Generating response for prompt");
+        return scheduler.call(LlmScheduler.Operation.GENERATE, priority, () -> client.generate(prompt));
+    }
 
-            return jsonResponse.get("response").getAsString();
-        }
+    /**
+     * Streams a response token by token. The scheduler slot is held until the stream ends.
+     *
+     * @return the full generated text
+     * @see OllamaClient#generateStream
+     */
+    public String streamResponse(String prompt, OllamaClient.TokenHandler handler) throws IOException {
+        log.debug("Streaming response for prompt");
+        return scheduler.call(LlmScheduler.Operation.GENERATE, LlmScheduler.Priority.INTERACTIVE,
+                () -> client.generateStream(prompt, handler));
     }
 }
@@ -0,0 +1,231 @@
+package com.rag.chat.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assembles the RAG prompt within a token budget.
+ * <p>
+ * The instructions and the question are always included. What is left of the budget is split
+ * between retrieved context and chat history ({@code contextShare} for context); budget one side
+ * does not need is given to the other. Context chunks are kept in retrieval rank order and chat
+ * messages newest first, so the lowest-ranked chunks and the oldest messages are truncated or
+ * dropped first. The conversation summary, which stands for the oldest messages, comes last.
+ * <p>
+ * Tokens are estimated without a tokenizer, the same way the document service sizes chunks:
+ * four ASCII characters per token and one token per non-ASCII character.
+ */
+public class PromptBuilder {
+
+    // Pieces that would be truncated to fewer tokens than this are dropped instead
+    private static final int MIN_PIECE_TOKENS = 32;
+    private static final String TRUNCATION_MARKER = " ...";
+
+    private final int maxTokens;
+    private final double contextShare;
+
+    private String system = "";
+    private List<String> contexts = List.of();
+    private List<Map<String, String>> history = List.of();
+    private String summary = "";
+    private String question = "";
+
+    public PromptBuilder(int maxTokens, double contextShare) {
+        this.maxTokens = maxTokens;
+        this.contextShare = contextShare;
+    }
+
+    public PromptBuilder system(String system) {
+        this.system = system;
+        return this;
+    }
+
+    /** Context chunks, most relevant first. */
+    public PromptBuilder contexts(List<String> contexts) {
+        this.contexts = contexts == null ? List.of() : contexts;
+        return this;
+    }
+
+    /** Chat messages in chronological order, as maps with {@code role} and {@code content}. */
+    public PromptBuilder history(List<Map<String, String>> history) {
+        this.history = history == null ? List.of() : history;
+        return this;
+    }
+
+    /** Running summary of the conversation before {@link #history}. */
+    public PromptBuilder summary(String summary) {
+        this.summary = summary == null ? "" : summary.strip();
+        return this;
+    }
+
+    public PromptBuilder question(String question) {
+        this.question = question;
+        return this;
+    }
+
+    public Prompt build() {
+        String questionSection = "\nQuestion: " + question + "\n\n";
+        String answerCue = "Answer: ";
+
+        int systemTokens = estimateTokens(system);
+        // Keep at least half of the budget for context and history, even for a huge question
+        int questionBudget = Math.max(MIN_PIECE_TOKENS, maxTokens / 2 - systemTokens);
+        if (estimateTokens(questionSection) > questionBudget) {
+            questionSection = "\nQuestion: " + truncate(question, questionBudget) + "\n\n";
+        }
+        int questionTokens = estimateTokens(questionSection) + estimateTokens(answerCue);
+
+        int available = Math.max(0, maxTokens - systemTokens - questionTokens);
+        List<String> contextPieces = new ArrayList<>(contexts.size());
+        for (int i = 0; i < contexts.size(); i++) {
+            contextPieces.add("[" + (i + 1) + "] " + contexts.get(i) + "\n\n");
+        }
+        // Newest message first, so the oldest are the ones left out
+        List<String> historyPieces = new ArrayList<>(history.size());
+        for (int i = history.size() - 1; i >= 0; i--) {
+            Map<String, String> message = history.get(i);
+            historyPieces.add(message.get("role") + ": " + message.get("content") + "\n");
+        }
+
+        String contextHeader = "Context:\n";
+        String historyHeader = "\nChat History:\n";
+        String summaryHeader = "\nConversation Summary:\n";
+        List<String> summaryPieces = summary.isEmpty() ? List.of() : List.of(summary + "\n");
+        int contextNeed = contextPieces.isEmpty() ? 0 : estimateTokens(contextHeader) + sumTokens(contextPieces);
+        int historyNeed = (historyPieces.isEmpty() ? 0 : estimateTokens(historyHeader) + sumTokens(historyPieces))
+                + (summaryPieces.isEmpty() ? 0 : estimateTokens(summaryHeader) + sumTokens(summaryPieces));
+
+        int contextBudget = (int) (available * contextShare);
+        int historyBudget = available - contextBudget;
+        if (contextNeed < contextBudget) {
+            historyBudget += contextBudget - contextNeed;
+            contextBudget = contextNeed;
+        } else if (historyNeed < historyBudget) {
+            contextBudget += historyBudget - historyNeed;
+            historyBudget = historyNeed;
+        }
+
+        Fitted fittedContexts = fit(contextPieces, contextBudget - estimateTokens(contextHeader));
+        Fitted fittedHistory = fit(historyPieces, historyBudget - estimateTokens(historyHeader));
+        Collections.reverse(fittedHistory.pieces);
+        int historyUsed = fittedHistory.pieces.isEmpty() ? 0 : estimateTokens(historyHeader) + fittedHistory.tokens;
+        Fitted fittedSummary = fit(summaryPieces, historyBudget - historyUsed - estimateTokens(summaryHeader));
+
+        StringBuilder prompt = new StringBuilder(system);
+        int contextTokens = 0;
+        if (!fittedContexts.pieces.isEmpty()) {
+            prompt.append(contextHeader);
+            fittedContexts.pieces.forEach(prompt::append);
+            contextTokens = estimateTokens(contextHeader) + fittedContexts.tokens;
+        }
+        int historyTokens = 0;
+        if (!fittedSummary.pieces.isEmpty()) {
+            prompt.append(summaryHeader);
+            fittedSummary.pieces.forEach(prompt::append);
+            historyTokens += estimateTokens(summaryHeader) + fittedSummary.tokens;
+        }
+        if (!fittedHistory.pieces.isEmpty()) {
+            prompt.append(historyHeader);
+            fittedHistory.pieces.forEach(prompt::append);
+            historyTokens += estimateTokens(historyHeader) + fittedHistory.tokens;
+        }
+        prompt.append(questionSection).append(answerCue);
+
+        return new Prompt(prompt.toString(), systemTokens, contextTokens, historyTokens, questionTokens,
+                contexts.size() - fittedContexts.pieces.size(), fittedContexts.truncated,
+                history.size() - fittedHistory.pieces.size(), fittedHistory.truncated || fittedSummary.truncated);
+    }
+
+    /**
+     * Takes pieces in order while they fit, truncating the first one that does not (if enough
+     * budget is left for it to be useful) and dropping the rest.
+     */
+    private static Fitted fit(List<String> pieces, int budget) {
+        Fitted fitted = new Fitted();
+        for (String piece : pieces) {
+            int remaining = budget - fitted.tokens;
+            int tokens = estimateTokens(piece);
+            if (tokens <= remaining) {
+                fitted.pieces.add(piece);
+                fitted.tokens += tokens;
+                continue;
+            }
+            int markerTokens = estimateTokens(TRUNCATION_MARKER + "\n");
+            if (remaining - markerTokens >= MIN_PIECE_TOKENS) {
+                String truncated = truncate(piece.stripTrailing(), remaining - markerTokens) + "\n";
+                fitted.pieces.add(truncated);
+                fitted.tokens += estimateTokens(truncated);
+                fitted.truncated = true;
+            }
+            break;
+        }
+        return fitted;
+    }
+
+    /**
+     * Cuts {@code text} to about {@code tokens} tokens, at a word boundary where one is close.
+     */
+    static String truncate(String text, int tokens) {
+        int budget = tokens * 4;
+        int cost = 0;
+        int end = 0;
+        while (end < text.length()) {
+            int charCost = text.charAt(end) < 128 ? 1 : 4;
+            if (cost + charCost > budget) {
+                break;
+            }
+            cost += charCost;
+            end++;
+        }
+        if (end == text.length()) {
+            return text;
+        }
+
+        int wordEnd = end;
+        while (wordEnd > end * 4 / 5 && !Character.isWhitespace(text.charAt(wordEnd))) {
+            wordEnd--;
+        }
+        if (Character.isWhitespace(text.charAt(wordEnd))) {
+            end = wordEnd;
+        } else if (end > 0 && Character.isHighSurrogate(text.charAt(end - 1))) {
+            end--;
+        }
+        return text.substring(0, end) + TRUNCATION_MARKER;
+    }
+
+    static int estimateTokens(CharSequence text) {
+        int cost = 0;
+        for (int i = 0; i < text.length(); i++) {
+            cost += text.charAt(i) < 128 ? 1 : 4;
+        }
+        return (cost + 3) / 4;
+    }
+
+    private static int sumTokens(List<String> pieces) {
+        int tokens = 0;
+        for (String piece : pieces) {
+            tokens += estimateTokens(piece);
+        }
+        return tokens;
+    }
+
+    private static final class Fitted {
+        private final List<String> pieces = new ArrayList<>();
+        private int tokens;
+        private boolean truncated;
+    }
+
+    /**
+     * The assembled prompt and the estimated tokens spent on each section.
+     */
+    public record Prompt(String text, int systemTokens, int contextTokens, int historyTokens, int questionTokens,
+                         int droppedContexts, boolean contextTruncated,
+                         int droppedMessages, boolean historyTruncated) {
+
+        public int totalTokens() {
+            return systemTokens + contextTokens + historyTokens + questionTokens;
+        }
+    }
+}
@@ -1,14 +1,22 @@
 package com.rag.chat.service;
 
-import com.google.gson.Gson;
+import com.rag.ollama.EmbeddingCache;
+import com.rag.ollama.OllamaClient;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.opensearch.action.search.SearchRequest;
 import org.opensearch.action.search.SearchResponse;
 import org.opensearch.client.RequestOptions;
 import org.opensearch.client.RestHighLevelClient;
+import org.opensearch.common.xcontent.XContentFactory;
+import org.opensearch.core.common.bytes.BytesReference;
+import org.opensearch.core.xcontent.XContentBuilder;
 import org.opensearch.index.query.QueryBuilders;
 import org.opensearch.search.SearchHit;
+import org.opensearch.search.aggregations.AggregationBuilders;
+import org.opensearch.search.aggregations.metrics.Max;
+import org.opensearch.search.aggregations.metrics.Sum;
 import org.opensearch.search.builder.SearchSourceBuilder;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -24,9 +32,13 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class RagService {
 
+    private static final String SYSTEM_PROMPT = "You are a helpful AI assistant. "
+            + "Answer the following question based on the provided context.\n\n";
+
     private final RestHighLevelClient openSearchClient;
     private final OllamaService ollamaService;
-    private final Gson gson = new Gson();
+    private final EmbeddingCache embeddingCache;
+    private final MeterRegistry meterRegistry;
 
     @Value("${opensearch.index}")
     private String indexName;
@@ -34,15 +46,30 @@ public class RagService {
     @Value("${rag.top-k}")
     private int topK;
 
-    public Map<String, Object> retrieveContext(String query) throws IOException {
+    @Value("${rag.prompt.max-tokens}")
+    private int promptMaxTokens;
+
+    @Value("${rag.prompt.context-share}")
+    private double promptContextShare;
+
+    public Map<String, Object> retrieveContext(String query, Long userId) throws IOException {
         log.info("Retrieving context for query: {}", query);
+        return retrieveContext(embedQuery(query), userId);
+    }
 
-        // Generate embedding for the query
-        List<Double> queryEmbedding = ollamaService.generateEmbedding(query);
+    /**
+     * Embeds the query through the in-memory embedding cache. Concurrent identical queries share
+     * one Ollama call.
+     */
+    public float[] embedQuery(String query) throws IOException {
+        return embeddingCache.get(query.strip(), ollamaService::generateEmbedding);
+    }
 
-        // Search for similar documents
+    public Map<String, Object> retrieveContext(float[] queryEmbedding, Long userId) throws IOException {
+        // Approximate k-NN search over the user's own chunks
         SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
-        searchSourceBuilder.query(QueryBuilders.matchAllQuery());
+        searchSourceBuilder.query(QueryBuilders.wrapperQuery(BytesReference.bytes(knnQuery(queryEmbedding, userId))));
+        searchSourceBuilder.fetchSource(null, new String[]{"embedding"});
         searchSourceBuilder.size(topK);
 
         SearchRequest searchRequest = new SearchRequest(indexName);
@@ -74,34 +101,87 @@ public class RagService {
         return result;
     }
 
-    public String generateAnswer(String query, List<String> contexts, List<Map<String, String>> chatHistory) throws IOException {
-        log.info("Generating answer for query with {} contexts", contexts.size());
-
-        // Build prompt with context and history
-        StringBuilder promptBuilder = new StringBuilder();
-        promptBuilder.append("You are a helpful AI assistant. ");
-        promptBuilder.append("Answer the following question based on the provided context.\n\n");
-
-        if (!contexts.isEmpty()) {
-            promptBuilder.append("Context:\n");
-            for (int i = 0; i < contexts.size(); i++) {
-                promptBuilder.append(String.format("[%d] %s\n\n", i + 1, contexts.get(i)));
-            }
+    /**
+     * Summarizes the user's indexed chunks (count, latest indexing time, sum of document IDs).
+     * The value changes whenever a document of the user is added, re-ingested or deleted, so it
+     * can scope caches to the current document set.
+     */
+    public String documentSetFingerprint(Long userId) throws IOException {
+        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder()
+                .query(QueryBuilders.termQuery("userId", userId))
+                .size(0)
+                .trackTotalHits(true)
+                .aggregation(AggregationBuilders.max("lastIndexed").field("createdAt"))
+                .aggregation(AggregationBuilders.sum("documentIds").field("documentId"));
+
+        SearchResponse response = openSearchClient.search(
+                new SearchRequest(indexName).source(searchSourceBuilder), RequestOptions.DEFAULT);
+
+        Max lastIndexed = response.getAggregations().get("lastIndexed");
+        Sum documentIds = response.getAggregations().get("documentIds");
+        long chunks = response.getHits().getTotalHits() == null ? 0 : response.getHits().getTotalHits().value;
+        if (chunks == 0) {
+            return "empty";
         }
+        return chunks + ":" + (long) lastIndexed.getValue() + ":" + (long) documentIds.getValue();
+    }
 
-        if (chatHistory != null && !chatHistory.isEmpty()) {
-            promptBuilder.append("\nChat History:\n");
-            for (Map<String, String> msg : chatHistory) {
-                promptBuilder.append(String.format("%s: %s\n", msg.get("role"), msg.get("content")));
-            }
-        }
+    /**
+     * Builds the k-NN query as SMILE so the query vector is written as binary floats.
+     */
+    private XContentBuilder knnQuery(float[] queryEmbedding, Long userId) throws IOException {
+        return XContentFactory.smileBuilder()
+                .startObject()
+                .startObject("knn")
+                .startObject("embedding")
+                .array("vector", queryEmbedding)
+                .field("k", topK)
+                .startObject("filter")
+                .startObject("term")
+                .field("userId", userId)
+                .endObject()
+                .endObject()
+                .endObject()
+                .endObject()
+                .endObject();
+    }
 
-        promptBuilder.append("\nQuestion: ").append(query).append("\n\n");
-        promptBuilder.append("Answer: ");
+    public String generateAnswer(String query, List<String> contexts, List<Map<String, String>> chatHistory,
+                                 String conversationSummary) throws IOException {
+        log.info("Generating answer for query with {} contexts", contexts.size());
+        return ollamaService.generateResponse(buildPrompt(query, contexts, chatHistory, conversationSummary));
+    }
 
-        String prompt = promptBuilder.toString();
-        log.debug("Generated prompt length: {}", prompt.length());
+    /**
+     * Same as {@link #generateAnswer}, but hands each token to {@code handler} as Ollama produces it.
+     *
+     * @return the full answer
+     */
+    public String streamAnswer(String query, List<String> contexts, List<Map<String, String>> chatHistory,
+                               String conversationSummary, OllamaClient.TokenHandler handler) throws IOException {
+        log.info("Streaming answer for query with {} contexts", contexts.size());
+        return ollamaService.streamResponse(buildPrompt(query, contexts, chatHistory, conversationSummary), handler);
+    }
 
-        return ollamaService.generateResponse(prompt);
+    private String buildPrompt(String query, List<String> contexts, List<Map<String, String>> chatHistory,
+                               String conversationSummary) {
+        PromptBuilder.Prompt prompt = new PromptBuilder(promptMaxTokens, promptContextShare)
+                .system(SYSTEM_PROMPT)
+                .contexts(contexts)
+                .summary(conversationSummary)
+                .history(chatHistory)
+                .question(query)
+                .build();
+
+        log.debug("Built prompt of ~{} tokens (system {}, context {}, history {}, question {}); "
+                        + "dropped {} contexts (truncated: {}), {} messages (truncated: {})",
+                prompt.totalTokens(), prompt.systemTokens(), prompt.contextTokens(), prompt.historyTokens(),
+                prompt.questionTokens(), prompt.droppedContexts(), prompt.contextTruncated(),
+                prompt.droppedMessages(), prompt.historyTruncated());
+        meterRegistry.summary("rag.prompt.tokens", "section", "context").record(prompt.contextTokens());
+        meterRegistry.summary("rag.prompt.tokens", "section", "history").record(prompt.historyTokens());
+        meterRegistry.summary("rag.prompt.tokens", "section", "total").record(prompt.totalTokens());
+
+        return prompt.text();
     }
 }
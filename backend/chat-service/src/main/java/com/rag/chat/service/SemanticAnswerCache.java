@@ -0,0 +1,238 @@
+package com.rag.chat.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Caches generated answers by query embedding, so a question that is worded differently but
+ * means the same thing is answered without retrieval or generation.
+ * <p>
+ * Entries are scoped to a user and a fingerprint of that user's indexed document set; once the
+ * documents change, the fingerprint changes and old entries are no longer matched (they age out
+ * through LRU/TTL eviction). A lookup hits when the cosine similarity between the query and a
+ * cached query is at least {@code rag.answer-cache.similarity-threshold} and both contain the same
+ * numbers: embeddings place "revenue in 2022" and "revenue in 2023" almost on top of each other,
+ * so numbers are compared literally. Only questions that stand on their own belong here; callers
+ * must not use the cache for follow-ups whose meaning depends on the conversation.
+ * <p>
+ * The similarity of the closest candidate is recorded for every lookup under
+ * {@code rag.answer.cache.similarity}, so the threshold can be checked against real traffic.
+ */
+@Slf4j
+@Component
+public class SemanticAnswerCache {
+
+    private static final Pattern NUMBER = Pattern.compile("\\d+(?:[.,]\\d+)*");
+
+    private final boolean enabled;
+    private final double similarityThreshold;
+    private final int maxEntries;
+    private final long ttlNanos;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Timer savedGeneration;
+    private final DistributionSummary hitSimilarity;
+    private final DistributionSummary missSimilarity;
+
+    // Global LRU order over all entries; scopes index the same entries for lookup. Guarded by this.
+    private final LinkedHashMap<Long, Entry> lru = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Map<Long, Entry>> scopes = new HashMap<>();
+    private final AtomicLong nextId = new AtomicLong();
+
+    public SemanticAnswerCache(
+            @Value("${rag.answer-cache.enabled}") boolean enabled,
+            @Value("${rag.answer-cache.similarity-threshold}") double similarityThreshold,
+            @Value("${rag.answer-cache.max-entries}") int maxEntries,
+            @Value("${rag.answer-cache.ttl-seconds}") long ttlSeconds,
+            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.similarityThreshold = similarityThreshold;
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+
+        this.hits = Counter.builder("rag.answer.cache.requests").tag("result", "hit")
+                .description("Answer cache lookups").register(meterRegistry);
+        this.misses = Counter.builder("rag.answer.cache.requests").tag("result", "miss")
+                .description("Answer cache lookups").register(meterRegistry);
+        this.savedGeneration = Timer.builder("rag.answer.cache.saved.generation")
+                .description("Generation time of the original answer, recorded on each cache hit")
+                .register(meterRegistry);
+        this.hitSimilarity = DistributionSummary.builder("rag.answer.cache.similarity").tag("result", "hit")
+                .description("Cosine similarity of the closest cached question")
+                .serviceLevelObjectives(0.8, 0.85, 0.9, 0.93, 0.95, 0.97, 0.99)
+                .register(meterRegistry);
+        this.missSimilarity = DistributionSummary.builder("rag.answer.cache.similarity").tag("result", "miss")
+                .description("Cosine similarity of the closest cached question")
+                .serviceLevelObjectives(0.8, 0.85, 0.9, 0.93, 0.95, 0.97, 0.99)
+                .register(meterRegistry);
+        meterRegistry.gauge("rag.answer.cache.size", this, SemanticAnswerCache::size);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the cached answer closest to {@code queryEmbedding} within the scope, or null.
+     */
+    public CachedAnswer lookup(Long userId, String documentSetFingerprint, String query, float[] queryEmbedding) {
+        if (!enabled) {
+            return null;
+        }
+
+        float[] normalized = normalize(queryEmbedding);
+        List<String> numbers = numbers(query);
+        String scopeKey = scopeKey(userId, documentSetFingerprint);
+        long now = System.nanoTime();
+
+        Entry best = null;
+        double bestSimilarity = -1;
+
+        synchronized (this) {
+            Map<Long, Entry> scope = scopes.get(scopeKey);
+            if (scope != null) {
+                Iterator<Entry> entries = scope.values().iterator();
+                while (entries.hasNext()) {
+                    Entry entry = entries.next();
+                    if (now - entry.createdAtNanos > ttlNanos) {
+                        entries.remove();
+                        lru.remove(entry.id);
+                        continue;
+                    }
+                    if (entry.embedding.length != normalized.length || !entry.numbers.equals(numbers)) {
+                        continue;
+                    }
+                    double similarity = dot(entry.embedding, normalized);
+                    if (similarity > bestSimilarity) {
+                        bestSimilarity = similarity;
+                        best = entry;
+                    }
+                }
+                if (scope.isEmpty()) {
+                    scopes.remove(scopeKey);
+                }
+            }
+            if (best != null && bestSimilarity >= similarityThreshold) {
+                // Touch the entry so it moves to the most recently used end
+                lru.get(best.id);
+            }
+        }
+
+        if (best == null || bestSimilarity < similarityThreshold) {
+            if (best != null) {
+                missSimilarity.record(bestSimilarity);
+            }
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        hitSimilarity.record(bestSimilarity);
+        savedGeneration.record(best.answer.generationNanos(), TimeUnit.NANOSECONDS);
+        log.debug("Answer cache hit for user {} (similarity {})", userId, String.format("%.4f", bestSimilarity));
+        return best.answer;
+    }
+
+    public void put(Long userId, String documentSetFingerprint, String query, float[] queryEmbedding, CachedAnswer answer) {
+        if (!enabled) {
+            return;
+        }
+
+        String scopeKey = scopeKey(userId, documentSetFingerprint);
+        Entry entry = new Entry(nextId.incrementAndGet(), scopeKey, normalize(queryEmbedding), numbers(query), answer,
+                System.nanoTime());
+
+        synchronized (this) {
+            lru.put(entry.id, entry);
+            scopes.computeIfAbsent(scopeKey, key -> new LinkedHashMap<>()).put(entry.id, entry);
+
+            Iterator<Entry> eldest = lru.values().iterator();
+            while (lru.size() > maxEntries && eldest.hasNext()) {
+                Entry evicted = eldest.next();
+                eldest.remove();
+                Map<Long, Entry> scope = scopes.get(evicted.scopeKey);
+                if (scope != null) {
+                    scope.remove(evicted.id);
+                    if (scope.isEmpty()) {
+                        scopes.remove(evicted.scopeKey);
+                    }
+                }
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return lru.size();
+    }
+
+    private static String scopeKey(Long userId, String documentSetFingerprint) {
+        return userId + "/" + documentSetFingerprint;
+    }
+
+    /** The numbers in {@code query}, in order, with thousands separators removed. */
+    static List<String> numbers(String query) {
+        List<String> numbers = new ArrayList<>();
+        Matcher matcher = NUMBER.matcher(query);
+        while (matcher.find()) {
+            numbers.add(matcher.group().replace(",", ""));
+        }
+        return numbers;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        norm = Math.sqrt(norm);
+
+        float[] normalized = new float[vector.length];
+        if (norm == 0) {
+            return normalized;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * A generated answer together with the retrieval results it was based on.
+     */
+    public record CachedAnswer(String answer, List<String> contexts, List<String> sources, long generationNanos) {
+
+        public CachedAnswer {
+            contexts = List.copyOf(contexts);
+            sources = List.copyOf(sources);
+        }
+    }
+
+    private record Entry(long id, String scopeKey, float[] embedding, List<String> numbers, CachedAnswer answer,
+                         long createdAtNanos) {
+    }
+}
@@ -0,0 +1,274 @@
+package com.rag.chat.service;
+
+import com.rag.chat.controller.ChatController;
+import com.rag.chat.dto.ChatRequest;
+import com.rag.chat.entity.ChatMessage;
+import com.rag.chat.entity.ChatSessionSummary;
+import com.rag.chat.repository.ChatMessageRepository;
+import com.rag.ollama.LlmOverloadedException;
+import com.rag.ollama.OllamaClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+@SuppressWarnings("unchecked")
+class ChatServiceTest {
+
+    private static final long USER_ID = 7L;
+    private static final String SESSION_ID = "session";
+    private static final int MAX_HISTORY = 10;
+    private static final Pattern EVENT = Pattern.compile("^event:(\\w+)$", Pattern.MULTILINE);
+
+    private final ChatMessageRepository messageRepository = mock(ChatMessageRepository.class);
+    private final RagService ragService = mock(RagService.class);
+    private final SemanticAnswerCache answerCache = mock(SemanticAnswerCache.class);
+    private final ConversationSummaryService summaryService = mock(ConversationSummaryService.class);
+    private ChatService chatService;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        chatService = new ChatService(messageRepository, ragService, answerCache, summaryService, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(chatService, "maxHistory", MAX_HISTORY);
+        ReflectionTestUtils.setField(chatService, "streamWorkerThreads", 2);
+        ReflectionTestUtils.setField(chatService, "streamQueueCapacity", 2);
+        ReflectionTestUtils.setField(chatService, "streamTimeoutMs", 5_000L);
+        ReflectionTestUtils.setField(chatService, "ioThreads", 4);
+        chatService.start();
+        mockMvc = MockMvcBuilders.standaloneSetup(new ChatController(chatService)).build();
+
+        when(ragService.embedQuery(anyString())).thenReturn(new float[]{1f, 0f});
+        when(ragService.retrieveContext(any(float[].class), eq(USER_ID))).thenReturn(Map.of(
+                "contexts", List.of("Backups are kept for a year."),
+                "sources", List.of("policy.pdf", "policy.pdf")));
+        when(ragService.generateAnswer(anyString(), any(), any(), any())).thenReturn("For a year.");
+        when(messageRepository.save(any(ChatMessage.class))).thenAnswer(invocation -> {
+            ChatMessage message = invocation.getArgument(0);
+            message.setId(message.getType() == ChatMessage.MessageType.USER ? 100L : 101L);
+            return message;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        chatService.stop();
+    }
+
+    @Test
+    void replacesMessagesCoveredByTheSummaryWithTheSummary() throws Exception {
+        // The history window already includes the question being saved (id 100)
+        List<ChatMessage> window = new ArrayList<>();
+        window.add(message(100L));
+        window.addAll(messages(10, 1));
+        whenHistoryIs(window);
+        when(summaryService.findSummary(USER_ID, SESSION_ID)).thenReturn(Optional.of(ChatSessionSummary.builder()
+                .userId(USER_ID)
+                .sessionId(SESSION_ID)
+                .summary("They discussed retention.")
+                .summarizedUntilMessageId(6L)
+                .build()));
+
+        chatService.chat(new ChatRequest("How long are backups kept?", SESSION_ID), USER_ID);
+
+        ArgumentCaptor<List<Map<String, String>>> history = ArgumentCaptor.forClass(List.class);
+        verify(ragService).generateAnswer(eq("How long are backups kept?"), eq(List.of("Backups are kept for a year.")),
+                history.capture(), eq("They discussed retention."));
+        assertThat(history.getValue()).extracting(m -> m.get("content"))
+                .containsExactly("message 7", "message 8", "message 9", "message 10");
+        // Four unsummarized messages plus this turn's question and answer
+        verify(summaryService).summarizeIfNeeded(USER_ID, SESSION_ID, 6);
+        // A follow-up is never answered from the cache
+        verify(answerCache, never()).lookup(anyLong(), any(), anyString(), any());
+    }
+
+    @Test
+    void replaysTheNewestWindowWhenThereIsNoSummary() throws Exception {
+        // The window missed the question being saved, so it holds one message too many
+        whenHistoryIs(messages(11, 1));
+        when(summaryService.findSummary(USER_ID, SESSION_ID)).thenReturn(Optional.empty());
+
+        chatService.chat(new ChatRequest("And archives?", SESSION_ID), USER_ID);
+
+        ArgumentCaptor<List<Map<String, String>>> history = ArgumentCaptor.forClass(List.class);
+        verify(ragService).generateAnswer(eq("And archives?"), any(), history.capture(), isNull());
+        assertThat(history.getValue()).hasSize(MAX_HISTORY);
+        assertThat(history.getValue().get(0)).containsEntry("content", "message 2").containsEntry("role", "ASSISTANT");
+        assertThat(history.getValue().get(MAX_HISTORY - 1)).containsEntry("content", "message 11");
+        verify(summaryService).summarizeIfNeeded(USER_ID, SESSION_ID, 13);
+    }
+
+    @Test
+    void streamsSourcesThenEachTokenThenDone() throws Exception {
+        whenHistoryIs(List.of());
+        when(ragService.streamAnswer(anyString(), any(), any(), any(), any())).thenAnswer(invocation -> {
+            OllamaClient.TokenHandler handler = invocation.getArgument(4);
+            handler.onToken("For");
+            handler.onToken(" a year.");
+            return "For a year.";
+        });
+
+        MvcResult result = stream("How long are backups kept?");
+        String body = awaitBody(result);
+
+        assertThat(events(body)).containsExactly("sources", "token", "token", "done");
+        // Duplicate sources from several chunks of one document are sent once
+        assertThat(body).contains("\"sources\":[\"policy.pdf\"]", "\"token\":\"For\"", "\"token\":\" a year.\"");
+        ArgumentCaptor<ChatMessage> saved = ArgumentCaptor.forClass(ChatMessage.class);
+        verify(messageRepository, times(2)).save(saved.capture());
+        assertThat(saved.getAllValues().get(1).getContent()).isEqualTo("For a year.");
+        verify(summaryService).summarizeIfNeeded(eq(USER_ID), eq(SESSION_ID), eq(2));
+    }
+
+    @Test
+    void endsWithAnErrorEventWhenGenerationFails() throws Exception {
+        whenHistoryIs(List.of());
+        when(ragService.streamAnswer(anyString(), any(), any(), any(), any())).thenAnswer(invocation -> {
+            OllamaClient.TokenHandler handler = invocation.getArgument(4);
+            handler.onToken("For");
+            throw new IOException("Ollama error: model runner crashed");
+        });
+
+        String body = awaitBody(stream("How long are backups kept?"));
+
+        assertThat(events(body)).containsExactly("sources", "token", "error");
+        // The cause stays in the log; the client gets a generic message
+        assertThat(body).contains("Failed to process chat request").doesNotContain("model runner");
+        verify(messageRepository, times(1)).save(any(ChatMessage.class));
+        verify(summaryService, never()).summarizeIfNeeded(anyLong(), anyString(), any(int.class));
+    }
+
+    @Test
+    void passesAnOverloadOnToTheClient() throws Exception {
+        whenHistoryIs(List.of());
+        when(ragService.streamAnswer(anyString(), any(), any(), any(), any()))
+                .thenThrow(new LlmOverloadedException("LLM queue is full"));
+
+        String body = awaitBody(stream("How long are backups kept?"));
+
+        assertThat(events(body)).containsExactly("sources", "error");
+        assertThat(body).contains("\"error\":\"LLM queue is full\"");
+    }
+
+    @Test
+    void stopsGeneratingOnceTheClientDisconnects() throws Exception {
+        whenHistoryIs(List.of());
+        CountDownLatch firstTokenSent = new CountDownLatch(1);
+        CountDownLatch disconnected = new CountDownLatch(1);
+        CountDownLatch generationEnded = new CountDownLatch(1);
+        AtomicReference<Exception> handlerFailure = new AtomicReference<>();
+        when(ragService.streamAnswer(anyString(), any(), any(), any(), any())).thenAnswer(invocation -> {
+            OllamaClient.TokenHandler handler = invocation.getArgument(4);
+            try {
+                handler.onToken("For");
+                firstTokenSent.countDown();
+                assertThat(disconnected.await(5, TimeUnit.SECONDS)).isTrue();
+                handler.onToken(" a year.");
+                return "For a year.";
+            } catch (IOException e) {
+                // OllamaClient closes the call here, which stops generation on the Ollama side
+                handlerFailure.set(e);
+                throw e;
+            } finally {
+                generationEnded.countDown();
+            }
+        });
+
+        MvcResult result = stream("How long are backups kept?");
+        assertThat(firstTokenSent.await(5, TimeUnit.SECONDS)).isTrue();
+        MockAsyncContext asyncContext = (MockAsyncContext) result.getRequest().getAsyncContext();
+        for (AsyncListener listener : asyncContext.getListeners()) {
+            listener.onError(new AsyncEvent(asyncContext, new IOException("Broken pipe")));
+        }
+        disconnected.countDown();
+
+        assertThat(generationEnded.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(handlerFailure.get()).isInstanceOf(IOException.class).hasMessage("Client disconnected");
+        Thread.sleep(100);
+        assertThat(events(result.getResponse().getContentAsString())).containsExactly("sources", "token");
+        // Neither the partial answer nor a summary fold is persisted for an abandoned turn
+        verify(messageRepository, times(1)).save(any(ChatMessage.class));
+        verify(summaryService, never()).summarizeIfNeeded(anyLong(), anyString(), any(int.class));
+    }
+
+    private MvcResult stream(String message) throws Exception {
+        return mockMvc.perform(post("/api/chat/stream")
+                        .header("X-User-Id", USER_ID)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"message\":\"" + message + "\",\"sessionId\":\"" + SESSION_ID + "\"}"))
+                .andReturn();
+    }
+
+    /** Waits for the emitter to complete and returns the event stream written so far. */
+    private static String awaitBody(MvcResult result) throws Exception {
+        result.getAsyncResult(5_000);
+        return result.getResponse().getContentAsString();
+    }
+
+    private static List<String> events(String body) {
+        List<String> names = new ArrayList<>();
+        Matcher matcher = EVENT.matcher(body);
+        while (matcher.find()) {
+            names.add(matcher.group(1));
+        }
+        return names;
+    }
+
+    private void whenHistoryIs(List<ChatMessage> newestFirst) {
+        when(messageRepository.findByUserIdAndSessionIdOrderByCreatedAtDescIdDesc(eq(USER_ID), eq(SESSION_ID), any(Pageable.class)))
+                .thenReturn(newestFirst);
+    }
+
+    /** Messages with ids {@code from} down to {@code to}, newest first as the history query returns them. */
+    private static List<ChatMessage> messages(long from, long to) {
+        List<ChatMessage> messages = new ArrayList<>();
+        for (long id = from; id >= to; id--) {
+            messages.add(message(id));
+        }
+        return messages;
+    }
+
+    private static ChatMessage message(long id) {
+        return ChatMessage.builder()
+                .id(id)
+                .userId(USER_ID)
+                .sessionId(SESSION_ID)
+                .type(id % 2 == 1 ? ChatMessage.MessageType.USER : ChatMessage.MessageType.ASSISTANT)
+                .content("message " + id)
+                .build();
+    }
+}
@@ -0,0 +1,196 @@
+package com.rag.chat.service;
+
+import com.rag.chat.entity.ChatMessage;
+import com.rag.chat.entity.ChatSessionSummary;
+import com.rag.chat.repository.ChatMessageRepository;
+import com.rag.chat.repository.ChatSessionSummaryRepository;
+import com.rag.ollama.LlmScheduler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs folds against real JPA repositories (H2), so the summary's {@code @Version} column decides
+ * which of two concurrent folds wins. Not transactional: each fold commits on its own, as in the
+ * service.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ConversationSummaryServiceTest {
+
+    private static final long USER_ID = 7L;
+    private static final String SESSION_ID = "session";
+    private static final int TRIGGER_MESSAGES = 10;
+    private static final int RECENT_MESSAGES = 4;
+
+    @Autowired
+    private ChatMessageRepository messageRepository;
+
+    @Autowired
+    private ChatSessionSummaryRepository summaryRepository;
+
+    private final List<ConversationSummaryService> services = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        services.forEach(ConversationSummaryService::stop);
+        summaryRepository.deleteAll();
+        messageRepository.deleteAll();
+    }
+
+    @Test
+    void foldsAllButTheRecentMessagesIntoTheSummary() throws Exception {
+        List<ChatMessage> messages = saveMessages(12);
+        OllamaService ollama = mock(OllamaService.class);
+        when(ollama.generateResponse(anyString(), eq(LlmScheduler.Priority.BACKGROUND))).thenReturn(" They discussed retention. ");
+        ConversationSummaryService service = service(ollama);
+
+        service.summarizeIfNeeded(USER_ID, SESSION_ID, 12);
+
+        ChatSessionSummary summary = awaitSummary(null);
+        assertThat(summary.getSummary()).isEqualTo("They discussed retention.");
+        assertThat(summary.getSummarizedUntilMessageId()).isEqualTo(messages.get(7).getId());
+        assertThat(service.findSummary(USER_ID, SESSION_ID)).get()
+                .extracting(ChatSessionSummary::getSummarizedUntilMessageId)
+                .isEqualTo(messages.get(7).getId());
+    }
+
+    @Test
+    void foldsOnlyMessagesNewerThanTheSummary() throws Exception {
+        List<ChatMessage> messages = saveMessages(16);
+        summaryRepository.save(summary("Earlier summary.", messages.get(5).getId()));
+        OllamaService ollama = mock(OllamaService.class);
+        List<String> prompts = new ArrayList<>();
+        when(ollama.generateResponse(anyString(), eq(LlmScheduler.Priority.BACKGROUND))).thenAnswer(invocation -> {
+            prompts.add(invocation.getArgument(0));
+            return "Updated summary.";
+        });
+
+        service(ollama).summarizeIfNeeded(USER_ID, SESSION_ID, 10);
+
+        ChatSessionSummary summary = awaitSummary("Earlier summary.");
+        assertThat(summary.getSummarizedUntilMessageId()).isEqualTo(messages.get(11).getId());
+        assertThat(prompts).singleElement().satisfies(prompt -> assertThat(prompt)
+                .contains("Current summary:\nEarlier summary.")
+                .contains("message 6\n", "message 11\n")
+                .doesNotContain("message 5\n", "message 12\n"));
+    }
+
+    @Test
+    void waitsForTheTrigger() throws Exception {
+        saveMessages(TRIGGER_MESSAGES - 1);
+        OllamaService ollama = mock(OllamaService.class);
+
+        service(ollama).summarizeIfNeeded(USER_ID, SESSION_ID, TRIGGER_MESSAGES - 1);
+
+        Thread.sleep(200);
+        verify(ollama, times(0)).generateResponse(anyString(), eq(LlmScheduler.Priority.BACKGROUND));
+        assertThat(summaryRepository.findByUserIdAndSessionId(USER_ID, SESSION_ID)).isEmpty();
+    }
+
+    @Test
+    void aFoldOfAStaleSummaryLosesToTheConcurrentOne() throws Exception {
+        List<ChatMessage> messages = saveMessages(14);
+        summaryRepository.save(summary("Base summary.", 0L));
+
+        // Replica A reads the summary, then stalls in the LLM while replica B folds and saves
+        CountDownLatch aGenerating = new CountDownLatch(1);
+        CountDownLatch bSaved = new CountDownLatch(1);
+        OllamaService slowOllama = mock(OllamaService.class);
+        when(slowOllama.generateResponse(anyString(), eq(LlmScheduler.Priority.BACKGROUND))).thenAnswer(invocation -> {
+            aGenerating.countDown();
+            assertThat(bSaved.await(5, TimeUnit.SECONDS)).isTrue();
+            return "Summary from A.";
+        });
+        OllamaService fastOllama = mock(OllamaService.class);
+        when(fastOllama.generateResponse(anyString(), eq(LlmScheduler.Priority.BACKGROUND))).thenReturn("Summary from B.");
+        ConversationSummaryService replicaA = service(slowOllama);
+        ConversationSummaryService replicaB = service(fastOllama);
+
+        replicaA.summarizeIfNeeded(USER_ID, SESSION_ID, 14);
+        assertThat(aGenerating.await(5, TimeUnit.SECONDS)).isTrue();
+        replicaB.summarizeIfNeeded(USER_ID, SESSION_ID, 14);
+        ChatSessionSummary fromB = awaitSummary("Base summary.");
+        bSaved.countDown();
+
+        // A's save carries the version it read and is rejected instead of overwriting B's fold
+        verify(slowOllama, timeout(5_000)).generateResponse(anyString(), eq(LlmScheduler.Priority.BACKGROUND));
+        Thread.sleep(300);
+        ChatSessionSummary stored = summaryRepository.findByUserIdAndSessionId(USER_ID, SESSION_ID).orElseThrow();
+        assertThat(stored.getSummary()).isEqualTo("Summary from B.");
+        assertThat(stored.getVersion()).isEqualTo(fromB.getVersion());
+        assertThat(stored.getSummarizedUntilMessageId()).isEqualTo(messages.get(9).getId());
+
+        // The session is not left marked as pending: a later turn can fold again
+        when(slowOllama.generateResponse(anyString(), eq(LlmScheduler.Priority.BACKGROUND))).thenReturn("Summary from A, retried.");
+        saveMessages(6);
+        replicaA.summarizeIfNeeded(USER_ID, SESSION_ID, TRIGGER_MESSAGES);
+        assertThat(awaitSummary("Summary from B.").getSummary()).isEqualTo("Summary from A, retried.");
+    }
+
+    private ConversationSummaryService service(OllamaService ollama) {
+        ConversationSummaryService service = new ConversationSummaryService(messageRepository, summaryRepository, ollama);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "triggerMessages", TRIGGER_MESSAGES);
+        ReflectionTestUtils.setField(service, "recentMessages", RECENT_MESSAGES);
+        ReflectionTestUtils.setField(service, "maxSummaryTokens", 400);
+        service.start();
+        services.add(service);
+        return service;
+    }
+
+    /** Saves alternating user and assistant messages numbered after the ones already stored. */
+    private List<ChatMessage> saveMessages(int count) {
+        int offset = (int) messageRepository.count();
+        List<ChatMessage> messages = new ArrayList<>();
+        for (int i = offset; i < offset + count; i++) {
+            messages.add(messageRepository.save(ChatMessage.builder()
+                    .userId(USER_ID)
+                    .sessionId(SESSION_ID)
+                    .type(i % 2 == 0 ? ChatMessage.MessageType.USER : ChatMessage.MessageType.ASSISTANT)
+                    .content("message " + i)
+                    .build()));
+        }
+        return messages;
+    }
+
+    private static ChatSessionSummary summary(String text, long summarizedUntil) {
+        return ChatSessionSummary.builder()
+                .userId(USER_ID)
+                .sessionId(SESSION_ID)
+                .summary(text)
+                .summarizedUntilMessageId(summarizedUntil)
+                .build();
+    }
+
+    /** Waits until the stored summary text differs from {@code previous} (null: until one exists). */
+    private ChatSessionSummary awaitSummary(String previous) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            ChatSessionSummary summary = summaryRepository.findByUserIdAndSessionId(USER_ID, SESSION_ID).orElse(null);
+            if (summary != null && !summary.getSummary().equals(previous)) {
+                return summary;
+            }
+            Thread.sleep(20);
+        }
+        throw new AssertionError("Summary was not updated");
+    }
+}
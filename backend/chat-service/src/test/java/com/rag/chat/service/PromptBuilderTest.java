@@ -0,0 +1,151 @@
+package com.rag.chat.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PromptBuilderTest {
+
+    private static final String SYSTEM = "Answer from the context.\n\n";
+
+    @Test
+    void keepsEverythingThatFits() {
+        PromptBuilder.Prompt prompt = new PromptBuilder(4_000, 0.6)
+                .system(SYSTEM)
+                .contexts(List.of("First chunk.", "Second chunk."))
+                .history(messages(2))
+                .summary("They asked about retention.")
+                .question("What about backups?")
+                .build();
+
+        assertThat(prompt.text()).isEqualTo(SYSTEM
+                + "Context:\n[1] First chunk.\n\n[2] Second chunk.\n\n"
+                + "\nConversation Summary:\nThey asked about retention.\n"
+                + "\nChat History:\nUSER: message 0 " + filler() + "\nASSISTANT: message 1 " + filler() + "\n"
+                + "\nQuestion: What about backups?\n\nAnswer: ");
+        assertThat(prompt.droppedContexts()).isZero();
+        assertThat(prompt.droppedMessages()).isZero();
+        assertThat(prompt.contextTruncated()).isFalse();
+        assertThat(prompt.historyTruncated()).isFalse();
+    }
+
+    @Test
+    void dropsTheOldestHistoryFirst() {
+        // About 30 tokens per message, room for a few of the twenty
+        PromptBuilder.Prompt prompt = new PromptBuilder(200, 0.5)
+                .system(SYSTEM)
+                .history(messages(20))
+                .question("And then?")
+                .build();
+
+        assertThat(prompt.droppedMessages()).isBetween(10, 19);
+        assertThat(prompt.text()).contains("message 19 ").doesNotContain("message 0 ");
+        int kept = 20 - prompt.droppedMessages();
+        // The kept messages are the newest ones, still in chronological order
+        int previous = -1;
+        for (int i = 20 - kept; i < 20; i++) {
+            int position = prompt.text().indexOf("message " + i + " ");
+            assertThat(position).as("message %d", i).isGreaterThan(previous);
+            previous = position;
+        }
+        assertWithinBudget(prompt, 200);
+    }
+
+    @Test
+    void cutsContextChunksAtTheBudgetInRankOrder() {
+        List<String> contexts = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            // About 90 tokens each
+            contexts.add(("chunk" + i + " ").repeat(50).strip());
+        }
+
+        PromptBuilder.Prompt prompt = new PromptBuilder(450, 0.6)
+                .system(SYSTEM)
+                .contexts(contexts)
+                .question("What do the chunks say?")
+                .build();
+
+        // With no history, context gets the whole remaining budget: four whole chunks and part of
+        // the fifth; the five lowest-ranked chunks are dropped
+        assertThat(prompt.text()).contains("[1] " + contexts.get(0) + "\n", "[4] " + contexts.get(3) + "\n");
+        assertThat(prompt.text()).contains("[5] chunk4").doesNotContain(contexts.get(4)).doesNotContain("chunk5");
+        assertThat(prompt.text()).contains("chunk4 ...\n");
+        assertThat(prompt.contextTruncated()).isTrue();
+        assertThat(prompt.droppedContexts()).isEqualTo(5);
+        assertWithinBudget(prompt, 450);
+    }
+
+    @Test
+    void givesContextTheHistoryBudgetItDoesNotNeed() {
+        List<String> contexts = List.of("a ".repeat(150).strip(), "b ".repeat(150).strip());
+
+        PromptBuilder.Prompt prompt = new PromptBuilder(400, 0.5)
+                .contexts(contexts)
+                .history(messages(1))
+                .question("?")
+                .build();
+
+        // Context's half alone would not hold both chunks
+        assertThat(prompt.droppedContexts()).isZero();
+        assertThat(prompt.droppedMessages()).isZero();
+        assertWithinBudget(prompt, 400);
+    }
+
+    @Test
+    void stillBuildsAPromptForAQuestionLargerThanTheBudget() {
+        String question = "Why is this so slow? ".repeat(500).strip();
+
+        PromptBuilder.Prompt prompt = new PromptBuilder(1_000, 0.6)
+                .system(SYSTEM)
+                .contexts(List.of("The cache is cold after a restart."))
+                .history(messages(2))
+                .question(question)
+                .build();
+
+        assertThat(prompt.text()).startsWith(SYSTEM).endsWith("Answer: ");
+        assertThat(prompt.text()).contains("\nQuestion: Why is this so slow?").doesNotContain(question);
+        assertThat(prompt.text()).contains(" ...\n\nAnswer: ");
+        // Half of the budget stays available for context and history
+        assertThat(prompt.text()).contains("[1] The cache is cold after a restart.");
+        assertThat(prompt.droppedMessages()).isZero();
+        assertWithinBudget(prompt, 1_000);
+    }
+
+    @Test
+    void truncatesAtAWordBoundaryWithoutSplittingSurrogatePairs() {
+        assertThat(PromptBuilder.truncate("short", 10)).isEqualTo("short");
+        assertThat(PromptBuilder.truncate("alpha beta gamma delta", 3)).isEqualTo("alpha beta ...");
+        String truncated = PromptBuilder.truncate("😀".repeat(10), 3);
+        assertThat(Character.isHighSurrogate(truncated.charAt(truncated.length() - " ...".length() - 1))).isFalse();
+    }
+
+    @Test
+    void estimatesFourAsciiCharactersOrOneOtherCharacterPerToken() {
+        assertThat(PromptBuilder.estimateTokens("")).isZero();
+        assertThat(PromptBuilder.estimateTokens("abcd")).isEqualTo(1);
+        assertThat(PromptBuilder.estimateTokens("abcde")).isEqualTo(2);
+        assertThat(PromptBuilder.estimateTokens("보안")).isEqualTo(2);
+    }
+
+    private static void assertWithinBudget(PromptBuilder.Prompt prompt, int maxTokens) {
+        assertThat(prompt.totalTokens()).isLessThanOrEqualTo(maxTokens);
+        assertThat(PromptBuilder.estimateTokens(prompt.text())).isLessThanOrEqualTo(prompt.totalTokens());
+    }
+
+    /** Alternating user and assistant messages of about 30 tokens, oldest first. */
+    private static List<Map<String, String>> messages(int count) {
+        List<Map<String, String>> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            messages.add(Map.of("role", i % 2 == 0 ? "USER" : "ASSISTANT", "content", "message " + i + " " + filler()));
+        }
+        return messages;
+    }
+
+    private static String filler() {
+        return "lorem ipsum dolor sit amet ".repeat(4).strip();
+    }
+}
@@ -0,0 +1,74 @@
+package com.rag.chat.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SemanticAnswerCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SemanticAnswerCache cache = new SemanticAnswerCache(true, 0.95, 100, 3600, meterRegistry);
+
+    @Test
+    void hitsOnASimilarQuestionInTheSameScope() {
+        cache.put(1L, "docs-a", "What is the refund period?", new float[]{1, 0, 0}, answer("30 days"));
+
+        assertThat(cache.lookup(1L, "docs-a", "How long is the refund period", new float[]{0.99f, 0.1f, 0}))
+                .extracting(SemanticAnswerCache.CachedAnswer::answer).isEqualTo("30 days");
+        assertThat(meterRegistry.get("rag.answer.cache.similarity").tag("result", "hit").summary().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void missesBelowTheThresholdAndRecordsTheNearMiss() {
+        cache.put(1L, "docs-a", "What is the refund period?", new float[]{1, 0, 0}, answer("30 days"));
+
+        assertThat(cache.lookup(1L, "docs-a", "Who signed the contract?", new float[]{0.9f, 0.44f, 0})).isNull();
+        assertThat(meterRegistry.get("rag.answer.cache.similarity").tag("result", "miss").summary().max())
+                .isBetween(0.89, 0.95);
+    }
+
+    @Test
+    void missesInAnotherScope() {
+        cache.put(1L, "docs-a", "What is the refund period?", new float[]{1, 0, 0}, answer("30 days"));
+
+        assertThat(cache.lookup(2L, "docs-a", "What is the refund period?", new float[]{1, 0, 0})).isNull();
+        assertThat(cache.lookup(1L, "docs-b", "What is the refund period?", new float[]{1, 0, 0})).isNull();
+    }
+
+    @Test
+    void neverMatchesQuestionsWithDifferentNumbers() {
+        cache.put(1L, "docs-a", "What was the revenue in 2022?", new float[]{1, 0, 0}, answer("10M"));
+
+        // Identical embedding, different year
+        assertThat(cache.lookup(1L, "docs-a", "What was the revenue in 2023?", new float[]{1, 0, 0})).isNull();
+        assertThat(cache.lookup(1L, "docs-a", "Revenue for 2022?", new float[]{1, 0, 0})).isNotNull();
+    }
+
+    @Test
+    void extractsNumbersInOrder() {
+        assertThat(SemanticAnswerCache.numbers("Compare 1,200 units in Q3 2023 with 3.5%"))
+                .containsExactly("1200", "3", "2023", "3.5");
+        assertThat(SemanticAnswerCache.numbers("no digits here")).isEmpty();
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedEntry() {
+        SemanticAnswerCache small = new SemanticAnswerCache(true, 0.95, 2, 3600, meterRegistry);
+        small.put(1L, "docs", "a", new float[]{1, 0, 0}, answer("a"));
+        small.put(1L, "docs", "b", new float[]{0, 1, 0}, answer("b"));
+        small.lookup(1L, "docs", "a", new float[]{1, 0, 0});
+        small.put(1L, "docs", "c", new float[]{0, 0, 1}, answer("c"));
+
+        assertThat(small.size()).isEqualTo(2);
+        assertThat(small.lookup(1L, "docs", "b", new float[]{0, 1, 0})).isNull();
+        assertThat(small.lookup(1L, "docs", "a", new float[]{1, 0, 0})).isNotNull();
+    }
+
+    private static SemanticAnswerCache.CachedAnswer answer(String text) {
+        return new SemanticAnswerCache.CachedAnswer(text, List.of("context"), List.of("doc.pdf"), 1_000_000L);
+    }
+}
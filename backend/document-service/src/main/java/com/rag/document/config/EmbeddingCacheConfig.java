@@ -0,0 +1,22 @@
+package com.rag.document.config;
+
+import com.rag.ollama.EmbeddingCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class EmbeddingCacheConfig {
+
+    @Value("${embedding-cache.memory.max-entries}")
+    private int maxEntries;
+
+    @Value("${embedding-cache.memory.ttl-seconds}")
+    private long ttlSeconds;
+
+    // Full precision: cached vectors are indexed alongside freshly generated ones
+    @Bean
+    public EmbeddingCache chunkEmbeddingCache() {
+        return new EmbeddingCache(maxEntries, ttlSeconds, EmbeddingCache.Precision.FULL);
+    }
+}
@@ -2,9 +2,13 @@ package com.rag.document.controller;
 
 import com.rag.document.dto.DocumentResponse;
 import com.rag.document.dto.DocumentUploadResponse;
+import com.rag.document.dto.KnnEvaluationResult;
+import com.rag.document.exception.IngestionRejectedException;
 import com.rag.document.service.DocumentService;
+import com.rag.document.service.KnnEvaluationService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -21,6 +25,7 @@ import java.util.Map;
 public class DocumentController {
 
     private final DocumentService documentService;
+    private final KnnEvaluationService knnEvaluationService;
 
     @PostMapping("/upload")
     public ResponseEntity<?> uploadDocument(
@@ -32,6 +37,11 @@ public class DocumentController {
         } catch (IllegalArgumentException e) {
             log.error("Invalid file upload: {}", e.getMessage());
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IngestionRejectedException e) {
+            log.warn("Upload rejected: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "30")
+                    .body(Map.of("error", e.getMessage()));
         } catch (IOException e) {
             log.error("Failed to upload document", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -78,6 +88,34 @@ public class DocumentController {
         }
     }
 
+    /**
+     * Tuning tool for administrators: measures k-NN recall and latency over the caller's chunks.
+     */
+    @GetMapping("/search/evaluate")
+    public ResponseEntity<?> evaluateSearch(
+            @RequestHeader("X-User-Id") Long userId,
+            @RequestHeader(value = "X-User-Role", required = false) String role,
+            @RequestParam(defaultValue = "50,100,200,400") List<Integer> efSearch,
+            @RequestParam(defaultValue = "20") int samples,
+            @RequestParam(defaultValue = "5") int k) {
+        if (!"ADMIN".equals(role)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(Map.of("error", "Search evaluation is restricted to administrators"));
+        }
+        try {
+            List<KnnEvaluationResult> results = knnEvaluationService.evaluate(userId, efSearch, samples, k);
+            return ResponseEntity.ok(results);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        } catch (IOException e) {
+            log.error("Failed to evaluate k-NN search", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to evaluate search"));
+        }
+    }
+
     @GetMapping("/health")
     public ResponseEntity<Map<String, String>> health() {
         return ResponseEntity.ok(Map.of("status", "UP", "service", "document-service"));
@@ -0,0 +1,20 @@
+package com.rag.document.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class KnnEvaluationResult {
+    private int efSearch;
+    private int k;
+    private int queries;
+    private double recall;
+    private double meanLatencyMs;
+    private double p50LatencyMs;
+    private double p95LatencyMs;
+}
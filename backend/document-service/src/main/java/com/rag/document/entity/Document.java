@@ -12,7 +12,9 @@ import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "documents")
+@Table(name = "documents", indexes = {
+        @Index(name = "idx_documents_content_hash", columnList = "content_hash")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -39,6 +41,9 @@ public class Document {
     @Column(nullable = false)
     private String contentType;
 
+    @Column(length = 64)
+    private String contentHash; // SHA-256 of the file, hex encoded
+
     @Lob
     @Column(columnDefinition = "TEXT")
     private String extractedText;
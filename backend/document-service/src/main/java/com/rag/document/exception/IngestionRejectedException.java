@@ -0,0 +1,11 @@
+package com.rag.document.exception;
+
+/**
+ * Thrown when the ingestion queue is full and a new document cannot be accepted.
+ */
+public class IngestionRejectedException extends RuntimeException {
+
+    public IngestionRejectedException(String message) {
+        super(message);
+    }
+}
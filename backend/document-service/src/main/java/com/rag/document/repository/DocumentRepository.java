@@ -5,9 +5,13 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface DocumentRepository extends JpaRepository<Document, Long> {
     List<Document> findByUserId(Long userId);
     List<Document> findByUserIdAndStatus(Long userId, String status);
+    List<Document> findByStatus(String status);
+    Optional<Document> findFirstByContentHashAndStatusAndIdNot(String contentHash, String status, Long id);
+    boolean existsByContentHashAndIdNot(String contentHash, Long id);
 }
@@ -0,0 +1,216 @@
+package com.rag.document.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.opensearch.action.DocWriteRequest;
+import org.opensearch.action.bulk.BackoffPolicy;
+import org.opensearch.action.bulk.BulkItemResponse;
+import org.opensearch.action.bulk.BulkProcessor;
+import org.opensearch.action.bulk.BulkRequest;
+import org.opensearch.action.bulk.BulkResponse;
+import org.opensearch.action.index.IndexRequest;
+import org.opensearch.client.RequestOptions;
+import org.opensearch.client.RestHighLevelClient;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.common.xcontent.XContentFactory;
+import org.opensearch.core.common.unit.ByteSizeUnit;
+import org.opensearch.core.common.unit.ByteSizeValue;
+import org.opensearch.core.rest.RestStatus;
+import org.opensearch.core.xcontent.XContentBuilder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffers chunk documents for one ingestion job and writes them with OpenSearch {@code _bulk}.
+ * <p>
+ * Buffered requests are flushed when the action count, payload size or flush interval is reached.
+ * Failed items with a transient status are retried with backoff when the session is closed;
+ * {@link #close()} throws if any item still could not be indexed.
+ */
+@Slf4j
+public class BulkIndexSession implements Closeable {
+
+    private static final Set<RestStatus> RETRYABLE_STATUSES = Set.of(
+            RestStatus.TOO_MANY_REQUESTS,
+            RestStatus.BAD_GATEWAY,
+            RestStatus.SERVICE_UNAVAILABLE,
+            RestStatus.GATEWAY_TIMEOUT
+    );
+
+    private final RestHighLevelClient client;
+    private final String indexName;
+    private final Settings settings;
+    private final BulkProcessor processor;
+
+    // Written from the client's I/O threads by the bulk listener
+    private final List<IndexRequest> retryable = new ArrayList<>();
+    private final List<String> failures = new ArrayList<>();
+
+    BulkIndexSession(RestHighLevelClient client, String indexName, Settings settings) {
+        this.client = client;
+        this.indexName = indexName;
+        this.settings = settings;
+        this.processor = BulkProcessor.builder(
+                        (request, listener) -> client.bulkAsync(request, RequestOptions.DEFAULT, listener),
+                        new Listener())
+                .setBulkActions(settings.maxActions())
+                .setBulkSize(new ByteSizeValue(settings.maxSizeMb(), ByteSizeUnit.MB))
+                .setFlushInterval(TimeValue.timeValueMillis(settings.flushIntervalMs()))
+                .setConcurrentRequests(settings.concurrentRequests())
+                .setBackoffPolicy(BackoffPolicy.exponentialBackoff(
+                        TimeValue.timeValueMillis(settings.retryBackoffMs()), settings.maxRetries()))
+                .build();
+    }
+
+    /**
+     * Buffers one chunk for indexing. The vector ID is derived from the document ID and chunk
+     * index, so it is known up front and re-ingesting a document overwrites its chunks.
+     * <p>
+     * The source is written as SMILE, so the embedding goes into the request body as binary
+     * floats rather than being formatted as JSON text.
+     *
+     * @return the OpenSearch document ID of the chunk
+     */
+    public String add(Long documentId, Long userId, int chunkIndex,
+                      String text, float[] embedding,
+                      Map<String, Object> metadata) throws IOException {
+        String vectorId = documentId + "_" + chunkIndex;
+
+        XContentBuilder source = XContentFactory.smileBuilder()
+                .startObject()
+                .field("documentId", documentId)
+                .field("userId", userId)
+                .field("chunkIndex", chunkIndex)
+                .field("text", text)
+                .array("embedding", embedding)
+                .field("metadata", metadata)
+                .field("createdAt", System.currentTimeMillis())
+                .endObject();
+
+        IndexRequest request = new IndexRequest(indexName)
+                .id(vectorId)
+                .source(source);
+
+        processor.add(request);
+        return vectorId;
+    }
+
+    /**
+     * Flushes everything still buffered, retries transient item failures and closes the session.
+     *
+     * @throws IOException if some chunks could not be indexed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (!processor.awaitClose(settings.closeTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                throw new IOException("Timed out waiting for bulk requests to complete");
+            }
+            retryFailedItems();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing bulk requests", e);
+        }
+
+        synchronized (failures) {
+            if (!failures.isEmpty()) {
+                throw new IOException("Failed to index " + failures.size() + " chunks, first failure: "
+                        + failures.get(0));
+            }
+        }
+    }
+
+    private void retryFailedItems() throws InterruptedException {
+        for (int attempt = 1; attempt <= settings.maxRetries(); attempt++) {
+            List<IndexRequest> requests;
+            synchronized (retryable) {
+                if (retryable.isEmpty()) {
+                    return;
+                }
+                requests = new ArrayList<>(retryable);
+                retryable.clear();
+            }
+
+            Thread.sleep(settings.retryBackoffMs() * attempt);
+            log.debug("Retrying {} failed bulk items (attempt {})", requests.size(), attempt);
+
+            BulkRequest bulkRequest = new BulkRequest();
+            requests.forEach(bulkRequest::add);
+            try {
+                handleResponse(bulkRequest, client.bulk(bulkRequest, RequestOptions.DEFAULT));
+            } catch (IOException e) {
+                handleFailure(bulkRequest, e);
+            }
+        }
+
+        synchronized (retryable) {
+            synchronized (failures) {
+                for (IndexRequest request : retryable) {
+                    failures.add(request.id() + ": retries exhausted");
+                }
+            }
+            retryable.clear();
+        }
+    }
+
+    private void handleResponse(BulkRequest request, BulkResponse response) {
+        if (!response.hasFailures()) {
+            return;
+        }
+
+        List<DocWriteRequest<?>> requests = request.requests();
+        for (BulkItemResponse item : response.getItems()) {
+            if (!item.isFailed()) {
+                continue;
+            }
+
+            IndexRequest failed = (IndexRequest) requests.get(item.getItemId());
+            if (RETRYABLE_STATUSES.contains(item.status())) {
+                synchronized (retryable) {
+                    retryable.add(failed);
+                }
+            } else {
+                synchronized (failures) {
+                    failures.add(failed.id() + ": " + item.getFailureMessage());
+                }
+            }
+        }
+    }
+
+    private void handleFailure(BulkRequest request, Throwable failure) {
+        log.warn("Bulk request with {} actions failed: {}", request.numberOfActions(), failure.getMessage());
+        synchronized (retryable) {
+            for (DocWriteRequest<?> failed : request.requests()) {
+                retryable.add((IndexRequest) failed);
+            }
+        }
+    }
+
+    private class Listener implements BulkProcessor.Listener {
+
+        @Override
+        public void beforeBulk(long executionId, BulkRequest request) {
+            log.debug("Sending bulk request {} with {} actions ({} bytes)",
+                    executionId, request.numberOfActions(), request.estimatedSizeInBytes());
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+            handleResponse(request, response);
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+            handleFailure(request, failure);
+        }
+    }
+
+    record Settings(int maxActions, int maxSizeMb, long flushIntervalMs, int concurrentRequests,
+                    int maxRetries, long retryBackoffMs, long closeTimeoutMs) {
+    }
+}
@@ -3,6 +3,7 @@ package com.rag.document.service;
 import com.rag.document.dto.DocumentResponse;
 import com.rag.document.dto.DocumentUploadResponse;
 import com.rag.document.entity.Document;
+import com.rag.document.exception.IngestionRejectedException;
 import com.rag.document.repository.DocumentRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -11,11 +12,16 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -25,14 +31,15 @@ import java.util.stream.Collectors;
 public class DocumentService {
 
     private final DocumentRepository documentRepository;
-    private final PdfProcessingService pdfProcessingService;
-    private final OllamaService ollamaService;
+    private final IngestionService ingestionService;
     private final VectorStoreService vectorStoreService;
 
     @Value("${storage.upload-dir}")
     private String uploadDir;
 
-    @Transactional
+    // Striped by content hash: uploads and deletes of the same bytes share a lock
+    private final Object[] fileLocks = newFileLocks(64);
+
     public DocumentUploadResponse uploadDocument(MultipartFile file, Long userId) throws IOException {
         // Validate file
         if (file.isEmpty()) {
@@ -49,29 +56,41 @@ public class DocumentService {
             Files.createDirectories(uploadPath);
         }
 
-        // Generate unique filename
-        String filename = UUID.randomUUID().toString() + ".pdf";
-        Path filePath = uploadPath.resolve(filename);
-
-        // Save file
-        file.transferTo(filePath.toFile());
-
-        // Create document entity
-        Document document = Document.builder()
-                .filename(filename)
-                .originalFilename(file.getOriginalFilename())
-                .filePath(filePath.toString())
-                .fileSize(file.getSize())
-                .contentType(file.getContentType())
-                .userId(userId)
-                .status("PROCESSING")
-                .build();
-
-        document = documentRepository.save(document);
+        // Save file under its content hash, so identical uploads share one copy on disk
+        Document document;
+        Path tempFile = Files.createTempFile(uploadPath, "upload-", ".tmp");
+        try {
+            String contentHash = copyAndHash(file, tempFile);
+            String filename = contentHash + ".pdf";
+            Path filePath = uploadPath.resolve(filename);
+
+            // Placing the file and saving the row that references it happen under the same lock
+            // as the delete path's reference check, so a concurrent delete of another document
+            // with these bytes cannot remove the file between the two
+            synchronized (fileLock(contentHash)) {
+                storeIfAbsent(tempFile, filePath);
+                document = documentRepository.save(Document.builder()
+                        .filename(filename)
+                        .originalFilename(file.getOriginalFilename())
+                        .filePath(filePath.toString())
+                        .fileSize(file.getSize())
+                        .contentType(file.getContentType())
+                        .contentHash(contentHash)
+                        .userId(userId)
+                        .status("PROCESSING")
+                        .build());
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
         log.info("Document saved with ID: {}", document.getId());
 
-        // Process document asynchronously (in real application, use async processing)
-        processDocument(document);
+        // Hand off to the ingestion engine; reject the upload if its queue is full
+        if (!ingestionService.submit(document.getId())) {
+            documentRepository.delete(document);
+            deleteFileIfUnreferenced(document);
+            throw new IngestionRejectedException("Document ingestion queue is full, please retry later");
+        }
 
         return DocumentUploadResponse.builder()
                 .id(document.getId())
@@ -82,53 +101,6 @@ public class DocumentService {
                 .build();
     }
 
-    @Transactional
-    public void processDocument(Document document) {
-        try {
-            log.info("Processing document: {}", document.getId());
-
-            // Extract text from PDF
-            File pdfFile = new File(document.getFilePath());
-            String text = pdfProcessingService.extractTextFromPdf(pdfFile);
-            document.setExtractedText(text);
-
-            // Split text into chunks
-            String[] chunks = pdfProcessingService.splitTextIntoChunks(text, 500, 50);
-
-            // Generate embeddings and store in vector database
-            for (int i = 0; i < chunks.length; i++) {
-                String chunk = chunks[i];
-                List<Double> embedding = ollamaService.generateEmbedding(chunk);
-
-                Map<String, Object> metadata = new HashMap<>();
-                metadata.put("originalFilename", document.getOriginalFilename());
-                metadata.put("totalChunks", chunks.length);
-
-                String vectorId = vectorStoreService.storeVector(
-                        document.getId(),
-                        document.getUserId(),
-                        i,
-                        chunk,
-                        embedding,
-                        metadata
-                );
-
-                if (i == 0) {
-                    document.setVectorId(vectorId);
-                }
-            }
-
-            document.setStatus("COMPLETED");
-            documentRepository.save(document);
-            log.info("Document processing completed: {}", document.getId());
-
-        } catch (Exception e) {
-            log.error("Failed to process document: {}", document.getId(), e);
-            document.setStatus("FAILED");
-            documentRepository.save(document);
-        }
-    }
-
     @Transactional(readOnly = true)
     public List<DocumentResponse> getUserDocuments(Long userId) {
         return documentRepository.findByUserId(userId).stream()
@@ -157,15 +129,74 @@ public class DocumentService {
             throw new RuntimeException("Unauthorized access");
         }
 
-        // Delete file
-        Path filePath = Paths.get(document.getFilePath());
-        Files.deleteIfExists(filePath);
+        // Delete indexed chunks
+        vectorStoreService.deleteDocumentChunks(documentId);
+
+        // Delete file unless another upload of the same content still uses it
+        deleteFileIfUnreferenced(document);
 
         // Delete from database
         documentRepository.delete(document);
         log.info("Document deleted: {}", documentId);
     }
 
+    /**
+     * Copies the upload to {@code tempFile} while computing its SHA-256.
+     *
+     * @return the hex-encoded content hash
+     */
+    private String copyAndHash(MultipartFile file, Path tempFile) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+
+        try (InputStream in = new DigestInputStream(file.getInputStream(), digest)) {
+            Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Moves {@code tempFile} to {@code target} unless an identical upload is already stored there.
+     */
+    private void storeIfAbsent(Path tempFile, Path target) throws IOException {
+        if (Files.exists(target)) {
+            log.info("Upload matches stored file {}", target.getFileName());
+            return;
+        }
+        try {
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            log.debug("Stored file {} was written concurrently", target.getFileName());
+        }
+    }
+
+    private void deleteFileIfUnreferenced(Document document) throws IOException {
+        // Documents uploaded before content hashing have a file of their own
+        if (document.getContentHash() == null) {
+            Files.deleteIfExists(Paths.get(document.getFilePath()));
+            return;
+        }
+        synchronized (fileLock(document.getContentHash())) {
+            if (!documentRepository.existsByContentHashAndIdNot(document.getContentHash(), document.getId())) {
+                Files.deleteIfExists(Paths.get(document.getFilePath()));
+            }
+        }
+    }
+
+    private Object fileLock(String contentHash) {
+        return fileLocks[Math.floorMod(contentHash.hashCode(), fileLocks.length)];
+    }
+
+    private static Object[] newFileLocks(int stripes) {
+        Object[] locks = new Object[stripes];
+        Arrays.setAll(locks, i -> new Object());
+        return locks;
+    }
+
     private DocumentResponse toResponse(Document document) {
         return DocumentResponse.builder()
                 .id(document.getId())
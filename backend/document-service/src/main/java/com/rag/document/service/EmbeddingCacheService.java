@@ -0,0 +1,230 @@
+package com.rag.document.service;
+
+import com.rag.ollama.EmbeddingCache;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.opensearch.action.bulk.BulkRequest;
+import org.opensearch.action.bulk.BulkResponse;
+import org.opensearch.action.get.MultiGetItemResponse;
+import org.opensearch.action.get.MultiGetRequest;
+import org.opensearch.action.get.MultiGetResponse;
+import org.opensearch.action.index.IndexRequest;
+import org.opensearch.client.RequestOptions;
+import org.opensearch.client.RestHighLevelClient;
+import org.opensearch.client.indices.CreateIndexRequest;
+import org.opensearch.client.indices.GetIndexRequest;
+import org.opensearch.common.xcontent.XContentFactory;
+import org.opensearch.common.xcontent.XContentType;
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.search.fetch.subphase.FetchSourceContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chunk embedding cache in front of {@link OllamaService#generateEmbeddings}.
+ * <p>
+ * Embeddings are stored in a separate OpenSearch index under the SHA-256 of the embedding model
+ * and the chunk text, so re-ingesting identical or mostly identical documents only sends the
+ * chunks that changed to Ollama. Recently used entries are also kept in an in-memory
+ * {@link EmbeddingCache}, which saves the OpenSearch round trip; it holds full-precision vectors,
+ * since whatever it returns is written to the chunk index. Cache failures are logged and fall
+ * back to Ollama.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class EmbeddingCacheService {
+
+    private final RestHighLevelClient client;
+    private final OllamaService ollamaService;
+    private final EmbeddingCache memoryCache;
+
+    @Value("${embedding-cache.enabled}")
+    private boolean enabled;
+
+    @Value("${embedding-cache.index}")
+    private String indexName;
+
+    @Value("${ollama.model}")
+    private String model;
+
+    @PostConstruct
+    public void initialize() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            if (!client.indices().exists(new GetIndexRequest(indexName), RequestOptions.DEFAULT)) {
+                createIndex();
+            }
+        } catch (IOException e) {
+            log.error("Failed to initialize embedding cache index", e);
+        }
+    }
+
+    private void createIndex() throws IOException {
+        log.info("Creating embedding cache index: {}", indexName);
+
+        // Entries are only ever fetched by ID, so nothing but the model needs to be indexed
+        String mappings = """
+            {
+              "mappings": {
+                "dynamic": false,
+                "properties": {
+                  "model": { "type": "keyword" },
+                  "createdAt": { "type": "date" }
+                }
+              }
+            }
+            """;
+
+        CreateIndexRequest request = new CreateIndexRequest(indexName);
+        request.source(mappings, XContentType.JSON);
+        client.indices().create(request, RequestOptions.DEFAULT);
+    }
+
+    /**
+     * Returns one embedding per text, in order, taking cached embeddings where available and
+     * generating the rest with Ollama. Duplicate texts within the batch are embedded once.
+     */
+    public List<float[]> generateEmbeddings(List<String> texts) throws IOException {
+        if (!enabled || texts.isEmpty()) {
+            return ollamaService.generateEmbeddings(texts);
+        }
+
+        Map<String, String> textsByKey = new LinkedHashMap<>();
+        List<String> keys = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            String key = cacheKey(text);
+            keys.add(key);
+            textsByKey.putIfAbsent(key, text);
+        }
+
+        // Check the in-memory cache first, then OpenSearch for whatever it does not hold
+        Map<String, float[]> embeddings = new LinkedHashMap<>();
+        List<String> remoteKeys = new ArrayList<>();
+        for (String key : textsByKey.keySet()) {
+            float[] embedding = memoryCache.getIfPresent(key);
+            if (embedding != null) {
+                embeddings.put(key, embedding);
+            } else {
+                remoteKeys.add(key);
+            }
+        }
+        if (!remoteKeys.isEmpty()) {
+            Map<String, float[]> found = lookup(remoteKeys);
+            found.forEach(memoryCache::put);
+            embeddings.putAll(found);
+        }
+        int hits = embeddings.size();
+
+        List<String> missingKeys = new ArrayList<>();
+        List<String> missingTexts = new ArrayList<>();
+        textsByKey.forEach((key, text) -> {
+            if (!embeddings.containsKey(key)) {
+                missingKeys.add(key);
+                missingTexts.add(text);
+            }
+        });
+
+        if (!missingTexts.isEmpty()) {
+            List<float[]> generated = ollamaService.generateEmbeddings(missingTexts);
+            for (int i = 0; i < missingKeys.size(); i++) {
+                embeddings.put(missingKeys.get(i), generated.get(i));
+                memoryCache.put(missingKeys.get(i), generated.get(i));
+            }
+            store(missingKeys, generated);
+        }
+
+        log.debug("Embedding cache: {} of {} distinct chunks cached", hits, textsByKey.size());
+
+        List<float[]> results = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            results.add(embeddings.get(key));
+        }
+        return results;
+    }
+
+    private Map<String, float[]> lookup(Iterable<String> keys) {
+        Map<String, float[]> found = new LinkedHashMap<>();
+        MultiGetRequest request = new MultiGetRequest();
+        for (String key : keys) {
+            request.add(new MultiGetRequest.Item(indexName, key)
+                    .fetchSourceContext(new FetchSourceContext(true, new String[]{"model", "embedding"}, null)));
+        }
+
+        try {
+            MultiGetResponse response = client.mget(request, RequestOptions.DEFAULT);
+            for (MultiGetItemResponse item : response.getResponses()) {
+                if (item.isFailed() || !item.getResponse().isExists()) {
+                    continue;
+                }
+                Map<String, Object> source = item.getResponse().getSourceAsMap();
+                float[] embedding = VectorStoreService.toVector(source.get("embedding"));
+                // Guard against hash collisions across models
+                if (embedding != null && model.equals(source.get("model"))) {
+                    found.put(item.getId(), embedding);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Embedding cache lookup failed, embedding all chunks: {}", e.getMessage());
+        }
+        return found;
+    }
+
+    /**
+     * Writes new entries in the background; ingestion does not wait for the cache.
+     */
+    private void store(List<String> keys, List<float[]> embeddings) throws IOException {
+        BulkRequest request = new BulkRequest();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < keys.size(); i++) {
+            request.add(new IndexRequest(indexName)
+                    .id(keys.get(i))
+                    .source(XContentFactory.smileBuilder()
+                            .startObject()
+                            .field("model", model)
+                            .array("embedding", embeddings.get(i))
+                            .field("createdAt", now)
+                            .endObject()));
+        }
+
+        client.bulkAsync(request, RequestOptions.DEFAULT, new ActionListener<>() {
+            @Override
+            public void onResponse(BulkResponse response) {
+                if (response.hasFailures()) {
+                    log.warn("Failed to cache some embeddings: {}", response.buildFailureMessage());
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                log.warn("Failed to cache {} embeddings: {}", keys.size(), e.getMessage());
+            }
+        });
+    }
+
+    private String cacheKey(String text) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        digest.update(model.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(text.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
@@ -0,0 +1,316 @@
+package com.rag.document.service;
+
+import com.rag.document.entity.Document;
+import com.rag.document.repository.DocumentRepository;
+import com.rag.ollama.LlmOverloadedException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs document ingestion (extraction, chunking, embedding, indexing) off the request thread.
+ * <p>
+ * Uploads only enqueue the document ID into a bounded queue drained by a fixed worker pool.
+ * The {@code PROCESSING} status in the database is the durable record of pending work, so
+ * documents left behind by a restart or a full queue are re-enqueued by the recovery sweep.
+ * A document whose embedding calls are rejected because Ollama is overloaded also stays
+ * {@code PROCESSING} and is retried by the sweep, up to {@code ingestion.overload-max-retries}
+ * times; the chunks embedded before the rejection come from the embedding cache on the retry.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class IngestionService {
+
+    private final DocumentRepository documentRepository;
+    private final PdfProcessingService pdfProcessingService;
+    private final EmbeddingCacheService embeddingCacheService;
+    private final VectorStoreService vectorStoreService;
+
+    @Value("${ingestion.worker-threads}")
+    private int workerThreads;
+
+    @Value("${ingestion.queue-capacity}")
+    private int queueCapacity;
+
+    @Value("${ingestion.offer-timeout-ms}")
+    private long offerTimeoutMs;
+
+    @Value("${ingestion.extracted-text-preview-chars}")
+    private int extractedTextPreviewChars;
+
+    @Value("${ingestion.overload-max-retries}")
+    private int overloadMaxRetries;
+
+    // Queued or in-flight document IDs, so the recovery sweep never enqueues a document twice
+    private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+    // Attempts rejected by the LLM scheduler so far, per document still waiting for a retry
+    private final Map<Long, Integer> overloadRetries = new ConcurrentHashMap<>();
+
+    private BlockingQueue<Long> queue;
+    private ExecutorService workers;
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(workerThreads, runnable -> {
+            Thread thread = new Thread(runnable, "ingestion-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        for (int i = 0; i < workerThreads; i++) {
+            workers.submit(this::runWorker);
+        }
+        log.info("Ingestion engine started with {} workers and queue capacity {}", workerThreads, queueCapacity);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        workers.shutdownNow();
+        workers.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Enqueues a document for ingestion, waiting at most {@code ingestion.offer-timeout-ms}
+     * for space in the queue.
+     *
+     * @return {@code false} if the queue stayed full and the document was not accepted
+     */
+    public boolean submit(Long documentId) {
+        if (!pending.add(documentId)) {
+            return true;
+        }
+
+        try {
+            if (queue.offer(documentId, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                log.debug("Document {} queued for ingestion (queue size: {})", documentId, queue.size());
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        pending.remove(documentId);
+        log.warn("Ingestion queue is full, rejected document {}", documentId);
+        return false;
+    }
+
+    @Scheduled(fixedDelayString = "${ingestion.recovery-interval-ms}")
+    public void recoverPendingDocuments() {
+        List<Document> documents = documentRepository.findByStatus("PROCESSING");
+        int recovered = 0;
+
+        for (Document document : documents) {
+            if (!pending.add(document.getId())) {
+                continue;
+            }
+            if (!queue.offer(document.getId())) {
+                pending.remove(document.getId());
+                break;
+            }
+            recovered++;
+        }
+
+        if (recovered > 0) {
+            log.info("Re-enqueued {} pending documents for ingestion", recovered);
+        }
+    }
+
+    private void runWorker() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Long documentId;
+            try {
+                documentId = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            try {
+                documentRepository.findById(documentId)
+                        .filter(document -> "PROCESSING".equals(document.getStatus()))
+                        .ifPresent(this::processDocument);
+            } catch (Exception e) {
+                log.error("Unexpected error while ingesting document: {}", documentId, e);
+            } finally {
+                pending.remove(documentId);
+            }
+        }
+    }
+
+    private void processDocument(Document document) {
+        try {
+            log.info("Processing document: {}", document.getId());
+
+            if (reuseIngestedCopy(document)) {
+                document.setStatus("COMPLETED");
+                documentRepository.save(document);
+                log.info("Document processing completed from an identical upload: {}", document.getId());
+                return;
+            }
+
+            // Extract the PDF page window by page window, chunking, embedding and indexing each
+            // window before the next is read, so memory stays bounded regardless of page count
+            File pdfFile = new File(document.getFilePath());
+            try (BulkIndexSession session = vectorStoreService.openBulkSession()) {
+                ChunkIndexer indexer = new ChunkIndexer(document, session);
+                int pages = pdfProcessingService.extractTextInWindows(pdfFile, indexer::accept);
+                indexer.finish();
+                log.info("Indexed {} chunks from {} pages of document {}", indexer.chunkCount, pages, document.getId());
+            }
+
+            document.setStatus("COMPLETED");
+            documentRepository.save(document);
+            overloadRetries.remove(document.getId());
+            log.info("Document processing completed: {}", document.getId());
+
+        } catch (LlmOverloadedException e) {
+            deferOrFail(document, e);
+        } catch (Exception e) {
+            log.error("Failed to process document: {}", document.getId(), e);
+            markFailed(document);
+        }
+    }
+
+    /**
+     * Leaves a document rejected by the LLM scheduler in {@code PROCESSING} for the recovery
+     * sweep to pick up again, unless it has already been retried too often.
+     */
+    private void deferOrFail(Document document, LlmOverloadedException e) {
+        int attempts = overloadRetries.merge(document.getId(), 1, Integer::sum);
+        if (attempts > overloadMaxRetries) {
+            log.error("Giving up on document {} after {} attempts rejected by an overloaded Ollama",
+                    document.getId(), attempts, e);
+            markFailed(document);
+            return;
+        }
+        log.warn("Ollama is overloaded, document {} will be retried by the recovery sweep (attempt {} of {}): {}",
+                document.getId(), attempts, overloadMaxRetries, e.getMessage());
+    }
+
+    private void markFailed(Document document) {
+        overloadRetries.remove(document.getId());
+        document.setStatus("FAILED");
+        documentRepository.save(document);
+    }
+
+    /**
+     * Copies the chunks and extracted text of an already ingested document with the same
+     * content hash, skipping extraction and embedding entirely.
+     *
+     * @return {@code false} if there is no such document or it has no indexed chunks
+     */
+    private boolean reuseIngestedCopy(Document document) throws IOException {
+        if (document.getContentHash() == null) {
+            return false;
+        }
+
+        Optional<Document> existing = documentRepository.findFirstByContentHashAndStatusAndIdNot(
+                document.getContentHash(), "COMPLETED", document.getId());
+        if (existing.isEmpty()) {
+            return false;
+        }
+
+        Document source = existing.get();
+        int copied = vectorStoreService.copyDocumentChunks(source.getId(), document.getId(), document.getUserId(),
+                Map.of("originalFilename", document.getOriginalFilename()));
+        if (copied == 0) {
+            return false;
+        }
+
+        document.setExtractedText(source.getExtractedText());
+        document.setVectorId(document.getId() + "_0");
+        log.info("Reused {} chunks of document {} for document {}", copied, source.getId(), document.getId());
+        return true;
+    }
+
+    /**
+     * Feeds the stream of page-window texts through a chunking session. Text after the last
+     * complete chunk stays buffered in the session, so chunks are not cut at window boundaries.
+     */
+    private class ChunkIndexer {
+
+        private final Document document;
+        private final BulkIndexSession session;
+        private final TextChunker.Session chunker = pdfProcessingService.chunker().session();
+        private final StringBuilder preview = new StringBuilder();
+        private int chunkCount;
+        private int totalPages;
+
+        ChunkIndexer(Document document, BulkIndexSession session) {
+            this.document = document;
+            this.session = session;
+        }
+
+        void accept(String text, int startPage, int endPage, int totalPages) throws IOException {
+            this.totalPages = totalPages;
+            chunker.append(text);
+            if (preview.length() < extractedTextPreviewChars) {
+                preview.append(text, 0, Math.min(text.length(), extractedTextPreviewChars - preview.length()));
+            }
+
+            index(chunker.drain(false));
+        }
+
+        void finish() throws IOException {
+            index(chunker.drain(true));
+            document.setExtractedText(preview.toString());
+        }
+
+        private void index(Iterator<CharSequence> views) throws IOException {
+            // The views are only valid until the session is next touched, and the text outlives
+            // that in the embedding request and the bulk buffer, so each chunk is copied once here
+            List<String> chunks = new ArrayList<>();
+            views.forEachRemaining(view -> chunks.add(view.toString()));
+            if (chunks.isEmpty()) {
+                return;
+            }
+
+            List<float[]> embeddings = embeddingCacheService.generateEmbeddings(chunks);
+
+            for (int i = 0; i < chunks.size(); i++) {
+                Map<String, Object> metadata = new HashMap<>();
+                metadata.put("originalFilename", document.getOriginalFilename());
+                metadata.put("totalPages", totalPages);
+
+                String vectorId = session.add(
+                        document.getId(),
+                        document.getUserId(),
+                        chunkCount,
+                        chunks.get(i),
+                        embeddings.get(i),
+                        metadata
+                );
+
+                if (chunkCount == 0) {
+                    document.setVectorId(vectorId);
+                }
+                chunkCount++;
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.rag.document.service;
+
+import com.rag.document.dto.KnnEvaluationResult;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Measures recall@k and latency of the approximate k-NN query for a range of {@code ef_search}
+ * values, using exact script-score search over the same user's chunks as ground truth.
+ * <p>
+ * Query vectors are sampled from the user's own indexed chunks. Each one is its own nearest
+ * neighbour in both searches, which would count as a free hit, so the sampled chunk is left out
+ * of both result sets and recall is measured over the {@code k} neighbours after it.
+ * {@code ef_search} is an index-wide setting, so the chunks are copied to a scratch index whose
+ * setting can be changed without affecting live searches. One evaluation runs at a time.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class KnnEvaluationService {
+
+    static final int MAX_SAMPLES = 200;
+    static final int MAX_K = 100;
+    static final int MAX_EF_SEARCH_VALUES = 10;
+    static final int MAX_EF_SEARCH = 4096;
+
+    private final VectorStoreService vectorStoreService;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * @throws IllegalArgumentException if a parameter is out of range
+     * @throws IllegalStateException    if another evaluation is running
+     */
+    public List<KnnEvaluationResult> evaluate(Long userId, List<Integer> efSearchValues,
+                                              int samples, int k) throws IOException {
+        validate(efSearchValues, samples, k);
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("Another evaluation is running");
+        }
+        try (VectorStoreService.EvaluationIndex index = vectorStoreService.createEvaluationIndex(userId)) {
+            return evaluate(index, userId, efSearchValues, samples, k);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private List<KnnEvaluationResult> evaluate(VectorStoreService.EvaluationIndex index, Long userId,
+                                               List<Integer> efSearchValues, int samples, int k)
+            throws IOException {
+        List<VectorStoreService.SampledEmbedding> queries = vectorStoreService.sampleEmbeddings(userId, samples);
+        if (queries.isEmpty()) {
+            return List.of();
+        }
+
+        // One extra hit in each search makes room for the sampled chunk itself
+        List<Set<String>> groundTruth = new ArrayList<>();
+        for (VectorStoreService.SampledEmbedding query : queries) {
+            groundTruth.add(neighbours(index.exactSearch(query.embedding(), userId, k + 1), query, k));
+        }
+
+        List<KnnEvaluationResult> results = new ArrayList<>();
+        for (int efSearch : efSearchValues) {
+            index.updateEfSearch(efSearch);
+
+            // Warm up so graph loading is not counted against the first query
+            index.searchSimilar(queries.get(0).embedding(), userId, k + 1);
+
+            double recallSum = 0;
+            double[] latenciesMs = new double[queries.size()];
+            for (int i = 0; i < queries.size(); i++) {
+                VectorStoreService.SampledEmbedding query = queries.get(i);
+                long start = System.nanoTime();
+                List<Map<String, Object>> hits = index.searchSimilar(query.embedding(), userId, k + 1);
+                latenciesMs[i] = (System.nanoTime() - start) / 1_000_000.0;
+                Set<String> found = neighbours(hits, query, k);
+
+                Set<String> expected = groundTruth.get(i);
+                if (!expected.isEmpty()) {
+                    found.retainAll(expected);
+                    recallSum += (double) found.size() / expected.size();
+                }
+            }
+
+            Arrays.sort(latenciesMs);
+            KnnEvaluationResult result = KnnEvaluationResult.builder()
+                    .efSearch(efSearch)
+                    .k(k)
+                    .queries(queries.size())
+                    .recall(recallSum / queries.size())
+                    .meanLatencyMs(Arrays.stream(latenciesMs).average().orElse(0))
+                    .p50LatencyMs(percentile(latenciesMs, 0.50))
+                    .p95LatencyMs(percentile(latenciesMs, 0.95))
+                    .build();
+            log.info("k-NN evaluation: {}", result);
+            results.add(result);
+        }
+
+        return results;
+    }
+
+    private void validate(List<Integer> efSearchValues, int samples, int k) {
+        if (samples < 1 || samples > MAX_SAMPLES) {
+            throw new IllegalArgumentException("samples must be between 1 and " + MAX_SAMPLES);
+        }
+        if (k < 1 || k > MAX_K) {
+            throw new IllegalArgumentException("k must be between 1 and " + MAX_K);
+        }
+        if (efSearchValues.isEmpty() || efSearchValues.size() > MAX_EF_SEARCH_VALUES) {
+            throw new IllegalArgumentException("Between 1 and " + MAX_EF_SEARCH_VALUES + " efSearch values are allowed");
+        }
+        for (int efSearch : efSearchValues) {
+            if (efSearch < 1 || efSearch > MAX_EF_SEARCH) {
+                throw new IllegalArgumentException("efSearch must be between 1 and " + MAX_EF_SEARCH);
+            }
+        }
+    }
+
+    /**
+     * The ids of the first {@code k} hits other than the sampled chunk itself.
+     */
+    private Set<String> neighbours(List<Map<String, Object>> hits, VectorStoreService.SampledEmbedding query, int k) {
+        return hits.stream()
+                .map(hit -> (String) hit.get("id"))
+                .filter(id -> !id.equals(query.chunkId()))
+                .limit(k)
+                .collect(Collectors.toCollection(HashSet::new));
+    }
+
+    private double percentile(double[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
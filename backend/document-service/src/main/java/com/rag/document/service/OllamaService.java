@@ -1,100 +1,143 @@
 package com.rag.document.service;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
+import com.rag.ollama.LlmScheduler;
+import com.rag.ollama.OllamaClient;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import okhttp3.*;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Ingestion-side Ollama calls, admitted through the {@link LlmScheduler} as background work.
+ */
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class OllamaService {
 
-    @Value("${ollama.url}")
-    private String ollamaUrl;
+    @Value("${ollama.embedding.initial-batch-size}")
+    private int initialBatchSize;
 
-    @Value("${ollama.model}")
-    private String model;
+    @Value("${ollama.embedding.max-batch-size}")
+    private int maxBatchSize;
 
-    private final OkHttpClient client;
-    private final Gson gson;
+    @Value("${ollama.embedding.target-batch-latency-ms}")
+    private long targetBatchLatencyMs;
 
-    public OllamaService() {
-        this.client = new OkHttpClient.Builder()
-                .connectTimeout(60, TimeUnit.SECONDS)
-                .readTimeout(60, TimeUnit.SECONDS)
-                .writeTimeout(60, TimeUnit.SECONDS)
-                .build();
-        this.gson = new Gson();
-    }
-
-    public List<Double> generateEmbedding(String text) throws IOException {
-        log.debug("Generating embedding for text of length: {}", text.length());
+    private final OllamaClient client;
+    private final LlmScheduler scheduler;
 
-        JsonObject requestBody = new JsonObject();
-        requestBody.addProperty("model", model);
-        requestBody.addProperty("prompt", text);
+    private AdaptiveBatchSize batchSize;
 
-        RequestBody body = RequestBody.create(
-                gson.toJson(requestBody),
-                MediaType.parse("application/json")
-        );
+    @PostConstruct
+    public void init() {
+        this.batchSize = new AdaptiveBatchSize(initialBatchSize, maxBatchSize,
+                TimeUnit.MILLISECONDS.toNanos(targetBatchLatencyMs));
+    }
 
-        Request request = new Request.Builder()
-                .url(ollamaUrl + "/api/embeddings")
-                .post(body)
-                .build();
+    public float[] generateEmbedding(String text) throws IOException {
+        return generateEmbeddings(List.of(text)).get(0);
+    }
 
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("Failed to generate embedding: " + response);
+    /**
+     * Embeds many texts through Ollama's multi-input {@code /api/embed} endpoint.
+     * <p>
+     * Texts are split into batches whose size adapts to the observed batch latency. Each batch
+     * holds a background embed slot of the {@link LlmScheduler} until its response is read, so at
+     * most {@code ollama.scheduler.embed-concurrency} batches are outstanding across all callers.
+     * Embeddings are returned in the same order as the input texts.
+     */
+    public List<float[]> generateEmbeddings(List<String> texts) throws IOException {
+        List<float[]> embeddings = new ArrayList<>(Collections.nCopies(texts.size(), null));
+        List<CompletableFuture<Void>> batches = new ArrayList<>();
+
+        int offset = 0;
+        try {
+            while (offset < texts.size()) {
+                if (batches.stream().anyMatch(CompletableFuture::isCompletedExceptionally)) {
+                    break;
+                }
+
+                int size = Math.min(batchSize.current(), texts.size() - offset);
+                List<String> batch = texts.subList(offset, offset + size);
+                int batchOffset = offset;
+
+                LlmScheduler.Permit permit = scheduler.acquire(
+                        LlmScheduler.Operation.EMBED, LlmScheduler.Priority.BACKGROUND);
+                long startedAt = System.nanoTime();
+                batches.add(client.embedAsync(batch)
+                        .whenComplete((result, error) -> {
+                            permit.close();
+                            batchSize.record(size, System.nanoTime() - startedAt, error == null);
+                        })
+                        .thenAccept(result -> {
+                            for (int i = 0; i < result.size(); i++) {
+                                embeddings.set(batchOffset + i, result.get(i));
+                            }
+                        }));
+                offset += size;
             }
 
-            String responseBody = response.body().string();
-            JsonObject jsonResponse = gson.fromJson(responseBody, JsonObject.class);
-
-            List<Double> embedding = gson.fromJson(
-                    jsonResponse.get("embedding"),
-                    List.class
-            );
-
-            log.debug("Generated embedding with dimension: {}", embedding.size());
-            return embedding;
+            CompletableFuture.allOf(batches.toArray(new CompletableFuture[0])).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while generating embeddings", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException("Failed to generate embeddings", cause);
         }
+
+        log.debug("Generated {} embeddings in {} batches", embeddings.size(), batches.size());
+        return embeddings;
     }
 
     public String generateText(String prompt) throws IOException {
-        log.debug("Generating text for prompt: {}", prompt.substring(0, Math.min(100, prompt.length())));
-
-        JsonObject requestBody = new JsonObject();
-        requestBody.addProperty("model", model);
-        requestBody.addProperty("prompt", prompt);
-        requestBody.addProperty("stream", false);
-
-        RequestBody body = RequestBody.create(
-                gson.toJson(requestBody),
-                MediaType.parse("application/json")
-        );
-
-        Request request = new Request.Builder()
-                .url(ollamaUrl + "/api/generate")
-                .post(body)
-                .build();
-
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("Failed to generate text: " + response);
-            }
+        return scheduler.call(LlmScheduler.Operation.GENERATE, LlmScheduler.Priority.BACKGROUND,
+                () -> client.generate(prompt));
+    }
+
+    /**
+     * Additive-increase/multiplicative-decrease controller for the embedding batch size.
+     * Grows while batches finish under the target latency, backs off when they are slow or fail.
+     */
+    private static class AdaptiveBatchSize {
+
+        private final int max;
+        private final long targetNanos;
+        private final AtomicInteger size;
 
-            String responseBody = response.body().string();
-            JsonObject jsonResponse = gson.fromJson(responseBody, JsonObject.class);
+        AdaptiveBatchSize(int initial, int max, long targetNanos) {
+            this.max = max;
+            this.targetNanos = targetNanos;
+            this.size = new AtomicInteger(Math.max(1, Math.min(initial, max)));
+        }
+
+        int current() {
+            return size.get();
+        }
 
-            return jsonResponse.get("response").getAsString();
+        void record(int batchSize, long elapsedNanos, boolean success) {
+            if (!success) {
+                size.updateAndGet(s -> Math.max(1, s / 2));
+            } else if (elapsedNanos > targetNanos) {
+                size.updateAndGet(s -> Math.max(1, s * 3 / 4));
+            } else if (batchSize >= size.get()) {
+                // Only grow on full batches, a short tail batch says nothing about capacity
+                size.updateAndGet(s -> Math.min(max, s + Math.max(1, s / 4)));
+            }
         }
     }
 }
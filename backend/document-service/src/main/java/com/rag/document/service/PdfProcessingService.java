@@ -1,8 +1,12 @@
 package com.rag.document.service;
 
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
@@ -12,35 +16,69 @@ import java.io.IOException;
 @Service
 public class PdfProcessingService {
 
-    public String extractTextFromPdf(File pdfFile) throws IOException {
-        log.info("Extracting text from PDF: {}", pdfFile.getName());
+    @Value("${pdf.pages-per-window}")
+    private int pagesPerWindow;
 
-        try (PDDocument document = PDDocument.load(pdfFile)) {
-            PDFTextStripper stripper = new PDFTextStripper();
-            String text = stripper.getText(document);
+    @Value("${pdf.max-main-memory-mb}")
+    private long maxMainMemoryMb;
 
-            log.info("Extracted {} characters from PDF", text.length());
-            return text;
-        }
+    @Value("${chunking.target-tokens}")
+    private int chunkTargetTokens;
+
+    @Value("${chunking.overlap-tokens}")
+    private int chunkOverlapTokens;
+
+    private TextChunker chunker;
+
+    @PostConstruct
+    public void init() {
+        chunker = new TextChunker(chunkTargetTokens, chunkOverlapTokens);
     }
 
-    public String[] splitTextIntoChunks(String text, int chunkSize, int overlap) {
-        if (text == null || text.isEmpty()) {
-            return new String[0];
-        }
+    /**
+     * Extracts text window by window ({@code pdf.pages-per-window} pages at a time) and hands
+     * each window to the handler before reading the next, so only one window of text is held
+     * in memory. Parser scratch data beyond {@code pdf.max-main-memory-mb} spills to temp files.
+     *
+     * @return the number of pages in the document
+     */
+    public int extractTextInWindows(File pdfFile, PageWindowHandler handler) throws IOException {
+        log.info("Extracting text from PDF: {}", pdfFile.getName());
+
+        MemoryUsageSetting memoryUsage = MemoryUsageSetting.setupMixed(maxMainMemoryMb * 1024 * 1024);
+        try (PDDocument document = Loader.loadPDF(pdfFile, memoryUsage.streamCache)) {
+            int totalPages = document.getNumberOfPages();
+            PDFTextStripper stripper = new PDFTextStripper();
+            // Emit plain newlines so the chunker can recognise line and paragraph breaks
+            stripper.setLineSeparator("\n");
+            stripper.setParagraphEnd("\n");
+            long characters = 0;
+
+            for (int startPage = 1; startPage <= totalPages; startPage += pagesPerWindow) {
+                int endPage = Math.min(totalPages, startPage + pagesPerWindow - 1);
+                stripper.setStartPage(startPage);
+                stripper.setEndPage(endPage);
 
-        // Simple chunking strategy
-        int length = text.length();
-        int numChunks = (int) Math.ceil((double) length / (chunkSize - overlap));
-        String[] chunks = new String[numChunks];
+                String text = stripper.getText(document);
+                characters += text.length();
+                handler.handle(text, startPage, endPage, totalPages);
+            }
 
-        for (int i = 0; i < numChunks; i++) {
-            int start = Math.max(0, i * (chunkSize - overlap));
-            int end = Math.min(length, start + chunkSize);
-            chunks[i] = text.substring(start, end);
+            log.info("Extracted {} characters from {} pages", characters, totalPages);
+            return totalPages;
         }
+    }
+
+    /**
+     * Returns a chunker sized by {@code chunking.target-tokens} with
+     * {@code chunking.overlap-tokens} of overlap between consecutive chunks.
+     */
+    public TextChunker chunker() {
+        return chunker;
+    }
 
-        log.info("Split text into {} chunks", chunks.length);
-        return chunks;
+    @FunctionalInterface
+    public interface PageWindowHandler {
+        void handle(String text, int startPage, int endPage, int totalPages) throws IOException;
     }
 }
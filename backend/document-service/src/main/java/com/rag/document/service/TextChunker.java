@@ -0,0 +1,272 @@
+package com.rag.document.service;
+
+import java.nio.CharBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Splits text into overlapping chunks sized by an approximate token count, cutting at paragraph,
+ * sentence, line or word boundaries where possible.
+ * <p>
+ * Chunks are emitted lazily as {@link CharSequence} views over the input, so finding boundaries
+ * and overlaps copies no text. A caller that keeps a chunk beyond the view's lifetime copies it
+ * once; ingestion does, since each chunk is hashed, embedded and indexed.
+ * <p>
+ * Tokens are estimated without a tokenizer: four ASCII characters per token, and one token per
+ * non-ASCII character (Hangul and CJK usually cost one or more tokens per character).
+ */
+public class TextChunker {
+
+    // Token estimates are tracked in quarter tokens so ASCII characters can be counted as integers
+    private static final int ASCII_COST = 1;
+    private static final int NON_ASCII_COST = 4;
+
+    private final int targetCost;
+    private final int overlapCost;
+
+    public TextChunker(int targetTokens, int overlapTokens) {
+        if (targetTokens <= 0 || overlapTokens < 0 || overlapTokens >= targetTokens) {
+            throw new IllegalArgumentException("Invalid chunk size " + targetTokens + " with overlap " + overlapTokens);
+        }
+        this.targetCost = targetTokens * 4;
+        this.overlapCost = overlapTokens * 4;
+    }
+
+    /**
+     * Lazily chunks a complete text. The returned chunks are views into {@code text}.
+     */
+    public Iterator<CharSequence> chunks(CharSequence text) {
+        return new ChunkIterator(text, 0, 0, true);
+    }
+
+    public Stream<CharSequence> stream(CharSequence text) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+                chunks(text), Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Starts an incremental chunking session for text that arrives in pieces, such as PDF page
+     * windows.
+     */
+    public Session session() {
+        return new Session();
+    }
+
+    /**
+     * Estimates the token count of a piece of text with the same heuristic used for sizing chunks.
+     */
+    public static int estimateTokens(CharSequence text) {
+        int cost = 0;
+        for (int i = 0; i < text.length(); i++) {
+            cost += text.charAt(i) < 128 ? ASCII_COST : NON_ASCII_COST;
+        }
+        return (cost + 3) / 4;
+    }
+
+    /**
+     * Incremental chunking over text appended piece by piece. Only complete chunks are emitted
+     * until {@link #drain(boolean)} is called with {@code endOfInput}; the unfinished tail stays
+     * buffered for the next piece.
+     */
+    public final class Session {
+
+        private final StringBuilder buffer = new StringBuilder();
+        private ChunkIterator current;
+
+        public void append(CharSequence text) {
+            compact();
+            buffer.append(text);
+        }
+
+        /**
+         * Emits the chunks that are complete so far, or every remaining chunk if {@code endOfInput}.
+         * The returned views are only valid until the next call to {@link #append} or {@code drain}.
+         */
+        public Iterator<CharSequence> drain(boolean endOfInput) {
+            compact();
+            current = new ChunkIterator(buffer, 0, current == null ? 0 : current.coveredUntil, endOfInput);
+            return current;
+        }
+
+        private void compact() {
+            if (current == null) {
+                return;
+            }
+            if (current.hasNext()) {
+                throw new IllegalStateException("Chunks from the previous drain were not fully consumed");
+            }
+            // Drop the prefix that no future chunk can start in
+            int consumed = current.position;
+            buffer.delete(0, consumed);
+            current.coveredUntil = Math.max(0, current.coveredUntil - consumed);
+            current.position = 0;
+        }
+    }
+
+    private class ChunkIterator implements Iterator<CharSequence> {
+
+        private final CharSequence text;
+        private final boolean endOfInput;
+        private int position;
+        // Offset up to which text has already been emitted as part of a chunk
+        private int coveredUntil;
+        private CharSequence next;
+        private boolean done;
+
+        ChunkIterator(CharSequence text, int position, int coveredUntil, boolean endOfInput) {
+            this.text = text;
+            this.position = position;
+            this.coveredUntil = coveredUntil;
+            this.endOfInput = endOfInput;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !done) {
+                advance();
+            }
+            return next != null;
+        }
+
+        @Override
+        public CharSequence next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            CharSequence chunk = next;
+            next = null;
+            return chunk;
+        }
+
+        private void advance() {
+            int length = text.length();
+            int start = skipWhitespace(position, length);
+            int end = findEnd(start, length);
+
+            // Incomplete chunk at the end of buffered input, or only already-emitted overlap left
+            if (start >= length || end < 0 || (end == length && end <= coveredUntil)) {
+                done = true;
+                if (endOfInput) {
+                    position = length;
+                    coveredUntil = length;
+                }
+                return;
+            }
+
+            next = CharBuffer.wrap(text, start, trimEnd(start, end));
+            coveredUntil = end;
+            position = end == length ? length : overlapStart(start, end);
+        }
+
+        /**
+         * Returns the exclusive end of the chunk starting at {@code start}, or -1 if the input
+         * ends before the chunk is full and more input is expected.
+         */
+        private int findEnd(int start, int length) {
+            int paragraph = -1;
+            int sentence = -1;
+            int line = -1;
+            int word = -1;
+            int cost = 0;
+
+            int i = start;
+            for (; i < length; i++) {
+                char c = text.charAt(i);
+                cost += c < 128 ? ASCII_COST : NON_ASCII_COST;
+                if (cost > targetCost) {
+                    break;
+                }
+
+                if (c == '\n') {
+                    if (isBlankLineAhead(i + 1, length)) {
+                        paragraph = i + 1;
+                    } else {
+                        line = i + 1;
+                    }
+                } else if (isSentenceEnd(c) && (i + 1 == length || Character.isWhitespace(text.charAt(i + 1)))) {
+                    sentence = i + 1;
+                } else if (Character.isWhitespace(c)) {
+                    word = i;
+                }
+            }
+
+            if (i == length) {
+                return endOfInput ? length : -1;
+            }
+
+            // Prefer the strongest boundary that still keeps the chunk at least half full
+            int minimumEnd = start + (i - start) / 2;
+            for (int boundary : new int[]{paragraph, sentence, line, word}) {
+                if (boundary > minimumEnd) {
+                    return boundary;
+                }
+            }
+            int end = Character.isLowSurrogate(text.charAt(i)) ? i - 1 : i;
+            // Always take at least one code point, even a surrogate pair that alone exceeds the
+            // target, so the chunk is never empty and the next one starts further on
+            return end > start ? end : start + Character.charCount(Character.codePointAt(text, start));
+        }
+
+        /**
+         * Picks where the next chunk starts: roughly {@code overlapTokens} before {@code end},
+         * moved forward to a sentence start, or failing that a word start.
+         */
+        private int overlapStart(int start, int end) {
+            int cost = 0;
+            int from = end;
+            while (from > start && cost < overlapCost) {
+                from--;
+                cost += text.charAt(from) < 128 ? ASCII_COST : NON_ASCII_COST;
+            }
+
+            int wordStart = -1;
+            for (int i = Math.max(from, start + 1); i < end; i++) {
+                char previous = text.charAt(i - 1);
+                if (Character.isWhitespace(previous) && !Character.isWhitespace(text.charAt(i))) {
+                    if (previous == '\n' || (i >= 2 && isSentenceEnd(text.charAt(i - 2)))) {
+                        return i;
+                    }
+                    if (wordStart < 0) {
+                        wordStart = i;
+                    }
+                }
+            }
+            return wordStart > start ? wordStart : end;
+        }
+
+        private boolean isBlankLineAhead(int from, int length) {
+            for (int i = from; i < length; i++) {
+                char c = text.charAt(i);
+                if (c == '\n') {
+                    return true;
+                }
+                if (!Character.isWhitespace(c)) {
+                    return false;
+                }
+            }
+            return false;
+        }
+
+        private int skipWhitespace(int from, int length) {
+            while (from < length && Character.isWhitespace(text.charAt(from))) {
+                from++;
+            }
+            return from;
+        }
+
+        private int trimEnd(int start, int end) {
+            while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+                end--;
+            }
+            return end;
+        }
+    }
+
+    private static boolean isSentenceEnd(char c) {
+        return c == '.' || c == '!' || c == '?' || c == '。' || c == '！' || c == '？';
+    }
+}
@@ -1,21 +1,29 @@
 package com.rag.document.service;
 
-import com.google.gson.Gson;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.opensearch.action.admin.indices.create.CreateIndexRequest;
 import org.opensearch.action.admin.indices.delete.DeleteIndexRequest;
-import org.opensearch.action.index.IndexRequest;
-import org.opensearch.action.index.IndexResponse;
+import org.opensearch.action.admin.indices.settings.put.UpdateSettingsRequest;
 import org.opensearch.action.search.SearchRequest;
 import org.opensearch.action.search.SearchResponse;
 import org.opensearch.client.RequestOptions;
 import org.opensearch.client.RestHighLevelClient;
+import org.opensearch.client.indices.CreateIndexRequest;
 import org.opensearch.client.indices.GetIndexRequest;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.xcontent.XContentFactory;
 import org.opensearch.common.xcontent.XContentType;
+import org.opensearch.core.common.bytes.BytesReference;
+import org.opensearch.core.xcontent.XContentBuilder;
+import org.opensearch.index.query.QueryBuilder;
 import org.opensearch.index.query.QueryBuilders;
+import org.opensearch.index.query.functionscore.ScoreFunctionBuilders;
+import org.opensearch.index.reindex.BulkByScrollResponse;
+import org.opensearch.index.reindex.DeleteByQueryRequest;
+import org.opensearch.index.reindex.ReindexRequest;
 import org.opensearch.search.SearchHit;
 import org.opensearch.search.builder.SearchSourceBuilder;
+import org.opensearch.search.sort.SortOrder;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -28,8 +36,9 @@ import java.util.*;
 @RequiredArgsConstructor
 public class VectorStoreService {
 
+    private static final int COPY_PAGE_SIZE = 100;
+
     private final RestHighLevelClient client;
-    private final Gson gson;
 
     @Value("${opensearch.index}")
     private String indexName;
@@ -37,11 +46,47 @@ public class VectorStoreService {
     @Value("${ollama.embedding-dimension}")
     private int embeddingDimension;
 
+    @Value("${opensearch.knn.engine}")
+    private String knnEngine;
+
+    @Value("${opensearch.knn.space-type}")
+    private String knnSpaceType;
+
+    @Value("${opensearch.knn.m}")
+    private int hnswM;
+
+    @Value("${opensearch.knn.ef-construction}")
+    private int hnswEfConstruction;
+
+    @Value("${opensearch.knn.ef-search}")
+    private int hnswEfSearch;
+
+    @Value("${opensearch.bulk.max-actions}")
+    private int bulkMaxActions;
+
+    @Value("${opensearch.bulk.max-size-mb}")
+    private int bulkMaxSizeMb;
+
+    @Value("${opensearch.bulk.flush-interval-ms}")
+    private long bulkFlushIntervalMs;
+
+    @Value("${opensearch.bulk.concurrent-requests}")
+    private int bulkConcurrentRequests;
+
+    @Value("${opensearch.bulk.max-retries}")
+    private int bulkMaxRetries;
+
+    @Value("${opensearch.bulk.retry-backoff-ms}")
+    private long bulkRetryBackoffMs;
+
+    @Value("${opensearch.bulk.close-timeout-ms}")
+    private long bulkCloseTimeoutMs;
+
     @PostConstruct
     public void initialize() {
         try {
             if (!indexExists()) {
-                createIndex();
+                createIndex(indexName);
             }
         } catch (IOException e) {
             log.error("Failed to initialize OpenSearch index", e);
@@ -53,8 +98,8 @@ public class VectorStoreService {
         return client.indices().exists(request, RequestOptions.DEFAULT);
     }
 
-    private void createIndex() throws IOException {
-        log.info("Creating OpenSearch index: {}", indexName);
+    private void createIndex(String name) throws IOException {
+        log.info("Creating OpenSearch index: {}", name);
 
         String mappings = String.format("""
             {
@@ -66,7 +111,16 @@ public class VectorStoreService {
                   "text": { "type": "text" },
                   "embedding": {
                     "type": "knn_vector",
-                    "dimension": %d
+                    "dimension": %d,
+                    "method": {
+                      "name": "hnsw",
+                      "engine": "%s",
+                      "space_type": "%s",
+                      "parameters": {
+                        "m": %d,
+                        "ef_construction": %d
+                      }
+                    }
                   },
                   "metadata": { "type": "object" },
                   "createdAt": { "type": "date" }
@@ -75,48 +129,274 @@ public class VectorStoreService {
               "settings": {
                 "index": {
                   "knn": true,
-                  "knn.algo_param.ef_search": 100
+                  "knn.algo_param.ef_search": %d
                 }
               }
             }
-            """, embeddingDimension);
+            """, embeddingDimension, knnEngine, knnSpaceType, hnswM, hnswEfConstruction, hnswEfSearch);
 
-        CreateIndexRequest request = new CreateIndexRequest(indexName);
+        CreateIndexRequest request = new CreateIndexRequest(name);
         request.source(mappings, XContentType.JSON);
 
         client.indices().create(request, RequestOptions.DEFAULT);
         log.info("Index created successfully");
     }
 
-    public String storeVector(Long documentId, Long userId, int chunkIndex,
-                              String text, List<Double> embedding,
-                              Map<String, Object> metadata) throws IOException {
-        Map<String, Object> document = new HashMap<>();
-        document.put("documentId", documentId);
-        document.put("userId", userId);
-        document.put("chunkIndex", chunkIndex);
-        document.put("text", text);
-        document.put("embedding", embedding);
-        document.put("metadata", metadata);
-        document.put("createdAt", new Date());
+    /**
+     * Opens a bulk session for indexing the chunks of one document.
+     * Callers must close it to flush the remaining buffered chunks.
+     */
+    public BulkIndexSession openBulkSession() {
+        return new BulkIndexSession(client, indexName, new BulkIndexSession.Settings(
+                bulkMaxActions,
+                bulkMaxSizeMb,
+                bulkFlushIntervalMs,
+                bulkConcurrentRequests,
+                bulkMaxRetries,
+                bulkRetryBackoffMs,
+                bulkCloseTimeoutMs
+        ));
+    }
+
+    /**
+     * Approximate nearest-neighbour search over the HNSW graph, pre-filtered to one user's chunks.
+     */
+    public List<Map<String, Object>> searchSimilar(float[] queryEmbedding, Long userId, int topK) throws IOException {
+        return searchSimilar(indexName, queryEmbedding, userId, topK);
+    }
+
+    private List<Map<String, Object>> searchSimilar(String index, float[] queryEmbedding, Long userId,
+                                                    int topK) throws IOException {
+        XContentBuilder knn = XContentFactory.smileBuilder()
+                .startObject()
+                .startObject("knn")
+                .startObject("embedding")
+                .array("vector", queryEmbedding)
+                .field("k", topK);
+        userFilter(knn.field("filter"), userId)
+                .endObject()
+                .endObject()
+                .endObject();
+
+        return search(index, QueryBuilders.wrapperQuery(BytesReference.bytes(knn)), topK);
+    }
+
+    /**
+     * Exact (brute-force) k-NN over one user's chunks using the k-NN plugin's scoring script.
+     * Used as ground truth when measuring the recall of {@link #searchSimilar}.
+     */
+    private List<Map<String, Object>> exactSearch(String index, float[] queryEmbedding, Long userId,
+                                                  int topK) throws IOException {
+        XContentBuilder scriptScore = XContentFactory.smileBuilder()
+                .startObject()
+                .startObject("script_score");
+        userFilter(scriptScore.field("query"), userId)
+                .startObject("script")
+                .field("source", "knn_score")
+                .field("lang", "knn")
+                .startObject("params")
+                .field("field", "embedding")
+                .array("query_value", queryEmbedding)
+                .field("space_type", knnSpaceType)
+                .endObject()
+                .endObject()
+                .endObject()
+                .endObject();
+
+        return search(index, QueryBuilders.wrapperQuery(BytesReference.bytes(scriptScore)), topK);
+    }
+
+    /**
+     * Returns the ids and embeddings of up to {@code count} randomly chosen chunks of one user.
+     */
+    public List<SampledEmbedding> sampleEmbeddings(Long userId, int count) throws IOException {
+        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder()
+                .query(QueryBuilders.functionScoreQuery(
+                        QueryBuilders.termQuery("userId", userId),
+                        ScoreFunctionBuilders.randomFunction()))
+                .fetchSource(new String[]{"embedding"}, null)
+                .size(count);
 
-        IndexRequest request = new IndexRequest(indexName)
-                .source(gson.toJson(document), XContentType.JSON);
+        SearchResponse response = client.search(
+                new SearchRequest(indexName).source(searchSourceBuilder), RequestOptions.DEFAULT);
 
-        IndexResponse response = client.index(request, RequestOptions.DEFAULT);
-        log.debug("Stored vector with ID: {}", response.getId());
+        List<SampledEmbedding> embeddings = new ArrayList<>();
+        for (SearchHit hit : response.getHits().getHits()) {
+            float[] vector = toVector(hit.getSourceAsMap().get("embedding"));
+            if (vector != null) {
+                embeddings.add(new SampledEmbedding(hit.getId(), vector));
+            }
+        }
+        return embeddings;
+    }
 
-        return response.getId();
+    /**
+     * An indexed chunk's embedding, with the chunk id so searches can tell the chunk itself apart
+     * from its neighbours.
+     */
+    public record SampledEmbedding(String chunkId, float[] embedding) {
     }
 
-    public List<Map<String, Object>> searchSimilar(List<Double> queryEmbedding, int topK) throws IOException {
-        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
-        searchSourceBuilder.query(QueryBuilders.matchAllQuery());
-        searchSourceBuilder.size(topK);
+    /**
+     * Re-indexes every chunk of {@code sourceDocumentId} under a new document and user, reusing
+     * the stored text and embeddings. Used when an upload has the same content hash as a
+     * document that was already ingested.
+     *
+     * @return the number of chunks copied
+     */
+    public int copyDocumentChunks(Long sourceDocumentId, Long documentId, Long userId,
+                                  Map<String, Object> metadataOverrides) throws IOException {
+        int copied = 0;
+        Object[] searchAfter = null;
 
-        // Note: For actual k-NN search, you would use a k-NN query plugin
-        // This is a simplified version using match_all
-        SearchRequest searchRequest = new SearchRequest(indexName);
+        try (BulkIndexSession session = openBulkSession()) {
+            while (true) {
+                SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder()
+                        .query(QueryBuilders.termQuery("documentId", sourceDocumentId))
+                        .sort("chunkIndex", SortOrder.ASC)
+                        .size(COPY_PAGE_SIZE);
+                if (searchAfter != null) {
+                    searchSourceBuilder.searchAfter(searchAfter);
+                }
+
+                SearchResponse response = client.search(
+                        new SearchRequest(indexName).source(searchSourceBuilder), RequestOptions.DEFAULT);
+                SearchHit[] hits = response.getHits().getHits();
+
+                for (SearchHit hit : hits) {
+                    Map<String, Object> source = hit.getSourceAsMap();
+                    Map<String, Object> metadata = new HashMap<>();
+                    if (source.get("metadata") instanceof Map<?, ?> original) {
+                        original.forEach((key, value) -> metadata.put(String.valueOf(key), value));
+                    }
+                    metadata.putAll(metadataOverrides);
+
+                    session.add(documentId, userId,
+                            ((Number) source.get("chunkIndex")).intValue(),
+                            (String) source.get("text"),
+                            toVector(source.get("embedding")),
+                            metadata);
+                    copied++;
+                }
+
+                if (hits.length < COPY_PAGE_SIZE) {
+                    break;
+                }
+                searchAfter = hits[hits.length - 1].getSortValues();
+            }
+        }
+
+        log.info("Copied {} chunks from document {} to document {}", copied, sourceDocumentId, documentId);
+        return copied;
+    }
+
+    /**
+     * Copies one user's chunks into a new scratch index with the same mapping, so that its
+     * {@code ef_search} can be changed without affecting live searches. Callers must remove it
+     * with {@link EvaluationIndex#close()}.
+     */
+    public EvaluationIndex createEvaluationIndex(Long userId) throws IOException {
+        String name = indexName + "-eval-" + UUID.randomUUID();
+        createIndex(name);
+        try {
+            ReindexRequest request = new ReindexRequest()
+                    .setSourceIndices(indexName)
+                    .setDestIndex(name)
+                    .setSourceQuery(QueryBuilders.termQuery("userId", userId))
+                    .setRefresh(true);
+            BulkByScrollResponse response = client.reindex(request, RequestOptions.DEFAULT);
+            log.info("Copied {} chunks of user {} to evaluation index {}", response.getCreated(), userId, name);
+        } catch (IOException | RuntimeException e) {
+            deleteIndex(name);
+            throw e;
+        }
+        return new EvaluationIndex(name);
+    }
+
+    private void deleteIndex(String name) {
+        try {
+            client.indices().delete(new DeleteIndexRequest(name), RequestOptions.DEFAULT);
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to delete index {}", name, e);
+        }
+    }
+
+    /**
+     * Scratch copy of one user's chunks for {@link KnnEvaluationService}. Settings changed here
+     * never reach the live index.
+     */
+    public final class EvaluationIndex implements AutoCloseable {
+
+        private final String name;
+
+        private EvaluationIndex(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Changes the HNSW {@code ef_search} of the copy. Applies to the nmslib and faiss engines;
+         * the lucene engine sizes its candidate queue from {@code k} instead.
+         */
+        public void updateEfSearch(int efSearch) throws IOException {
+            UpdateSettingsRequest request = new UpdateSettingsRequest(name)
+                    .settings(Settings.builder().put("index.knn.algo_param.ef_search", efSearch));
+            client.indices().putSettings(request, RequestOptions.DEFAULT);
+        }
+
+        public List<Map<String, Object>> searchSimilar(float[] queryEmbedding, Long userId, int topK)
+                throws IOException {
+            return VectorStoreService.this.searchSimilar(name, queryEmbedding, userId, topK);
+        }
+
+        public List<Map<String, Object>> exactSearch(float[] queryEmbedding, Long userId, int topK)
+                throws IOException {
+            return VectorStoreService.this.exactSearch(name, queryEmbedding, userId, topK);
+        }
+
+        @Override
+        public void close() {
+            deleteIndex(name);
+        }
+    }
+
+    /**
+     * Removes all chunks of a document. Refreshes the index, so searches and document-set
+     * fingerprints (which scope the chat service's answer cache) stop seeing the chunks at once.
+     */
+    public void deleteDocumentChunks(Long documentId) throws IOException {
+        DeleteByQueryRequest request = new DeleteByQueryRequest(indexName)
+                .setQuery(QueryBuilders.termQuery("documentId", documentId))
+                .setRefresh(true);
+        BulkByScrollResponse response = client.deleteByQuery(request, RequestOptions.DEFAULT);
+        log.info("Deleted {} chunks of document {}", response.getDeleted(), documentId);
+    }
+
+    static float[] toVector(Object embedding) {
+        if (!(embedding instanceof List<?> values)) {
+            return null;
+        }
+        float[] vector = new float[values.size()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = ((Number) values.get(i)).floatValue();
+        }
+        return vector;
+    }
+
+    private XContentBuilder userFilter(XContentBuilder builder, Long userId) throws IOException {
+        return builder.startObject()
+                .startObject("term")
+                .field("userId", userId)
+                .endObject()
+                .endObject();
+    }
+
+    private List<Map<String, Object>> search(String index, QueryBuilder query, int size) throws IOException {
+        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder()
+                .query(query)
+                .fetchSource(null, new String[]{"embedding"})
+                .size(size);
+
+        SearchRequest searchRequest = new SearchRequest(index);
         searchRequest.source(searchSourceBuilder);
 
         SearchResponse response = client.search(searchRequest, RequestOptions.DEFAULT);
@@ -124,15 +404,11 @@ public class VectorStoreService {
         List<Map<String, Object>> results = new ArrayList<>();
         for (SearchHit hit : response.getHits().getHits()) {
             Map<String, Object> result = hit.getSourceAsMap();
+            result.put("id", hit.getId());
             result.put("score", hit.getScore());
             results.add(result);
         }
 
         return results;
     }
-
-    public VectorStoreService(RestHighLevelClient client) {
-        this.client = client;
-        this.gson = new Gson();
-    }
 }
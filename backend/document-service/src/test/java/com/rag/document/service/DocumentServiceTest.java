@@ -0,0 +1,115 @@
+package com.rag.document.service;
+
+import com.rag.document.entity.Document;
+import com.rag.document.repository.DocumentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DocumentServiceTest {
+
+    private final DocumentRepository documentRepository = mock(DocumentRepository.class);
+    private final IngestionService ingestionService = mock(IngestionService.class);
+    private final DocumentService service = new DocumentService(documentRepository, ingestionService,
+            mock(VectorStoreService.class));
+    private final Map<Long, Document> saved = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+
+    @TempDir
+    Path uploadDir;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "uploadDir", uploadDir.toString());
+        when(ingestionService.submit(anyLong())).thenReturn(true);
+        when(documentRepository.save(any(Document.class))).thenAnswer(invocation -> {
+            Document document = invocation.getArgument(0);
+            document.setId(ids.incrementAndGet());
+            saved.put(document.getId(), document);
+            return document;
+        });
+        when(documentRepository.findById(anyLong()))
+                .thenAnswer(invocation -> Optional.ofNullable(saved.get(invocation.<Long>getArgument(0))));
+    }
+
+    @Test
+    void identicalUploadsShareOneStoredFile() throws Exception {
+        Document first = upload("same bytes");
+        Document second = upload("same bytes");
+
+        assertThat(second.getFilePath()).isEqualTo(first.getFilePath());
+        assertThat(storedFiles()).containsExactly(Path.of(first.getFilePath()).getFileName().toString());
+    }
+
+    @Test
+    void keepsTheFileUntilItsLastDocumentIsDeleted() throws Exception {
+        Document first = upload("same bytes");
+        Document second = upload("same bytes");
+        Path stored = Path.of(first.getFilePath());
+
+        when(documentRepository.existsByContentHashAndIdNot(first.getContentHash(), first.getId())).thenReturn(true);
+        service.deleteDocument(first.getId(), 7L);
+        assertThat(stored).exists();
+
+        when(documentRepository.existsByContentHashAndIdNot(second.getContentHash(), second.getId())).thenReturn(false);
+        service.deleteDocument(second.getId(), 7L);
+        assertThat(stored).doesNotExist();
+    }
+
+    @Test
+    void anUploadRacingTheLastDeleteKeepsItsFile() throws Exception {
+        Document existing = upload("same bytes");
+        CountDownLatch checking = new CountDownLatch(1);
+        // The delete finds no other reference because the new upload's row is not saved yet
+        when(documentRepository.existsByContentHashAndIdNot(anyString(), anyLong())).thenAnswer(invocation -> {
+            checking.countDown();
+            Thread.sleep(200);
+            return false;
+        });
+
+        CompletableFuture<Void> delete = CompletableFuture.runAsync(() -> {
+            try {
+                service.deleteDocument(existing.getId(), 7L);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertThat(checking.await(5, TimeUnit.SECONDS)).isTrue();
+        Document uploaded = upload("same bytes");
+        delete.get(5, TimeUnit.SECONDS);
+
+        assertThat(Path.of(uploaded.getFilePath())).exists();
+    }
+
+    private Document upload(String content) throws Exception {
+        MockMultipartFile file = new MockMultipartFile("file", "a.pdf", "application/pdf",
+                content.getBytes(StandardCharsets.UTF_8));
+        return saved.get(service.uploadDocument(file, 7L).getId());
+    }
+
+    private String[] storedFiles() throws Exception {
+        try (var files = Files.list(uploadDir)) {
+            return files.map(path -> path.getFileName().toString()).toArray(String[]::new);
+        }
+    }
+}
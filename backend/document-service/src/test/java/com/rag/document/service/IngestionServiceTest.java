@@ -0,0 +1,114 @@
+package com.rag.document.service;
+
+import com.rag.document.entity.Document;
+import com.rag.document.repository.DocumentRepository;
+import com.rag.ollama.LlmOverloadedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IngestionServiceTest {
+
+    private static final int OVERLOAD_MAX_RETRIES = 2;
+
+    private final DocumentRepository documentRepository = mock(DocumentRepository.class);
+    private final PdfProcessingService pdfProcessingService = mock(PdfProcessingService.class);
+    private final EmbeddingCacheService embeddingCacheService = mock(EmbeddingCacheService.class);
+    private final VectorStoreService vectorStoreService = mock(VectorStoreService.class);
+    private final IngestionService service = new IngestionService(documentRepository, pdfProcessingService,
+            embeddingCacheService, vectorStoreService);
+
+    private final Document document = Document.builder()
+            .id(1L).userId(7L).filePath("missing.pdf").originalFilename("a.pdf").status("PROCESSING")
+            .build();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ReflectionTestUtils.setField(service, "workerThreads", 1);
+        ReflectionTestUtils.setField(service, "queueCapacity", 10);
+        ReflectionTestUtils.setField(service, "offerTimeoutMs", 100L);
+        ReflectionTestUtils.setField(service, "extractedTextPreviewChars", 100);
+        ReflectionTestUtils.setField(service, "overloadMaxRetries", OVERLOAD_MAX_RETRIES);
+        when(documentRepository.findById(1L)).thenReturn(Optional.of(document));
+        when(documentRepository.findByStatus("PROCESSING")).thenReturn(List.of(document));
+        when(vectorStoreService.openBulkSession()).thenReturn(mock(BulkIndexSession.class));
+        when(pdfProcessingService.chunker()).thenReturn(new TextChunker(50, 10));
+        service.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        service.stop();
+    }
+
+    @Test
+    void keepsAnOverloadedDocumentPendingForTheRecoverySweep() throws IOException {
+        when(pdfProcessingService.extractTextInWindows(any(File.class), any()))
+                .thenThrow(new LlmOverloadedException("Ollama is overloaded (embed queue full), please retry later"))
+                .thenReturn(3);
+
+        service.submit(1L);
+        verify(pdfProcessingService, timeout(5000)).extractTextInWindows(any(File.class), any());
+        assertThat(document.getStatus()).isEqualTo("PROCESSING");
+
+        awaitStatus("COMPLETED");
+        verify(documentRepository, times(1)).save(document);
+    }
+
+    @Test
+    void failsADocumentThatStaysOverloadedPastTheRetryLimit() throws IOException {
+        when(pdfProcessingService.extractTextInWindows(any(File.class), any()))
+                .thenThrow(new LlmOverloadedException("Ollama is overloaded (embed timeout), please retry later"));
+
+        awaitStatus("FAILED");
+
+        assertThat(mockingDetails(pdfProcessingService).getInvocations().stream()
+                .filter(invocation -> invocation.getMethod().getName().equals("extractTextInWindows")))
+                .hasSize(OVERLOAD_MAX_RETRIES + 1);
+        verify(documentRepository, times(1)).save(document);
+    }
+
+    @Test
+    void failsOtherErrorsRightAway() throws IOException {
+        when(pdfProcessingService.extractTextInWindows(any(File.class), any()))
+                .thenThrow(new IOException("corrupt PDF"));
+
+        service.submit(1L);
+
+        verify(documentRepository, timeout(5000)).save(document);
+        assertThat(document.getStatus()).isEqualTo("FAILED");
+        verify(documentRepository, never()).findByStatus(any());
+    }
+
+    /** Runs the recovery sweep, as the scheduler would, until the document reaches {@code status}. */
+    private void awaitStatus(String status) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!status.equals(document.getStatus())) {
+            assertThat(System.nanoTime()).as("document status %s", document.getStatus()).isLessThan(deadline);
+            service.recoverPendingDocuments();
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.rag.document.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class KnnEvaluationServiceTest {
+
+    private final VectorStoreService vectorStoreService = mock(VectorStoreService.class);
+    private final VectorStoreService.EvaluationIndex index = mock(VectorStoreService.EvaluationIndex.class);
+    private final KnnEvaluationService service = new KnnEvaluationService(vectorStoreService);
+
+    @Test
+    void rejectsOutOfRangeParametersBeforeTouchingTheIndex() {
+        assertThatThrownBy(() -> service.evaluate(1L, List.of(100), KnnEvaluationService.MAX_SAMPLES + 1, 5))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.evaluate(1L, List.of(100), 20, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.evaluate(1L, List.of(100, 100, 100, 100, 100, 100, 100, 100, 100, 100, 100), 20, 5))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.evaluate(1L, List.of(KnnEvaluationService.MAX_EF_SEARCH + 1), 20, 5))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        verifyNoInteractions(vectorStoreService);
+    }
+
+    @Test
+    void measuresOnTheScratchCopyAndRemovesIt() throws IOException {
+        var query = new VectorStoreService.SampledEmbedding("q", new float[]{0.1f, 0.2f});
+        when(vectorStoreService.createEvaluationIndex(7L)).thenReturn(index);
+        when(vectorStoreService.sampleEmbeddings(7L, 2)).thenReturn(List.of(query, query));
+        when(index.exactSearch(any(), anyLong(), anyInt())).thenReturn(List.of(Map.of("id", "a"), Map.of("id", "b")));
+        when(index.searchSimilar(any(), anyLong(), anyInt())).thenReturn(List.of(Map.of("id", "a"), Map.of("id", "c")));
+
+        var results = service.evaluate(7L, List.of(50, 100), 2, 2);
+
+        assertThat(results).hasSize(2);
+        assertThat(results.get(0).getRecall()).isEqualTo(0.5);
+        verify(index).updateEfSearch(50);
+        verify(index).updateEfSearch(100);
+        verify(index).close();
+    }
+
+    @Test
+    void leavesTheSampledChunkOutOfBothResultSets() throws IOException {
+        var query = new VectorStoreService.SampledEmbedding("q", new float[]{0.1f, 0.2f});
+        when(vectorStoreService.createEvaluationIndex(7L)).thenReturn(index);
+        when(vectorStoreService.sampleEmbeddings(7L, 1)).thenReturn(List.of(query));
+        // Both searches find the sampled chunk first; only the approximate one misses "b"
+        when(index.exactSearch(any(), anyLong(), eq(3)))
+                .thenReturn(List.of(Map.of("id", "q"), Map.of("id", "a"), Map.of("id", "b")));
+        when(index.searchSimilar(any(), anyLong(), eq(3)))
+                .thenReturn(List.of(Map.of("id", "q"), Map.of("id", "a"), Map.of("id", "c")));
+
+        var results = service.evaluate(7L, List.of(50), 1, 2);
+
+        assertThat(results.get(0).getRecall()).isEqualTo(0.5);
+    }
+
+    @Test
+    void removesTheScratchCopyWhenASearchFails() throws IOException {
+        when(vectorStoreService.createEvaluationIndex(7L)).thenReturn(index);
+        when(vectorStoreService.sampleEmbeddings(7L, 1))
+                .thenReturn(List.of(new VectorStoreService.SampledEmbedding("q", new float[]{0.1f})));
+        when(index.exactSearch(any(), anyLong(), anyInt())).thenThrow(new IOException("boom"));
+
+        assertThatThrownBy(() -> service.evaluate(7L, List.of(50), 1, 1)).isInstanceOf(IOException.class);
+
+        verify(index).close();
+        // A failed run does not block the next one
+        doReturn(List.of()).when(index).exactSearch(any(), anyLong(), anyInt());
+        when(index.searchSimilar(any(), anyLong(), anyInt())).thenReturn(List.of());
+        assertThat(service.evaluate(7L, List.of(50), 1, 1)).hasSize(1);
+    }
+}
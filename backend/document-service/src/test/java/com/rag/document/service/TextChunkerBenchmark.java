@@ -0,0 +1,111 @@
+package com.rag.document.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link TextChunker} with the fixed-offset splitting it replaced (500 characters with a
+ * 50 character overlap, one {@code substring} per chunk) on about 1 MB of extracted text.
+ * <p>
+ * Run with {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args=TextChunkerBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TextChunkerBenchmark {
+
+    private static final String[] ENGLISH = {
+            "The retention policy applies to every record created after the first of January.",
+            "Employees must submit expense reports within thirty days of the purchase date.",
+            "Remote work requires approval from the team lead and the security office.",
+            "Backups are verified weekly and restored into a staging environment each quarter.",
+    };
+    private static final String[] KOREAN = {
+            "모든 직원은 입사 후 한 달 이내에 보안 교육을 이수해야 합니다.",
+            "출장 경비는 영수증을 첨부하여 정산 시스템에 등록합니다.",
+            "개인정보가 포함된 문서는 지정된 저장소에만 보관할 수 있습니다.",
+    };
+
+    // Ingestion extracts PDFs in windows of this many characters, roughly ten pages
+    private static final int WINDOW_CHARS = 20_000;
+
+    @Param({"english", "mixed"})
+    public String language;
+
+    private String text;
+    private TextChunker chunker;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(7);
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < 1_000_000) {
+            int sentences = 2 + random.nextInt(5);
+            for (int i = 0; i < sentences; i++) {
+                boolean korean = "mixed".equals(language) && random.nextInt(3) == 0;
+                String[] pool = korean ? KOREAN : ENGLISH;
+                builder.append(pool[random.nextInt(pool.length)]).append(random.nextInt(4) == 0 ? "\n" : " ");
+            }
+            builder.append("\n\n");
+        }
+        text = builder.toString();
+        chunker = new TextChunker(256, 32);
+    }
+
+    @Benchmark
+    public void fixedOffsetSplit(Blackhole blackhole) {
+        for (String chunk : splitTextIntoChunks(text, 500, 50)) {
+            blackhole.consume(chunk);
+        }
+    }
+
+    /** Chunk boundaries only; the views are not copied. */
+    @Benchmark
+    public void tokenChunkerViews(Blackhole blackhole) {
+        Iterator<CharSequence> chunks = chunker.chunks(text);
+        while (chunks.hasNext()) {
+            blackhole.consume(chunks.next());
+        }
+    }
+
+    /** What ingestion does: text arrives in windows and every chunk is copied once. */
+    @Benchmark
+    public void tokenChunkerSessionStrings(Blackhole blackhole) {
+        TextChunker.Session session = chunker.session();
+        for (int start = 0; start < text.length(); start += WINDOW_CHARS) {
+            session.append(text.substring(start, Math.min(text.length(), start + WINDOW_CHARS)));
+            session.drain(false).forEachRemaining(chunk -> blackhole.consume(chunk.toString()));
+        }
+        session.drain(true).forEachRemaining(chunk -> blackhole.consume(chunk.toString()));
+    }
+
+    /** {@code PdfProcessingService.splitTextIntoChunks} before the chunker replaced it. */
+    private static String[] splitTextIntoChunks(String text, int chunkSize, int overlap) {
+        int length = text.length();
+        int numChunks = (int) Math.ceil((double) length / (chunkSize - overlap));
+        String[] chunks = new String[numChunks];
+        for (int i = 0; i < numChunks; i++) {
+            int start = Math.max(0, i * (chunkSize - overlap));
+            int end = Math.min(length, start + chunkSize);
+            chunks[i] = text.substring(start, end);
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,209 @@
+package com.rag.document.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TextChunkerTest {
+
+    private static final String SENTENCE = "The quick brown fox jumps over the lazy dog near the river bank. ";
+
+    @Test
+    void rejectsInvalidSizes() {
+        assertThatThrownBy(() -> new TextChunker(0, 0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new TextChunker(100, -1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new TextChunker(100, 100)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void estimatesAsciiAtFourCharactersPerTokenAndOtherCharactersAtOne() {
+        assertThat(TextChunker.estimateTokens("")).isZero();
+        assertThat(TextChunker.estimateTokens("abcd")).isEqualTo(1);
+        assertThat(TextChunker.estimateTokens("abcde")).isEqualTo(2);
+        assertThat(TextChunker.estimateTokens("한국어")).isEqualTo(3);
+    }
+
+    @Test
+    void blankTextHasNoChunks() {
+        TextChunker chunker = new TextChunker(50, 10);
+        assertThat(chunker.stream("")).isEmpty();
+        assertThat(chunker.stream(" \n\t \n")).isEmpty();
+    }
+
+    @Test
+    void shortTextIsOneTrimmedChunk() {
+        TextChunker chunker = new TextChunker(50, 10);
+        assertThat(strings(chunker.chunks("\n  Hello world.  \n"))).containsExactly("Hello world.");
+    }
+
+    @Test
+    void chunksStayWithinTheTokenTarget() {
+        TextChunker chunker = new TextChunker(50, 10);
+        List<String> chunks = strings(chunker.chunks(SENTENCE.repeat(40)));
+
+        assertThat(chunks).hasSizeGreaterThan(1);
+        assertThat(chunks).allSatisfy(chunk -> assertThat(TextChunker.estimateTokens(chunk)).isLessThanOrEqualTo(50));
+    }
+
+    @Test
+    void cutsAtSentenceEndsWhenAvailable() {
+        TextChunker chunker = new TextChunker(50, 10);
+        List<String> chunks = strings(chunker.chunks(SENTENCE.repeat(40)));
+
+        assertThat(chunks).allSatisfy(chunk -> assertThat(chunk).endsWith("."));
+    }
+
+    @Test
+    void prefersParagraphBreaksOverSentenceEnds() {
+        String paragraph = SENTENCE.repeat(2).trim();
+        String text = String.join("\n\n", paragraph, paragraph, paragraph, paragraph, paragraph, paragraph);
+        TextChunker chunker = new TextChunker(80, 0);
+
+        List<String> chunks = strings(chunker.chunks(text));
+
+        // Two paragraphs (about 65 tokens) fit; a third does not, so every chunk ends at a break
+        assertThat(chunks).containsOnly(paragraph + "\n\n" + paragraph);
+    }
+
+    @Test
+    void fallsBackToWordBoundariesWithoutSentences() {
+        String text = "lorem ipsum dolor sit amet ".repeat(50);
+        List<String> chunks = strings(new TextChunker(20, 5).chunks(text));
+
+        assertThat(chunks).hasSizeGreaterThan(1);
+        for (String chunk : chunks) {
+            assertThat(text).contains(chunk);
+            assertThat(chunk).matches("(lorem|ipsum|dolor|sit|amet)( \\S+)*");
+            assertThat(chunk).matches(".*(lorem|ipsum|dolor|sit|amet)");
+        }
+    }
+
+    @Test
+    void cutsMidWordOnlyWhenThereIsNoWhitespace() {
+        String text = "x".repeat(1000);
+        List<String> chunks = strings(new TextChunker(10, 0).chunks(text));
+
+        assertThat(chunks).hasSize(25).allSatisfy(chunk -> assertThat(chunk).hasSize(40));
+    }
+
+    @Test
+    void neverSplitsSurrogatePairs() {
+        String text = "😀".repeat(300);
+        List<String> chunks = strings(new TextChunker(25, 0).chunks(text));
+
+        assertThat(chunks).hasSizeGreaterThan(1);
+        for (String chunk : chunks) {
+            assertThat(Character.isLowSurrogate(chunk.charAt(0))).isFalse();
+            assertThat(Character.isHighSurrogate(chunk.charAt(chunk.length() - 1))).isFalse();
+        }
+        assertThat(String.join("", chunks)).isEqualTo(text);
+    }
+
+    @Test
+    void keepsASurrogatePairWholeWhenItAloneExceedsTheTarget() {
+        // One token's budget holds the high surrogate but not the low one
+        List<String> chunks = strings(new TextChunker(1, 0).chunks("😀😀a"));
+
+        assertThat(chunks).containsExactly("😀", "😀", "a");
+    }
+
+    @Test
+    void consecutiveChunksOverlapAndCoverTheWholeText() {
+        String text = numberedSentences(40);
+        List<int[]> spans = spans(text, strings(new TextChunker(50, 10).chunks(text)));
+
+        assertThat(spans.get(0)[0]).isZero();
+        assertThat(spans.get(spans.size() - 1)[1]).isEqualTo(text.length());
+        for (int i = 1; i < spans.size(); i++) {
+            int overlap = spans.get(i - 1)[1] - spans.get(i)[0];
+            // At most ten tokens of overlap, moved forward to a word start
+            assertThat(overlap).isPositive();
+            assertThat(TextChunker.estimateTokens(text.substring(spans.get(i)[0], spans.get(i - 1)[1])))
+                    .isLessThanOrEqualTo(10);
+        }
+    }
+
+    @Test
+    void zeroOverlapChunksDoNotOverlap() {
+        String text = numberedSentences(40);
+        List<int[]> spans = spans(text, strings(new TextChunker(50, 0).chunks(text)));
+
+        for (int i = 1; i < spans.size(); i++) {
+            assertThat(spans.get(i)[0]).isGreaterThanOrEqualTo(spans.get(i - 1)[1]);
+        }
+    }
+
+    @Test
+    void sessionFedInPiecesMatchesWholeTextChunking() {
+        StringBuilder text = new StringBuilder();
+        Random random = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            text.append(SENTENCE, 0, 20 + random.nextInt(SENTENCE.length() - 20)).append(". ");
+            if (random.nextInt(8) == 0) {
+                text.append("\n\n");
+            } else if (random.nextInt(8) == 0) {
+                text.append('\n');
+            }
+        }
+        TextChunker chunker = new TextChunker(60, 15);
+        List<String> expected = strings(chunker.chunks(text));
+
+        for (int seed = 0; seed < 20; seed++) {
+            Random pieces = new Random(seed);
+            TextChunker.Session session = chunker.session();
+            List<String> actual = new ArrayList<>();
+            int position = 0;
+            while (position < text.length()) {
+                int end = Math.min(text.length(), position + 1 + pieces.nextInt(300));
+                session.append(text.subSequence(position, end));
+                actual.addAll(strings(session.drain(false)));
+                position = end;
+            }
+            actual.addAll(strings(session.drain(true)));
+
+            assertThat(actual).as("pieces with seed %d", seed).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void sessionRequiresDrainedChunksToBeConsumed() {
+        TextChunker.Session session = new TextChunker(10, 0).session();
+        session.append(SENTENCE.repeat(10));
+        session.drain(false);
+
+        assertThatThrownBy(() -> session.append("more")).isInstanceOf(IllegalStateException.class);
+    }
+
+    private static String numberedSentences(int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append("Sentence number ").append(i).append(" is about the fox and the dog by the river. ");
+        }
+        return text.toString().trim();
+    }
+
+    private static List<String> strings(Iterator<CharSequence> chunks) {
+        List<String> result = new ArrayList<>();
+        chunks.forEachRemaining(chunk -> result.add(chunk.toString()));
+        return result;
+    }
+
+    /** Locates each chunk in the text, searching forward from the previous chunk's start. */
+    private static List<int[]> spans(String text, List<String> chunks) {
+        List<int[]> spans = new ArrayList<>();
+        int from = 0;
+        for (String chunk : chunks) {
+            int start = text.indexOf(chunk, from);
+            assertThat(start).as("chunk found in order").isGreaterThanOrEqualTo(0);
+            spans.add(new int[]{start, start + chunk.length()});
+            from = start + 1;
+        }
+        return spans;
+    }
+}
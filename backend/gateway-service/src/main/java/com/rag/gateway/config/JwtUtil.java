@@ -1,6 +1,8 @@
 package com.rag.gateway.config;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 import jakarta.annotation.PostConstruct;
@@ -11,42 +13,57 @@ import org.springframework.stereotype.Component;
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
 
+/**
+ * Verifies access tokens. The parser is built once, and verified claims are cached by token
+ * digest until the token expires, so a client sending the same token on every request pays for
+ * one signature check rather than one per request.
+ */
 @Slf4j
 @Component
 public class JwtUtil {
 
+    /** Claims set by auth-service's {@code JwtTokenProvider}. */
+    public static final String USER_ID_CLAIM = "uid";
+    public static final String ROLE_CLAIM = "role";
+    public static final String TOKEN_TYPE_CLAIM = "typ";
+    public static final String FAMILY_CLAIM = "fid";
+    public static final String ACCESS_TOKEN = "access";
+
     @Value("${jwt.secret}")
     private String secret;
 
-    private SecretKey key;
+    @Value("${jwt.claims-cache.max-entries:10000}")
+    private int cacheMaxEntries;
+
+    @Value("${jwt.claims-cache.max-ttl-seconds:300}")
+    private long cacheMaxTtlSeconds;
+
+    private JwtParser parser;
+    private VerifiedClaimsCache cache;
 
     @PostConstruct
     public void init() {
-        this.key = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
-    }
-
-    public Claims getAllClaimsFromToken(String token) {
-        return Jwts.parser()
+        SecretKey key = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        this.parser = Jwts.parser()
                 .verifyWith(key)
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
-    }
-
-    public String getUsernameFromToken(String token) {
-        return getAllClaimsFromToken(token).getSubject();
+                .build();
+        this.cache = new VerifiedClaimsCache(cacheMaxEntries, cacheMaxTtlSeconds * 1000);
     }
 
-    public boolean isTokenValid(String token) {
-        try {
-            Jwts.parser()
-                    .verifyWith(key)
-                    .build()
-                    .parseSignedClaims(token);
-            return true;
-        } catch (Exception e) {
-            log.error("Token validation failed: {}", e.getMessage());
-            return false;
+    /**
+     * Verifies the token's signature and expiry and returns its claims.
+     *
+     * @throws JwtException if the token is malformed, forged or expired
+     */
+    public Claims verify(String token) {
+        VerifiedClaimsCache.TokenDigest digest = VerifiedClaimsCache.digest(token);
+        Claims claims = cache.get(digest);
+        if (claims != null) {
+            return claims;
         }
+
+        claims = parser.parseSignedClaims(token).getPayload();
+        cache.put(digest, claims);
+        return claims;
     }
 }
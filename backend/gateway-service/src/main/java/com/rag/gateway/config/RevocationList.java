@@ -0,0 +1,246 @@
+package com.rag.gateway.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.ReactiveRedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local replica of the token IDs and token families revoked by auth-service, so that checking a
+ * token costs a bloom filter lookup rather than a Redis round trip.
+ * <p>
+ * On subscribing to the revocation channel the filter is rebuilt from the revocation index, and
+ * then kept current from the channel. Only a filter hit is confirmed in Redis. While there is no
+ * filter (at startup, and after Redis errors) every check goes to Redis.
+ * <p>
+ * The subscription alone cannot be trusted: Lettuce reconnects and resubscribes silently, and
+ * whatever was published meanwhile is lost. Every revocation is numbered from a counter in Redis,
+ * so every {@code revocation.sync-check-interval-ms} the counter is compared with the messages
+ * received since the last rebuild, and the filter is rebuilt if any is missing. A revocation can
+ * therefore go unseen for about that long. Failing to read the counter drops the filter. The
+ * filter is also rebuilt every {@code revocation.rebuild-interval-ms} so expired entries drop out.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RevocationList {
+
+    /** Keys and channel written by auth-service's {@code TokenRevocationService}. */
+    static final String REVOKED_KEY_PREFIX = "auth:revoked:";
+    static final String REVOKED_INDEX_KEY = "auth:revoked-index";
+    static final String REVOCATION_CHANNEL = "auth:revocations";
+    static final String REVOCATION_SEQUENCE_KEY = "auth:revocation-seq";
+    static final String FAMILY_REVOKED_KEY_PREFIX = "auth:refresh-family-revoked:";
+    static final String FAMILY_ENTRY_PREFIX = "family:";
+
+    public enum Status {
+        ACTIVE,
+        REVOKED,
+        /** Redis could not confirm a filter hit. */
+        UNKNOWN
+    }
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final ReactiveRedisMessageListenerContainer listenerContainer;
+
+    @Value("${revocation.expected-tokens:100000}")
+    private long expectedTokens;
+
+    @Value("${revocation.false-positive-rate:0.001}")
+    private double falsePositiveRate;
+
+    @Value("${revocation.rebuild-interval-ms:60000}")
+    private long rebuildIntervalMs;
+
+    @Value("${revocation.sync-check-interval-ms:2000}")
+    private long syncCheckIntervalMs;
+
+    @Value("${revocation.lookup-timeout-ms:500}")
+    private long lookupTimeoutMs;
+
+    // Filter in use; null while not synchronized
+    private volatile BloomFilter filter;
+    // Filter being rebuilt, which must also receive revocations published meanwhile
+    private volatile BloomFilter building;
+    // What the filter in use is known to contain; null until the first rebuild
+    private volatile Sync sync;
+
+    private Disposable subscription;
+
+    @PostConstruct
+    public void start() {
+        subscription = listenerContainer.receiveLater(ChannelTopic.of(REVOCATION_CHANNEL))
+                .flatMap(messages -> Mono.when(
+                        messages.doOnNext(message -> onMessage(message.getMessage()))
+                                .then(Mono.error(new IllegalStateException("Revocation channel closed"))),
+                        Flux.interval(Duration.ZERO, Duration.ofMillis(syncCheckIntervalMs))
+                                .onBackpressureDrop()
+                                .concatMap(tick -> synchronize())))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30))
+                        .doBeforeRetry(signal -> {
+                            filter = null;
+                            building = null;
+                            sync = null;
+                            log.warn("Revocation list unsynchronized, checking Redis directly: {}",
+                                    signal.failure().getMessage());
+                        }))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    /**
+     * @param familyId the token's family, or null if it has none
+     */
+    public Mono<Status> check(String tokenId, String familyId) {
+        BloomFilter current = filter;
+        List<String> keys = new ArrayList<>(2);
+        if (current == null || current.mightContain(tokenId)) {
+            keys.add(REVOKED_KEY_PREFIX + tokenId);
+        }
+        if (familyId != null && (current == null || current.mightContain(FAMILY_ENTRY_PREFIX + familyId))) {
+            keys.add(FAMILY_REVOKED_KEY_PREFIX + familyId);
+        }
+        if (keys.isEmpty()) {
+            return Mono.just(Status.ACTIVE);
+        }
+        return redisTemplate.opsForValue().multiGet(keys)
+                .map(marks -> marks.stream().anyMatch(Objects::nonNull) ? Status.REVOKED : Status.ACTIVE)
+                .timeout(Duration.ofMillis(lookupTimeoutMs))
+                .onErrorResume(e -> {
+                    log.warn("Revocation lookup failed for token {}: {}", tokenId, e.toString());
+                    return Mono.just(Status.UNKNOWN);
+                });
+    }
+
+    /** Handles a {@code "<seq> <entry>"} message. */
+    private void onMessage(String message) {
+        int separator = message.indexOf(' ');
+        long sequence = -1;
+        if (separator > 0) {
+            try {
+                sequence = Long.parseLong(message.substring(0, separator));
+            } catch (NumberFormatException e) {
+                separator = -1;
+            }
+        }
+        add(message.substring(separator + 1));
+
+        Sync current = sync;
+        if (current != null && sequence > current.baseline) {
+            current.received.incrementAndGet();
+        }
+    }
+
+    private void add(String entry) {
+        // Read the filter being built first: if it has already been swapped in, it is now the current one
+        BloomFilter next = building;
+        if (next != null) {
+            next.put(entry);
+        }
+        BloomFilter current = filter;
+        if (current != null) {
+            current.put(entry);
+        }
+    }
+
+    /**
+     * Rebuilds if a revocation numbered up to the counter read on the previous check has not
+     * arrived, or if the filter is due for its periodic rebuild. Waiting a check interval before
+     * counting a revocation as missing leaves time for its message to arrive.
+     */
+    private Mono<Void> synchronize() {
+        return readSequence().flatMap(published -> {
+            Sync current = sync;
+            if (current == null) {
+                return rebuild();
+            }
+            long missing = current.lastPublished - current.baseline - current.received.get();
+            if (missing > 0) {
+                log.warn("Missed {} revocation messages, rebuilding the revocation list", missing);
+                return rebuild();
+            }
+            if (published < current.lastPublished) {
+                log.warn("Revocation counter went back from {} to {}, rebuilding the revocation list",
+                        current.lastPublished, published);
+                return rebuild();
+            }
+            if (System.nanoTime() - current.builtAtNanos >= Duration.ofMillis(rebuildIntervalMs).toNanos()) {
+                return rebuild();
+            }
+            current.lastPublished = published;
+            return Mono.empty();
+        });
+    }
+
+    private Mono<Long> readSequence() {
+        return redisTemplate.opsForValue().get(REVOCATION_SEQUENCE_KEY)
+                .map(Long::parseLong)
+                .defaultIfEmpty(0L)
+                .timeout(Duration.ofMillis(lookupTimeoutMs));
+    }
+
+    /**
+     * Loads the unexpired revoked entries into a new filter and swaps it in. The new filter is
+     * published before the counter and then the index are read, so a revocation numbered up to
+     * the counter is in the index by then, and any later one arrives through {@link #add}.
+     */
+    private Mono<Void> rebuild() {
+        Range<Double> unexpired = Range.rightUnbounded(Range.Bound.inclusive((double) System.currentTimeMillis()));
+        return redisTemplate.opsForZSet().count(REVOKED_INDEX_KEY, unexpired)
+                .flatMap(count -> {
+                    BloomFilter next = new BloomFilter(Math.max(expectedTokens, 2 * count), falsePositiveRate);
+                    building = next;
+                    return readSequence().flatMap(baseline -> {
+                        sync = new Sync(baseline);
+                        return redisTemplate.opsForZSet().rangeByScore(REVOKED_INDEX_KEY, unexpired)
+                                .doOnNext(next::put)
+                                .count()
+                                .doOnNext(loaded -> {
+                                    filter = next;
+                                    building = null;
+                                    log.debug("Revocation list rebuilt with {} entries up to revocation {}",
+                                            loaded, baseline);
+                                });
+                    });
+                })
+                .then();
+    }
+
+    /** Revocations numbered above {@link #baseline} arrive only through the channel. */
+    private static final class Sync {
+
+        final long baseline;
+        final long builtAtNanos = System.nanoTime();
+        final AtomicLong received = new AtomicLong();
+        // Counter read on the previous check; only touched by the check loop
+        long lastPublished;
+
+        Sync(long baseline) {
+            this.baseline = baseline;
+            this.lastPublished = baseline;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.rag.gateway.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-user request budgets: a token bucket (requests per second with a burst allowance) and a cap
+ * on requests in flight, kept separately for each named budget in {@code rate-limit.budgets}.
+ * <p>
+ * Buckets are in memory and lock-free. With {@code rate-limit.redis-sync} on, a request the local
+ * bucket admits is also charged to a bucket in Redis shared by all gateway replicas, so the rate
+ * holds across replicas; the concurrency cap stays per replica. A request Redis rejects gives its
+ * token back to the local bucket. If Redis cannot answer the local decision stands.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UserRateLimiter {
+
+    private static final String REDIS_KEY_PREFIX = "ratelimit:";
+
+    /**
+     * GCRA over the bucket's theoretical arrival time, in microseconds of the Redis clock.
+     * Returns 0 if admitted, otherwise the microseconds to wait.
+     */
+    private static final RedisScript<Long> REDIS_BUCKET_SCRIPT = RedisScript.of("""
+            local interval = tonumber(ARGV[1])
+            local tolerance = tonumber(ARGV[2])
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+            local tat = tonumber(redis.call('GET', KEYS[1]))
+            if not tat or tat < now then
+                tat = now
+            end
+            if now < tat - tolerance then
+                return tat - tolerance - now
+            end
+            local newTat = tat + interval
+            redis.call('SET', KEYS[1], string.format('%d', newTat), 'PX', math.ceil((newTat - now) / 1000) + 1)
+            return 0
+            """, Long.class);
+
+    public record Budget(double requestsPerSecond, int burst, int maxConcurrent) {
+
+        long intervalNanos() {
+            return (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+        }
+
+        /** How far ahead of now the bucket may be booked: {@code burst} requests at once. */
+        long toleranceNanos() {
+            return intervalNanos() * (Math.max(1, burst) - 1);
+        }
+    }
+
+    /**
+     * Result of {@link #acquire}. An admitted request holds a concurrency slot until
+     * {@link #release()} is called; a rejected one carries the seconds to wait before retrying.
+     */
+    public static final class Decision {
+
+        private final UserState state;
+        private final long retryAfterSeconds;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Decision(UserState state, long retryAfterSeconds) {
+            this.state = state;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public boolean isAdmitted() {
+            return state != null;
+        }
+
+        public long getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+
+        public void release() {
+            if (state != null && released.compareAndSet(false, true)) {
+                state.inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    private final Environment environment;
+    private final ReactiveStringRedisTemplate redisTemplate;
+
+    @Value("${rate-limit.redis-sync:false}")
+    private boolean redisSync;
+
+    @Value("${rate-limit.redis-timeout-ms:200}")
+    private long redisTimeoutMs;
+
+    private Map<String, Budget> budgets;
+    private final ConcurrentHashMap<String, UserState> states = new ConcurrentHashMap<>();
+    private Disposable idleSweep;
+
+    @PostConstruct
+    public void init() {
+        budgets = Binder.get(environment)
+                .bind("rate-limit.budgets", Bindable.mapOf(String.class, Budget.class))
+                .orElse(Map.of());
+        idleSweep = Flux.interval(Duration.ofMinutes(1))
+                .subscribe(tick -> evictIdle());
+        log.info("Rate limit budgets: {} (redis sync {})", budgets, redisSync ? "on" : "off");
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (idleSweep != null) {
+            idleSweep.dispose();
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if no such budget is configured
+     */
+    public Budget budget(String name) {
+        Budget budget = budgets.get(name);
+        if (budget == null) {
+            throw new IllegalArgumentException("Unknown rate limit budget: " + name);
+        }
+        return budget;
+    }
+
+    public Mono<Decision> acquire(String budgetName, String userKey) {
+        Budget budget = budget(budgetName);
+        String key = budgetName + ':' + userKey;
+        UserState state = states.computeIfAbsent(key, k -> new UserState());
+
+        if (state.inFlight.incrementAndGet() > budget.maxConcurrent()) {
+            state.inFlight.decrementAndGet();
+            return Mono.just(new Decision(null, 1));
+        }
+        long waitNanos = state.take(budget.intervalNanos(), budget.toleranceNanos());
+        if (waitNanos > 0) {
+            state.inFlight.decrementAndGet();
+            return Mono.just(new Decision(null, toRetryAfterSeconds(waitNanos)));
+        }
+
+        Decision admitted = new Decision(state, 0);
+        if (!redisSync) {
+            return Mono.just(admitted);
+        }
+        return redisTemplate.execute(REDIS_BUCKET_SCRIPT, List.of(REDIS_KEY_PREFIX + key),
+                        List.of(String.valueOf(budget.intervalNanos() / 1000),
+                                String.valueOf(budget.toleranceNanos() / 1000)))
+                .next()
+                .timeout(Duration.ofMillis(redisTimeoutMs))
+                .map(waitMicros -> {
+                    if (waitMicros <= 0) {
+                        return admitted;
+                    }
+                    // Not served after all, so the local bucket gets its token back
+                    admitted.release();
+                    state.refund(budget.intervalNanos());
+                    return new Decision(null, toRetryAfterSeconds(TimeUnit.MICROSECONDS.toNanos(waitMicros)));
+                })
+                .onErrorResume(e -> {
+                    log.warn("Shared rate limit check failed, using the local bucket: {}", e.toString());
+                    return Mono.just(admitted);
+                })
+                .doOnCancel(admitted::release);
+    }
+
+    /**
+     * Drops users with nothing in flight and a full bucket; their state is the same as a new one.
+     * A request racing with the removal may be counted on the dropped state, which at worst
+     * lets that user exceed the limits by one request.
+     */
+    private void evictIdle() {
+        long now = System.nanoTime();
+        states.entrySet().removeIf(entry -> entry.getValue().inFlight.get() == 0
+                && entry.getValue().theoreticalArrival.get() - now <= 0);
+    }
+
+    private static long toRetryAfterSeconds(long waitNanos) {
+        return Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private static final class UserState {
+
+        // GCRA: the time at which the bucket would be full again, in System.nanoTime() terms
+        final AtomicLong theoreticalArrival = new AtomicLong(System.nanoTime());
+        final AtomicInteger inFlight = new AtomicInteger();
+
+        /**
+         * @return 0 if a token was taken, otherwise the nanoseconds until one is available
+         */
+        long take(long intervalNanos, long toleranceNanos) {
+            long now = System.nanoTime();
+            while (true) {
+                long tat = theoreticalArrival.get();
+                long start = tat - now > 0 ? tat : now;
+                long allowedAt = start - toleranceNanos;
+                if (allowedAt - now > 0) {
+                    return allowedAt - now;
+                }
+                if (theoreticalArrival.compareAndSet(tat, start + intervalNanos)) {
+                    return 0;
+                }
+            }
+        }
+
+        /** Returns a token taken by {@link #take} for a request that was rejected after all. */
+        void refund(long intervalNanos) {
+            theoreticalArrival.addAndGet(-intervalNanos);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.rag.gateway.config;
+
+import io.jsonwebtoken.Claims;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded cache of claims whose signature has already been verified, keyed by a SHA-256 digest
+ * of the token so raw tokens are never kept in memory.
+ * <p>
+ * Lookups are lock-free, as they run on the gateway's event loop. An entry never outlives the
+ * token's {@code exp}, nor {@code maxTtlMillis}. When the cache is full, expired entries are
+ * swept first and then arbitrary ones are dropped; a dropped token simply gets verified again.
+ */
+class VerifiedClaimsCache {
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    });
+
+    private final int maxEntries;
+    private final long maxTtlMillis;
+    private final Map<TokenDigest, Entry> entries = new ConcurrentHashMap<>();
+
+    VerifiedClaimsCache(int maxEntries, long maxTtlMillis) {
+        this.maxEntries = maxEntries;
+        this.maxTtlMillis = maxTtlMillis;
+    }
+
+    Claims get(TokenDigest digest) {
+        Entry entry = entries.get(digest);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() >= entry.expiresAtMillis) {
+            entries.remove(digest, entry);
+            return null;
+        }
+        return entry.claims;
+    }
+
+    void put(TokenDigest digest, Claims claims) {
+        if (maxEntries <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long expiresAt = now + maxTtlMillis;
+        if (claims.getExpiration() != null) {
+            expiresAt = Math.min(expiresAt, claims.getExpiration().getTime());
+        }
+        if (expiresAt <= now) {
+            return;
+        }
+        if (entries.size() >= maxEntries) {
+            evict(now);
+        }
+        entries.put(digest, new Entry(claims, expiresAt));
+    }
+
+    /**
+     * Removes expired entries, then arbitrary ones until a tenth of the capacity is free, so a
+     * full cache is not swept again on every insert.
+     */
+    private void evict(long now) {
+        entries.values().removeIf(entry -> now >= entry.expiresAtMillis);
+        Iterator<TokenDigest> keys = entries.keySet().iterator();
+        int target = maxEntries - Math.max(1, maxEntries / 10);
+        while (entries.size() > target && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    static TokenDigest digest(String token) {
+        byte[] hash = SHA_256.get().digest(token.getBytes(StandardCharsets.US_ASCII));
+        ByteBuffer buffer = ByteBuffer.wrap(hash);
+        // 128 bits of SHA-256 are plenty to tell tokens apart
+        return new TokenDigest(buffer.getLong(), buffer.getLong());
+    }
+
+    record TokenDigest(long high, long low) {
+    }
+
+    private record Entry(Claims claims, long expiresAtMillis) {
+    }
+}
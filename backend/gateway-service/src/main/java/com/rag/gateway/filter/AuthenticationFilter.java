@@ -1,6 +1,9 @@
 package com.rag.gateway.filter;
 
 import com.rag.gateway.config.JwtUtil;
+import com.rag.gateway.config.RevocationList;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cloud.gateway.filter.GatewayFilter;
@@ -19,6 +22,9 @@ public class AuthenticationFilter extends AbstractGatewayFilterFactory<Authentic
     @Autowired
     private JwtUtil jwtUtil;
 
+    @Autowired
+    private RevocationList revocationList;
+
     public AuthenticationFilter() {
         super(Config.class);
     }
@@ -39,26 +45,46 @@ public class AuthenticationFilter extends AbstractGatewayFilterFactory<Authentic
 
             String token = authHeader.substring(7);
 
+            Claims claims;
             try {
-                if (!jwtUtil.isTokenValid(token)) {
-                    return onError(exchange, "Invalid token", HttpStatus.UNAUTHORIZED);
-                }
+                claims = jwtUtil.verify(token);
+            } catch (JwtException | IllegalArgumentException e) {
+                log.warn("Token validation failed: {}", e.getMessage());
+                return onError(exchange, "Invalid token", HttpStatus.UNAUTHORIZED);
+            }
 
-                String username = jwtUtil.getUsernameFromToken(token);
+            // Tokens issued before the ID claim existed cannot be mapped to a user; make the client log in again
+            Long userId = claims.get(JwtUtil.USER_ID_CLAIM, Long.class);
+            if (userId == null) {
+                return onError(exchange, "Token without user ID", HttpStatus.UNAUTHORIZED);
+            }
+            String role = claims.get(JwtUtil.ROLE_CLAIM, String.class);
+            if (role == null) {
+                return onError(exchange, "Token without role", HttpStatus.UNAUTHORIZED);
+            }
+            if (!JwtUtil.ACCESS_TOKEN.equals(claims.get(JwtUtil.TOKEN_TYPE_CLAIM, String.class))) {
+                return onError(exchange, "Not an access token", HttpStatus.UNAUTHORIZED);
+            }
+            if (claims.getId() == null) {
+                return onError(exchange, "Token without ID", HttpStatus.UNAUTHORIZED);
+            }
 
-                // Add username to request header for downstream services
-                ServerHttpRequest modifiedRequest = exchange.getRequest()
-                        .mutate()
-                        .header("X-User-Id", "1") // In production, fetch actual user ID
-                        .header("X-Username", username)
-                        .build();
+            // Identity for downstream services, taken from the verified token; overrides anything the client sent
+            ServerHttpRequest modifiedRequest = exchange.getRequest()
+                    .mutate()
+                    .header("X-User-Id", String.valueOf(userId))
+                    .header("X-Username", claims.getSubject())
+                    .header("X-User-Role", role)
+                    .build();
 
-                return chain.filter(exchange.mutate().request(modifiedRequest).build());
+            ServerWebExchange modifiedExchange = exchange.mutate().request(modifiedRequest).build();
 
-            } catch (Exception e) {
-                log.error("Token validation error", e);
-                return onError(exchange, "Authentication failed", HttpStatus.UNAUTHORIZED);
-            }
+            return revocationList.check(claims.getId(), claims.get(JwtUtil.FAMILY_CLAIM, String.class)).flatMap(status -> switch (status) {
+                case ACTIVE -> chain.filter(modifiedExchange);
+                case REVOKED -> onError(exchange, "Token revoked", HttpStatus.UNAUTHORIZED);
+                // Fail closed: a revoked token must not get through while Redis is unreachable
+                case UNKNOWN -> onError(exchange, "Revocation status unavailable", HttpStatus.SERVICE_UNAVAILABLE);
+            });
         };
     }
 
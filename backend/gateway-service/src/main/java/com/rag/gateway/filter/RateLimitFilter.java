@@ -0,0 +1,79 @@
+package com.rag.gateway.filter;
+
+import com.rag.gateway.config.UserRateLimiter;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+
+/**
+ * Applies a per-user budget from {@code rate-limit.budgets} to the route, e.g.
+ * {@code RateLimitFilter=chat}. Must come after {@link AuthenticationFilter}, which sets the
+ * {@code X-User-Id} the budget is keyed by. Requests over budget get 429 with {@code Retry-After}
+ * before anything is sent downstream.
+ */
+@Slf4j
+@Component
+public class RateLimitFilter extends AbstractGatewayFilterFactory<RateLimitFilter.Config> {
+
+    @Autowired
+    private UserRateLimiter rateLimiter;
+
+    public RateLimitFilter() {
+        super(Config.class);
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return List.of("budget");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        String budget = config.getBudget();
+        // Fail at route definition rather than on the first request
+        rateLimiter.budget(budget);
+
+        return (exchange, chain) -> rateLimiter.acquire(budget, userKey(exchange))
+                .flatMap(decision -> {
+                    if (!decision.isAdmitted()) {
+                        return onLimited(exchange, budget, decision.getRetryAfterSeconds());
+                    }
+                    return chain.filter(exchange).doFinally(signal -> decision.release());
+                });
+    }
+
+    private String userKey(ServerWebExchange exchange) {
+        String userId = exchange.getRequest().getHeaders().getFirst("X-User-Id");
+        if (userId != null) {
+            return userId;
+        }
+        // Route without AuthenticationFilter; fall back to the client address
+        InetSocketAddress remoteAddress = exchange.getRequest().getRemoteAddress();
+        return "ip:" + (remoteAddress != null ? remoteAddress.getAddress().getHostAddress() : "unknown");
+    }
+
+    private Mono<Void> onLimited(ServerWebExchange exchange, String budget, long retryAfterSeconds) {
+        log.debug("Rate limited {} request {} {}", budget, exchange.getRequest().getMethod(),
+                exchange.getRequest().getPath());
+        exchange.getResponse().setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        return exchange.getResponse().setComplete();
+    }
+
+    @Getter
+    @Setter
+    public static class Config {
+        private String budget;
+    }
+}
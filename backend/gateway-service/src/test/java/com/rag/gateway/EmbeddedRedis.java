@@ -0,0 +1,131 @@
+package com.rag.gateway;
+
+import com.rag.gateway.config.RevocationList;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.listener.ReactiveRedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Redis server on a free port for tests, with revocations written the way auth-service's
+ * {@code TokenRevocationService} writes them.
+ */
+public final class EmbeddedRedis implements AutoCloseable {
+
+    private static final String REVOKED_KEY_PREFIX = "auth:revoked:";
+    private static final String FAMILY_REVOKED_KEY_PREFIX = "auth:refresh-family-revoked:";
+    private static final String REVOKED_INDEX_KEY = "auth:revoked-index";
+    private static final String REVOCATION_CHANNEL = "auth:revocations";
+    private static final String REVOCATION_SEQUENCE_KEY = "auth:revocation-seq";
+    private static final Duration REVOCATION_TTL = Duration.ofMinutes(10);
+
+    private final RedisServer server;
+    private final LettuceConnectionFactory connectionFactory;
+    private final ReactiveStringRedisTemplate template;
+    private final int port;
+    private ReactiveRedisMessageListenerContainer listenerContainer;
+    private RevocationList revocationList;
+
+    public EmbeddedRedis() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = new RedisServer(port);
+        server.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", port));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        template = new ReactiveStringRedisTemplate(connectionFactory);
+    }
+
+    public int port() {
+        return port;
+    }
+
+    public ReactiveStringRedisTemplate template() {
+        return template;
+    }
+
+    /**
+     * Starts a revocation list against this server and waits until it has built its filter.
+     */
+    public RevocationList startRevocationList(long syncCheckIntervalMs, long rebuildIntervalMs) {
+        listenerContainer = new ReactiveRedisMessageListenerContainer(connectionFactory);
+        revocationList = new RevocationList(template, listenerContainer);
+        ReflectionTestUtils.setField(revocationList, "expectedTokens", 10_000L);
+        ReflectionTestUtils.setField(revocationList, "falsePositiveRate", 0.001);
+        ReflectionTestUtils.setField(revocationList, "syncCheckIntervalMs", syncCheckIntervalMs);
+        ReflectionTestUtils.setField(revocationList, "rebuildIntervalMs", rebuildIntervalMs);
+        ReflectionTestUtils.setField(revocationList, "lookupTimeoutMs", 500L);
+        revocationList.start();
+        await(() -> isSynchronized(revocationList), Duration.ofSeconds(10));
+        return revocationList;
+    }
+
+    public static boolean isSynchronized(RevocationList revocationList) {
+        return ReflectionTestUtils.getField(revocationList, "filter") != null;
+    }
+
+    /**
+     * Revokes a token ID.
+     *
+     * @param publish false to leave out the channel message, as if it was lost while the
+     *                gateway's subscription was reconnecting
+     */
+    public void revoke(String tokenId, boolean publish) {
+        announce(REVOKED_KEY_PREFIX + tokenId, tokenId, publish);
+    }
+
+    public void revokeFamily(String familyId, boolean publish) {
+        announce(FAMILY_REVOKED_KEY_PREFIX + familyId, "family:" + familyId, publish);
+    }
+
+    private void announce(String key, String entry, boolean publish) {
+        template.opsForValue().set(key, "1", REVOCATION_TTL).block();
+        template.opsForZSet().add(REVOKED_INDEX_KEY, entry, System.currentTimeMillis() + REVOCATION_TTL.toMillis()).block();
+        Long sequence = template.opsForValue().increment(REVOCATION_SEQUENCE_KEY).block();
+        if (publish) {
+            template.convertAndSend(REVOCATION_CHANNEL, sequence + " " + entry).block();
+        }
+    }
+
+    public void stopServer() throws IOException {
+        server.stop();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (revocationList != null) {
+            revocationList.stop();
+        }
+        if (listenerContainer != null) {
+            listenerContainer.destroy();
+        }
+        connectionFactory.destroy();
+        if (server.isActive()) {
+            server.stop();
+        }
+    }
+
+    public static void await(BooleanSupplier condition, Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Condition not met within " + timeout);
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.rag.gateway.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BloomFilterTest {
+
+    @Test
+    void containsEveryInsertedKey() {
+        BloomFilter filter = new BloomFilter(10_000, 0.001);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            String key = UUID.randomUUID().toString();
+            filter.put(key);
+            keys.add(key);
+        }
+
+        assertThat(keys).allMatch(filter::mightContain);
+    }
+
+    @Test
+    void falsePositiveRateStaysNearTheTargetWhenFull() {
+        int expected = 100_000;
+        double target = 0.001;
+        BloomFilter filter = new BloomFilter(expected, target);
+        for (int i = 0; i < expected; i++) {
+            filter.put(UUID.randomUUID().toString());
+        }
+
+        int probes = 1_000_000;
+        int falsePositives = 0;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain(UUID.randomUUID().toString())) {
+                falsePositives++;
+            }
+        }
+
+        // About 1000 expected; the bound leaves room for sampling noise but not for a broken hash
+        assertThat((double) falsePositives / probes).isLessThan(target * 1.5);
+    }
+
+    @Test
+    void similarKeysDoNotCollide() {
+        // Sequential IDs differ in a single character and must still spread over the filter
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("token-" + i);
+        }
+
+        int falsePositives = 0;
+        for (int i = 10_000; i < 110_000; i++) {
+            if (filter.mightContain("token-" + i)) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives / 100_000.0).isLessThan(0.015);
+    }
+}
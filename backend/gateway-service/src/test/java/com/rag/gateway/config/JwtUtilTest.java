@@ -0,0 +1,126 @@
+package com.rag.gateway.config;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SignatureException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JwtUtilTest {
+
+    private static final String SECRET = "test-secret-key-that-is-at-least-256-bits-long-for-hs256";
+
+    private JwtUtil jwtUtil;
+
+    @BeforeEach
+    void setUp() {
+        jwtUtil = jwtUtil(100);
+    }
+
+    @Test
+    void returnsTheClaimsOfAValidToken() {
+        Claims claims = jwtUtil.verify(token(SECRET, 7L, System.currentTimeMillis() + 60_000));
+
+        assertThat(claims.getSubject()).isEqualTo("alice");
+        assertThat(claims.get(JwtUtil.USER_ID_CLAIM, Long.class)).isEqualTo(7L);
+        assertThat(claims.get(JwtUtil.TOKEN_TYPE_CLAIM, String.class)).isEqualTo(JwtUtil.ACCESS_TOKEN);
+    }
+
+    @Test
+    void rejectsATamperedPayload() {
+        String token = token(SECRET, 7L, System.currentTimeMillis() + 60_000);
+        // Verified once, so the original is in the cache
+        jwtUtil.verify(token);
+
+        String[] parts = token.split("\\.");
+        String payload = new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8);
+        String forged = payload.replace("\"uid\":7", "\"uid\":1");
+        assertThat(forged).isNotEqualTo(payload);
+        String tampered = parts[0] + '.'
+                + Base64.getUrlEncoder().withoutPadding().encodeToString(forged.getBytes(StandardCharsets.UTF_8))
+                + '.' + parts[2];
+
+        assertThatThrownBy(() -> jwtUtil.verify(tampered)).isInstanceOf(SignatureException.class);
+    }
+
+    @Test
+    void rejectsATamperedSignature() {
+        String token = token(SECRET, 7L, System.currentTimeMillis() + 60_000);
+        char last = token.charAt(token.length() - 2);
+        String tampered = token.substring(0, token.length() - 2) + (last == 'A' ? 'B' : 'A')
+                + token.charAt(token.length() - 1);
+
+        assertThatThrownBy(() -> jwtUtil.verify(tampered)).isInstanceOf(SignatureException.class);
+    }
+
+    @Test
+    void rejectsATokenSignedWithAnotherKey() {
+        String token = token("another-secret-key-that-is-at-least-256-bits-long-too", 7L,
+                System.currentTimeMillis() + 60_000);
+
+        assertThatThrownBy(() -> jwtUtil.verify(token)).isInstanceOf(JwtException.class);
+    }
+
+    @Test
+    void rejectsAnExpiredToken() {
+        String token = token(SECRET, 7L, System.currentTimeMillis() - 1_000);
+
+        assertThatThrownBy(() -> jwtUtil.verify(token)).isInstanceOf(ExpiredJwtException.class);
+    }
+
+    @Test
+    void stopsServingACachedTokenAtItsExpiry() throws InterruptedException {
+        // exp has whole-second precision; this leaves it 0.5 to 1.5 seconds ahead
+        long expiresAt = System.currentTimeMillis() + 1_500;
+        String token = token(SECRET, 7L, expiresAt);
+        Date exp = jwtUtil.verify(token).getExpiration();
+        assertThat(jwtUtil.verify(token).getSubject()).isEqualTo("alice");
+
+        Thread.sleep(Math.max(0, exp.getTime() - System.currentTimeMillis()) + 50);
+
+        assertThatThrownBy(() -> jwtUtil.verify(token)).isInstanceOf(ExpiredJwtException.class);
+    }
+
+    @Test
+    void verifiesEveryTimeWithTheCacheOff() {
+        JwtUtil uncached = jwtUtil(0);
+        String token = token(SECRET, 7L, System.currentTimeMillis() + 60_000);
+
+        Claims first = uncached.verify(token);
+        Claims second = uncached.verify(token);
+
+        assertThat(second).isNotSameAs(first).isEqualTo(first);
+    }
+
+    private static JwtUtil jwtUtil(int cacheEntries) {
+        JwtUtil jwtUtil = new JwtUtil();
+        ReflectionTestUtils.setField(jwtUtil, "secret", SECRET);
+        ReflectionTestUtils.setField(jwtUtil, "cacheMaxEntries", cacheEntries);
+        ReflectionTestUtils.setField(jwtUtil, "cacheMaxTtlSeconds", 300L);
+        jwtUtil.init();
+        return jwtUtil;
+    }
+
+    private static String token(String secret, long userId, long expiresAtMillis) {
+        return Jwts.builder()
+                .subject("alice")
+                .claim(JwtUtil.USER_ID_CLAIM, userId)
+                .claim(JwtUtil.TOKEN_TYPE_CLAIM, JwtUtil.ACCESS_TOKEN)
+                .id(UUID.randomUUID().toString())
+                .expiration(new Date(expiresAtMillis))
+                .signWith(Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8)))
+                .compact();
+    }
+}
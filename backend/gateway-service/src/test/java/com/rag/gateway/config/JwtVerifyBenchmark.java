@@ -0,0 +1,120 @@
+package com.rag.gateway.config;
+
+import com.rag.gateway.filter.AuthenticationFilter;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link JwtUtil#verify} with and without the {@link VerifiedClaimsCache}
+ * ({@code cacheEntries} 0 turns it off), on its own and inside {@link AuthenticationFilter}.
+ * Requests cycle over the tokens of {@code users} users, so with the cache on every lookup after
+ * the first round is a hit. The revocation list has an empty filter, as when nothing the
+ * requests carry is revoked, so the filter never calls Redis.
+ * <p>
+ * Run with {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args=JwtVerifyBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtVerifyBenchmark {
+
+    private static final String SECRET = "benchmark-secret-key-that-is-at-least-256-bits-long";
+
+    @Param({"0", "10000"})
+    public int cacheEntries;
+
+    @Param({"1000"})
+    public int users;
+
+    private String[] tokens;
+    private MockServerWebExchange[] exchanges;
+    private JwtUtil jwtUtil;
+    private GatewayFilter authenticationFilter;
+    private int next;
+    private ServerWebExchange forwarded;
+
+    @Setup
+    public void setUp() {
+        SecretKey key = Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8));
+        tokens = new String[users];
+        exchanges = new MockServerWebExchange[users];
+        for (int i = 0; i < users; i++) {
+            tokens[i] = Jwts.builder()
+                    .subject("user" + i)
+                    .claim(JwtUtil.USER_ID_CLAIM, (long) i)
+                    .claim(JwtUtil.ROLE_CLAIM, "USER")
+                    .claim(JwtUtil.TOKEN_TYPE_CLAIM, JwtUtil.ACCESS_TOKEN)
+                    .claim(JwtUtil.FAMILY_CLAIM, UUID.randomUUID().toString())
+                    .id(UUID.randomUUID().toString())
+                    .issuedAt(new Date())
+                    .expiration(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)))
+                    .signWith(key)
+                    .compact();
+            // Building an exchange sets up codecs and costs far more than the filter; a forwarded
+            // request only mutates a copy, so each one can be reused
+            exchanges[i] = MockServerWebExchange.from(MockServerHttpRequest.get("/api/chat/history")
+                    .header(HttpHeaders.AUTHORIZATION, "Bearer " + tokens[i]));
+        }
+
+        jwtUtil = new JwtUtil();
+        ReflectionTestUtils.setField(jwtUtil, "secret", SECRET);
+        ReflectionTestUtils.setField(jwtUtil, "cacheMaxEntries", cacheEntries);
+        ReflectionTestUtils.setField(jwtUtil, "cacheMaxTtlSeconds", 300L);
+        jwtUtil.init();
+
+        RevocationList revocationList = new RevocationList(null, null);
+        ReflectionTestUtils.setField(revocationList, "filter", new BloomFilter(100_000, 0.001));
+        AuthenticationFilter factory = new AuthenticationFilter();
+        ReflectionTestUtils.setField(factory, "jwtUtil", jwtUtil);
+        ReflectionTestUtils.setField(factory, "revocationList", revocationList);
+        authenticationFilter = factory.apply(new AuthenticationFilter.Config());
+    }
+
+    @Benchmark
+    public Object verify() {
+        return jwtUtil.verify(tokens[nextUser()]);
+    }
+
+    /** The whole filter: header parsing, verification, claim checks, revocation check, request mutation. */
+    @Benchmark
+    public Object authenticationFilter() {
+        authenticationFilter.filter(exchanges[nextUser()], exchange -> {
+            forwarded = exchange;
+            return Mono.empty();
+        }).block();
+        return forwarded;
+    }
+
+    private int nextUser() {
+        int user = next;
+        next = next + 1 == users ? 0 : next + 1;
+        return user;
+    }
+}
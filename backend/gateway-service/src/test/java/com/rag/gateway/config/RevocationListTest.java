@@ -0,0 +1,154 @@
+package com.rag.gateway.config;
+
+import com.rag.gateway.EmbeddedRedis;
+import io.lettuce.core.KillArgs;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.api.StatefulRedisConnection;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.rag.gateway.EmbeddedRedis.await;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RevocationListTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private EmbeddedRedis redis;
+    private RevocationList revocationList;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        redis = new EmbeddedRedis();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        redis.close();
+    }
+
+    @Test
+    void picksUpRevocationsFromTheChannel() {
+        revocationList = redis.startRevocationList(100, 60_000);
+        String revoked = UUID.randomUUID().toString();
+
+        redis.revoke(revoked, true);
+
+        await(() -> inFilter(revoked), TIMEOUT);
+        assertThat(check(revoked, null)).isEqualTo(RevocationList.Status.REVOKED);
+        assertThat(check(UUID.randomUUID().toString(), null)).isEqualTo(RevocationList.Status.ACTIVE);
+    }
+
+    @Test
+    void loadsRevocationsMadeBeforeStarting() {
+        String revoked = UUID.randomUUID().toString();
+        redis.revoke(revoked, true);
+        redis.revokeFamily("leaked-family", true);
+
+        revocationList = redis.startRevocationList(100, 60_000);
+
+        assertThat(check(revoked, null)).isEqualTo(RevocationList.Status.REVOKED);
+        assertThat(check(UUID.randomUUID().toString(), "leaked-family")).isEqualTo(RevocationList.Status.REVOKED);
+        assertThat(check(UUID.randomUUID().toString(), "other-family")).isEqualTo(RevocationList.Status.ACTIVE);
+    }
+
+    @Test
+    void rebuildsWhenAMessageWasMissed() {
+        // Rebuilds are otherwise a minute apart, so only the counter can bring the revocation in
+        revocationList = redis.startRevocationList(100, 60_000);
+        String revoked = UUID.randomUUID().toString();
+
+        redis.revoke(revoked, false);
+
+        await(() -> inFilter(revoked), TIMEOUT);
+        assertThat(check(revoked, null)).isEqualTo(RevocationList.Status.REVOKED);
+    }
+
+    @Test
+    void staysCurrentAcrossASilentReconnect() {
+        revocationList = redis.startRevocationList(100, 60_000);
+
+        // Lettuce resubscribes on its own; revocations published around it must not be lost
+        RedisClient client = RedisClient.create("redis://localhost:" + redis.port());
+        try (StatefulRedisConnection<String, String> connection = client.connect()) {
+            connection.sync().clientKill(KillArgs.Builder.typePubsub());
+        } finally {
+            client.shutdown();
+        }
+        List<String> revoked = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            String tokenId = UUID.randomUUID().toString();
+            redis.revoke(tokenId, true);
+            revoked.add(tokenId);
+        }
+
+        await(() -> revoked.stream().allMatch(this::inFilter), TIMEOUT);
+    }
+
+    @Test
+    void keepsRevocationsPublishedWhileRebuilding() throws Exception {
+        for (int i = 0; i < 5_000; i++) {
+            redis.revoke(UUID.randomUUID().toString(), false);
+        }
+        // Rebuild on every check, so revocations keep arriving while a filter is being loaded
+        revocationList = redis.startRevocationList(5, 0);
+
+        ExecutorService publisher = Executors.newSingleThreadExecutor();
+        List<String> revoked;
+        try {
+            Future<List<String>> published = publisher.submit(() -> {
+                List<String> tokenIds = new ArrayList<>();
+                for (int i = 0; i < 300; i++) {
+                    String tokenId = UUID.randomUUID().toString();
+                    redis.revoke(tokenId, true);
+                    tokenIds.add(tokenId);
+                }
+                return tokenIds;
+            });
+            revoked = published.get(30, TimeUnit.SECONDS);
+        } finally {
+            publisher.shutdownNow();
+        }
+
+        for (String tokenId : revoked) {
+            assertThat(check(tokenId, null)).as(tokenId).isEqualTo(RevocationList.Status.REVOKED);
+        }
+    }
+
+    @Test
+    void failsClosedWhenRedisIsDown() throws IOException {
+        revocationList = redis.startRevocationList(100, 60_000);
+        String revoked = UUID.randomUUID().toString();
+        redis.revoke(revoked, true);
+        await(() -> inFilter(revoked), TIMEOUT);
+
+        redis.stopServer();
+
+        // A filter hit cannot be confirmed
+        assertThat(check(revoked, null)).isEqualTo(RevocationList.Status.UNKNOWN);
+        // Once the counter cannot be read the filter is dropped and nothing passes unchecked
+        await(() -> !EmbeddedRedis.isSynchronized(revocationList), TIMEOUT);
+        assertThat(check(UUID.randomUUID().toString(), null)).isEqualTo(RevocationList.Status.UNKNOWN);
+    }
+
+    private RevocationList.Status check(String tokenId, String familyId) {
+        return revocationList.check(tokenId, familyId).block(TIMEOUT);
+    }
+
+    private boolean inFilter(String entry) {
+        BloomFilter filter = (BloomFilter) ReflectionTestUtils.getField(revocationList, "filter");
+        return filter != null && filter.mightContain(entry);
+    }
+}
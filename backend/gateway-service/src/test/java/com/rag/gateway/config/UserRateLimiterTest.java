@@ -0,0 +1,173 @@
+package com.rag.gateway.config;
+
+import com.rag.gateway.EmbeddedRedis;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+class UserRateLimiterTest {
+
+    private final List<UserRateLimiter> limiters = new ArrayList<>();
+    private EmbeddedRedis redis;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        limiters.forEach(UserRateLimiter::stop);
+        if (redis != null) {
+            redis.close();
+        }
+    }
+
+    @Test
+    void admitsABurstThenAsksToRetryAfterTheInterval() {
+        UserRateLimiter limiter = limiter(budget(1, 3, 100), mock(ReactiveStringRedisTemplate.class), false);
+
+        for (int i = 0; i < 3; i++) {
+            UserRateLimiter.Decision decision = acquire(limiter, "alice");
+            assertThat(decision.isAdmitted()).isTrue();
+            decision.release();
+        }
+        UserRateLimiter.Decision rejected = acquire(limiter, "alice");
+
+        assertThat(rejected.isAdmitted()).isFalse();
+        assertThat(rejected.getRetryAfterSeconds()).isEqualTo(1);
+    }
+
+    @Test
+    void refillsOneTokenPerInterval() throws InterruptedException {
+        // 20 per second: one token every 50ms
+        UserRateLimiter limiter = limiter(budget(20, 1, 100), mock(ReactiveStringRedisTemplate.class), false);
+
+        assertThat(acquire(limiter, "alice").isAdmitted()).isTrue();
+        assertThat(acquire(limiter, "alice").isAdmitted()).isFalse();
+
+        Thread.sleep(60);
+        assertThat(acquire(limiter, "alice").isAdmitted()).isTrue();
+        assertThat(acquire(limiter, "alice").isAdmitted()).isFalse();
+    }
+
+    @Test
+    void roundsRetryAfterUpToWholeSeconds() {
+        // One request every 5 seconds
+        UserRateLimiter limiter = limiter(budget(0.2, 1, 100), mock(ReactiveStringRedisTemplate.class), false);
+
+        assertThat(acquire(limiter, "alice").isAdmitted()).isTrue();
+        assertThat(acquire(limiter, "alice").getRetryAfterSeconds()).isEqualTo(5);
+    }
+
+    @Test
+    void capsRequestsInFlight() {
+        UserRateLimiter limiter = limiter(budget(1000, 1000, 2), mock(ReactiveStringRedisTemplate.class), false);
+
+        UserRateLimiter.Decision first = acquire(limiter, "alice");
+        UserRateLimiter.Decision second = acquire(limiter, "alice");
+        UserRateLimiter.Decision third = acquire(limiter, "alice");
+        assertThat(first.isAdmitted()).isTrue();
+        assertThat(second.isAdmitted()).isTrue();
+        assertThat(third.isAdmitted()).isFalse();
+        assertThat(third.getRetryAfterSeconds()).isEqualTo(1);
+
+        // Releasing twice must not free two slots
+        first.release();
+        first.release();
+        assertThat(acquire(limiter, "alice").isAdmitted()).isTrue();
+        assertThat(acquire(limiter, "alice").isAdmitted()).isFalse();
+    }
+
+    @Test
+    void keepsSeparateBucketsPerUser() {
+        UserRateLimiter limiter = limiter(budget(1, 1, 100), mock(ReactiveStringRedisTemplate.class), false);
+
+        assertThat(acquire(limiter, "alice").isAdmitted()).isTrue();
+        assertThat(acquire(limiter, "alice").isAdmitted()).isFalse();
+        assertThat(acquire(limiter, "bob").isAdmitted()).isTrue();
+    }
+
+    @Test
+    void rejectsAnUnknownBudget() {
+        UserRateLimiter limiter = limiter(budget(1, 1, 1), mock(ReactiveStringRedisTemplate.class), false);
+
+        assertThatThrownBy(() -> limiter.budget("upload")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void refundsTheLocalTokenWhenRedisRejects() {
+        ReactiveStringRedisTemplate redisTemplate = mock(ReactiveStringRedisTemplate.class);
+        // Another replica used up the shared bucket, then it refills
+        doReturn(Flux.just(2_000_000L), Flux.just(0L))
+                .when(redisTemplate).execute(any(RedisScript.class), anyList(), anyList());
+        UserRateLimiter limiter = limiter(budget(1, 1, 100), redisTemplate, true);
+
+        UserRateLimiter.Decision rejected = acquire(limiter, "alice");
+        assertThat(rejected.isAdmitted()).isFalse();
+        assertThat(rejected.getRetryAfterSeconds()).isEqualTo(2);
+
+        // The local bucket was not charged for the rejected request
+        assertThat(acquire(limiter, "alice").isAdmitted()).isTrue();
+    }
+
+    @Test
+    void fallsBackToTheLocalBucketWhenRedisFails() {
+        ReactiveStringRedisTemplate redisTemplate = mock(ReactiveStringRedisTemplate.class);
+        doReturn(Flux.error(new IllegalStateException("redis down")))
+                .when(redisTemplate).execute(any(RedisScript.class), anyList(), anyList());
+        UserRateLimiter limiter = limiter(budget(1, 1, 100), redisTemplate, true);
+
+        assertThat(acquire(limiter, "alice").isAdmitted()).isTrue();
+        assertThat(acquire(limiter, "alice").isAdmitted()).isFalse();
+    }
+
+    @Test
+    void sharesTheRateAcrossReplicasThroughRedis() throws IOException {
+        redis = new EmbeddedRedis();
+        MockEnvironment budget = budget(1, 2, 100);
+        UserRateLimiter replicaA = limiter(budget, redis.template(), true);
+        UserRateLimiter replicaB = limiter(budget, redis.template(), true);
+
+        assertThat(acquire(replicaA, "alice").isAdmitted()).isTrue();
+        assertThat(acquire(replicaA, "alice").isAdmitted()).isTrue();
+        UserRateLimiter.Decision rejected = acquire(replicaB, "alice");
+
+        // B's own bucket is full, but the shared one is spent
+        assertThat(rejected.isAdmitted()).isFalse();
+        assertThat(rejected.getRetryAfterSeconds()).isEqualTo(1);
+        assertThat(acquire(replicaB, "bob").isAdmitted()).isTrue();
+    }
+
+    private static MockEnvironment budget(double requestsPerSecond, int burst, int maxConcurrent) {
+        return new MockEnvironment()
+                .withProperty("rate-limit.budgets.chat.requests-per-second", String.valueOf(requestsPerSecond))
+                .withProperty("rate-limit.budgets.chat.burst", String.valueOf(burst))
+                .withProperty("rate-limit.budgets.chat.max-concurrent", String.valueOf(maxConcurrent));
+    }
+
+    private UserRateLimiter limiter(MockEnvironment environment, ReactiveStringRedisTemplate redisTemplate,
+                                    boolean redisSync) {
+        UserRateLimiter limiter = new UserRateLimiter(environment, redisTemplate);
+        ReflectionTestUtils.setField(limiter, "redisSync", redisSync);
+        ReflectionTestUtils.setField(limiter, "redisTimeoutMs", 1000L);
+        limiter.init();
+        limiters.add(limiter);
+        return limiter;
+    }
+
+    private static UserRateLimiter.Decision acquire(UserRateLimiter limiter, String user) {
+        return limiter.acquire("chat", user).block(Duration.ofSeconds(5));
+    }
+}
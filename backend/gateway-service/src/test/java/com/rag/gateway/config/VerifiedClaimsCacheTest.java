@@ -0,0 +1,80 @@
+package com.rag.gateway.config;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VerifiedClaimsCacheTest {
+
+    @Test
+    void returnsCachedClaimsUntilTheTokenExpires() throws InterruptedException {
+        VerifiedClaimsCache cache = new VerifiedClaimsCache(10, 60_000);
+        VerifiedClaimsCache.TokenDigest digest = VerifiedClaimsCache.digest("token");
+        // exp has whole-second precision; this leaves it 0.5 to 1.5 seconds ahead
+        Claims claims = claims(System.currentTimeMillis() + 1_500);
+
+        cache.put(digest, claims);
+        assertThat(cache.get(digest)).isSameAs(claims);
+
+        Thread.sleep(Math.max(0, claims.getExpiration().getTime() - System.currentTimeMillis() - 50));
+        assertThat(cache.get(digest)).isSameAs(claims);
+        Thread.sleep(100);
+        assertThat(cache.get(digest)).isNull();
+    }
+
+    @Test
+    void neverKeepsClaimsLongerThanTheMaximumTtl() throws InterruptedException {
+        VerifiedClaimsCache cache = new VerifiedClaimsCache(10, 100);
+        VerifiedClaimsCache.TokenDigest digest = VerifiedClaimsCache.digest("token");
+
+        cache.put(digest, claims(System.currentTimeMillis() + 60_000));
+        assertThat(cache.get(digest)).isNotNull();
+
+        Thread.sleep(150);
+        assertThat(cache.get(digest)).isNull();
+    }
+
+    @Test
+    void doesNotCacheExpiredClaims() {
+        VerifiedClaimsCache cache = new VerifiedClaimsCache(10, 60_000);
+        VerifiedClaimsCache.TokenDigest digest = VerifiedClaimsCache.digest("token");
+
+        cache.put(digest, claims(System.currentTimeMillis() - 1));
+
+        assertThat(cache.get(digest)).isNull();
+    }
+
+    @Test
+    void digestsTellTokensApart() {
+        assertThat(VerifiedClaimsCache.digest("header.payload.signature"))
+                .isEqualTo(VerifiedClaimsCache.digest("header.payload.signature"))
+                .isNotEqualTo(VerifiedClaimsCache.digest("header.payload.signaturf"));
+    }
+
+    @Test
+    void staysWithinCapacity() {
+        VerifiedClaimsCache cache = new VerifiedClaimsCache(10, 60_000);
+        Claims claims = claims(System.currentTimeMillis() + 60_000);
+
+        for (int i = 0; i < 100; i++) {
+            cache.put(VerifiedClaimsCache.digest("token" + i), claims);
+        }
+
+        int cached = 0;
+        for (int i = 0; i < 100; i++) {
+            if (cache.get(VerifiedClaimsCache.digest("token" + i)) != null) {
+                cached++;
+            }
+        }
+        assertThat(cached).isBetween(1, 10);
+        assertThat(cache.get(VerifiedClaimsCache.digest("token99"))).isSameAs(claims);
+    }
+
+    private static Claims claims(long expiresAtMillis) {
+        return Jwts.claims().subject("alice").expiration(new Date(expiresAtMillis)).build();
+    }
+}
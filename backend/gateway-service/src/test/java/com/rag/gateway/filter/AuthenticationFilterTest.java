@@ -0,0 +1,162 @@
+package com.rag.gateway.filter;
+
+import com.rag.gateway.EmbeddedRedis;
+import com.rag.gateway.config.JwtUtil;
+import com.rag.gateway.config.RevocationList;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AuthenticationFilterTest {
+
+    private static final String SECRET = "test-secret-key-that-is-at-least-256-bits-long-for-hs256";
+
+    private EmbeddedRedis redis;
+    private GatewayFilter filter;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        redis = new EmbeddedRedis();
+        RevocationList revocationList = redis.startRevocationList(100, 60_000);
+
+        JwtUtil jwtUtil = new JwtUtil();
+        ReflectionTestUtils.setField(jwtUtil, "secret", SECRET);
+        ReflectionTestUtils.setField(jwtUtil, "cacheMaxEntries", 100);
+        ReflectionTestUtils.setField(jwtUtil, "cacheMaxTtlSeconds", 300L);
+        jwtUtil.init();
+
+        AuthenticationFilter factory = new AuthenticationFilter();
+        ReflectionTestUtils.setField(factory, "jwtUtil", jwtUtil);
+        ReflectionTestUtils.setField(factory, "revocationList", revocationList);
+        filter = factory.apply(new AuthenticationFilter.Config());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        redis.close();
+    }
+
+    @Test
+    void forwardsAValidTokenWithTheUserIdentity() {
+        Forwarded forwarded = filter(accessToken(UUID.randomUUID().toString(), "family-1"));
+
+        assertThat(forwarded.exchange).isNotNull();
+        HttpHeaders headers = forwarded.exchange.getRequest().getHeaders();
+        assertThat(headers.getFirst("X-User-Id")).isEqualTo("7");
+        assertThat(headers.getFirst("X-Username")).isEqualTo("alice");
+        assertThat(headers.getFirst("X-User-Role")).isEqualTo("USER");
+    }
+
+    @Test
+    void rejectsARevokedToken() {
+        String tokenId = UUID.randomUUID().toString();
+        String token = accessToken(tokenId, "family-1");
+        assertThat(filter(token).exchange).isNotNull();
+
+        redis.revoke(tokenId, true);
+
+        EmbeddedRedis.await(() -> filter(token).status == HttpStatus.UNAUTHORIZED, Duration.ofSeconds(5));
+    }
+
+    @Test
+    void rejectsEveryAccessTokenOfARevokedFamily() {
+        String first = accessToken(UUID.randomUUID().toString(), "leaked-family");
+        String second = accessToken(UUID.randomUUID().toString(), "leaked-family");
+        String unrelated = accessToken(UUID.randomUUID().toString(), "other-family");
+
+        redis.revokeFamily("leaked-family", true);
+
+        EmbeddedRedis.await(() -> filter(first).status == HttpStatus.UNAUTHORIZED, Duration.ofSeconds(5));
+        assertThat(filter(second).status).isEqualTo(HttpStatus.UNAUTHORIZED);
+        assertThat(filter(unrelated).exchange).isNotNull();
+    }
+
+    @Test
+    void rejectsWithServiceUnavailableWhenRedisIsDown() throws IOException {
+        String token = accessToken(UUID.randomUUID().toString(), "family-1");
+
+        redis.stopServer();
+
+        EmbeddedRedis.await(() -> filter(token).status == HttpStatus.SERVICE_UNAVAILABLE, Duration.ofSeconds(5));
+    }
+
+    @Test
+    void rejectsARefreshToken() {
+        String refreshToken = Jwts.builder()
+                .subject("alice")
+                .claim(JwtUtil.USER_ID_CLAIM, 7L)
+                .claim(JwtUtil.TOKEN_TYPE_CLAIM, "refresh")
+                .claim(JwtUtil.FAMILY_CLAIM, "family-1")
+                .id(UUID.randomUUID().toString())
+                .expiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)))
+                .compact();
+
+        assertThat(filter(refreshToken).status).isEqualTo(HttpStatus.UNAUTHORIZED);
+    }
+
+    @Test
+    void rejectsATokenWithoutARole() {
+        String token = Jwts.builder()
+                .subject("alice")
+                .claim(JwtUtil.USER_ID_CLAIM, 7L)
+                .claim(JwtUtil.TOKEN_TYPE_CLAIM, JwtUtil.ACCESS_TOKEN)
+                .id(UUID.randomUUID().toString())
+                .expiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)))
+                .compact();
+
+        Forwarded forwarded = filter(token);
+
+        assertThat(forwarded.exchange).isNull();
+        assertThat(forwarded.status).isEqualTo(HttpStatus.UNAUTHORIZED);
+    }
+
+    private Forwarded filter(String token) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/chat/history")
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + token));
+        AtomicReference<ServerWebExchange> forwarded = new AtomicReference<>();
+        filter.filter(exchange, next -> {
+            forwarded.set(next);
+            return Mono.empty();
+        }).block(Duration.ofSeconds(5));
+        return new Forwarded(forwarded.get(), exchange.getResponse().getStatusCode());
+    }
+
+    private static String accessToken(String tokenId, String familyId) {
+        return Jwts.builder()
+                .subject("alice")
+                .claim(JwtUtil.USER_ID_CLAIM, 7L)
+                .claim(JwtUtil.ROLE_CLAIM, "USER")
+                .claim(JwtUtil.TOKEN_TYPE_CLAIM, JwtUtil.ACCESS_TOKEN)
+                .claim(JwtUtil.FAMILY_CLAIM, familyId)
+                .id(tokenId)
+                .issuedAt(new Date())
+                .expiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)))
+                .compact();
+    }
+
+    private record Forwarded(ServerWebExchange exchange, HttpStatusCode status) {
+    }
+}
@@ -0,0 +1,103 @@
+package com.rag.gateway.filter;
+
+import com.rag.gateway.config.UserRateLimiter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class RateLimitFilterTest {
+
+    private UserRateLimiter rateLimiter;
+    private GatewayFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("rate-limit.budgets.chat.requests-per-second", "1000")
+                .withProperty("rate-limit.budgets.chat.burst", "1000")
+                .withProperty("rate-limit.budgets.chat.max-concurrent", "1");
+        rateLimiter = new UserRateLimiter(environment, mock(ReactiveStringRedisTemplate.class));
+        rateLimiter.init();
+
+        RateLimitFilter factory = new RateLimitFilter();
+        ReflectionTestUtils.setField(factory, "rateLimiter", rateLimiter);
+        RateLimitFilter.Config config = new RateLimitFilter.Config();
+        config.setBudget("chat");
+        filter = factory.apply(config);
+    }
+
+    @AfterEach
+    void tearDown() {
+        rateLimiter.stop();
+    }
+
+    @Test
+    void releasesTheSlotWhenTheRequestCompletes() {
+        AtomicInteger forwarded = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            filter.filter(exchange(), exchange -> {
+                forwarded.incrementAndGet();
+                return Mono.empty();
+            }).block(Duration.ofSeconds(5));
+        }
+
+        assertThat(forwarded).hasValue(3);
+    }
+
+    @Test
+    void rejectsWithRetryAfterWhileTheSlotIsTaken() {
+        Disposable inFlight = filter.filter(exchange(), exchange -> Mono.never()).subscribe();
+        try {
+            AtomicInteger forwarded = new AtomicInteger();
+            MockServerWebExchange rejected = exchange();
+            filter.filter(rejected, exchange -> {
+                forwarded.incrementAndGet();
+                return Mono.empty();
+            }).block(Duration.ofSeconds(5));
+
+            assertThat(forwarded).hasValue(0);
+            assertThat(rejected.getResponse().getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+            assertThat(rejected.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+        } finally {
+            inFlight.dispose();
+        }
+    }
+
+    @Test
+    void releasesTheSlotWhenTheClientGoesAway() {
+        // A client disconnecting mid-request cancels the chain rather than completing it
+        Disposable inFlight = filter.filter(exchange(), exchange -> Mono.never()).subscribe();
+        inFlight.dispose();
+
+        MockServerWebExchange next = exchange();
+        AtomicInteger forwarded = new AtomicInteger();
+        filter.filter(next, exchange -> {
+            forwarded.incrementAndGet();
+            return Mono.empty();
+        }).block(Duration.ofSeconds(5));
+
+        assertThat(forwarded).hasValue(1);
+        assertThat(next.getResponse().getStatusCode()).isNull();
+    }
+
+    private static MockServerWebExchange exchange() {
+        return MockServerWebExchange.from(MockServerHttpRequest.post("/api/chat").header("X-User-Id", "7"));
+    }
+}
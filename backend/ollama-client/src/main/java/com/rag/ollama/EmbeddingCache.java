@@ -0,0 +1,241 @@
+package com.rag.ollama;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded in-memory cache of embeddings with LRU and TTL eviction.
+ * <p>
+ * With {@link Precision#HALF}, vectors are stored as IEEE 754 half-precision values, halving
+ * memory per entry; the rounding error (about 5e-4 relative) is far below what matters for
+ * ranking query results. Vectors that are written to the index should use
+ * {@link Precision#FULL}, so the index does not end up with a mix of precisions.
+ * {@link #get(String, EmbeddingLoader)} coalesces concurrent misses for the same key, so N
+ * simultaneous identical queries cost one embedding call.
+ */
+public class EmbeddingCache {
+
+    public enum Precision {
+        HALF,
+        FULL
+    }
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final Precision precision;
+
+    // Guarded by itself
+    private final LinkedHashMap<String, Entry> entries;
+    private final Map<String, CompletableFuture<float[]>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public EmbeddingCache(int maxEntries, long ttlSeconds, Precision precision) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.precision = precision;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > EmbeddingCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached embedding for {@code key}, or loads it. If another thread is already
+     * loading the same key, waits for that result instead of loading again; such lookups are
+     * counted as coalesced rather than as misses.
+     */
+    public float[] get(String key, EmbeddingLoader loader) throws IOException {
+        float[] cached = lookup(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+
+        CompletableFuture<float[]> load = new CompletableFuture<>();
+        CompletableFuture<float[]> existing = inFlight.putIfAbsent(key, load);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return await(existing).clone();
+        }
+
+        misses.incrementAndGet();
+        try {
+            float[] embedding = loader.load(key);
+            put(key, embedding);
+            load.complete(embedding.clone());
+            return embedding;
+        } catch (IOException | RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, load);
+        }
+    }
+
+    public float[] getIfPresent(String key) {
+        float[] cached = lookup(key);
+        if (cached == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return cached;
+    }
+
+    private float[] lookup(String key) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && System.nanoTime() - entry.createdAtNanos > ttlNanos) {
+                entries.remove(key);
+                entry = null;
+            }
+        }
+
+        if (entry == null) {
+            return null;
+        }
+        return entry.halfs != null ? toFloats(entry.halfs) : entry.floats.clone();
+    }
+
+    public void put(String key, float[] embedding) {
+        Entry entry = precision == Precision.HALF
+                ? new Entry(toHalfs(embedding), null, System.nanoTime())
+                : new Entry(null, embedding.clone(), System.nanoTime());
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long hitCount() {
+        return hits.get();
+    }
+
+    public long missCount() {
+        return misses.get();
+    }
+
+    /** Number of lookups that waited for another thread's in-flight load; neither hits nor misses. */
+    public long coalescedCount() {
+        return coalesced.get();
+    }
+
+    private static float[] await(CompletableFuture<float[]> load) throws IOException {
+        try {
+            return load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for embedding", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException("Embedding failed", e.getCause());
+        }
+    }
+
+    private static short[] toHalfs(float[] values) {
+        short[] halfs = new short[values.length];
+        for (int i = 0; i < values.length; i++) {
+            halfs[i] = floatToHalf(values[i]);
+        }
+        return halfs;
+    }
+
+    private static float[] toFloats(short[] halfs) {
+        float[] values = new float[halfs.length];
+        for (int i = 0; i < halfs.length; i++) {
+            values[i] = halfToFloat(halfs[i]);
+        }
+        return values;
+    }
+
+    /** Converts to half precision with round-to-nearest-even, flushing to zero below the subnormal range. */
+    static short floatToHalf(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = (bits >>> 23) & 0xff;
+        int mantissa = bits & 0x7fffff;
+
+        if (exponent == 0xff) {
+            // Infinity or NaN
+            return (short) (sign | 0x7c00 | (mantissa != 0 ? 0x200 : 0));
+        }
+
+        int halfExponent = exponent - 127 + 15;
+        if (halfExponent >= 0x1f) {
+            return (short) (sign | 0x7c00);
+        }
+        if (halfExponent <= 0) {
+            if (halfExponent < -10) {
+                return (short) sign;
+            }
+            // Subnormal: shift the mantissa (with its implicit leading one) into place
+            mantissa |= 0x800000;
+            int shift = 14 - halfExponent;
+            int half = mantissa >> shift;
+            int remainder = mantissa & ((1 << shift) - 1);
+            int halfway = 1 << (shift - 1);
+            if (remainder > halfway || (remainder == halfway && (half & 1) != 0)) {
+                half++;
+            }
+            return (short) (sign | half);
+        }
+
+        int half = (halfExponent << 10) | (mantissa >> 13);
+        int remainder = mantissa & 0x1fff;
+        if (remainder > 0x1000 || (remainder == 0x1000 && (half & 1) != 0)) {
+            // May carry into the exponent, which is still the correctly rounded result
+            half++;
+        }
+        return (short) (sign | half);
+    }
+
+    static float halfToFloat(short half) {
+        int sign = (half & 0x8000) << 16;
+        int exponent = (half >>> 10) & 0x1f;
+        int mantissa = half & 0x3ff;
+
+        if (exponent == 0x1f) {
+            return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+        }
+        if (exponent == 0) {
+            if (mantissa == 0) {
+                return Float.intBitsToFloat(sign);
+            }
+            // Subnormal half: value is mantissa * 2^-24
+            float value = mantissa * 0x1p-24f;
+            return sign == 0 ? value : -value;
+        }
+        return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+    }
+
+    @FunctionalInterface
+    public interface EmbeddingLoader {
+        float[] load(String key) throws IOException;
+    }
+
+    // Exactly one of halfs and floats is set, depending on the precision
+    private record Entry(short[] halfs, float[] floats, long createdAtNanos) {
+    }
+}
@@ -0,0 +1,322 @@
+package com.rag.ollama;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Minimal pull parser for Ollama embedding responses.
+ * <p>
+ * Reads the {@code embeddings} (or legacy {@code embedding}) field of the response straight into
+ * {@code float[]} while streaming the body, without materializing the body as a String, building
+ * a JSON tree or allocating a String per number. All other fields are skipped.
+ */
+final class EmbeddingJsonReader {
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final Reader in;
+    private final char[] buffer = new char[8192];
+    private final int dimensionHint;
+    private int pos;
+    private int limit;
+
+    private EmbeddingJsonReader(Reader in, int dimensionHint) {
+        this.in = in;
+        this.dimensionHint = Math.max(16, dimensionHint);
+    }
+
+    /**
+     * Reads all embedding vectors from a {@code /api/embed} or {@code /api/embeddings} response.
+     *
+     * @param dimensionHint expected vector length, used to size the arrays up front
+     */
+    static List<float[]> readEmbeddings(Reader in, int dimensionHint) throws IOException {
+        return new EmbeddingJsonReader(in, dimensionHint).readResponse();
+    }
+
+    private List<float[]> readResponse() throws IOException {
+        List<float[]> embeddings = new ArrayList<>();
+
+        expect('{');
+        if (peek() == '}') {
+            return embeddings;
+        }
+
+        do {
+            expect('"');
+            String name = readString();
+            expect(':');
+
+            if ("embeddings".equals(name)) {
+                expect('[');
+                if (peek() == ']') {
+                    pos++;
+                } else {
+                    do {
+                        embeddings.add(readFloatArray());
+                    } while (nextSeparator(']'));
+                }
+            } else if ("embedding".equals(name)) {
+                embeddings.add(readFloatArray());
+            } else {
+                skipValue();
+            }
+        } while (nextSeparator('}'));
+
+        return embeddings;
+    }
+
+    private float[] readFloatArray() throws IOException {
+        expect('[');
+        float[] values = new float[dimensionHint];
+        int size = 0;
+
+        if (peek() == ']') {
+            pos++;
+            return new float[0];
+        }
+
+        do {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = readFloat();
+        } while (nextSeparator(']'));
+
+        return size == values.length ? values : Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Parses a JSON number by accumulating up to 18 significant digits in a long and scaling
+     * by a power of ten. Precision beyond float is not needed for embeddings.
+     */
+    private float readFloat() throws IOException {
+        if (peek() == -1) {
+            throw new IOException("Unexpected end of embedding response");
+        }
+        boolean negative = false;
+        if (current() == '-') {
+            negative = true;
+            pos++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean sawDigit = false;
+
+        while (fill() && isDigit(current())) {
+            sawDigit = true;
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (current() - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+            } else {
+                exponent++;
+            }
+            pos++;
+        }
+
+        if (fill() && current() == '.') {
+            pos++;
+            while (fill() && isDigit(current())) {
+                sawDigit = true;
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (current() - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    exponent--;
+                }
+                pos++;
+            }
+        }
+
+        if (!sawDigit) {
+            throw new IOException("Expected a number at offset " + pos);
+        }
+
+        if (fill() && (current() == 'e' || current() == 'E')) {
+            pos++;
+            boolean negativeExponent = false;
+            if (fill() && (current() == '+' || current() == '-')) {
+                negativeExponent = current() == '-';
+                pos++;
+            }
+            int explicitExponent = 0;
+            while (fill() && isDigit(current())) {
+                explicitExponent = Math.min(explicitExponent * 10 + (current() - '0'), 1000);
+                pos++;
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+
+        double value = mantissa;
+        if (exponent < 0) {
+            value = -exponent < POWERS_OF_TEN.length ? value / POWERS_OF_TEN[-exponent] : value * Math.pow(10, exponent);
+        } else if (exponent > 0) {
+            value = exponent < POWERS_OF_TEN.length ? value * POWERS_OF_TEN[exponent] : value * Math.pow(10, exponent);
+        }
+        return (float) (negative ? -value : value);
+    }
+
+    /** Reads the remainder of a string whose opening quote has been consumed. */
+    private String readString() throws IOException {
+        StringBuilder value = new StringBuilder();
+        while (true) {
+            char c = nextChar();
+            if (c == '"') {
+                return value.toString();
+            }
+            if (c == '\\') {
+                char escaped = nextChar();
+                switch (escaped) {
+                    case 'b' -> value.append('\b');
+                    case 'f' -> value.append('\f');
+                    case 'n' -> value.append('\n');
+                    case 'r' -> value.append('\r');
+                    case 't' -> value.append('\t');
+                    case 'u' -> {
+                        int codePoint = 0;
+                        for (int i = 0; i < 4; i++) {
+                            codePoint = (codePoint << 4) | Character.digit(nextChar(), 16);
+                        }
+                        value.append((char) codePoint);
+                    }
+                    default -> value.append(escaped);
+                }
+            } else {
+                value.append(c);
+            }
+        }
+    }
+
+    private void skipValue() throws IOException {
+        char c = (char) peek();
+        switch (c) {
+            case '{' -> {
+                pos++;
+                if (peek() == '}') {
+                    pos++;
+                    return;
+                }
+                do {
+                    expect('"');
+                    skipString();
+                    expect(':');
+                    skipValue();
+                } while (nextSeparator('}'));
+            }
+            case '[' -> {
+                pos++;
+                if (peek() == ']') {
+                    pos++;
+                    return;
+                }
+                do {
+                    skipValue();
+                } while (nextSeparator(']'));
+            }
+            case '"' -> {
+                pos++;
+                skipString();
+            }
+            default -> {
+                // number, true, false or null
+                while (fill() && !isDelimiter(current())) {
+                    pos++;
+                }
+            }
+        }
+    }
+
+    private void skipString() throws IOException {
+        while (true) {
+            char c = nextChar();
+            if (c == '"') {
+                return;
+            }
+            if (c == '\\') {
+                nextChar();
+            }
+        }
+    }
+
+    /**
+     * Consumes a {@code ,} (returning true) or the given closing character (returning false).
+     */
+    private boolean nextSeparator(char close) throws IOException {
+        int c = peek();
+        pos++;
+        if (c == ',') {
+            return true;
+        }
+        if (c == close) {
+            return false;
+        }
+        throw new IOException("Expected ',' or '" + close + "' but found " + describe(c));
+    }
+
+    private void expect(char expected) throws IOException {
+        int c = peek();
+        if (c != expected) {
+            throw new IOException("Expected '" + expected + "' but found " + describe(c));
+        }
+        pos++;
+    }
+
+    /** Skips whitespace and returns the next character without consuming it, or -1 at end of input. */
+    private int peek() throws IOException {
+        while (fill()) {
+            char c = current();
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+            pos++;
+        }
+        return -1;
+    }
+
+    private char nextChar() throws IOException {
+        if (!fill()) {
+            throw new IOException("Unexpected end of embedding response");
+        }
+        return buffer[pos++];
+    }
+
+    private char current() {
+        return buffer[pos];
+    }
+
+    private boolean fill() throws IOException {
+        if (pos < limit) {
+            return true;
+        }
+        limit = in.read(buffer, 0, buffer.length);
+        pos = 0;
+        if (limit <= 0) {
+            limit = 0;
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isDelimiter(char c) {
+        return c == ',' || c == ']' || c == '}' || c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private static String describe(int c) {
+        return c == -1 ? "end of input" : "'" + (char) c + "'";
+    }
+}
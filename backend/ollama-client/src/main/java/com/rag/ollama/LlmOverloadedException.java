@@ -0,0 +1,15 @@
+package com.rag.ollama;
+
+import java.io.IOException;
+
+/**
+ * Thrown when an Ollama call is rejected by the scheduler because too many calls are already
+ * queued or it waited too long for a slot. An {@link IOException} so that it travels the same
+ * paths as a failed Ollama call.
+ */
+public class LlmOverloadedException extends IOException {
+
+    public LlmOverloadedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,236 @@
+package com.rag.ollama;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admission control in front of Ollama.
+ * <p>
+ * Each operation (generate, embed) has its own concurrency limit. Callers over the limit wait in
+ * a priority queue where interactive requests are always served before background work, then
+ * first come first served. A caller is rejected with {@link LlmOverloadedException} right away
+ * if its priority's queue is full, or once it has waited longer than its priority allows, so an
+ * overloaded Ollama turns into quick 503s instead of a pile of 60 second timeouts.
+ */
+public class LlmScheduler {
+
+    public enum Operation { GENERATE, EMBED }
+
+    // Declaration order is scheduling order
+    public enum Priority { INTERACTIVE, BACKGROUND }
+
+    /** Queue bounds for one priority. */
+    public record Limits(int maxQueue, long maxWaitMillis) {
+    }
+
+    private final Map<Operation, Lane> lanes = new EnumMap<>(Operation.class);
+    private final Map<Priority, Limits> limits;
+    private final MeterRegistry meterRegistry;
+    private final AtomicLong sequence = new AtomicLong();
+
+    public LlmScheduler(int generateConcurrency, int embedConcurrency,
+                        Limits interactive, Limits background, MeterRegistry meterRegistry) {
+        this.limits = new EnumMap<>(Map.of(Priority.INTERACTIVE, interactive, Priority.BACKGROUND, background));
+        this.meterRegistry = meterRegistry;
+        lanes.put(Operation.GENERATE, new Lane(Operation.GENERATE, generateConcurrency));
+        lanes.put(Operation.EMBED, new Lane(Operation.EMBED, embedConcurrency));
+    }
+
+    /**
+     * Runs {@code call} once a slot for {@code operation} is free.
+     */
+    public <T> T call(Operation operation, Priority priority, LlmCall<T> call) throws IOException {
+        try (Permit ignored = acquire(operation, priority)) {
+            return call.call();
+        }
+    }
+
+    /**
+     * Waits for a slot for {@code operation}. The returned permit must be closed when the Ollama
+     * call finishes; for asynchronous calls that is on completion, not when the call is sent.
+     */
+    public Permit acquire(Operation operation, Priority priority) throws IOException {
+        return lanes.get(operation).acquire(priority);
+    }
+
+    /**
+     * A held slot. Closing it more than once has no effect.
+     */
+    public static final class Permit implements AutoCloseable {
+
+        private final Lane lane;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Lane lane) {
+            this.lane = lane;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                lane.release();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface LlmCall<T> {
+        T call() throws IOException;
+    }
+
+    private final class Lane {
+
+        private final Operation operation;
+        private final int maxConcurrency;
+        private final ReentrantLock lock = new ReentrantLock();
+        // Guarded by lock
+        private final PriorityQueue<Waiter> queue = new PriorityQueue<>(
+                Comparator.comparing((Waiter waiter) -> waiter.priority).thenComparingLong(waiter -> waiter.sequence));
+        private final int[] queued = new int[Priority.values().length];
+        private int active;
+
+        private final Map<Priority, Timer> waitTimers = new EnumMap<>(Priority.class);
+
+        Lane(Operation operation, int maxConcurrency) {
+            this.operation = operation;
+            this.maxConcurrency = Math.max(1, maxConcurrency);
+
+            String operationTag = operation.name().toLowerCase();
+            for (Priority priority : Priority.values()) {
+                String priorityTag = priority.name().toLowerCase();
+                waitTimers.put(priority, Timer.builder("rag.llm.queue.wait")
+                        .tag("operation", operationTag).tag("priority", priorityTag)
+                        .register(meterRegistry));
+                Gauge.builder("rag.llm.queue.depth", this, lane -> lane.queued(priority))
+                        .tag("operation", operationTag).tag("priority", priorityTag)
+                        .register(meterRegistry);
+            }
+            Gauge.builder("rag.llm.active", this, Lane::active)
+                    .tag("operation", operationTag)
+                    .register(meterRegistry);
+        }
+
+        Permit acquire(Priority priority) throws IOException {
+            long start = System.nanoTime();
+            Limits limit = limits.get(priority);
+
+            lock.lock();
+            try {
+                if (active < maxConcurrency && queue.isEmpty()) {
+                    active++;
+                    waitTimers.get(priority).record(0, TimeUnit.NANOSECONDS);
+                    return new Permit(this);
+                }
+                if (queued[priority.ordinal()] >= limit.maxQueue()) {
+                    throw reject(priority, "queue_full");
+                }
+
+                Waiter waiter = new Waiter(priority, sequence.incrementAndGet(), lock.newCondition());
+                queue.add(waiter);
+                queued[priority.ordinal()]++;
+
+                long remaining = TimeUnit.MILLISECONDS.toNanos(limit.maxWaitMillis());
+                try {
+                    while (!waiter.granted) {
+                        if (remaining <= 0) {
+                            dequeue(waiter);
+                            throw reject(priority, "timeout");
+                        }
+                        remaining = waiter.condition.awaitNanos(remaining);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    if (waiter.granted) {
+                        release();
+                    } else {
+                        dequeue(waiter);
+                    }
+                    throw new IOException("Interrupted while waiting for Ollama", e);
+                }
+
+                waitTimers.get(priority).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                return new Permit(this);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void release() {
+            lock.lock();
+            try {
+                Waiter next = queue.poll();
+                if (next == null) {
+                    active--;
+                    return;
+                }
+                // Hand the slot straight to the next waiter so a newcomer cannot take it first
+                queued[next.priority.ordinal()]--;
+                next.granted = true;
+                next.condition.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void dequeue(Waiter waiter) {
+            queue.remove(waiter);
+            queued[waiter.priority.ordinal()]--;
+        }
+
+        private LlmOverloadedException reject(Priority priority, String reason) {
+            Counter.builder("rag.llm.rejected")
+                    .tag("operation", operation.name().toLowerCase())
+                    .tag("priority", priority.name().toLowerCase())
+                    .tag("reason", reason)
+                    .register(meterRegistry)
+                    .increment();
+            return new LlmOverloadedException("Ollama is overloaded (" + operation.name().toLowerCase()
+                    + " " + reason.replace('_', ' ') + "), please retry later");
+        }
+
+        private int queued(Priority priority) {
+            lock.lock();
+            try {
+                return queued[priority.ordinal()];
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private int active() {
+            lock.lock();
+            try {
+                return active;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static final class Waiter {
+
+        private final Priority priority;
+        private final long sequence;
+        private final Condition condition;
+        private boolean granted;
+
+        Waiter(Priority priority, long sequence, Condition condition) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.condition = condition;
+        }
+    }
+}
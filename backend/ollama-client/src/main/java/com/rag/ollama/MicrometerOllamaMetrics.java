@@ -0,0 +1,45 @@
+package com.rag.ollama;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records Ollama calls as {@code rag.ollama.call} timers and generation token counts as
+ * {@code rag.ollama.tokens} and {@code rag.ollama.generation.rate} summaries.
+ */
+public class MicrometerOllamaMetrics implements OllamaMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    public MicrometerOllamaMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void callCompleted(String operation, String backend, long durationNanos, boolean success) {
+        Timer.builder("rag.ollama.call")
+                .tag("operation", operation)
+                .tag("backend", backend)
+                .tag("outcome", success ? "success" : "failure")
+                .register(meterRegistry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void generationCompleted(String backend, long promptTokens, long outputTokens, long evalNanos) {
+        DistributionSummary.builder("rag.ollama.tokens").tag("type", "prompt").register(meterRegistry)
+                .record(promptTokens);
+        DistributionSummary.builder("rag.ollama.tokens").tag("type", "output").register(meterRegistry)
+                .record(outputTokens);
+        if (outputTokens > 0 && evalNanos > 0) {
+            DistributionSummary.builder("rag.ollama.generation.rate")
+                    .baseUnit("tokens/s")
+                    .tag("backend", backend)
+                    .register(meterRegistry)
+                    .record(outputTokens * 1e9 / evalNanos);
+        }
+    }
+}
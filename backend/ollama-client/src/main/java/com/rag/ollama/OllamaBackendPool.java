@@ -0,0 +1,258 @@
+package com.rag.ollama;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Routes Ollama calls across several instances.
+ * <p>
+ * Each call goes to the healthy instance with the fewest outstanding requests, counting an
+ * instance that does not have the model loaded as {@code coldPenalty} requests busier so warm
+ * instances are preferred unless they are clearly more loaded. Every instance is probed with
+ * {@code /api/tags} (reachable and has the model) and {@code /api/ps} (model loaded). An
+ * instance is ejected after {@code failureThreshold} consecutive failed calls or probes and
+ * re-admitted by the next successful probe. If every instance is ejected, calls are spread over
+ * all of them rather than failing outright.
+ */
+@Slf4j
+public class OllamaBackendPool implements AutoCloseable {
+
+    private final List<Backend> backends;
+    private final String model;
+    private final int failureThreshold;
+    private final int coldPenalty;
+    private final OkHttpClient probeClient;
+    private final AtomicInteger rotation = new AtomicInteger();
+
+    private ScheduledExecutorService prober;
+
+    public OllamaBackendPool(List<String> urls, String model, int failureThreshold, int coldPenalty) {
+        if (urls.isEmpty()) {
+            throw new IllegalArgumentException("At least one Ollama URL is required");
+        }
+        this.backends = urls.stream()
+                .map(url -> new Backend(url.strip().replaceAll("/+$", "")))
+                .toList();
+        this.model = model;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.coldPenalty = coldPenalty;
+        this.probeClient = new OkHttpClient.Builder()
+                .connectTimeout(2, TimeUnit.SECONDS)
+                .readTimeout(2, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * Probes every instance now and then every {@code intervalMillis}.
+     */
+    public void start(long intervalMillis) {
+        prober = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ollama-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        prober.scheduleWithFixedDelay(this::probeAll, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() {
+        if (prober != null) {
+            prober.shutdownNow();
+        }
+    }
+
+    public List<Backend> backends() {
+        return backends;
+    }
+
+    public int size() {
+        return backends.size();
+    }
+
+    /**
+     * Picks an instance for one call. The lease must be closed when the call completes, and
+     * {@link Lease#failed()} called first if the instance could not serve it.
+     */
+    public Lease lease() {
+        List<Backend> candidates = new ArrayList<>(backends.size());
+        for (Backend backend : backends) {
+            if (backend.available()) {
+                candidates.add(backend);
+            }
+        }
+        if (candidates.isEmpty()) {
+            candidates = backends;
+        }
+
+        // Rotate the starting point so ties are spread evenly
+        int start = Math.floorMod(rotation.getAndIncrement(), candidates.size());
+        Backend best = null;
+        int bestScore = Integer.MAX_VALUE;
+        for (int i = 0; i < candidates.size(); i++) {
+            Backend backend = candidates.get((start + i) % candidates.size());
+            int score = backend.outstanding.get() + (backend.modelLoaded ? 0 : coldPenalty);
+            if (score < bestScore) {
+                best = backend;
+                bestScore = score;
+            }
+        }
+
+        best.outstanding.incrementAndGet();
+        return new Lease(best);
+    }
+
+    void probeAll() {
+        for (Backend backend : backends) {
+            try {
+                probe(backend);
+            } catch (RuntimeException e) {
+                log.warn("Probe of Ollama instance {} failed: {}", backend.url, e.getMessage());
+            }
+        }
+    }
+
+    private void probe(Backend backend) {
+        JsonObject tags = get(backend.url + "/api/tags");
+        if (tags == null) {
+            backend.recordFailure();
+            return;
+        }
+        if (!listsModel(tags)) {
+            if (backend.hasModel) {
+                log.warn("Ollama instance {} does not have model {}, ejecting it", backend.url, model);
+            }
+            backend.hasModel = false;
+            return;
+        }
+        backend.hasModel = true;
+
+        JsonObject running = get(backend.url + "/api/ps");
+        backend.modelLoaded = running != null && listsModel(running);
+        backend.recordSuccess();
+    }
+
+    private JsonObject get(String url) {
+        Request request = new Request.Builder().url(url).get().build();
+        try (Response response = probeClient.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                return null;
+            }
+            return JsonParser.parseString(response.body().string()).getAsJsonObject();
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /** Whether a {@code /api/tags} or {@code /api/ps} response lists the configured model. */
+    private boolean listsModel(JsonObject response) {
+        if (!response.has("models")) {
+            return false;
+        }
+        for (JsonElement entry : response.getAsJsonArray("models")) {
+            JsonElement name = entry.getAsJsonObject().get("name");
+            if (name != null && matchesModel(name.getAsString())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesModel(String name) {
+        // "llama2" refers to "llama2:latest"
+        return name.equals(model) || (!model.contains(":") && name.equals(model + ":latest"));
+    }
+
+    public final class Backend {
+
+        private final String url;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private volatile boolean ejected;
+        // Optimistic until the first probe says otherwise
+        private volatile boolean hasModel = true;
+        private volatile boolean modelLoaded;
+
+        private Backend(String url) {
+            this.url = url;
+        }
+
+        public String url() {
+            return url;
+        }
+
+        public int outstanding() {
+            return outstanding.get();
+        }
+
+        public boolean available() {
+            return !ejected && hasModel;
+        }
+
+        private void recordSuccess() {
+            consecutiveFailures.set(0);
+            if (ejected) {
+                ejected = false;
+                log.info("Ollama instance {} is healthy again, re-admitting it", url);
+            }
+        }
+
+        private void recordFailure() {
+            if (consecutiveFailures.incrementAndGet() >= failureThreshold && !ejected) {
+                ejected = true;
+                log.warn("Ollama instance {} failed {} times in a row, ejecting it", url, failureThreshold);
+            }
+        }
+    }
+
+    /**
+     * One call's hold on an instance.
+     */
+    public static final class Lease implements AutoCloseable {
+
+        private final Backend backend;
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile boolean failed;
+
+        private Lease(Backend backend) {
+            this.backend = backend;
+        }
+
+        public String url() {
+            return backend.url;
+        }
+
+        /** Marks the call as failed because of the instance (unreachable, 5xx, ...). */
+        public void failed() {
+            failed = true;
+        }
+
+        @Override
+        public void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            backend.outstanding.decrementAndGet();
+            if (failed) {
+                backend.recordFailure();
+            } else {
+                // A completed call leaves the model loaded on that instance
+                backend.modelLoaded = true;
+                backend.consecutiveFailures.set(0);
+            }
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package com.rag.ollama;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.*;
+import okio.BufferedSink;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP client for Ollama's {@code /api/embed} and {@code /api/generate}, shared by all services.
+ * <p>
+ * One OkHttp client with a sized connection pool and dispatcher is used for every instance of
+ * the {@link OllamaBackendPool}, so connections stay open between calls. Request bodies are
+ * written straight to the socket and responses are parsed while they stream in: embeddings go
+ * into {@code float[]} without an intermediate String, and generation responses are read field
+ * by field so the large {@code context} array Ollama returns is skipped rather than built.
+ * Every request carries {@code keep_alive} so the model stays loaded between calls.
+ * <p>
+ * The client does no admission control; callers go through an {@link LlmScheduler}.
+ */
+@Slf4j
+public class OllamaClient implements AutoCloseable {
+
+    private static final MediaType JSON = MediaType.parse("application/json");
+
+    private final OllamaBackendPool backendPool;
+    private final OllamaClientOptions options;
+    private final OllamaMetrics metrics;
+    private final OkHttpClient http;
+
+    public OllamaClient(OllamaBackendPool backendPool, OllamaClientOptions options, OllamaMetrics metrics) {
+        this.backendPool = backendPool;
+        this.options = options;
+        this.metrics = metrics == null ? OllamaMetrics.NOOP : metrics;
+
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(options.getMaxRequests());
+        dispatcher.setMaxRequestsPerHost(options.getMaxRequests());
+
+        this.http = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(options.getMaxIdleConnections(),
+                        options.getConnectionKeepAlive().toMillis(), TimeUnit.MILLISECONDS))
+                // Ollama speaks HTTP/1.1 only
+                .protocols(List.of(Protocol.HTTP_1_1))
+                .connectTimeout(options.getConnectTimeout())
+                .readTimeout(options.getReadTimeout())
+                .writeTimeout(options.getWriteTimeout())
+                .build();
+    }
+
+    @Override
+    public void close() {
+        http.dispatcher().executorService().shutdown();
+        http.connectionPool().evictAll();
+    }
+
+    /**
+     * Embeds all inputs in one {@code /api/embed} call. Embeddings are returned in input order.
+     */
+    public List<float[]> embed(List<String> inputs) throws IOException {
+        long start = System.nanoTime();
+        boolean success = false;
+        OllamaBackendPool.Lease lease = backendPool.lease();
+        try (lease; Response response = execute(lease, "/api/embed", embedBody(inputs))) {
+            List<float[]> embeddings = readEmbeddings(response, inputs.size());
+            success = true;
+            return embeddings;
+        } finally {
+            metrics.callCompleted("embed", lease.url(), System.nanoTime() - start, success);
+        }
+    }
+
+    /**
+     * Asynchronous {@link #embed}. The future completes on an OkHttp thread.
+     */
+    public CompletableFuture<List<float[]>> embedAsync(List<String> inputs) {
+        long start = System.nanoTime();
+        OllamaBackendPool.Lease lease = backendPool.lease();
+        Request request = new Request.Builder()
+                .url(lease.url() + "/api/embed")
+                .post(embedBody(inputs))
+                .build();
+
+        CompletableFuture<List<float[]>> future = new CompletableFuture<>();
+        http.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                lease.failed();
+                lease.close();
+                metrics.callCompleted("embed", lease.url(), System.nanoTime() - start, false);
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                boolean success = false;
+                try (lease; response) {
+                    if (response.code() >= 500) {
+                        lease.failed();
+                    }
+                    List<float[]> embeddings = readEmbeddings(response, inputs.size());
+                    success = true;
+                    future.complete(embeddings);
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    metrics.callCompleted("embed", lease.url(), System.nanoTime() - start, success);
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Generates a complete response with {@code "stream": false}.
+     */
+    public String generate(String prompt) throws IOException {
+        long start = System.nanoTime();
+        boolean success = false;
+        OllamaBackendPool.Lease lease = backendPool.lease();
+        try (lease; Response response = execute(lease, "/api/generate", generateBody(prompt, false))) {
+            if (!response.isSuccessful()) {
+                throw new IOException("Failed to generate response: " + response);
+            }
+
+            JsonReader reader = new JsonReader(response.body().charStream());
+            GenerateChunk chunk = readChunk(reader);
+            chunk.report(lease.url());
+            success = true;
+            return chunk.response;
+        } finally {
+            metrics.callCompleted("generate", lease.url(), System.nanoTime() - start, success);
+        }
+    }
+
+    /**
+     * Generates with {@code "stream": true}, passing each token to the handler as soon as it
+     * arrives. If the handler throws, the HTTP call is closed, which stops generation on the
+     * Ollama side.
+     *
+     * @return the full generated text
+     */
+    public String generateStream(String prompt, TokenHandler handler) throws IOException {
+        long start = System.nanoTime();
+        boolean success = false;
+        OllamaBackendPool.Lease lease = backendPool.lease();
+        try (lease; Response response = execute(lease, "/api/generate", generateBody(prompt, true))) {
+            if (!response.isSuccessful()) {
+                throw new IOException("Failed to generate response: " + response);
+            }
+
+            // NDJSON: one object per line, read as a sequence of top-level values
+            JsonReader reader = new JsonReader(response.body().charStream());
+            reader.setLenient(true);
+
+            StringBuilder answer = new StringBuilder();
+            while (reader.peek() != JsonToken.END_DOCUMENT) {
+                GenerateChunk chunk = readChunk(reader);
+                if (!chunk.response.isEmpty()) {
+                    answer.append(chunk.response);
+                    handler.onToken(chunk.response);
+                }
+                if (chunk.done) {
+                    chunk.report(lease.url());
+                    break;
+                }
+            }
+            success = true;
+            return answer.toString();
+        } finally {
+            metrics.callCompleted("generate", lease.url(), System.nanoTime() - start, success);
+        }
+    }
+
+    /**
+     * Asks every instance to load the model now (a generate request without a prompt), so the
+     * first real request does not pay for loading it. Failures are only logged.
+     */
+    public void preload() {
+        for (OllamaBackendPool.Backend backend : backendPool.backends()) {
+            RequestBody body = jsonBody(json -> {
+                json.beginObject();
+                json.name("model").value(options.getModel());
+                keepAlive(json);
+                json.endObject();
+            });
+            Request request = new Request.Builder()
+                    .url(backend.url() + "/api/generate")
+                    .post(body)
+                    .build();
+
+            http.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    log.warn("Failed to preload model {} on {}: {}", options.getModel(), backend.url(), e.getMessage());
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) {
+                    try (response) {
+                        if (response.isSuccessful()) {
+                            log.info("Preloaded model {} on {}", options.getModel(), backend.url());
+                        } else {
+                            log.warn("Failed to preload model {} on {}: {}", options.getModel(), backend.url(), response);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Sends the request to the leased instance, marking the lease failed if the instance is
+     * unreachable or answers with a server error.
+     */
+    private Response execute(OllamaBackendPool.Lease lease, String path, RequestBody body) throws IOException {
+        Request request = new Request.Builder()
+                .url(lease.url() + path)
+                .post(body)
+                .build();
+        try {
+            Response response = http.newCall(request).execute();
+            if (response.code() >= 500) {
+                lease.failed();
+            }
+            return response;
+        } catch (IOException e) {
+            lease.failed();
+            throw e;
+        }
+    }
+
+    private List<float[]> readEmbeddings(Response response, int expected) throws IOException {
+        if (!response.isSuccessful()) {
+            throw new IOException("Failed to generate embeddings: " + response);
+        }
+        List<float[]> embeddings = EmbeddingJsonReader.readEmbeddings(
+                response.body().charStream(), options.getEmbeddingDimension());
+        if (embeddings.size() != expected) {
+            throw new IOException("Expected " + expected + " embeddings but got " + embeddings.size());
+        }
+        return embeddings;
+    }
+
+    private RequestBody embedBody(List<String> inputs) {
+        return jsonBody(json -> {
+            json.beginObject();
+            json.name("model").value(options.getModel());
+            json.name("input").beginArray();
+            for (String input : inputs) {
+                json.value(input);
+            }
+            json.endArray();
+            keepAlive(json);
+            json.endObject();
+        });
+    }
+
+    private RequestBody generateBody(String prompt, boolean stream) {
+        return jsonBody(json -> {
+            json.beginObject();
+            json.name("model").value(options.getModel());
+            json.name("prompt").value(prompt);
+            json.name("stream").value(stream);
+            keepAlive(json);
+            json.endObject();
+        });
+    }
+
+    private void keepAlive(JsonWriter json) throws IOException {
+        String keepAlive = options.getModelKeepAlive();
+        if (keepAlive == null || keepAlive.isBlank()) {
+            return;
+        }
+        // Ollama takes either a number of seconds or a duration string such as "30m". Parse
+        // before writing the name, which may only be written once
+        long seconds;
+        try {
+            seconds = Long.parseLong(keepAlive.strip());
+        } catch (NumberFormatException e) {
+            json.name("keep_alive").value(keepAlive.strip());
+            return;
+        }
+        json.name("keep_alive").value(seconds);
+    }
+
+    /**
+     * Streams the request JSON into the socket instead of building it as a String first.
+     */
+    private static RequestBody jsonBody(JsonBodyWriter writer) {
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return JSON;
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                JsonWriter json = new JsonWriter(new OutputStreamWriter(sink.outputStream(), StandardCharsets.UTF_8));
+                writer.write(json);
+                json.flush();
+            }
+        };
+    }
+
+    /**
+     * Reads one {@code /api/generate} response object, keeping only the fields we use.
+     */
+    private GenerateChunk readChunk(JsonReader reader) throws IOException {
+        GenerateChunk chunk = new GenerateChunk();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            switch (name) {
+                case "response" -> chunk.response = reader.nextString();
+                case "done" -> chunk.done = reader.nextBoolean();
+                case "error" -> throw new IOException("Ollama error: " + reader.nextString());
+                case "prompt_eval_count" -> chunk.promptTokens = reader.nextLong();
+                case "eval_count" -> chunk.outputTokens = reader.nextLong();
+                case "eval_duration" -> chunk.evalNanos = reader.nextLong();
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return chunk;
+    }
+
+    private final class GenerateChunk {
+        private String response = "";
+        private boolean done;
+        private long promptTokens;
+        private long outputTokens;
+        private long evalNanos;
+
+        void report(String backend) {
+            metrics.generationCompleted(backend, promptTokens, outputTokens, evalNanos);
+        }
+    }
+
+    @FunctionalInterface
+    public interface TokenHandler {
+        void onToken(String token) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface JsonBodyWriter {
+        void write(JsonWriter json) throws IOException;
+    }
+}
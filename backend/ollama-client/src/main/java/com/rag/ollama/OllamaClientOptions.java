@@ -0,0 +1,49 @@
+package com.rag.ollama;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * Settings of an {@link OllamaClient}.
+ */
+@Getter
+@Builder
+public class OllamaClientOptions {
+
+    private final String model;
+
+    /** Expected embedding length, used to size vectors before parsing. */
+    @Builder.Default
+    private final int embeddingDimension = 4096;
+
+    /**
+     * Sent as {@code keep_alive} with every request: how long Ollama keeps the model loaded after
+     * the call, e.g. {@code "30m"}, or {@code "-1"} to keep it loaded. {@code null} leaves the
+     * server default (5 minutes).
+     */
+    @Builder.Default
+    private final String modelKeepAlive = "30m";
+
+    @Builder.Default
+    private final Duration connectTimeout = Duration.ofSeconds(5);
+
+    /** Longest gap between bytes; a non-streamed generation sends nothing until it is done. */
+    @Builder.Default
+    private final Duration readTimeout = Duration.ofSeconds(120);
+
+    @Builder.Default
+    private final Duration writeTimeout = Duration.ofSeconds(60);
+
+    @Builder.Default
+    private final int maxIdleConnections = 32;
+
+    /** How long an idle pooled connection is kept open. */
+    @Builder.Default
+    private final Duration connectionKeepAlive = Duration.ofMinutes(5);
+
+    /** Concurrent HTTP calls across all instances; admission control is the scheduler's job. */
+    @Builder.Default
+    private final int maxRequests = 64;
+}
@@ -0,0 +1,25 @@
+package com.rag.ollama;
+
+/**
+ * Hook for observing Ollama calls. Methods are called on the calling or OkHttp thread and must
+ * not block.
+ */
+public interface OllamaMetrics {
+
+    OllamaMetrics NOOP = new OllamaMetrics() {
+    };
+
+    /**
+     * @param operation {@code embed} or {@code generate}
+     * @param backend   base URL of the instance that served the call
+     */
+    default void callCompleted(String operation, String backend, long durationNanos, boolean success) {
+    }
+
+    /**
+     * Token counts Ollama reports at the end of a generation. {@code evalNanos} is the time spent
+     * generating the output tokens.
+     */
+    default void generationCompleted(String backend, long promptTokens, long outputTokens, long evalNanos) {
+    }
+}
@@ -0,0 +1,34 @@
+package com.rag.ollama.autoconfigure;
+
+import com.rag.ollama.LlmScheduler;
+import com.rag.ollama.OllamaBackendPool;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+
+/**
+ * {@link LlmScheduler} sized from {@code ollama.scheduler.*}.
+ */
+@AutoConfiguration(after = OllamaClientAutoConfiguration.class)
+@ConditionalOnBean(OllamaBackendPool.class)
+@EnableConfigurationProperties(OllamaProperties.class)
+public class LlmSchedulerAutoConfiguration {
+
+    /**
+     * Concurrency limits are per Ollama instance, so capacity grows with the pool.
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public LlmScheduler llmScheduler(OllamaProperties properties, OllamaBackendPool backendPool,
+                                     MeterRegistry meterRegistry) {
+        OllamaProperties.Scheduler settings = properties.getScheduler();
+        int instances = backendPool.size();
+        return new LlmScheduler(settings.getGenerateConcurrency() * instances, settings.getEmbedConcurrency() * instances,
+                new LlmScheduler.Limits(settings.getInteractive().getMaxQueue(), settings.getInteractive().getMaxWaitMs()),
+                new LlmScheduler.Limits(settings.getBackground().getMaxQueue(), settings.getBackground().getMaxWaitMs()),
+                meterRegistry);
+    }
+}
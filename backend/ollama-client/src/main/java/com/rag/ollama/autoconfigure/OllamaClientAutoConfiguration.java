@@ -0,0 +1,62 @@
+package com.rag.ollama.autoconfigure;
+
+import com.rag.ollama.MicrometerOllamaMetrics;
+import com.rag.ollama.OllamaBackendPool;
+import com.rag.ollama.OllamaClient;
+import com.rag.ollama.OllamaClientOptions;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+
+import java.time.Duration;
+
+/**
+ * Backend pool and client for the Ollama instances in {@code ollama.urls}. Either bean can be
+ * replaced by declaring one of the same type.
+ */
+@AutoConfiguration(afterName = "org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration")
+@EnableConfigurationProperties(OllamaProperties.class)
+public class OllamaClientAutoConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    public OllamaBackendPool ollamaBackendPool(OllamaProperties properties, MeterRegistry meterRegistry) {
+        OllamaProperties.Pool settings = properties.getPool();
+        OllamaBackendPool pool = new OllamaBackendPool(properties.getUrls(), properties.getModel(),
+                settings.getFailureThreshold(), settings.getColdPenalty());
+
+        for (OllamaBackendPool.Backend backend : pool.backends()) {
+            Gauge.builder("rag.ollama.backend.outstanding", backend, OllamaBackendPool.Backend::outstanding)
+                    .tag("backend", backend.url()).register(meterRegistry);
+            Gauge.builder("rag.ollama.backend.available", backend, b -> b.available() ? 1 : 0)
+                    .tag("backend", backend.url()).register(meterRegistry);
+        }
+
+        pool.start(settings.getProbeIntervalMs());
+        return pool;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public OllamaClient ollamaClient(OllamaProperties properties, OllamaBackendPool backendPool,
+                                     MeterRegistry meterRegistry) {
+        OllamaProperties.Client settings = properties.getClient();
+        OllamaClient client = new OllamaClient(backendPool, OllamaClientOptions.builder()
+                .model(properties.getModel())
+                .embeddingDimension(properties.getEmbeddingDimension())
+                .modelKeepAlive(settings.getModelKeepAlive())
+                .connectTimeout(Duration.ofMillis(settings.getConnectTimeoutMs()))
+                .readTimeout(Duration.ofMillis(settings.getReadTimeoutMs()))
+                .maxIdleConnections(settings.getMaxIdleConnections())
+                .maxRequests(settings.getMaxRequests())
+                .build(), new MicrometerOllamaMetrics(meterRegistry));
+
+        if (settings.isPreload()) {
+            client.preload();
+        }
+        return client;
+    }
+}
@@ -0,0 +1,87 @@
+package com.rag.ollama.autoconfigure;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code ollama.*} settings read by {@link OllamaClientAutoConfiguration} and
+ * {@link LlmSchedulerAutoConfiguration}. Services may keep their own settings under the same
+ * prefix (e.g. {@code ollama.embedding-cache}); those are ignored here.
+ */
+@Data
+@ConfigurationProperties(prefix = "ollama")
+public class OllamaProperties {
+
+    /** Ollama instances; comma-separated in a single property. */
+    private List<String> urls = new ArrayList<>(List.of("http://localhost:11434"));
+
+    private String model = "llama2";
+
+    private int embeddingDimension = 4096;
+
+    private final Client client = new Client();
+
+    private final Pool pool = new Pool();
+
+    private final Scheduler scheduler = new Scheduler();
+
+    @Data
+    public static class Client {
+
+        /** How long Ollama keeps the model loaded after a call ("-1" keeps it loaded). */
+        private String modelKeepAlive = "30m";
+
+        /** Load the model on every instance at startup. */
+        private boolean preload = false;
+
+        private long connectTimeoutMs = 5000;
+
+        /** Longest gap between bytes; a non-streamed answer arrives all at once. */
+        private long readTimeoutMs = 120000;
+
+        private int maxIdleConnections = 32;
+
+        private int maxRequests = 64;
+    }
+
+    @Data
+    public static class Pool {
+
+        /** Consecutive failed calls or probes before an instance is ejected. */
+        private int failureThreshold = 3;
+
+        /** Outstanding requests an instance without the model loaded is treated as having. */
+        private int coldPenalty = 2;
+
+        private long probeIntervalMs = 5000;
+    }
+
+    /** Per-process limits per Ollama instance. */
+    @Data
+    public static class Scheduler {
+
+        private int generateConcurrency = 4;
+
+        private int embedConcurrency = 8;
+
+        private final Queue interactive = new Queue(64, 10000);
+
+        private final Queue background = new Queue(256, 600000);
+    }
+
+    @Data
+    public static class Queue {
+
+        private int maxQueue;
+
+        private long maxWaitMs;
+
+        public Queue(int maxQueue, long maxWaitMs) {
+            this.maxQueue = maxQueue;
+            this.maxWaitMs = maxWaitMs;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.rag.ollama;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.data.Percentage.withPercentage;
+
+class EmbeddingCacheTest {
+
+    @Test
+    void everyHalfValueRoundTripsExactly() {
+        for (int bits = 0; bits <= 0xFFFF; bits++) {
+            short half = (short) bits;
+            float value = EmbeddingCache.halfToFloat(half);
+            if (Float.isNaN(value)) {
+                assertThat(EmbeddingCache.halfToFloat(EmbeddingCache.floatToHalf(value))).isNaN();
+                continue;
+            }
+            assertThat(EmbeddingCache.floatToHalf(value)).as("half 0x%04x", bits).isEqualTo(half);
+        }
+    }
+
+    @Test
+    void decodesKnownHalfValues() {
+        assertThat(EmbeddingCache.halfToFloat((short) 0x3C00)).isEqualTo(1.0f);
+        assertThat(EmbeddingCache.halfToFloat((short) 0xC000)).isEqualTo(-2.0f);
+        assertThat(EmbeddingCache.halfToFloat((short) 0x7BFF)).isEqualTo(65504.0f);
+        assertThat(EmbeddingCache.halfToFloat((short) 0x0001)).isEqualTo((float) Math.pow(2, -24));
+        assertThat(EmbeddingCache.halfToFloat((short) 0x0400)).isEqualTo((float) Math.pow(2, -14));
+        assertThat(EmbeddingCache.halfToFloat((short) 0x7C00)).isEqualTo(Float.POSITIVE_INFINITY);
+        assertThat(EmbeddingCache.halfToFloat((short) 0xFC00)).isEqualTo(Float.NEGATIVE_INFINITY);
+        assertThat(EmbeddingCache.halfToFloat((short) 0x7E00)).isNaN();
+    }
+
+    @Test
+    void roundsToTheNearestHalfWithTiesToEven() {
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            // Mostly normal range, with some subnormals and out-of-range values mixed in
+            float value = (float) (random.nextGaussian() * Math.pow(2, random.nextInt(40) - 28));
+            short half = EmbeddingCache.floatToHalf(value);
+            float rounded = EmbeddingCache.halfToFloat(half);
+
+            if (Math.abs(value) >= 65520f) {
+                assertThat(rounded).isInfinite();
+                continue;
+            }
+            double error = Math.abs((double) rounded - value);
+            for (int neighbour : new int[]{half - 1, half + 1}) {
+                float other = EmbeddingCache.halfToFloat((short) neighbour);
+                if (Float.isNaN(other) || Math.signum(other) * Math.signum(rounded) < 0) {
+                    continue;
+                }
+                double otherError = Math.abs((double) other - value);
+                assertThat(error).as("%s -> %s, neighbour %s", value, rounded, other).isLessThanOrEqualTo(otherError);
+                if (error == otherError) {
+                    assertThat(half & 1).as("tie of %s must round to even", value).isZero();
+                }
+            }
+        }
+    }
+
+    @Test
+    void handlesSpecialValues() {
+        assertThat(EmbeddingCache.floatToHalf(0.0f)).isEqualTo((short) 0x0000);
+        assertThat(EmbeddingCache.floatToHalf(-0.0f)).isEqualTo((short) 0x8000);
+        assertThat(EmbeddingCache.floatToHalf(Float.POSITIVE_INFINITY)).isEqualTo((short) 0x7C00);
+        assertThat(EmbeddingCache.floatToHalf(Float.NEGATIVE_INFINITY)).isEqualTo((short) 0xFC00);
+        assertThat(EmbeddingCache.halfToFloat(EmbeddingCache.floatToHalf(Float.NaN))).isNaN();
+        // Overflow saturates to infinity, underflow flushes to a signed zero
+        assertThat(EmbeddingCache.floatToHalf(1e6f)).isEqualTo((short) 0x7C00);
+        assertThat(EmbeddingCache.floatToHalf(-1e6f)).isEqualTo((short) 0xFC00);
+        assertThat(EmbeddingCache.floatToHalf(1e-9f)).isEqualTo((short) 0x0000);
+        assertThat(EmbeddingCache.floatToHalf(-1e-9f)).isEqualTo((short) 0x8000);
+        // Just below the largest half rounds down to it rather than overflowing
+        assertThat(EmbeddingCache.floatToHalf(65519f)).isEqualTo((short) 0x7BFF);
+    }
+
+    @Test
+    void fullPrecisionReturnsExactCopies() {
+        EmbeddingCache cache = new EmbeddingCache(10, 60, EmbeddingCache.Precision.FULL);
+        float[] embedding = {0.1f, -0.123456789f, 3.3e-7f};
+        cache.put("a", embedding);
+        embedding[0] = 99f;
+
+        float[] cached = cache.getIfPresent("a");
+        assertThat(cached).containsExactly(0.1f, -0.123456789f, 3.3e-7f);
+
+        cached[1] = 99f;
+        assertThat(cache.getIfPresent("a")).containsExactly(0.1f, -0.123456789f, 3.3e-7f);
+    }
+
+    @Test
+    void halfPrecisionStaysWithinHalfRoundingError() {
+        EmbeddingCache cache = new EmbeddingCache(10, 60, EmbeddingCache.Precision.HALF);
+        float[] embedding = {0.1f, -0.75f, 12.5f};
+        cache.put("a", embedding);
+
+        float[] cached = cache.getIfPresent("a");
+        for (int i = 0; i < embedding.length; i++) {
+            assertThat(cached[i]).isCloseTo(embedding[i], withPercentage(0.05));
+        }
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        EmbeddingCache cache = new EmbeddingCache(2, 60, EmbeddingCache.Precision.FULL);
+        cache.put("a", new float[]{1});
+        cache.put("b", new float[]{2});
+        cache.getIfPresent("a");
+        cache.put("c", new float[]{3});
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.getIfPresent("b")).isNull();
+        assertThat(cache.getIfPresent("a")).containsExactly(1f);
+        assertThat(cache.getIfPresent("c")).containsExactly(3f);
+    }
+
+    @Test
+    void countsHitsAndMisses() throws IOException {
+        EmbeddingCache cache = new EmbeddingCache(10, 60, EmbeddingCache.Precision.FULL);
+        AtomicInteger loads = new AtomicInteger();
+        EmbeddingCache.EmbeddingLoader loader = key -> {
+            loads.incrementAndGet();
+            return new float[]{key.length()};
+        };
+
+        cache.get("abc", loader);
+        cache.get("abc", loader);
+        cache.get("abc", loader);
+
+        assertThat(loads).hasValue(1);
+        assertThat(cache.missCount()).isEqualTo(1);
+        assertThat(cache.hitCount()).isEqualTo(2);
+        assertThat(cache.coalescedCount()).isZero();
+    }
+
+    @Test
+    void coalescedWaitersAreNotCountedAsMisses() throws Exception {
+        EmbeddingCache cache = new EmbeddingCache(10, 60, EmbeddingCache.Precision.FULL);
+        int waiters = 7;
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        EmbeddingCache.EmbeddingLoader loader = key -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return new float[]{0.5f};
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(waiters + 1);
+        try {
+            List<Future<float[]>> results = new ArrayList<>();
+            results.add(executor.submit(() -> cache.get("q", loader)));
+            assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+            for (int i = 0; i < waiters; i++) {
+                results.add(executor.submit(() -> cache.get("q", loader)));
+            }
+            // Every waiter has joined the in-flight load before it completes
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (cache.coalescedCount() < waiters && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            for (Future<float[]> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS)).containsExactly(0.5f);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(loads).hasValue(1);
+        assertThat(cache.missCount()).isEqualTo(1);
+        assertThat(cache.coalescedCount()).isEqualTo(waiters);
+        assertThat(cache.hitCount()).isZero();
+    }
+
+    @Test
+    void failedLoadIsNotCached() throws IOException {
+        EmbeddingCache cache = new EmbeddingCache(10, 60, EmbeddingCache.Precision.FULL);
+
+        assertThatThrownBy(() -> cache.get("k", key -> {
+            throw new IOException("ollama down");
+        })).isInstanceOf(IOException.class).hasMessage("ollama down");
+
+        assertThat(cache.size()).isZero();
+        assertThat(cache.get("k", key -> new float[]{1f})).containsExactly(1f);
+    }
+}
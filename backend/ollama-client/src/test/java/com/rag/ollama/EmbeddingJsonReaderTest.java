@@ -0,0 +1,162 @@
+package com.rag.ollama;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EmbeddingJsonReaderTest {
+
+    @Test
+    void readsEmbedResponse() throws IOException {
+        List<float[]> embeddings = read("""
+                {"model":"llama2","embeddings":[[0.5,-1.25,3],[1e-3,-2E+2,0]],"total_duration":12345}
+                """);
+
+        assertThat(embeddings).hasSize(2);
+        assertThat(embeddings.get(0)).containsExactly(0.5f, -1.25f, 3f);
+        assertThat(embeddings.get(1)).containsExactly(1e-3f, -200f, 0f);
+    }
+
+    @Test
+    void readsLegacyEmbeddingField() throws IOException {
+        List<float[]> embeddings = read("{\"embedding\": [ 0.1 , 0.2 ,\n 0.3 ] }");
+
+        assertThat(embeddings).hasSize(1);
+        assertThat(embeddings.get(0)).containsExactly(0.1f, 0.2f, 0.3f);
+    }
+
+    @Test
+    void skipsOtherFieldsOfAnyShape() throws IOException {
+        List<float[]> embeddings = read("""
+                {
+                  "model": "a \\"quoted\\" name with ] and } and \\u00e9",
+                  "options": {"nested": [1, {"deep": [true, false, null]}], "empty": {}},
+                  "list": [],
+                  "embeddings": [[1.5]],
+                  "done": true,
+                  "count": -12.5e3
+                }
+                """);
+
+        assertThat(embeddings).hasSize(1);
+        assertThat(embeddings.get(0)).containsExactly(1.5f);
+    }
+
+    @Test
+    void handlesEmptyResponsesAndVectors() throws IOException {
+        assertThat(read("{}")).isEmpty();
+        assertThat(read("{\"embeddings\":[]}")).isEmpty();
+        assertThat(read("{\"embeddings\":[[]]}").get(0)).isEmpty();
+    }
+
+    @Test
+    void growsVectorsBeyondTheDimensionHint() throws IOException {
+        StringBuilder json = new StringBuilder("{\"embeddings\":[[");
+        for (int i = 0; i < 1000; i++) {
+            json.append(i == 0 ? "" : ",").append(i);
+        }
+        json.append("]]}");
+
+        float[] embedding = EmbeddingJsonReader.readEmbeddings(new StringReader(json.toString()), 16).get(0);
+        assertThat(embedding).hasSize(1000);
+        assertThat(embedding[999]).isEqualTo(999f);
+    }
+
+    @Test
+    void readsAcrossBufferBoundaries() throws IOException {
+        float[] expected = randomFloats(new Random(7), 5000);
+        String json = toJson(expected);
+
+        // One character per read, so every token is split across refills
+        Reader trickle = new StringReader(json) {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                return super.read(buffer, offset, Math.min(length, 1));
+            }
+        };
+        assertThat(EmbeddingJsonReader.readEmbeddings(trickle, 4096).get(0)).containsExactly(expected);
+    }
+
+    @Test
+    void matchesFloatParseFloatOnShortestRepresentations() throws IOException {
+        float[] expected = randomFloats(new Random(42), 100_000);
+
+        float[] parsed = read(toJson(expected)).get(0);
+
+        for (int i = 0; i < expected.length; i++) {
+            assertThat(parsed[i]).as("parsing %s", Float.toString(expected[i])).isEqualTo(expected[i]);
+        }
+    }
+
+    @Test
+    void staysWithinOneUlpOfFloatParseFloatOnLongAndExtremeNumbers() throws IOException {
+        String[] numbers = {
+                "0.123456789012345678901234567890",
+                "-98765432109876543210.5",
+                "1.00000000000000000000000000001",
+                "0.000000000000000000000000000000000000012345",
+                "3.4028234e38",
+                "1.17549435E-38",
+                "1.4e-45",
+                "123456789e-30",
+                "0.0000001192092896",
+                "-0",
+                "00012.5"
+        };
+        StringBuilder json = new StringBuilder("{\"embeddings\":[[");
+        for (int i = 0; i < numbers.length; i++) {
+            json.append(i == 0 ? "" : ",").append(numbers[i]);
+        }
+        json.append("]]}");
+
+        float[] parsed = read(json.toString()).get(0);
+
+        for (int i = 0; i < numbers.length; i++) {
+            float expected = Float.parseFloat(numbers[i]);
+            assertThat(Math.abs(parsed[i] - expected)).as("parsing %s", numbers[i])
+                    .isLessThanOrEqualTo(Math.ulp(expected));
+        }
+    }
+
+    @Test
+    void rejectsMalformedInput() {
+        assertThatThrownBy(() -> read("")).isInstanceOf(IOException.class).hasMessageContaining("end of input");
+        assertThatThrownBy(() -> read("[1,2]")).isInstanceOf(IOException.class).hasMessageContaining("Expected '{'");
+        assertThatThrownBy(() -> read("{\"embeddings\":[[1,2")).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> read("{\"embeddings\":[[1;2]]}")).isInstanceOf(IOException.class)
+                .hasMessageContaining("Expected ',' or ']'");
+        assertThatThrownBy(() -> read("{\"embeddings\":[[\"x\"]]}")).isInstanceOf(IOException.class)
+                .hasMessageContaining("Expected a number");
+        assertThatThrownBy(() -> read("{\"model\":\"unterminated")).isInstanceOf(IOException.class)
+                .hasMessageContaining("Unexpected end");
+    }
+
+    private static List<float[]> read(String json) throws IOException {
+        return EmbeddingJsonReader.readEmbeddings(new StringReader(json), 4);
+    }
+
+    /** Values spread like embedding components, plus a tail of larger and tiny magnitudes. */
+    private static float[] randomFloats(Random random, int count) {
+        float[] values = new float[count];
+        for (int i = 0; i < count; i++) {
+            double scale = i % 10 == 0 ? Math.pow(10, random.nextInt(20) - 10) : 0.05;
+            values[i] = (float) (random.nextGaussian() * scale);
+        }
+        return values;
+    }
+
+    private static String toJson(float[] values) {
+        StringBuilder json = new StringBuilder("{\"embeddings\":[[");
+        for (int i = 0; i < values.length; i++) {
+            json.append(i == 0 ? "" : ",").append(values[i]);
+        }
+        return json.append("]]}").toString();
+    }
+}
@@ -0,0 +1,184 @@
+package com.rag.ollama;
+
+import com.rag.ollama.LlmScheduler.Operation;
+import com.rag.ollama.LlmScheduler.Permit;
+import com.rag.ollama.LlmScheduler.Priority;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LlmSchedulerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void grantsImmediatelyUpToTheConcurrencyLimit() throws Exception {
+        LlmScheduler scheduler = scheduler(2, 10_000);
+
+        Permit first = scheduler.acquire(Operation.GENERATE, Priority.INTERACTIVE);
+        Permit second = scheduler.acquire(Operation.GENERATE, Priority.BACKGROUND);
+
+        assertThat(activeGauge("generate")).isEqualTo(2);
+        first.close();
+        second.close();
+        assertThat(activeGauge("generate")).isZero();
+    }
+
+    @Test
+    void operationsHaveSeparateLimits() throws Exception {
+        LlmScheduler scheduler = scheduler(1, 10_000);
+
+        try (Permit generate = scheduler.acquire(Operation.GENERATE, Priority.INTERACTIVE);
+             Permit embed = scheduler.acquire(Operation.EMBED, Priority.INTERACTIVE)) {
+            assertThat(activeGauge("generate")).isEqualTo(1);
+            assertThat(activeGauge("embed")).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void handsAReleasedSlotToTheNextWaiter() throws Exception {
+        LlmScheduler scheduler = scheduler(1, 10_000);
+        Permit held = scheduler.acquire(Operation.GENERATE, Priority.INTERACTIVE);
+
+        Future<Permit> waiter = executor.submit(() -> scheduler.acquire(Operation.GENERATE, Priority.INTERACTIVE));
+        awaitQueued("generate", "interactive", 1);
+        assertThat(waiter).isNotDone();
+
+        held.close();
+        Permit granted = waiter.get(5, TimeUnit.SECONDS);
+        assertThat(queueGauge("generate", "interactive")).isZero();
+        assertThat(activeGauge("generate")).isEqualTo(1);
+        granted.close();
+        assertThat(activeGauge("generate")).isZero();
+    }
+
+    @Test
+    void servesInteractiveBeforeBackgroundThenInArrivalOrder() throws Exception {
+        LlmScheduler scheduler = scheduler(1, 10_000);
+        Permit held = scheduler.acquire(Operation.GENERATE, Priority.INTERACTIVE);
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        Future<?> background = executor.submit(() -> runAs(scheduler, Priority.BACKGROUND, "background", order));
+        awaitQueued("generate", "background", 1);
+        Future<?> interactive1 = executor.submit(() -> runAs(scheduler, Priority.INTERACTIVE, "interactive-1", order));
+        awaitQueued("generate", "interactive", 1);
+        Future<?> interactive2 = executor.submit(() -> runAs(scheduler, Priority.INTERACTIVE, "interactive-2", order));
+        awaitQueued("generate", "interactive", 2);
+
+        held.close();
+        background.get(5, TimeUnit.SECONDS);
+        interactive1.get(5, TimeUnit.SECONDS);
+        interactive2.get(5, TimeUnit.SECONDS);
+
+        assertThat(order).containsExactly("interactive-1", "interactive-2", "background");
+    }
+
+    @Test
+    void rejectsRightAwayWhenThePriorityQueueIsFull() throws Exception {
+        LlmScheduler scheduler = new LlmScheduler(1, 1,
+                new LlmScheduler.Limits(1, 10_000), new LlmScheduler.Limits(0, 10_000), meterRegistry);
+        Permit held = scheduler.acquire(Operation.EMBED, Priority.INTERACTIVE);
+
+        assertThatThrownBy(() -> scheduler.acquire(Operation.EMBED, Priority.BACKGROUND))
+                .isInstanceOf(LlmOverloadedException.class)
+                .hasMessageContaining("queue full");
+        assertThat(rejected("embed", "background", "queue_full")).isEqualTo(1);
+        held.close();
+    }
+
+    @Test
+    void rejectsAfterWaitingTooLong() throws Exception {
+        LlmScheduler scheduler = scheduler(1, 50);
+        Permit held = scheduler.acquire(Operation.GENERATE, Priority.INTERACTIVE);
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> scheduler.acquire(Operation.GENERATE, Priority.INTERACTIVE))
+                .isInstanceOf(LlmOverloadedException.class)
+                .hasMessageContaining("timeout");
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(50);
+
+        // The timed-out waiter left the queue, so the slot goes back to the pool on release
+        assertThat(queueGauge("generate", "interactive")).isZero();
+        assertThat(rejected("generate", "interactive", "timeout")).isEqualTo(1);
+        held.close();
+        assertThat(activeGauge("generate")).isZero();
+        scheduler.acquire(Operation.GENERATE, Priority.INTERACTIVE).close();
+    }
+
+    @Test
+    void closingAPermitTwiceReleasesOneSlot() throws Exception {
+        LlmScheduler scheduler = scheduler(2, 10_000);
+        Permit first = scheduler.acquire(Operation.GENERATE, Priority.INTERACTIVE);
+        Permit second = scheduler.acquire(Operation.GENERATE, Priority.INTERACTIVE);
+
+        first.close();
+        first.close();
+
+        assertThat(activeGauge("generate")).isEqualTo(1);
+        second.close();
+        assertThat(activeGauge("generate")).isZero();
+    }
+
+    @Test
+    void callReleasesTheSlotWhenTheCallFails() {
+        LlmScheduler scheduler = scheduler(1, 10_000);
+
+        assertThatThrownBy(() -> scheduler.call(Operation.EMBED, Priority.BACKGROUND, () -> {
+            throw new IOException("boom");
+        })).hasMessage("boom");
+
+        assertThat(activeGauge("embed")).isZero();
+    }
+
+    private LlmScheduler scheduler(int concurrency, long maxWaitMillis) {
+        LlmScheduler.Limits limits = new LlmScheduler.Limits(16, maxWaitMillis);
+        return new LlmScheduler(concurrency, concurrency, limits, limits, meterRegistry);
+    }
+
+    private Void runAs(LlmScheduler scheduler, Priority priority, String name, List<String> order) throws Exception {
+        scheduler.call(Operation.GENERATE, priority, () -> {
+            order.add(name);
+            return null;
+        });
+        return null;
+    }
+
+    private void awaitQueued(String operation, String priority, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (queueGauge(operation, priority) < expected) {
+            assertThat(System.nanoTime()).as("waiting for %d queued", expected).isLessThan(deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private double activeGauge(String operation) {
+        return meterRegistry.get("rag.llm.active").tag("operation", operation).gauge().value();
+    }
+
+    private double queueGauge(String operation, String priority) {
+        return meterRegistry.get("rag.llm.queue.depth").tag("operation", operation).tag("priority", priority)
+                .gauge().value();
+    }
+
+    private double rejected(String operation, String priority, String reason) {
+        return meterRegistry.get("rag.llm.rejected").tag("operation", operation).tag("priority", priority)
+                .tag("reason", reason).counter().count();
+    }
+}
@@ -0,0 +1,248 @@
+package com.rag.ollama;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OllamaBackendPoolTest {
+
+    private static final String MODEL = "llama2";
+
+    private final List<StubOllama> stubs = new ArrayList<>();
+    private OllamaBackendPool pool;
+    private OllamaClient client;
+
+    @AfterEach
+    void tearDown() {
+        if (client != null) {
+            client.close();
+        }
+        if (pool != null) {
+            pool.close();
+        }
+        stubs.forEach(StubOllama::stop);
+    }
+
+    @Test
+    void leasesTheInstanceWithTheFewestOutstandingCalls() throws IOException {
+        StubOllama a = stub(true);
+        StubOllama b = stub(true);
+        pool = pool(0, a, b);
+        pool.probeAll();
+
+        OllamaBackendPool.Lease first = pool.lease();
+        OllamaBackendPool.Lease second = pool.lease();
+        assertThat(List.of(first.url(), second.url())).containsExactlyInAnyOrder(a.url(), b.url());
+
+        // One call finishes on a, so the next goes there even though b was leased last
+        OllamaBackendPool.Lease onA = first.url().equals(a.url()) ? first : second;
+        onA.close();
+        OllamaBackendPool.Lease third = pool.lease();
+        assertThat(third.url()).isEqualTo(a.url());
+        assertThat(backend(a).outstanding()).isEqualTo(1);
+        assertThat(backend(b).outstanding()).isEqualTo(1);
+    }
+
+    @Test
+    void prefersAnInstanceWithTheModelLoaded() throws IOException {
+        StubOllama cold = stub(false);
+        StubOllama warm = stub(true);
+        pool = pool(2, cold, warm);
+        pool.probeAll();
+
+        // The warm instance takes calls until it is coldPenalty calls busier than the cold one
+        assertThat(pool.lease().url()).isEqualTo(warm.url());
+        assertThat(pool.lease().url()).isEqualTo(warm.url());
+        List<String> next = List.of(pool.lease().url(), pool.lease().url());
+        assertThat(next).contains(cold.url());
+    }
+
+    @Test
+    void skipsAnInstanceThatDoesNotHaveTheModel() throws IOException {
+        StubOllama other = stub(true);
+        other.models = "mistral:latest";
+        StubOllama serving = stub(true);
+        pool = pool(0, other, serving);
+        pool.probeAll();
+
+        assertThat(backend(other).available()).isFalse();
+        for (int i = 0; i < 4; i++) {
+            assertThat(pool.lease().url()).isEqualTo(serving.url());
+        }
+    }
+
+    @Test
+    void ejectsAFailingInstanceAndFailsOverToTheOthers() throws IOException {
+        StubOllama broken = stub(true);
+        StubOllama healthy = stub(true);
+        pool = pool(0, broken, healthy);
+        pool.probeAll();
+        client = client(pool);
+        broken.healthy = false;
+
+        // Calls routed to the broken instance fail until it reaches the failure threshold
+        int failures = 0;
+        for (int i = 0; i < 10; i++) {
+            try {
+                assertThat(client.embed(List.of("text"))).hasSize(1);
+            } catch (IOException e) {
+                failures++;
+            }
+        }
+
+        assertThat(failures).isEqualTo(3);
+        assertThat(backend(broken).available()).isFalse();
+        int servedBefore = healthy.embedCalls.get();
+        for (int i = 0; i < 5; i++) {
+            assertThat(client.embed(List.of("text"))).hasSize(1);
+        }
+        assertThat(healthy.embedCalls.get() - servedBefore).isEqualTo(5);
+    }
+
+    @Test
+    void ejectsAnUnreachableInstanceAfterFailedProbes() throws IOException {
+        StubOllama down = stub(true);
+        StubOllama up = stub(true);
+        pool = pool(0, down, up);
+        down.stop();
+
+        pool.probeAll();
+        pool.probeAll();
+        assertThat(backend(down).available()).isTrue();
+        pool.probeAll();
+
+        assertThat(backend(down).available()).isFalse();
+        assertThat(pool.lease().url()).isEqualTo(up.url());
+    }
+
+    @Test
+    void readmitsAnInstanceOnceAProbeSucceeds() throws IOException {
+        StubOllama flaky = stub(true);
+        StubOllama steady = stub(true);
+        pool = pool(0, flaky, steady);
+        flaky.healthy = false;
+        for (int i = 0; i < 3; i++) {
+            pool.probeAll();
+        }
+        assertThat(backend(flaky).available()).isFalse();
+
+        flaky.healthy = true;
+        pool.probeAll();
+
+        assertThat(backend(flaky).available()).isTrue();
+        List<String> leased = List.of(pool.lease().url(), pool.lease().url());
+        assertThat(leased).containsExactlyInAnyOrder(flaky.url(), steady.url());
+    }
+
+    @Test
+    void spreadsCallsOverAllInstancesWhenEveryOneIsEjected() throws IOException {
+        StubOllama a = stub(true);
+        StubOllama b = stub(true);
+        pool = pool(0, a, b);
+        a.healthy = false;
+        b.healthy = false;
+        for (int i = 0; i < 3; i++) {
+            pool.probeAll();
+        }
+        client = client(pool);
+
+        assertThat(backend(a).available()).isFalse();
+        assertThat(backend(b).available()).isFalse();
+        assertThatThrownBy(() -> client.embed(List.of("text"))).isInstanceOf(IOException.class);
+        assertThat(a.embedCalls.get() + b.embedCalls.get()).isEqualTo(1);
+    }
+
+    private StubOllama stub(boolean modelLoaded) throws IOException {
+        StubOllama stub = new StubOllama(modelLoaded);
+        stubs.add(stub);
+        return stub;
+    }
+
+    private static OllamaBackendPool pool(int coldPenalty, StubOllama... stubs) {
+        List<String> urls = new ArrayList<>();
+        for (StubOllama stub : stubs) {
+            urls.add(stub.url());
+        }
+        return new OllamaBackendPool(urls, MODEL, 3, coldPenalty);
+    }
+
+    private static OllamaClient client(OllamaBackendPool pool) {
+        return new OllamaClient(pool, OllamaClientOptions.builder()
+                .model(MODEL)
+                .embeddingDimension(2)
+                .connectTimeout(Duration.ofSeconds(1))
+                .readTimeout(Duration.ofSeconds(2))
+                .build(), OllamaMetrics.NOOP);
+    }
+
+    private OllamaBackendPool.Backend backend(StubOllama stub) {
+        return pool.backends().stream()
+                .filter(backend -> backend.url().equals(stub.url()))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    /**
+     * Answers {@code /api/tags}, {@code /api/ps} and {@code /api/embed} like an Ollama instance,
+     * or with 503 to everything while {@link #healthy} is false.
+     */
+    private static final class StubOllama {
+
+        private final HttpServer server;
+        private final boolean modelLoaded;
+        private final AtomicInteger embedCalls = new AtomicInteger();
+        private volatile boolean healthy = true;
+        private volatile String models = MODEL + ":latest";
+
+        StubOllama(boolean modelLoaded) throws IOException {
+            this.modelLoaded = modelLoaded;
+            this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/api/tags", exchange -> respond(exchange, modelList(models)));
+            server.createContext("/api/ps", exchange -> respond(exchange, modelList(this.modelLoaded ? models : null)));
+            server.createContext("/api/embed", exchange -> {
+                exchange.getRequestBody().readAllBytes();
+                embedCalls.incrementAndGet();
+                respond(exchange, "{\"model\":\"" + MODEL + "\",\"embeddings\":[[0.5,-0.25]]}");
+            });
+            server.start();
+        }
+
+        String url() {
+            return "http://127.0.0.1:" + server.getAddress().getPort();
+        }
+
+        void stop() {
+            server.stop(0);
+        }
+
+        private void respond(HttpExchange exchange, String body) throws IOException {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            int status = healthy ? 200 : 503;
+            if (!healthy) {
+                bytes = "{\"error\":\"unavailable\"}".getBytes(StandardCharsets.UTF_8);
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+
+        private static String modelList(String name) {
+            return name == null ? "{\"models\":[]}" : "{\"models\":[{\"name\":\"" + name + "\"}]}";
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.rag.ollama;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OllamaClientStreamTest {
+
+    private static final String MODEL = "llama2";
+
+    private StubOllama stub;
+    private OllamaBackendPool pool;
+    private OllamaClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stub = new StubOllama();
+        pool = new OllamaBackendPool(List.of(stub.url()), MODEL, 3, 0);
+        client = new OllamaClient(pool, OllamaClientOptions.builder()
+                .model(MODEL)
+                .embeddingDimension(2)
+                .connectTimeout(Duration.ofSeconds(1))
+                .readTimeout(Duration.ofSeconds(5))
+                .build(), OllamaMetrics.NOOP);
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.close();
+        pool.close();
+        stub.stop();
+    }
+
+    @Test
+    void passesEachTokenOnAsItArrivesEvenWhenLinesAreSplitAcrossReads() throws IOException {
+        CountDownLatch firstTokenSeen = new CountDownLatch(1);
+        byte[] stream = (line("Backups", false) + line(" are kept for", false) + line(" 1년", false)
+                + "{\"response\":\"\",\"done\":true,\"prompt_eval_count\":12,\"eval_count\":3,\"eval_duration\":1000}\n")
+                .getBytes(StandardCharsets.UTF_8);
+        int firstLineEnd = line("Backups", false).length();
+        stub.handler = out -> {
+            // The first line in two pieces, then hold the rest back until the client has seen its token
+            writeAndFlush(out, Arrays.copyOfRange(stream, 0, 7));
+            writeAndFlush(out, Arrays.copyOfRange(stream, 7, firstLineEnd));
+            await(firstTokenSeen);
+            // Then the rest one byte at a time: every object, and the three bytes of each Hangul
+            // syllable, is cut across reads
+            for (int i = firstLineEnd; i < stream.length; i++) {
+                writeAndFlush(out, new byte[]{stream[i]});
+            }
+        };
+        List<String> tokens = new ArrayList<>();
+
+        String answer = client.generateStream("How long are backups kept?", token -> {
+            tokens.add(token);
+            firstTokenSeen.countDown();
+        });
+
+        assertThat(tokens).containsExactly("Backups", " are kept for", " 1년");
+        assertThat(answer).isEqualTo("Backups are kept for 1년");
+        assertThat(stub.requests).singleElement().satisfies(body -> assertThat(body).contains("\"stream\":true"));
+        assertThat(pool.backends().get(0).outstanding()).isZero();
+    }
+
+    @Test
+    void closesTheCallWhenTheHandlerGivesUp() throws Exception {
+        CountDownLatch serverSawDisconnect = new CountDownLatch(1);
+        stub.handler = out -> {
+            try {
+                for (int i = 0; i < 1_000; i++) {
+                    writeAndFlush(out, line("token " + i, false).getBytes(StandardCharsets.UTF_8));
+                    Thread.sleep(10);
+                }
+            } catch (IOException e) {
+                serverSawDisconnect.countDown();
+                throw e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        List<String> tokens = new CopyOnWriteArrayList<>();
+
+        assertThatThrownBy(() -> client.generateStream("Tell me everything", token -> {
+            tokens.add(token);
+            if (tokens.size() == 2) {
+                throw new IOException("Client disconnected");
+            }
+        })).isInstanceOf(IOException.class).hasMessage("Client disconnected");
+
+        // Closing the response closes the connection, so the instance stops generating
+        assertThat(serverSawDisconnect.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(tokens).containsExactly("token 0", "token 1");
+        assertThat(pool.backends().get(0).outstanding()).isZero();
+    }
+
+    @Test
+    void failsOnAnErrorObjectMidStream() {
+        stub.handler = out -> {
+            writeAndFlush(out, line("Partial", false).getBytes(StandardCharsets.UTF_8));
+            writeAndFlush(out, "{\"error\":\"model runner crashed\"}\n".getBytes(StandardCharsets.UTF_8));
+        };
+        List<String> tokens = new ArrayList<>();
+
+        assertThatThrownBy(() -> client.generateStream("?", tokens::add))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Ollama error: model runner crashed");
+        assertThat(tokens).containsExactly("Partial");
+    }
+
+    private static String line(String response, boolean done) {
+        return "{\"model\":\"" + MODEL + "\",\"response\":\"" + response + "\",\"done\":" + done + "}\n";
+    }
+
+    private static void writeAndFlush(OutputStream out, byte[] bytes) throws IOException {
+        out.write(bytes);
+        out.flush();
+    }
+
+    private static void await(CountDownLatch latch) throws IOException {
+        try {
+            if (!latch.await(5, TimeUnit.SECONDS)) {
+                throw new IOException("Client did not read the first token");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    /** Streams {@code /api/generate} as NDJSON with chunked encoding, written by {@link #handler}. */
+    private static final class StubOllama {
+
+        private final HttpServer server;
+        private final List<String> requests = new CopyOnWriteArrayList<>();
+        private volatile StreamWriter handler = out -> { };
+
+        StubOllama() throws IOException {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/api/generate", this::generate);
+            server.start();
+        }
+
+        String url() {
+            return "http://127.0.0.1:" + server.getAddress().getPort();
+        }
+
+        void stop() {
+            server.stop(0);
+        }
+
+        private void generate(HttpExchange exchange) throws IOException {
+            requests.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                handler.write(out);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface StreamWriter {
+        void write(OutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,70 @@
+package com.rag.ollama.autoconfigure;
+
+import com.rag.ollama.LlmScheduler;
+import com.rag.ollama.OllamaBackendPool;
+import com.rag.ollama.OllamaClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.context.annotation.ImportCandidates;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OllamaClientAutoConfigurationTest {
+
+    // Unroutable ports, so the health probes fail fast without reaching anything
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(OllamaClientAutoConfiguration.class, LlmSchedulerAutoConfiguration.class))
+            .withBean(MeterRegistry.class, SimpleMeterRegistry::new)
+            .withPropertyValues("ollama.urls=http://127.0.0.1:1,http://127.0.0.1:2", "ollama.pool.probe-interval-ms=60000");
+
+    @Test
+    void isRegisteredForAutoConfiguration() {
+        assertThat(ImportCandidates.load(AutoConfiguration.class, getClass().getClassLoader()))
+                .contains(OllamaClientAutoConfiguration.class.getName(), LlmSchedulerAutoConfiguration.class.getName());
+    }
+
+    @Test
+    void createsPoolClientAndScheduler() {
+        contextRunner.run(context -> {
+            assertThat(context).hasSingleBean(OllamaBackendPool.class)
+                    .hasSingleBean(OllamaClient.class)
+                    .hasSingleBean(LlmScheduler.class);
+            assertThat(context.getBean(OllamaBackendPool.class).backends())
+                    .extracting(OllamaBackendPool.Backend::url)
+                    .containsExactly("http://127.0.0.1:1", "http://127.0.0.1:2");
+        });
+    }
+
+    @Test
+    void bindsNestedSettingsAndIgnoresServiceOwnedKeys() {
+        contextRunner.withPropertyValues(
+                        "ollama.client.max-requests=7",
+                        "ollama.pool.failure-threshold=5",
+                        "ollama.scheduler.background.max-wait-ms=1234",
+                        "ollama.embedding-cache.max-entries=10")
+                .run(context -> {
+                    OllamaProperties properties = context.getBean(OllamaProperties.class);
+                    assertThat(properties.getClient().getMaxRequests()).isEqualTo(7);
+                    assertThat(properties.getPool().getFailureThreshold()).isEqualTo(5);
+                    assertThat(properties.getScheduler().getBackground().getMaxWaitMs()).isEqualTo(1234);
+                    assertThat(properties.getScheduler().getBackground().getMaxQueue()).isEqualTo(256);
+                    assertThat(properties.getModel()).isEqualTo("llama2");
+                });
+    }
+
+    @Test
+    void backsOffWhenTheServiceDefinesItsOwnPool() {
+        OllamaBackendPool pool = new OllamaBackendPool(List.of("http://127.0.0.1:3"), "llama2", 3, 2);
+        contextRunner.withBean(OllamaBackendPool.class, () -> pool)
+                .run(context -> {
+                    assertThat(context.getBean(OllamaBackendPool.class)).isSameAs(pool);
+                    assertThat(context).hasSingleBean(LlmScheduler.class);
+                });
+    }
+}
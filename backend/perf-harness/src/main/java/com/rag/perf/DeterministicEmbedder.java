@@ -0,0 +1,83 @@
+package com.rag.perf;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns text into a unit vector by feature hashing its words and character trigrams.
+ * <p>
+ * The same text always gives the same vector, and texts that share words get close vectors, so
+ * retrieval over fake embeddings still returns the chunks that overlap with the question.
+ * Unicode letters count as word characters, so Korean text works too.
+ */
+public class DeterministicEmbedder {
+
+    private final int dimension;
+
+    public DeterministicEmbedder(int dimension) {
+        this.dimension = dimension;
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    public float[] embed(String text) {
+        float[] vector = new float[dimension];
+        for (String word : words(text)) {
+            add(vector, "w:" + word, 1.0f);
+            String padded = "^" + word + "$";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                add(vector, "t:" + padded.substring(i, i + 3), 0.5f);
+            }
+        }
+
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        if (norm == 0) {
+            vector[0] = 1;
+            return vector;
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < dimension; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+
+    private void add(float[] vector, String feature, float weight) {
+        int hash = mix(feature.hashCode());
+        int index = Math.floorMod(hash, dimension);
+        // A second hash bit picks the sign, so unrelated features cancel out on average
+        vector[index] += (hash & 0x40000000) == 0 ? weight : -weight;
+    }
+
+    static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        text.codePoints().forEach(codePoint -> {
+            if (Character.isLetterOrDigit(codePoint)) {
+                word.appendCodePoint(Character.toLowerCase(codePoint));
+            } else if (!word.isEmpty()) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        });
+        if (!word.isEmpty()) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    /** Murmur3 finalizer, so similar strings spread over the whole vector. */
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
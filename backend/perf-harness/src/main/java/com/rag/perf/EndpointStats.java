@@ -0,0 +1,49 @@
+package com.rag.perf;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Outcomes of one endpoint: a latency histogram of successful calls, plus counts per HTTP
+ * status (or {@code timeout} / {@code io_error} when there was no response).
+ */
+class EndpointStats {
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+
+    void success(int status, long nanos) {
+        latency.recordNanos(nanos);
+        outcome(String.valueOf(status));
+    }
+
+    void failure(String outcome) {
+        errors.increment();
+        outcome(outcome);
+    }
+
+    LatencyHistogram latency() {
+        return latency;
+    }
+
+    long successes() {
+        return latency.count();
+    }
+
+    long errors() {
+        return errors.sum();
+    }
+
+    Map<String, Long> outcomes() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        outcomes.forEach((outcome, count) -> snapshot.put(outcome, count.sum()));
+        return snapshot;
+    }
+
+    private void outcome(String outcome) {
+        outcomes.computeIfAbsent(outcome, key -> new LongAdder()).increment();
+    }
+}
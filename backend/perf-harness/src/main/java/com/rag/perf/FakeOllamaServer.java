@@ -0,0 +1,279 @@
+package com.rag.perf;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in for an Ollama server: {@code /api/embed}, {@code /api/embeddings},
+ * {@code /api/generate} (streamed and not), {@code /api/tags} and {@code /api/ps}.
+ * <p>
+ * Embeddings come from a {@link DeterministicEmbedder} of the configured dimension, and answers
+ * are words picked by a generator seeded from the prompt, so identical requests get identical
+ * responses. Timing follows a {@link LatencyProfile}, including a limit on parallel requests.
+ */
+@Slf4j
+public class FakeOllamaServer implements AutoCloseable {
+
+    private static final String[] VOCABULARY = {
+            "the", "document", "describes", "a", "system", "that", "answers", "questions", "using",
+            "retrieved", "context", "and", "language", "model", "in", "of", "to", "with", "data",
+            "search", "vector", "index", "chunk", "result", "user", "request", "service", "is",
+            "문서", "내용", "검색", "결과", "질문", "답변", "시스템", "사용자"
+    };
+
+    private final String model;
+    private final DeterministicEmbedder embedder;
+    private final LatencyProfile profile;
+    private final Semaphore slots;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicBoolean modelLoaded = new AtomicBoolean();
+    private final AtomicLong requests = new AtomicLong();
+
+    public FakeOllamaServer(int port, String model, int dimension, LatencyProfile profile) throws IOException {
+        this.model = model;
+        this.embedder = new DeterministicEmbedder(dimension);
+        this.profile = profile;
+        this.slots = new Semaphore(Math.max(1, profile.parallel()), true);
+        this.server = HttpServer.create(new InetSocketAddress(port), 1024);
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "fake-ollama");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    public void start() {
+        server.start();
+        log.info("Fake Ollama listening on port {} (model {}, dimension {}, {})",
+                port(), model, embedder.dimension(), profile);
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    public long requestCount() {
+        return requests.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try (exchange) {
+            switch (exchange.getRequestURI().getPath()) {
+                case "/api/tags" -> HttpExchanges.sendJson(exchange, 200, Map.of("models", List.of(modelInfo())));
+                case "/api/ps" -> HttpExchanges.sendJson(exchange, 200,
+                        Map.of("models", modelLoaded.get() ? List.of(modelInfo()) : List.of()));
+                case "/api/embed" -> withSlot(exchange, this::embed);
+                case "/api/embeddings" -> withSlot(exchange, this::legacyEmbedding);
+                case "/api/generate" -> withSlot(exchange, this::generate);
+                default -> HttpExchanges.sendJson(exchange, 404, Map.of("error", "not found"));
+            }
+        } catch (Exception e) {
+            log.warn("Fake Ollama failed to handle {}: {}", exchange.getRequestURI(), e.toString());
+        }
+    }
+
+    private void withSlot(HttpExchange exchange, Handler handler) throws IOException {
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            Map<String, Object> request = HttpExchanges.readObject(exchange);
+            if (request.containsKey("model") && !matchesModel(String.valueOf(request.get("model")))) {
+                HttpExchanges.sendJson(exchange, 404, Map.of("error", "model \"" + request.get("model") + "\" not found"));
+                return;
+            }
+            modelLoaded.set(true);
+            handler.handle(exchange, request);
+        } finally {
+            slots.release();
+        }
+    }
+
+    private void embed(HttpExchange exchange, Map<String, Object> request) throws IOException {
+        List<String> inputs = new ArrayList<>();
+        Object input = request.get("input");
+        if (input instanceof List<?> list) {
+            list.forEach(item -> inputs.add(String.valueOf(item)));
+        } else if (input != null) {
+            inputs.add(String.valueOf(input));
+        }
+
+        long start = System.nanoTime();
+        HttpExchanges.sleep(profile.embedDelayMs(inputs.size()));
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody();
+             JsonGenerator json = HttpExchanges.JSON.getFactory().createGenerator(out)) {
+            json.writeStartObject();
+            json.writeStringField("model", model);
+            json.writeArrayFieldStart("embeddings");
+            for (String text : inputs) {
+                writeVector(json, embedder.embed(text));
+            }
+            json.writeEndArray();
+            json.writeNumberField("total_duration", System.nanoTime() - start);
+            json.writeNumberField("prompt_eval_count", inputs.stream().mapToInt(text -> DeterministicEmbedder.words(text).size()).sum());
+            json.writeEndObject();
+        }
+    }
+
+    private void legacyEmbedding(HttpExchange exchange, Map<String, Object> request) throws IOException {
+        String prompt = String.valueOf(request.getOrDefault("prompt", ""));
+        HttpExchanges.sleep(profile.embedDelayMs(1));
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody();
+             JsonGenerator json = HttpExchanges.JSON.getFactory().createGenerator(out)) {
+            json.writeStartObject();
+            json.writeFieldName("embedding");
+            writeVector(json, embedder.embed(prompt));
+            json.writeEndObject();
+        }
+    }
+
+    private void generate(HttpExchange exchange, Map<String, Object> request) throws IOException {
+        Object prompt = request.get("prompt");
+        boolean stream = !Boolean.FALSE.equals(request.get("stream"));
+
+        // A request without a prompt only loads the model
+        if (prompt == null || String.valueOf(prompt).isEmpty()) {
+            Map<String, Object> loaded = new LinkedHashMap<>();
+            loaded.put("model", model);
+            loaded.put("created_at", Instant.now().toString());
+            loaded.put("response", "");
+            loaded.put("done", true);
+            loaded.put("done_reason", "load");
+            HttpExchanges.sendJson(exchange, 200, loaded);
+            return;
+        }
+
+        String text = String.valueOf(prompt);
+        int promptTokens = Math.max(1, text.length() / 4);
+        List<String> tokens = answerTokens(text);
+        long start = System.nanoTime();
+
+        HttpExchanges.sleep(profile.firstTokenMs());
+        long evalStart = System.nanoTime();
+
+        if (!stream) {
+            sleepNanos(profile.tokenDelayNanos() * tokens.size());
+            Map<String, Object> response = doneChunk(String.join("", tokens), promptTokens, tokens.size(),
+                    System.nanoTime() - evalStart, System.nanoTime() - start);
+            HttpExchanges.sendJson(exchange, 200, response);
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            for (int i = 0; i < tokens.size(); i++) {
+                if (i > 0) {
+                    sleepNanos(profile.tokenDelayNanos());
+                }
+                Map<String, Object> chunk = new LinkedHashMap<>();
+                chunk.put("model", model);
+                chunk.put("created_at", Instant.now().toString());
+                chunk.put("response", tokens.get(i));
+                chunk.put("done", false);
+                out.write(HttpExchanges.JSON.writeValueAsBytes(chunk));
+                out.write('\n');
+                out.flush();
+            }
+            out.write(HttpExchanges.JSON.writeValueAsBytes(doneChunk("", promptTokens, tokens.size(),
+                    System.nanoTime() - evalStart, System.nanoTime() - start)));
+            out.write('\n');
+        } catch (IOException e) {
+            // The client stopped reading, as Ollama clients do to cancel a generation
+            log.debug("Fake Ollama stream closed by client: {}", e.getMessage());
+        }
+    }
+
+    private Map<String, Object> doneChunk(String response, int promptTokens, int outputTokens,
+                                          long evalNanos, long totalNanos) {
+        Map<String, Object> chunk = new LinkedHashMap<>();
+        chunk.put("model", model);
+        chunk.put("created_at", Instant.now().toString());
+        chunk.put("response", response);
+        chunk.put("done", true);
+        chunk.put("done_reason", "stop");
+        chunk.put("context", List.of(1, 2, 3));
+        chunk.put("total_duration", totalNanos);
+        chunk.put("prompt_eval_count", promptTokens);
+        chunk.put("eval_count", outputTokens);
+        chunk.put("eval_duration", evalNanos);
+        return chunk;
+    }
+
+    private List<String> answerTokens(String prompt) {
+        Random random = new Random(prompt.hashCode());
+        List<String> tokens = new ArrayList<>(profile.responseTokens());
+        for (int i = 0; i < profile.responseTokens(); i++) {
+            String word = VOCABULARY[random.nextInt(VOCABULARY.length)];
+            tokens.add(i == 0 ? word : " " + word);
+        }
+        tokens.add(".");
+        return tokens;
+    }
+
+    private Map<String, Object> modelInfo() {
+        return Map.of("name", model.contains(":") ? model : model + ":latest",
+                "model", model.contains(":") ? model : model + ":latest",
+                "size", 3_826_793_677L);
+    }
+
+    private boolean matchesModel(String name) {
+        return name.equals(model) || name.equals(model + ":latest");
+    }
+
+    private static void writeVector(JsonGenerator json, float[] vector) throws IOException {
+        json.writeStartArray();
+        for (float value : vector) {
+            json.writeNumber(value);
+        }
+        json.writeEndArray();
+    }
+
+    private static void sleepNanos(long nanos) {
+        if (nanos > 0) {
+            HttpExchanges.sleep(TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        void handle(HttpExchange exchange, Map<String, Object> request) throws IOException;
+    }
+}
@@ -0,0 +1,725 @@
+package com.rag.perf;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory stand-in for the parts of the OpenSearch REST API the services use: index
+ * create/exists/settings, {@code _bulk} (JSON and SMILE), {@code _mget}, {@code _search},
+ * {@code _count}, {@code _delete_by_query} and {@code _refresh}.
+ * <p>
+ * Searches understand {@code match_all}, {@code term}, {@code bool}, {@code wrapper},
+ * {@code knn}, {@code script_score} (exact k-NN) and {@code function_score} (random), plus
+ * sorting, {@code search_after}, {@code _source} filtering and max/min/sum/avg/value_count
+ * aggregations. k-NN is brute force with the index's space type, so results are exact and every
+ * write is visible immediately.
+ */
+@Slf4j
+public class FakeOpenSearchServer implements AutoCloseable {
+
+    private static final byte SMILE_SEPARATOR = (byte) 0xFF;
+
+    private final Map<String, Index> indices = new ConcurrentHashMap<>();
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicLong sequence = new AtomicLong();
+
+    public FakeOpenSearchServer(int port, int threads) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(port), 1024);
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "fake-opensearch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    public void start() {
+        server.start();
+        log.info("Fake OpenSearch listening on port {}", port());
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /** Number of documents in an index, or 0 if it does not exist. */
+    public int documentCount(String index) {
+        Index found = indices.get(index);
+        return found == null ? 0 : found.docs.size();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            route(exchange);
+        } catch (BadRequestException e) {
+            HttpExchanges.sendJson(exchange, 400, error("parsing_exception", e.getMessage(), 400));
+        } catch (Exception e) {
+            log.warn("Fake OpenSearch failed to handle {} {}", exchange.getRequestMethod(), exchange.getRequestURI(), e);
+            HttpExchanges.sendJson(exchange, 500, error("exception", String.valueOf(e), 500));
+        }
+    }
+
+    private void route(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        List<String> path = Arrays.stream(exchange.getRequestURI().getPath().split("/"))
+                .filter(segment -> !segment.isEmpty())
+                .toList();
+
+        if (path.isEmpty()) {
+            HttpExchanges.sendJson(exchange, 200, Map.of(
+                    "name", "fake-opensearch",
+                    "cluster_name", "perf-harness",
+                    "version", Map.of("distribution", "opensearch", "number", "2.11.0"),
+                    "tagline", "The OpenSearch Project: https://opensearch.org/"));
+            return;
+        }
+
+        String first = path.get(0);
+        String action = path.size() > 1 ? path.get(1) : null;
+        if (first.equals("_bulk")) {
+            bulk(exchange, null);
+        } else if (first.equals("_mget")) {
+            mget(exchange, null);
+        } else if (action == null) {
+            switch (method) {
+                case "HEAD" -> HttpExchanges.sendEmpty(exchange, indices.containsKey(first) ? 200 : 404);
+                case "PUT" -> createIndex(exchange, first);
+                case "DELETE" -> {
+                    indices.remove(first);
+                    HttpExchanges.sendJson(exchange, 200, Map.of("acknowledged", true));
+                }
+                default -> HttpExchanges.sendJson(exchange, 200, Map.of(first, Map.of()));
+            }
+        } else {
+            switch (action) {
+                case "_bulk" -> bulk(exchange, first);
+                case "_mget" -> mget(exchange, first);
+                case "_search" -> search(exchange, first);
+                case "_count" -> count(exchange, first);
+                case "_delete_by_query" -> deleteByQuery(exchange, first);
+                case "_settings" -> HttpExchanges.sendJson(exchange, 200, Map.of("acknowledged", true));
+                case "_refresh" -> HttpExchanges.sendJson(exchange, 200, Map.of("_shards", shards()));
+                default -> HttpExchanges.sendJson(exchange, 404, error("unsupported_operation", action, 404));
+            }
+        }
+    }
+
+    private void createIndex(HttpExchange exchange, String name) throws IOException {
+        Map<String, Object> body = HttpExchanges.readObject(exchange);
+        Index index = new Index(name, spaceType(body));
+        if (indices.putIfAbsent(name, index) != null) {
+            HttpExchanges.sendJson(exchange, 400,
+                    error("resource_already_exists_exception", "index [" + name + "] already exists", 400));
+            return;
+        }
+        log.info("Created index {} (space type {})", name, index.spaceType);
+        HttpExchanges.sendJson(exchange, 200, Map.of("acknowledged", true, "shards_acknowledged", true, "index", name));
+    }
+
+    /** Reads {@code space_type} from a k-NN field mapping, defaulting to l2. */
+    @SuppressWarnings("unchecked")
+    private static String spaceType(Map<String, Object> body) {
+        if (body.get("mappings") instanceof Map<?, ?> mappings
+                && mappings.get("properties") instanceof Map<?, ?> properties) {
+            for (Object field : properties.values()) {
+                if (field instanceof Map<?, ?> mapping && "knn_vector".equals(mapping.get("type"))) {
+                    Object method = mapping.get("method");
+                    if (method instanceof Map<?, ?> methodMap && methodMap.get("space_type") != null) {
+                        return String.valueOf(methodMap.get("space_type"));
+                    }
+                }
+            }
+        }
+        return "l2";
+    }
+
+    private Index index(String name) {
+        return indices.computeIfAbsent(name, key -> new Index(key, "l2"));
+    }
+
+    // ---- Bulk, mget, delete by query ----
+
+    @SuppressWarnings("unchecked")
+    private void bulk(HttpExchange exchange, String defaultIndex) throws IOException {
+        long start = System.nanoTime();
+        List<Map<String, Object>> lines = bulkLines(exchange);
+        List<Map<String, Object>> items = new ArrayList<>();
+
+        for (int i = 0; i < lines.size(); i++) {
+            Map<String, Object> line = lines.get(i);
+            String op = line.keySet().iterator().next();
+            Map<String, Object> meta = (Map<String, Object>) line.get(op);
+            String indexName = (String) meta.getOrDefault("_index", defaultIndex);
+            String id = meta.get("_id") == null ? UUID.randomUUID().toString() : String.valueOf(meta.get("_id"));
+            Index index = index(indexName);
+
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("_index", indexName);
+            item.put("_id", id);
+            switch (op) {
+                case "index", "create" -> {
+                    Map<String, Object> source = lines.get(++i);
+                    boolean created = index.put(id, source);
+                    item.put("result", created ? "created" : "updated");
+                    item.put("status", created ? 201 : 200);
+                }
+                case "update" -> {
+                    Map<String, Object> update = lines.get(++i);
+                    Doc existing = index.docs.get(id);
+                    Map<String, Object> merged = existing == null ? new HashMap<>() : new HashMap<>(existing.source);
+                    if (update.get("doc") instanceof Map<?, ?> doc) {
+                        merged.putAll((Map<String, Object>) doc);
+                    }
+                    index.put(id, merged);
+                    item.put("result", "updated");
+                    item.put("status", 200);
+                }
+                case "delete" -> {
+                    boolean deleted = index.docs.remove(id) != null;
+                    item.put("result", deleted ? "deleted" : "not_found");
+                    item.put("status", deleted ? 200 : 404);
+                }
+                default -> throw new BadRequestException("Unknown bulk action " + op);
+            }
+            item.put("_version", 1);
+            item.put("_shards", Map.of("total", 1, "successful", 1, "failed", 0));
+            item.put("_seq_no", sequence.incrementAndGet());
+            item.put("_primary_term", 1);
+            items.add(Map.of(op, item));
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("took", millisSince(start));
+        response.put("errors", false);
+        response.put("items", items);
+        HttpExchanges.sendJson(exchange, 200, response);
+    }
+
+    /**
+     * Splits a bulk body into its action and source objects: newline-delimited JSON, or SMILE
+     * documents separated by 0xFF (a byte SMILE never uses inside a document).
+     */
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> bulkLines(HttpExchange exchange) throws IOException {
+        byte[] body = HttpExchanges.readBody(exchange);
+        boolean smile = HttpExchanges.isSmile(exchange);
+        byte separator = smile ? SMILE_SEPARATOR : (byte) '\n';
+
+        List<Map<String, Object>> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= body.length; i++) {
+            if (i == body.length || body[i] == separator) {
+                if (i > start) {
+                    byte[] part = Arrays.copyOfRange(body, start, i);
+                    if (smile) {
+                        lines.add(HttpExchanges.SMILE.readValue(part, Map.class));
+                    } else if (!new String(part).isBlank()) {
+                        lines.add(HttpExchanges.JSON.readValue(part, Map.class));
+                    }
+                }
+                start = i + 1;
+            }
+        }
+        return lines;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void mget(HttpExchange exchange, String defaultIndex) throws IOException {
+        Map<String, Object> body = HttpExchanges.readObject(exchange);
+        List<Map<String, Object>> requested = new ArrayList<>();
+        if (body.get("docs") instanceof List<?> docs) {
+            docs.forEach(doc -> requested.add((Map<String, Object>) doc));
+        } else if (body.get("ids") instanceof List<?> ids) {
+            ids.forEach(id -> requested.add(Map.of("_id", id)));
+        }
+
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (Map<String, Object> request : requested) {
+            String indexName = (String) request.getOrDefault("_index", defaultIndex);
+            String id = String.valueOf(request.get("_id"));
+            Index index = indices.get(indexName);
+            Doc doc = index == null ? null : index.docs.get(id);
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("_index", indexName);
+            result.put("_id", id);
+            if (doc == null) {
+                result.put("found", false);
+            } else {
+                result.put("_version", 1);
+                result.put("_seq_no", doc.seqNo);
+                result.put("_primary_term", 1);
+                result.put("found", true);
+                result.put("_source", filterSource(doc.source, request.get("_source")));
+            }
+            results.add(result);
+        }
+        HttpExchanges.sendJson(exchange, 200, Map.of("docs", results));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void deleteByQuery(HttpExchange exchange, String indexName) throws IOException {
+        long start = System.nanoTime();
+        Map<String, Object> body = HttpExchanges.readObject(exchange);
+        Index index = indices.get(indexName);
+        int deleted = 0;
+        if (index != null) {
+            for (Hit hit : evaluate(index, (Map<String, Object>) body.getOrDefault("query", Map.of("match_all", Map.of())))) {
+                if (index.docs.remove(hit.doc.id) != null) {
+                    deleted++;
+                }
+            }
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("took", millisSince(start));
+        response.put("timed_out", false);
+        response.put("total", deleted);
+        response.put("updated", 0);
+        response.put("created", 0);
+        response.put("deleted", deleted);
+        response.put("batches", 1);
+        response.put("version_conflicts", 0);
+        response.put("noops", 0);
+        response.put("retries", Map.of("bulk", 0, "search", 0));
+        response.put("throttled_millis", 0);
+        response.put("requests_per_second", -1.0);
+        response.put("throttled_until_millis", 0);
+        response.put("failures", List.of());
+        HttpExchanges.sendJson(exchange, 200, response);
+    }
+
+    // ---- Search ----
+
+    @SuppressWarnings("unchecked")
+    private void search(HttpExchange exchange, String indexName) throws IOException {
+        long start = System.nanoTime();
+        Map<String, Object> body = HttpExchanges.readObject(exchange);
+        Index index = indices.get(indexName);
+        if (index == null) {
+            HttpExchanges.sendJson(exchange, 404, error("index_not_found_exception", "no such index [" + indexName + "]", 404));
+            return;
+        }
+
+        List<Hit> hits = evaluate(index, (Map<String, Object>) body.getOrDefault("query", Map.of("match_all", Map.of())));
+        List<String[]> sort = sortFields(body.get("sort"));
+        if (sort.isEmpty()) {
+            hits.sort(Comparator.comparingDouble((Hit hit) -> hit.score).reversed()
+                    .thenComparing(hit -> hit.doc.id));
+        } else {
+            hits.sort((a, b) -> compareSortValues(sortValues(a, sort), sortValues(b, sort), sort));
+            if (body.get("search_after") instanceof List<?> after) {
+                hits.removeIf(hit -> compareSortValues(sortValues(hit, sort), (List<Object>) after, sort) <= 0);
+            }
+        }
+
+        int total = hits.size();
+        int from = ((Number) body.getOrDefault("from", 0)).intValue();
+        int size = ((Number) body.getOrDefault("size", 10)).intValue();
+        List<Hit> page = hits.subList(Math.min(from, total), Math.min(total, from + size));
+
+        List<Map<String, Object>> renderedHits = new ArrayList<>();
+        Double maxScore = null;
+        for (Hit hit : page) {
+            Map<String, Object> rendered = new LinkedHashMap<>();
+            rendered.put("_index", indexName);
+            rendered.put("_id", hit.doc.id);
+            rendered.put("_score", sort.isEmpty() ? hit.score : null);
+            rendered.put("_source", filterSource(hit.doc.source, body.get("_source")));
+            if (!sort.isEmpty()) {
+                rendered.put("sort", sortValues(hit, sort));
+            } else if (maxScore == null || hit.score > maxScore) {
+                maxScore = hit.score;
+            }
+            renderedHits.add(rendered);
+        }
+
+        Map<String, Object> hitsSection = new LinkedHashMap<>();
+        hitsSection.put("total", Map.of("value", total, "relation", "eq"));
+        hitsSection.put("max_score", maxScore);
+        hitsSection.put("hits", renderedHits);
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("took", millisSince(start));
+        response.put("timed_out", false);
+        response.put("_shards", shards());
+        response.put("hits", hitsSection);
+        Object aggregations = body.containsKey("aggregations") ? body.get("aggregations") : body.get("aggs");
+        if (aggregations instanceof Map<?, ?> requested) {
+            response.put("aggregations", aggregate((Map<String, Object>) requested, hits));
+        }
+        HttpExchanges.sendJson(exchange, 200, response);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void count(HttpExchange exchange, String indexName) throws IOException {
+        Map<String, Object> body = HttpExchanges.readObject(exchange);
+        Index index = indices.get(indexName);
+        if (index == null) {
+            HttpExchanges.sendJson(exchange, 404, error("index_not_found_exception", "no such index [" + indexName + "]", 404));
+            return;
+        }
+        List<Hit> hits = evaluate(index, (Map<String, Object>) body.getOrDefault("query", Map.of("match_all", Map.of())));
+        HttpExchanges.sendJson(exchange, 200, Map.of("count", hits.size(), "_shards", shards()));
+    }
+
+    /**
+     * Evaluates a query to the matching documents and their scores.
+     */
+    @SuppressWarnings("unchecked")
+    private List<Hit> evaluate(Index index, Map<String, Object> query) throws IOException {
+        if (query.isEmpty()) {
+            return all(index.docs.values());
+        }
+        String type = query.keySet().iterator().next();
+        Map<String, Object> spec = (Map<String, Object>) query.get(type);
+
+        switch (type) {
+            case "match_all":
+                return all(index.docs.values());
+            case "term": {
+                String field = spec.keySet().iterator().next();
+                Object value = spec.get(field) instanceof Map<?, ?> term ? term.get("value") : spec.get(field);
+                List<Hit> hits = new ArrayList<>();
+                for (Doc doc : index.docs.values()) {
+                    if (valueEquals(doc.source.get(field), value)) {
+                        hits.add(new Hit(doc, 1.0));
+                    }
+                }
+                return hits;
+            }
+            case "bool":
+                return bool(index, spec);
+            case "wrapper": {
+                byte[] bytes = Base64.getDecoder().decode(String.valueOf(spec.get("query")));
+                boolean smile = bytes.length > 2 && bytes[0] == ':' && bytes[1] == ')';
+                return evaluate(index, (smile ? HttpExchanges.SMILE : HttpExchanges.JSON).readValue(bytes, Map.class));
+            }
+            case "knn": {
+                String field = spec.keySet().iterator().next();
+                Map<String, Object> knn = (Map<String, Object>) spec.get(field);
+                float[] vector = toVector(knn.get("vector"));
+                int k = ((Number) knn.getOrDefault("k", 10)).intValue();
+                List<Hit> candidates = knn.get("filter") instanceof Map<?, ?> filter
+                        ? evaluate(index, (Map<String, Object>) filter) : all(index.docs.values());
+                List<Hit> scored = score(candidates, vector, index.spaceType, false);
+                scored.sort(Comparator.comparingDouble((Hit hit) -> hit.score).reversed());
+                return new ArrayList<>(scored.subList(0, Math.min(k, scored.size())));
+            }
+            case "script_score": {
+                Map<String, Object> params = (Map<String, Object>) ((Map<String, Object>) spec.get("script")).get("params");
+                List<Hit> candidates = evaluate(index, (Map<String, Object>) spec.getOrDefault("query", Map.of()));
+                return score(candidates, toVector(params.get("query_value")),
+                        String.valueOf(params.getOrDefault("space_type", index.spaceType)), true);
+            }
+            case "function_score": {
+                List<Hit> candidates = evaluate(index, (Map<String, Object>) spec.getOrDefault("query", Map.of()));
+                Random random = new Random();
+                List<Hit> hits = new ArrayList<>(candidates.size());
+                candidates.forEach(hit -> hits.add(new Hit(hit.doc, random.nextDouble())));
+                return hits;
+            }
+            default:
+                throw new BadRequestException("Unsupported query type [" + type + "]");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Hit> bool(Index index, Map<String, Object> spec) throws IOException {
+        Map<String, Hit> result = null;
+        for (String clause : List.of("must", "filter")) {
+            for (Map<String, Object> query : clauses(spec.get(clause))) {
+                Map<String, Hit> matched = new HashMap<>();
+                for (Hit hit : evaluate(index, query)) {
+                    if (result == null || result.containsKey(hit.doc.id)) {
+                        matched.put(hit.doc.id, hit);
+                    }
+                }
+                result = matched;
+            }
+        }
+        if (result == null) {
+            result = new HashMap<>();
+            for (Hit hit : all(index.docs.values())) {
+                result.put(hit.doc.id, hit);
+            }
+        }
+        for (Map<String, Object> query : clauses(spec.get("must_not"))) {
+            for (Hit hit : evaluate(index, query)) {
+                result.remove(hit.doc.id);
+            }
+        }
+        return new ArrayList<>(result.values());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> clauses(Object clause) {
+        if (clause instanceof List<?> list) {
+            return (List<Map<String, Object>>) list;
+        }
+        return clause instanceof Map<?, ?> single ? List.of((Map<String, Object>) single) : List.of();
+    }
+
+    private static List<Hit> all(Collection<Doc> docs) {
+        List<Hit> hits = new ArrayList<>(docs.size());
+        docs.forEach(doc -> hits.add(new Hit(doc, 1.0)));
+        return hits;
+    }
+
+    /**
+     * Scores candidates the way the k-NN plugin does for the approximate query, or for its
+     * {@code knn_score} script when {@code script} is set.
+     */
+    private static List<Hit> score(List<Hit> candidates, float[] query, String spaceType, boolean script) {
+        List<Hit> scored = new ArrayList<>(candidates.size());
+        for (Hit candidate : candidates) {
+            float[] vector = candidate.doc.vector;
+            if (vector == null || vector.length != query.length) {
+                continue;
+            }
+            double score = switch (spaceType) {
+                case "cosinesimil" -> script ? 1 + cosine(query, vector) : (1 + cosine(query, vector)) / 2;
+                case "innerproduct" -> {
+                    double dot = dot(query, vector);
+                    yield dot >= 0 ? 1 + dot : 1 / (1 - dot);
+                }
+                default -> 1 / (1 + squaredDistance(query, vector));
+            };
+            scored.add(new Hit(candidate.doc, score));
+        }
+        return scored;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double normA = Math.sqrt(dot(a, a));
+        double normB = Math.sqrt(dot(b, b));
+        return normA == 0 || normB == 0 ? 0 : dot(a, b) / (normA * normB);
+    }
+
+    private static double squaredDistance(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            double diff = a[i] - b[i];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    private static List<String[]> sortFields(Object sort) {
+        List<String[]> fields = new ArrayList<>();
+        if (!(sort instanceof List<?> list)) {
+            return fields;
+        }
+        for (Object entry : list) {
+            if (entry instanceof String field) {
+                fields.add(new String[]{field, "asc"});
+            } else if (entry instanceof Map<?, ?> map) {
+                map.forEach((field, spec) -> {
+                    String order = spec instanceof Map<?, ?> options ? String.valueOf(options.get("order")) : String.valueOf(spec);
+                    fields.add(new String[]{String.valueOf(field), "desc".equals(order) ? "desc" : "asc"});
+                });
+            }
+        }
+        return fields;
+    }
+
+    private static List<Object> sortValues(Hit hit, List<String[]> sort) {
+        List<Object> values = new ArrayList<>(sort.size());
+        for (String[] field : sort) {
+            values.add(field[0].equals("_score") ? hit.score : field[0].equals("_id") ? hit.doc.id : hit.doc.source.get(field[0]));
+        }
+        return values;
+    }
+
+    private static int compareSortValues(List<Object> a, List<Object> b, List<String[]> sort) {
+        for (int i = 0; i < sort.size(); i++) {
+            int compared = compareValues(a.get(i), i < b.size() ? b.get(i) : null);
+            if (compared != 0) {
+                return "desc".equals(sort.get(i)[1]) ? -compared : compared;
+            }
+        }
+        return 0;
+    }
+
+    private static int compareValues(Object a, Object b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : 1) : -1;
+        }
+        if (a instanceof Number x && b instanceof Number y) {
+            return Double.compare(x.doubleValue(), y.doubleValue());
+        }
+        return String.valueOf(a).compareTo(String.valueOf(b));
+    }
+
+    private static boolean valueEquals(Object actual, Object expected) {
+        if (actual instanceof Number x && expected instanceof Number y) {
+            return x.doubleValue() == y.doubleValue();
+        }
+        if (actual instanceof Number x && expected instanceof String s) {
+            try {
+                return x.doubleValue() == Double.parseDouble(s);
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        return actual != null && String.valueOf(actual).equals(String.valueOf(expected));
+    }
+
+    /**
+     * Computes metric aggregations, keyed {@code type#name} as the high-level client requests
+     * with {@code typed_keys}.
+     */
+    private static Map<String, Object> aggregate(Map<String, Object> requested, List<Hit> hits) {
+        Map<String, Object> results = new LinkedHashMap<>();
+        requested.forEach((name, spec) -> {
+            if (!(spec instanceof Map<?, ?> specMap) || specMap.isEmpty()) {
+                return;
+            }
+            String type = String.valueOf(specMap.keySet().iterator().next());
+            Object field = ((Map<?, ?>) specMap.get(type)).get("field");
+
+            double sum = 0;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            long count = 0;
+            for (Hit hit : hits) {
+                if (hit.doc.source.get(String.valueOf(field)) instanceof Number number) {
+                    double value = number.doubleValue();
+                    sum += value;
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
+                    count++;
+                }
+            }
+
+            Object value = switch (type) {
+                case "max" -> count == 0 ? null : max;
+                case "min" -> count == 0 ? null : min;
+                case "sum" -> sum;
+                case "avg" -> count == 0 ? null : sum / count;
+                case "value_count" -> count;
+                default -> throw new BadRequestException("Unsupported aggregation type [" + type + "]");
+            };
+            Map<String, Object> result = new HashMap<>();
+            result.put("value", value);
+            results.put(type + "#" + name, result);
+        });
+        return results;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> filterSource(Map<String, Object> source, Object filter) {
+        if (Boolean.FALSE.equals(filter)) {
+            return null;
+        }
+        List<String> includes = List.of();
+        List<String> excludes = List.of();
+        if (filter instanceof List<?> list) {
+            includes = (List<String>) list;
+        } else if (filter instanceof String single) {
+            includes = List.of(single);
+        } else if (filter instanceof Map<?, ?> map) {
+            includes = map.get("includes") instanceof List<?> list ? (List<String>) list : List.of();
+            excludes = map.get("excludes") instanceof List<?> list ? (List<String>) list : List.of();
+        }
+
+        Map<String, Object> filtered = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : source.entrySet()) {
+            if ((includes.isEmpty() || includes.contains(entry.getKey())) && !excludes.contains(entry.getKey())) {
+                filtered.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return filtered;
+    }
+
+    private static float[] toVector(Object value) {
+        if (!(value instanceof List<?> list)) {
+            return null;
+        }
+        float[] vector = new float[list.size()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = ((Number) list.get(i)).floatValue();
+        }
+        return vector;
+    }
+
+    private static Map<String, Object> shards() {
+        return Map.of("total", 1, "successful", 1, "skipped", 0, "failed", 0);
+    }
+
+    private static Map<String, Object> error(String type, String reason, int status) {
+        Map<String, Object> cause = Map.of("type", type, "reason", reason);
+        return Map.of("error", Map.of("root_cause", List.of(cause), "type", type, "reason", reason), "status", status);
+    }
+
+    private static long millisSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    private final class Index {
+
+        private final String name;
+        private final String spaceType;
+        private final Map<String, Doc> docs = new ConcurrentHashMap<>();
+
+        Index(String name, String spaceType) {
+            this.name = name;
+            this.spaceType = spaceType;
+        }
+
+        /** @return whether the document is new */
+        boolean put(String id, Map<String, Object> source) {
+            // Any float array field is treated as the vector; the services only have "embedding"
+            float[] vector = toVector(source.get("embedding"));
+            return docs.put(id, new Doc(id, source, vector, sequence.incrementAndGet())) == null;
+        }
+    }
+
+    private record Doc(String id, Map<String, Object> source, float[] vector, long seqNo) {
+    }
+
+    private record Hit(Doc doc, double score) {
+    }
+
+    private static class BadRequestException extends RuntimeException {
+        BadRequestException(String message) {
+            super(message);
+        }
+    }
+}
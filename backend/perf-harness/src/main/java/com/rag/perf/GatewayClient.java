@@ -0,0 +1,113 @@
+package com.rag.perf;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+/**
+ * HTTP calls against the gateway, the same way the frontend makes them: JSON bodies, a bearer
+ * token, multipart uploads and Server-Sent Events for streamed answers.
+ */
+class GatewayClient {
+
+    private final String baseUrl;
+    private final Duration timeout;
+    private final HttpClient http;
+
+    GatewayClient(String baseUrl, Duration timeout, Executor executor) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.timeout = timeout;
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(executor)
+                .build();
+    }
+
+    HttpResponse<byte[]> postJson(String path, String token, Object body) throws IOException, InterruptedException {
+        HttpRequest request = request(path, token)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(HttpExchanges.JSON.writeValueAsBytes(body)))
+                .build();
+        return http.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    HttpResponse<byte[]> get(String path, String token) throws IOException, InterruptedException {
+        return http.send(request(path, token).GET().build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    HttpResponse<byte[]> upload(String path, String token, String filename, byte[] pdf)
+            throws IOException, InterruptedException {
+        String boundary = "----perf-harness-" + UUID.randomUUID();
+        ByteArrayOutputStream body = new ByteArrayOutputStream(pdf.length + 256);
+        body.writeBytes(("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"" + filename + "\"\r\n"
+                + "Content-Type: application/pdf\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.writeBytes(pdf);
+        body.writeBytes(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+
+        HttpRequest request = request(path, token)
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build();
+        return http.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    /**
+     * Posts a JSON body and reads the Server-Sent Events response to the end.
+     *
+     * @return the status, when the first {@code token} event arrived, and whether the stream
+     *         ended with {@code done} rather than {@code error}
+     */
+    StreamResult stream(String path, String token, Object body) throws IOException, InterruptedException {
+        HttpRequest request = request(path, token)
+                .header("Content-Type", "application/json")
+                .header("Accept", "text/event-stream")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(HttpExchanges.JSON.writeValueAsBytes(body)))
+                .build();
+        HttpResponse<InputStream> response = http.send(request, HttpResponse.BodyHandlers.ofInputStream());
+
+        long firstTokenAt = 0;
+        String lastEvent = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.startsWith("event:")) {
+                    continue;
+                }
+                lastEvent = line.substring("event:".length()).trim();
+                if (firstTokenAt == 0 && lastEvent.equals("token")) {
+                    firstTokenAt = System.nanoTime();
+                }
+            }
+        }
+        return new StreamResult(response.statusCode(), firstTokenAt, "done".equals(lastEvent));
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> json(HttpResponse<byte[]> response) throws IOException {
+        return HttpExchanges.JSON.readValue(response.body(), Map.class);
+    }
+
+    private HttpRequest.Builder request(String path, String token) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(timeout);
+        if (token != null) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        return builder;
+    }
+
+    record StreamResult(int status, long firstTokenAtNanos, boolean completed) {
+    }
+}
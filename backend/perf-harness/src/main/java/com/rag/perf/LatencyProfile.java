@@ -0,0 +1,58 @@
+package com.rag.perf;
+
+import java.util.Map;
+
+/**
+ * How slow the fake Ollama is. Delays are slept, not burned, so one machine can emulate many
+ * inference nodes.
+ *
+ * @param embedBaseMs     fixed cost of an embedding call
+ * @param embedPerInputMs additional cost per input text of an embedding call
+ * @param firstTokenMs    time to the first generated token (prompt evaluation)
+ * @param tokensPerSecond generation speed; 0 means no delay between tokens
+ * @param responseTokens  tokens per generated answer
+ * @param parallel        requests processed at once, like {@code OLLAMA_NUM_PARALLEL}; the
+ *                        rest queue
+ */
+public record LatencyProfile(long embedBaseMs, long embedPerInputMs, long firstTokenMs,
+                             double tokensPerSecond, int responseTokens, int parallel) {
+
+    /** No delays at all; measures the services themselves. */
+    public static final LatencyProfile INSTANT = new LatencyProfile(0, 0, 0, 0, 64, 64);
+
+    /** Roughly llama2 7B on a single consumer GPU. */
+    public static final LatencyProfile GPU = new LatencyProfile(10, 2, 150, 60, 200, 4);
+
+    /** Roughly llama2 7B on CPU only. */
+    public static final LatencyProfile CPU = new LatencyProfile(50, 20, 800, 8, 128, 1);
+
+    public static LatencyProfile named(String name) {
+        return switch (name.toLowerCase()) {
+            case "instant" -> INSTANT;
+            case "gpu" -> GPU;
+            case "cpu" -> CPU;
+            default -> throw new IllegalArgumentException("Unknown latency profile: " + name);
+        };
+    }
+
+    /**
+     * Applies {@code --embed-base-ms=...} style overrides on top of this profile.
+     */
+    public LatencyProfile withOverrides(Map<String, String> options) {
+        return new LatencyProfile(
+                Long.parseLong(options.getOrDefault("embed-base-ms", String.valueOf(embedBaseMs))),
+                Long.parseLong(options.getOrDefault("embed-per-input-ms", String.valueOf(embedPerInputMs))),
+                Long.parseLong(options.getOrDefault("first-token-ms", String.valueOf(firstTokenMs))),
+                Double.parseDouble(options.getOrDefault("tokens-per-second", String.valueOf(tokensPerSecond))),
+                Integer.parseInt(options.getOrDefault("response-tokens", String.valueOf(responseTokens))),
+                Integer.parseInt(options.getOrDefault("parallel", String.valueOf(parallel))));
+    }
+
+    long embedDelayMs(int inputs) {
+        return embedBaseMs + embedPerInputMs * inputs;
+    }
+
+    long tokenDelayNanos() {
+        return tokensPerSecond <= 0 ? 0 : (long) (1e9 / tokensPerSecond);
+    }
+}
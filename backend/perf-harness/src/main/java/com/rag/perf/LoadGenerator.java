@@ -0,0 +1,461 @@
+package com.rag.perf;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives the real request flow through the gateway: every virtual user signs up and logs in,
+ * uploads seed documents and waits for them to be ingested, then requests arrive at the
+ * configured rate in the configured mix of chat, streamed chat, upload and history calls.
+ * <p>
+ * Arrivals follow an open model: a request is started when its arrival time comes, whether or
+ * not earlier requests have finished, and its latency is measured from that arrival time. A
+ * slow system therefore shows up as growing latency instead of a quietly lower request rate.
+ * When {@code max-in-flight} requests are already running the arrival is counted as dropped.
+ */
+@Slf4j
+class LoadGenerator {
+
+    private static final String[] QUESTIONS = {
+            "What does the document say about %s?",
+            "Summarize how %s works.",
+            "Why does %s matter for query latency?",
+            "Which settings affect %s?",
+            "Explain %s in two sentences."
+    };
+
+    enum Workload {
+        CHAT("chat"), STREAM("chat.stream"), UPLOAD("documents.upload"), HISTORY("chat.history");
+
+        final String endpoint;
+
+        Workload(String endpoint) {
+            this.endpoint = endpoint;
+        }
+    }
+
+    /**
+     * @param rate   arrivals per second at the start of the measured phase
+     * @param rampTo arrivals per second at its end; the rate changes linearly in between
+     */
+    record Settings(String gateway, int users, double rate, double rampTo, boolean poisson,
+                    Duration warmup, Duration duration, Map<Workload, Integer> mix,
+                    int seedDocuments, int pages, int turnsPerSession, boolean uniqueQuestions,
+                    int maxInFlight, Duration requestTimeout, Duration ingestTimeout, long seed) {
+
+        static Settings from(Map<String, String> options) {
+            double rate = Double.parseDouble(options.getOrDefault("rate", "5"));
+            return new Settings(
+                    options.getOrDefault("gateway", "http://localhost:8080"),
+                    Integer.parseInt(options.getOrDefault("users", "20")),
+                    rate,
+                    Double.parseDouble(options.getOrDefault("ramp-to", String.valueOf(rate))),
+                    !"constant".equals(options.getOrDefault("arrival", "poisson")),
+                    Duration.ofSeconds(Long.parseLong(options.getOrDefault("warmup-seconds", "10"))),
+                    Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration-seconds", "60"))),
+                    mix(options.getOrDefault("mix", "chat:60,stream:25,history:10,upload:5")),
+                    Integer.parseInt(options.getOrDefault("seed-documents", "1")),
+                    Integer.parseInt(options.getOrDefault("pages", "3")),
+                    Integer.parseInt(options.getOrDefault("turns-per-session", "6")),
+                    Boolean.parseBoolean(options.getOrDefault("unique-questions", "false")),
+                    Integer.parseInt(options.getOrDefault("max-in-flight", "256")),
+                    Duration.ofSeconds(Long.parseLong(options.getOrDefault("request-timeout-seconds", "120"))),
+                    Duration.ofSeconds(Long.parseLong(options.getOrDefault("ingest-timeout-seconds", "300"))),
+                    Long.parseLong(options.getOrDefault("seed", "42")));
+        }
+
+        /** Parses {@code chat:60,stream:25,...}; weights are relative. */
+        static Map<Workload, Integer> mix(String spec) {
+            Map<Workload, Integer> mix = new LinkedHashMap<>();
+            for (String part : spec.split(",")) {
+                String[] entry = part.trim().split(":");
+                if (entry.length != 2) {
+                    throw new IllegalArgumentException("Invalid mix entry: " + part);
+                }
+                Workload workload = switch (entry[0].trim()) {
+                    case "chat" -> Workload.CHAT;
+                    case "stream" -> Workload.STREAM;
+                    case "upload" -> Workload.UPLOAD;
+                    case "history" -> Workload.HISTORY;
+                    default -> throw new IllegalArgumentException("Unknown workload: " + entry[0]);
+                };
+                mix.put(workload, Integer.parseInt(entry[1].trim()));
+            }
+            if (mix.values().stream().mapToInt(Integer::intValue).sum() <= 0) {
+                throw new IllegalArgumentException("Mix weights must add up to more than 0");
+            }
+            return mix;
+        }
+    }
+
+    /** Statistics of one phase (setup, warmup or measured); late completions stay in their phase. */
+    static final class Phase {
+        static final int SETUP = 0;
+        static final int WARMUP = 1;
+        static final int MEASURED = 2;
+
+        /** Fixed per phase, so each phase draws the same arrivals in every run with the same seed. */
+        final int ordinal;
+        final Map<String, EndpointStats> endpoints = new ConcurrentHashMap<>();
+        final LongAdder dropped = new LongAdder();
+
+        Phase(int ordinal) {
+            this.ordinal = ordinal;
+        }
+
+        EndpointStats stats(String endpoint) {
+            return endpoints.computeIfAbsent(endpoint, key -> new EndpointStats());
+        }
+    }
+
+    private final Settings settings;
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+    private final ExecutorService httpExecutor = Executors.newCachedThreadPool(daemon("load-http"));
+    private final ThreadPoolExecutor workers;
+    private final ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(daemon("load-ingest-poller"));
+    private final GatewayClient gateway;
+    private final List<User> users = new ArrayList<>();
+    private final AtomicLong uploadSequence = new AtomicLong();
+    private final AtomicInteger pendingIngestions = new AtomicInteger();
+
+    LoadGenerator(Settings settings) {
+        this.settings = settings;
+        this.gateway = new GatewayClient(settings.gateway(), settings.requestTimeout(), httpExecutor);
+        this.workers = new ThreadPoolExecutor(0, settings.maxInFlight(), 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), daemon("load-worker"));
+    }
+
+    LoadReport run() throws InterruptedException {
+        Instant startedAt = Instant.now();
+        try {
+            Phase setup = new Phase(Phase.SETUP);
+            setUp(setup);
+
+            log.info("Warming up for {}s at {} requests/s", settings.warmup().toSeconds(), settings.rate());
+            arrivals(new Phase(Phase.WARMUP), settings.warmup(), settings.rate(), settings.rate());
+
+            log.info("Measuring for {}s at {} -> {} requests/s", settings.duration().toSeconds(),
+                    settings.rate(), settings.rampTo());
+            Phase measured = new Phase(Phase.MEASURED);
+            long start = System.nanoTime();
+            arrivals(measured, settings.duration(), settings.rate(), settings.rampTo());
+            long elapsed = System.nanoTime() - start;
+
+            awaitQuiet();
+            return new LoadReport(settings, runId, startedAt, elapsed, setup, measured);
+        } finally {
+            workers.shutdownNow();
+            poller.shutdownNow();
+            httpExecutor.shutdownNow();
+        }
+    }
+
+    // ---- Setup ----
+
+    private void setUp(Phase phase) throws InterruptedException {
+        log.info("Signing up {} users (run {})", settings.users(), runId);
+        ExecutorService setupPool = Executors.newFixedThreadPool(Math.min(settings.users(), 16), daemon("load-setup"));
+        try {
+            List<Future<User>> signups = new ArrayList<>();
+            for (int i = 0; i < settings.users(); i++) {
+                int index = i;
+                signups.add(setupPool.submit(() -> signUp(phase, index)));
+            }
+            for (Future<User> signup : signups) {
+                try {
+                    User user = signup.get();
+                    if (user != null) {
+                        users.add(user);
+                    }
+                } catch (ExecutionException e) {
+                    log.warn("User setup failed: {}", e.getCause().toString());
+                }
+            }
+            if (users.isEmpty()) {
+                throw new IllegalStateException("No user could sign up and log in through " + settings.gateway());
+            }
+
+            if (settings.seedDocuments() > 0) {
+                log.info("Uploading {} seed documents per user and waiting for ingestion", settings.seedDocuments());
+                for (User user : users) {
+                    for (int i = 0; i < settings.seedDocuments(); i++) {
+                        setupPool.submit(() -> seedUpload(phase, user));
+                    }
+                }
+                setupPool.shutdown();
+                setupPool.awaitTermination(settings.ingestTimeout().toSeconds(), TimeUnit.SECONDS);
+                awaitIngestions();
+            }
+        } finally {
+            setupPool.shutdownNow();
+        }
+    }
+
+    private void seedUpload(Phase phase, User user) {
+        try {
+            upload(phase, user, System.nanoTime());
+        } catch (IOException e) {
+            phase.stats("documents.upload").failure("io_error");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private User signUp(Phase phase, int index) throws IOException, InterruptedException {
+        String username = "load-" + runId + "-" + index;
+        String password = "load-test-password";
+
+        long start = System.nanoTime();
+        HttpResponse<byte[]> signup = gateway.postJson("/api/auth/signup", null, Map.of(
+                "username", username,
+                "password", password,
+                "email", username + "@load.test",
+                "name", "Load Test " + index));
+        if (!record(phase.stats("auth.signup"), signup.statusCode(), start)) {
+            log.warn("Signup of {} failed with {}: {}", username, signup.statusCode(), new String(signup.body()));
+            return null;
+        }
+
+        start = System.nanoTime();
+        HttpResponse<byte[]> login = gateway.postJson("/api/auth/login", null,
+                Map.of("username", username, "password", password));
+        if (!record(phase.stats("auth.login"), login.statusCode(), start)) {
+            log.warn("Login of {} failed with {}", username, login.statusCode());
+            return null;
+        }
+        return new User(String.valueOf(GatewayClient.json(login).get("accessToken")), settings.turnsPerSession());
+    }
+
+    // ---- Arrivals ----
+
+    private void arrivals(Phase phase, Duration duration, double fromRate, double toRate) {
+        // The arrival thread makes every random choice, so a seed replays the same sequence of
+        // workloads, users and questions however the workers interleave
+        Random random = new Random(settings.seed() + phase.ordinal);
+        long start = System.nanoTime();
+        long length = duration.toNanos();
+        long intended = start;
+
+        while (true) {
+            double progress = (intended - start) / (double) Math.max(1, length);
+            double rate = Math.max(0.001, fromRate + (toRate - fromRate) * progress);
+            double gapSeconds = settings.poisson() ? -Math.log(1 - random.nextDouble()) / rate : 1 / rate;
+            intended += (long) (gapSeconds * 1e9);
+            if (intended - start >= length) {
+                break;
+            }
+
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            Workload workload = pick(random);
+            User user = users.get(random.nextInt(users.size()));
+            String question = question(random);
+            long arrival = intended;
+            try {
+                workers.execute(() -> execute(phase, workload, user, question, arrival));
+            } catch (RejectedExecutionException e) {
+                phase.dropped.increment();
+            }
+        }
+    }
+
+    private Workload pick(Random random) {
+        int total = settings.mix().values().stream().mapToInt(Integer::intValue).sum();
+        int roll = random.nextInt(total);
+        for (Map.Entry<Workload, Integer> entry : settings.mix().entrySet()) {
+            roll -= entry.getValue();
+            if (roll < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException("Unreachable");
+    }
+
+    private void execute(Phase phase, Workload workload, User user, String question, long arrival) {
+        EndpointStats stats = phase.stats(workload.endpoint);
+        try {
+            switch (workload) {
+                case CHAT -> {
+                    HttpResponse<byte[]> response = gateway.postJson("/api/chat", user.token,
+                            Map.of("message", question, "sessionId", user.nextTurn()));
+                    record(stats, response.statusCode(), arrival);
+                }
+                case STREAM -> {
+                    GatewayClient.StreamResult result = gateway.stream("/api/chat/stream", user.token,
+                            Map.of("message", question, "sessionId", user.nextTurn()));
+                    if (result.status() != 200) {
+                        stats.failure(String.valueOf(result.status()));
+                    } else if (!result.completed()) {
+                        stats.failure("stream_error");
+                    } else {
+                        stats.success(200, System.nanoTime() - arrival);
+                        if (result.firstTokenAtNanos() > 0) {
+                            phase.stats("chat.stream.first_token").success(200, result.firstTokenAtNanos() - arrival);
+                        }
+                    }
+                }
+                case UPLOAD -> upload(phase, user, arrival);
+                case HISTORY -> {
+                    HttpResponse<byte[]> response = gateway.get(
+                            "/api/chat/history?limit=20&sessionId=" + user.currentSession(), user.token);
+                    record(stats, response.statusCode(), arrival);
+                }
+            }
+        } catch (HttpTimeoutException e) {
+            stats.failure("timeout");
+        } catch (IOException e) {
+            stats.failure("io_error");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String question(Random random) {
+        String question = String.format(QUESTIONS[random.nextInt(QUESTIONS.length)],
+                PdfFixtures.TOPICS[random.nextInt(PdfFixtures.TOPICS.length)]);
+        // Distinct questions bypass the exact-match answer cache
+        return settings.uniqueQuestions() ? question + " (" + random.nextInt(1_000_000) + ")" : question;
+    }
+
+    // ---- Uploads and ingestion ----
+
+    private void upload(Phase phase, User user, long arrival) throws IOException, InterruptedException {
+        long sequence = uploadSequence.incrementAndGet();
+        String marker = "Load test document " + runId + "-" + sequence;
+        byte[] pdf = PdfFixtures.document(marker, settings.pages(), new Random(settings.seed() + sequence));
+
+        HttpResponse<byte[]> response = gateway.upload("/api/documents/upload", user.token,
+                "load-" + runId + "-" + sequence + ".pdf", pdf);
+        if (record(phase.stats("documents.upload"), response.statusCode(), arrival)) {
+            Object id = GatewayClient.json(response).get("id");
+            pendingIngestions.incrementAndGet();
+            pollIngestion(phase, user, id, arrival, System.nanoTime() + settings.ingestTimeout().toNanos());
+        }
+    }
+
+    /**
+     * Polls the document until ingestion finishes and records upload-to-completion time as
+     * {@code documents.ingest}.
+     */
+    private void pollIngestion(Phase phase, User user, Object documentId, long arrival, long deadline) {
+        poller.schedule(() -> {
+            EndpointStats stats = phase.stats("documents.ingest");
+            try {
+                HttpResponse<byte[]> response = gateway.get("/api/documents/" + documentId, user.token);
+                String status = response.statusCode() == 200
+                        ? String.valueOf(GatewayClient.json(response).get("status")) : null;
+                if ("COMPLETED".equals(status)) {
+                    stats.success(200, System.nanoTime() - arrival);
+                } else if ("FAILED".equals(status)) {
+                    stats.failure("FAILED");
+                } else if (System.nanoTime() > deadline) {
+                    stats.failure("timeout");
+                } else {
+                    pollIngestion(phase, user, documentId, arrival, deadline);
+                    return;
+                }
+            } catch (Exception e) {
+                stats.failure("io_error");
+            }
+            synchronized (pendingIngestions) {
+                pendingIngestions.decrementAndGet();
+                pendingIngestions.notifyAll();
+            }
+        }, 250, TimeUnit.MILLISECONDS);
+    }
+
+    private void awaitIngestions() throws InterruptedException {
+        synchronized (pendingIngestions) {
+            while (pendingIngestions.get() > 0) {
+                pendingIngestions.wait(1_000);
+            }
+        }
+    }
+
+    /** Waits for in-flight requests and ingestions of the measured phase to finish. */
+    private void awaitQuiet() throws InterruptedException {
+        workers.shutdown();
+        if (!workers.awaitTermination(settings.requestTimeout().toSeconds() + 5, TimeUnit.SECONDS)) {
+            log.warn("Requests still running after the request timeout");
+        }
+        log.info("Waiting for {} ingestions to finish", pendingIngestions.get());
+        awaitIngestions();
+    }
+
+    private static boolean record(EndpointStats stats, int status, long start) {
+        if (status >= 200 && status < 300) {
+            stats.success(status, System.nanoTime() - start);
+            return true;
+        }
+        stats.failure(String.valueOf(status));
+        return false;
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * A signed-in user. Chat turns go to the current session until it has
+     * {@code turnsPerSession} turns, then a new session starts, so sessions grow long enough to
+     * be summarized.
+     */
+    private static final class User {
+
+        private final String token;
+        private final int turnsPerSession;
+        private String session = UUID.randomUUID().toString();
+        private int turns;
+
+        User(String token, int turnsPerSession) {
+            this.token = token;
+            this.turnsPerSession = Math.max(1, turnsPerSession);
+        }
+
+        synchronized String nextTurn() {
+            if (++turns > turnsPerSession) {
+                session = UUID.randomUUID().toString();
+                turns = 1;
+            }
+            return session;
+        }
+
+        synchronized String currentSession() {
+            return session;
+        }
+    }
+}
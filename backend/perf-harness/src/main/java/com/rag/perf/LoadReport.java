@@ -0,0 +1,185 @@
+package com.rag.perf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Result of a load run, written as JSON so runs of different builds can be compared. Latencies
+ * are in milliseconds and throughput counts successful requests per second of the measured
+ * phase.
+ */
+class LoadReport {
+
+    private static final double[] PERCENTILES = {50, 90, 95, 99, 99.9};
+    private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p95", "p99", "p999"};
+
+    private final Map<String, Object> json;
+
+    LoadReport(LoadGenerator.Settings settings, String runId, Instant startedAt, long measuredNanos,
+               LoadGenerator.Phase setup, LoadGenerator.Phase measured) {
+        double seconds = measuredNanos / 1e9;
+
+        Map<String, Object> run = new LinkedHashMap<>();
+        run.put("id", runId);
+        run.put("startedAt", startedAt.toString());
+        run.put("gateway", settings.gateway());
+        run.put("users", settings.users());
+        run.put("rate", settings.rate());
+        run.put("rampTo", settings.rampTo());
+        run.put("arrival", settings.poisson() ? "poisson" : "constant");
+        run.put("warmupSeconds", settings.warmup().toSeconds());
+        run.put("measuredSeconds", round(seconds));
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        settings.mix().forEach((workload, weight) -> mix.put(workload.name().toLowerCase(), weight));
+        run.put("mix", mix);
+        run.put("maxInFlight", settings.maxInFlight());
+
+        long errors = 0;
+        long successes = 0;
+        for (Map.Entry<String, EndpointStats> entry : measured.endpoints.entrySet()) {
+            // First-token and ingestion times describe requests already counted elsewhere
+            if (entry.getKey().equals("chat.stream.first_token") || entry.getKey().equals("documents.ingest")) {
+                continue;
+            }
+            successes += entry.getValue().successes();
+            errors += entry.getValue().errors();
+        }
+        long requests = successes + errors;
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("requests", requests);
+        summary.put("errors", errors);
+        summary.put("errorRate", requests == 0 ? 0 : round((double) errors / requests));
+        summary.put("dropped", measured.dropped.sum());
+        summary.put("throughput", round(successes / seconds));
+
+        this.json = new LinkedHashMap<>();
+        json.put("run", run);
+        json.put("summary", summary);
+        json.put("endpoints", endpoints(measured, seconds));
+        json.put("setup", endpoints(setup, 0));
+    }
+
+    private LoadReport(Map<String, Object> json) {
+        this.json = json;
+    }
+
+    @SuppressWarnings("unchecked")
+    static LoadReport read(File file) throws IOException {
+        return new LoadReport(HttpExchanges.JSON.readValue(file, Map.class));
+    }
+
+    void write(File file) throws IOException {
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        HttpExchanges.JSON.writerWithDefaultPrettyPrinter().writeValue(file, json);
+    }
+
+    void print(PrintStream out) {
+        out.printf("%-26s %9s %7s %10s %9s %9s %9s %9s%n",
+                "endpoint", "requests", "errors", "req/s", "p50 ms", "p95 ms", "p99 ms", "max ms");
+        endpoints().forEach((name, endpoint) -> {
+            Map<String, Object> latency = map(endpoint.get("latencyMs"));
+            out.printf("%-26s %9d %7d %10.2f %9.1f %9.1f %9.1f %9.1f%n", name,
+                    number(endpoint.get("requests")).longValue(),
+                    number(endpoint.get("errors")).longValue(),
+                    number(endpoint.get("throughput")).doubleValue(),
+                    number(latency.get("p50")).doubleValue(),
+                    number(latency.get("p95")).doubleValue(),
+                    number(latency.get("p99")).doubleValue(),
+                    number(latency.get("max")).doubleValue());
+        });
+        out.println("summary: " + json.get("summary"));
+    }
+
+    /**
+     * Compares this run against a baseline run of the same scenario.
+     *
+     * @param maxRegressionPercent allowed increase of p95/p99 latency and decrease of throughput
+     * @return one line per regression, empty if none
+     */
+    List<String> regressionsAgainst(LoadReport baseline, double maxRegressionPercent) {
+        List<String> regressions = new ArrayList<>();
+        double factor = maxRegressionPercent / 100;
+        Map<String, Map<String, Object>> current = endpoints();
+
+        baseline.endpoints().forEach((name, before) -> {
+            Map<String, Object> after = current.get(name);
+            if (after == null) {
+                regressions.add(name + ": missing from this run");
+                return;
+            }
+            for (String percentile : List.of("p95", "p99")) {
+                double was = number(map(before.get("latencyMs")).get(percentile)).doubleValue();
+                double now = number(map(after.get("latencyMs")).get(percentile)).doubleValue();
+                if (was > 0 && now > was * (1 + factor)) {
+                    regressions.add(String.format("%s: %s %.1f ms -> %.1f ms", name, percentile, was, now));
+                }
+            }
+            double was = number(before.get("throughput")).doubleValue();
+            double now = number(after.get("throughput")).doubleValue();
+            if (was > 0 && now < was * (1 - factor)) {
+                regressions.add(String.format("%s: throughput %.2f/s -> %.2f/s", name, was, now));
+            }
+            double errorsWere = number(before.get("errorRate")).doubleValue();
+            double errorsNow = number(after.get("errorRate")).doubleValue();
+            // Error rates are compared in absolute terms, a relative threshold is meaningless near 0
+            if (errorsNow > errorsWere + 0.01) {
+                regressions.add(String.format("%s: error rate %.2f%% -> %.2f%%", name, errorsWere * 100, errorsNow * 100));
+            }
+        });
+        return regressions;
+    }
+
+    private static Map<String, Object> endpoints(LoadGenerator.Phase phase, double seconds) {
+        Map<String, Object> endpoints = new TreeMap<>();
+        phase.endpoints.forEach((name, stats) -> {
+            LatencyHistogram latency = stats.latency();
+            long requests = stats.successes() + stats.errors();
+
+            Map<String, Object> latencyMs = new LinkedHashMap<>();
+            latencyMs.put("min", round(latency.minMillis()));
+            latencyMs.put("mean", round(latency.meanMillis()));
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                latencyMs.put(PERCENTILE_NAMES[i], round(latency.percentileMillis(PERCENTILES[i])));
+            }
+            latencyMs.put("max", round(latency.maxMillis()));
+
+            Map<String, Object> endpoint = new LinkedHashMap<>();
+            endpoint.put("requests", requests);
+            endpoint.put("errors", stats.errors());
+            endpoint.put("errorRate", requests == 0 ? 0 : round((double) stats.errors() / requests));
+            endpoint.put("throughput", seconds <= 0 ? 0 : round(stats.successes() / seconds));
+            endpoint.put("outcomes", stats.outcomes());
+            endpoint.put("latencyMs", latencyMs);
+            endpoints.put(name, endpoint);
+        });
+        return endpoints;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Map<String, Object>> endpoints() {
+        return (Map<String, Map<String, Object>>) json.get("endpoints");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> map(Object value) {
+        return value instanceof Map<?, ?> ? (Map<String, Object>) value : Map.of();
+    }
+
+    private static Number number(Object value) {
+        return value instanceof Number number ? number : 0;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+}
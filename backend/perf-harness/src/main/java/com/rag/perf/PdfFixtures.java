@@ -0,0 +1,107 @@
+package com.rag.perf;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds small text PDFs for uploads. The document service only accepts PDFs and deduplicates
+ * by content hash, so every document carries a unique marker line to force a real ingestion.
+ */
+final class PdfFixtures {
+
+    static final String[] TOPICS = {
+            "vector search", "document ingestion", "chunk overlap", "embedding cache", "answer cache",
+            "rate limiting", "token budget", "conversation summary", "index refresh", "batch size",
+            "connection pool", "query latency", "model loading", "retrieval quality", "access control"
+    };
+
+    private static final String[] WORDS = {
+            "the", "system", "stores", "each", "chunk", "with", "its", "embedding", "and", "metadata",
+            "so", "that", "queries", "can", "find", "relevant", "context", "quickly", "when", "users",
+            "ask", "questions", "about", "their", "documents", "latency", "depends", "on", "size",
+            "of", "index", "requests", "are", "processed", "in", "batches", "to", "reduce", "overhead"
+    };
+
+    private static final int LINES_PER_PAGE = 48;
+    private static final int WORDS_PER_LINE = 12;
+
+    private PdfFixtures() {
+    }
+
+    /**
+     * @param marker text written on the first line, making the file content unique
+     */
+    static byte[] document(String marker, int pages, Random random) {
+        List<String> pageStreams = new ArrayList<>(pages);
+        for (int page = 0; page < pages; page++) {
+            StringBuilder content = new StringBuilder("BT\n/F1 10 Tf\n12 TL\n50 750 Td\n");
+            for (int line = 0; line < LINES_PER_PAGE; line++) {
+                String text = page == 0 && line == 0 ? marker : sentence(random);
+                content.append('(').append(escape(text)).append(") Tj T*\n");
+            }
+            content.append("ET\n");
+            pageStreams.add(content.toString());
+        }
+        return write(pageStreams);
+    }
+
+    static String sentence(Random random) {
+        StringBuilder sentence = new StringBuilder(TOPICS[random.nextInt(TOPICS.length)]);
+        for (int i = 1; i < WORDS_PER_LINE; i++) {
+            sentence.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sentence.append('.').toString();
+    }
+
+    /**
+     * Writes catalog, page tree, font, then a page and a content stream per page, followed by
+     * a cross-reference table with the real byte offsets.
+     */
+    private static byte[] write(List<String> pageStreams) {
+        List<String> objects = new ArrayList<>();
+        int pages = pageStreams.size();
+
+        StringBuilder kids = new StringBuilder();
+        for (int i = 0; i < pages; i++) {
+            kids.append(4 + i * 2).append(" 0 R ");
+        }
+        objects.add("<< /Type /Catalog /Pages 2 0 R >>");
+        objects.add("<< /Type /Pages /Kids [" + kids.toString().trim() + "] /Count " + pages + " >>");
+        objects.add("<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica >>");
+        for (int i = 0; i < pages; i++) {
+            String stream = pageStreams.get(i);
+            objects.add("<< /Type /Page /Parent 2 0 R /MediaBox [0 0 612 792] /Resources << /Font << /F1 3 0 R >> >> /Contents "
+                    + (5 + i * 2) + " 0 R >>");
+            objects.add("<< /Length " + stream.length() + " >>\nstream\n" + stream + "endstream");
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<Integer> offsets = new ArrayList<>();
+        append(out, "%PDF-1.4\n");
+        for (int i = 0; i < objects.size(); i++) {
+            offsets.add(out.size());
+            append(out, (i + 1) + " 0 obj\n" + objects.get(i) + "\nendobj\n");
+        }
+
+        int xref = out.size();
+        StringBuilder trailer = new StringBuilder("xref\n0 " + (objects.size() + 1) + "\n0000000000 65535 f \n");
+        for (int offset : offsets) {
+            trailer.append(String.format("%010d 00000 n \n", offset));
+        }
+        trailer.append("trailer\n<< /Size ").append(objects.size() + 1).append(" /Root 1 0 R >>\n")
+                .append("startxref\n").append(xref).append("\n%%EOF\n");
+        append(out, trailer.toString());
+        return out.toByteArray();
+    }
+
+    private static void append(ByteArrayOutputStream out, String text) {
+        out.writeBytes(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("(", "\\(").replace(")", "\\)");
+    }
+}
@@ -0,0 +1,133 @@
+package com.rag.perf;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Command line entry point of the performance harness.
+ * <pre>
+ * java -jar perf-harness.jar stand-ins [--ollama-port=11434] [--opensearch-port=9200]
+ *      [--model=llama2] [--dimension=4096] [--profile=instant|gpu|cpu] [--first-token-ms=...]
+ * java -jar perf-harness.jar load [--gateway=http://localhost:8080] [--users=20] [--rate=5]
+ *      [--ramp-to=5] [--mix=chat:60,stream:25,history:10,upload:5] [--duration-seconds=60]
+ *      [--report=load-report.json] [--baseline=previous.json] [--max-regression-percent=10]
+ * </pre>
+ * {@code stand-ins} starts the fake Ollama and OpenSearch on the ports the services use by
+ * default and runs until killed. Latency profile fields can be overridden one by one, see
+ * {@link LatencyProfile#withOverrides}.
+ * <p>
+ * {@code load} runs a {@link LoadGenerator} against the gateway and writes a {@link LoadReport}.
+ * With {@code --baseline} it compares against an earlier report and exits with status 2 on a
+ * regression. With {@code --stand-ins} it also starts the stand-ins for the duration of the run.
+ */
+@Slf4j
+public class PerfHarness {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            usage();
+            return;
+        }
+        Map<String, String> options = options(Arrays.copyOfRange(args, 1, args.length));
+
+        switch (args[0]) {
+            case "stand-ins" -> runStandIns(options);
+            case "load" -> System.exit(runLoad(options));
+            default -> usage();
+        }
+    }
+
+    private static void runStandIns(Map<String, String> options) throws Exception {
+        List<AutoCloseable> standIns = startStandIns(options);
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            closeAll(standIns);
+            stopped.countDown();
+        }));
+        stopped.await();
+    }
+
+    private static int runLoad(Map<String, String> options) throws Exception {
+        List<AutoCloseable> standIns = Boolean.parseBoolean(options.getOrDefault("stand-ins", "false"))
+                ? startStandIns(options) : List.of();
+        try {
+            LoadReport report = new LoadGenerator(LoadGenerator.Settings.from(options)).run();
+
+            File reportFile = new File(options.getOrDefault("report", "load-report.json"));
+            report.write(reportFile);
+            report.print(System.out);
+            log.info("Wrote load report to {}", reportFile.getAbsolutePath());
+
+            if (!options.containsKey("baseline")) {
+                return 0;
+            }
+            List<String> regressions = report.regressionsAgainst(
+                    LoadReport.read(new File(options.get("baseline"))),
+                    Double.parseDouble(options.getOrDefault("max-regression-percent", "10")));
+            if (regressions.isEmpty()) {
+                log.info("No regressions against {}", options.get("baseline"));
+                return 0;
+            }
+            regressions.forEach(regression -> log.error("Regression: {}", regression));
+            return 2;
+        } finally {
+            closeAll(standIns);
+        }
+    }
+
+    private static List<AutoCloseable> startStandIns(Map<String, String> options) throws IOException {
+        LatencyProfile profile = LatencyProfile.named(options.getOrDefault("profile", "instant"))
+                .withOverrides(options);
+
+        FakeOllamaServer ollama = new FakeOllamaServer(
+                Integer.parseInt(options.getOrDefault("ollama-port", "11434")),
+                options.getOrDefault("model", "llama2"),
+                Integer.parseInt(options.getOrDefault("dimension", "4096")),
+                profile);
+        FakeOpenSearchServer openSearch = new FakeOpenSearchServer(
+                Integer.parseInt(options.getOrDefault("opensearch-port", "9200")),
+                Integer.parseInt(options.getOrDefault("opensearch-threads", "16")));
+        ollama.start();
+        openSearch.start();
+        return List.of(ollama, openSearch);
+    }
+
+    private static void closeAll(List<AutoCloseable> resources) {
+        for (AutoCloseable resource : resources) {
+            try {
+                resource.close();
+            } catch (Exception e) {
+                log.warn("Failed to close {}: {}", resource, e.toString());
+            }
+        }
+    }
+
+    /** Parses {@code --key=value} arguments; a bare {@code --flag} is {@code true}. */
+    static Map<String, String> options(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                options.put(arg.substring(2), "true");
+            } else {
+                options.put(arg.substring(2, separator), arg.substring(separator + 1));
+            }
+        }
+        return options;
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java -jar perf-harness.jar stand-ins|load [--key=value ...]");
+    }
+}
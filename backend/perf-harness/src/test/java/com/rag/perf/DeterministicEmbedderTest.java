@@ -0,0 +1,60 @@
+package com.rag.perf;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class DeterministicEmbedderTest {
+
+    private final DeterministicEmbedder embedder = new DeterministicEmbedder(768);
+
+    @Test
+    void givesTheSameVectorForTheSameTextEveryTime() {
+        String text = "Backups are verified weekly and restored into staging each quarter.";
+
+        float[] first = embedder.embed(text);
+
+        assertThat(embedder.embed(text)).containsExactly(first);
+        assertThat(new DeterministicEmbedder(768).embed(text)).containsExactly(first);
+    }
+
+    @Test
+    void producesUnitVectorsOfTheConfiguredDimension() {
+        for (int dimension : new int[]{1, 64, 768, 1024}) {
+            DeterministicEmbedder sized = new DeterministicEmbedder(dimension);
+            for (String text : new String[]{"Retention policy", "보안 교육을 이수해야 합니다", "", "!!!"}) {
+                float[] vector = sized.embed(text);
+
+                assertThat(vector).hasSize(dimension);
+                assertThat(norm(vector)).isCloseTo(1.0, within(1e-5));
+            }
+        }
+    }
+
+    @Test
+    void textsThatShareWordsAreCloserThanUnrelatedTexts() {
+        float[] question = embedder.embed("What is the backup retention policy?");
+        float[] related = embedder.embed("The retention policy keeps backups for a year.");
+        float[] unrelated = embedder.embed("Expense reports need receipts attached.");
+
+        assertThat(dot(question, related)).isGreaterThan(dot(question, unrelated));
+    }
+
+    @Test
+    void ignoresCaseAndPunctuation() {
+        assertThat(embedder.embed("Retention, Policy!")).containsExactly(embedder.embed("retention policy"));
+    }
+
+    private static double norm(float[] vector) {
+        return Math.sqrt(dot(vector, vector));
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+}
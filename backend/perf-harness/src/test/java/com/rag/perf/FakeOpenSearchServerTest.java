@@ -0,0 +1,224 @@
+package com.rag.perf;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Round trips in the request shapes the services send: SMILE bulk bodies and SMILE wrapper
+ * queries from {@code BulkIndexSession} and {@code RagService}, {@code search_after} pages from
+ * chunk copying, and the counts and aggregations behind the chat service's document-set
+ * fingerprint.
+ */
+@SuppressWarnings("unchecked")
+class FakeOpenSearchServerTest {
+
+    private static final String INDEX = "documents";
+    private static final int DIMENSION = 64;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final DeterministicEmbedder embedder = new DeterministicEmbedder(DIMENSION);
+    private FakeOpenSearchServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new FakeOpenSearchServer(0, 4);
+        server.start();
+        assertThat(send("PUT", "/" + INDEX, "application/json", HttpExchanges.JSON.writeValueAsBytes(Map.of(
+                "mappings", Map.of("properties", Map.of("embedding", Map.of(
+                        "type", "knn_vector",
+                        "dimension", DIMENSION,
+                        "method", Map.of("name", "hnsw", "space_type", "cosinesimil")))))))
+                .statusCode()).isEqualTo(200);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void knnSearchAfterASmileBulkOnlyReturnsTheFilteredUsersChunks() throws Exception {
+        bulk(List.of(
+                chunk("a", 1L, 10L, 0, "Retention policy for backups and archives"),
+                chunk("b", 1L, 10L, 1, "Expense reports are due within thirty days"),
+                chunk("c", 2L, 20L, 0, "Retention policy for backups and archives"),
+                chunk("d", 1L, 11L, 0, "Security training for new employees")));
+        assertThat(server.documentCount(INDEX)).isEqualTo(4);
+
+        Map<String, Object> response = search(Map.of(
+                "query", wrapper(Map.of("knn", Map.of("embedding", Map.of(
+                        "vector", toList(embedder.embed("What is the retention policy for backups?")),
+                        "k", 3,
+                        "filter", Map.of("term", Map.of("userId", 1L)))))),
+                "_source", Map.of("excludes", List.of("embedding"))));
+
+        List<Map<String, Object>> hits = hits(response);
+        // "c" has the same text as "a" but belongs to another user
+        assertThat(hits).extracting(hit -> hit.get("_id")).containsExactlyInAnyOrder("a", "b", "d");
+        assertThat(hits.get(0).get("_id")).isEqualTo("a");
+        assertThat((Map<String, Object>) hits.get(0).get("_source"))
+                .containsEntry("userId", 1)
+                .doesNotContainKey("embedding");
+        assertThat((double) hits.get(0).get("_score")).isGreaterThan((double) hits.get(1).get("_score"));
+    }
+
+    @Test
+    void searchAfterWalksEveryChunkOnceInSortOrder() throws Exception {
+        List<Map<String, Object>[]> chunks = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            chunks.add(chunk("chunk-" + i, 1L, 10L, i, "Chunk number " + i));
+        }
+        chunks.add(chunk("other", 1L, 11L, 0, "Another document"));
+        bulk(chunks);
+
+        List<Object> seen = new ArrayList<>();
+        List<Object> searchAfter = null;
+        int pages = 0;
+        while (true) {
+            Map<String, Object> request = new LinkedHashMap<>();
+            request.put("query", Map.of("term", Map.of("documentId", 10L)));
+            request.put("sort", List.of(Map.of("chunkIndex", Map.of("order", "asc"))));
+            request.put("size", 10);
+            if (searchAfter != null) {
+                request.put("search_after", searchAfter);
+            }
+            List<Map<String, Object>> hits = hits(search(request));
+            if (hits.isEmpty()) {
+                break;
+            }
+            pages++;
+            for (Map<String, Object> hit : hits) {
+                seen.add(((Map<?, ?>) hit.get("_source")).get("chunkIndex"));
+            }
+            searchAfter = (List<Object>) hits.get(hits.size() - 1).get("sort");
+        }
+
+        assertThat(pages).isEqualTo(3);
+        assertThat(seen).hasSize(25);
+        for (int i = 0; i < seen.size(); i++) {
+            assertThat(((Number) seen.get(i)).intValue()).isEqualTo(i);
+        }
+    }
+
+    @Test
+    void countsAndAggregatesInTheShapeTheFingerprintReads() throws Exception {
+        bulk(List.of(
+                chunk("a", 1L, 10L, 0, "first", 1_000L),
+                chunk("b", 1L, 10L, 1, "second", 3_000L),
+                chunk("c", 1L, 12L, 0, "third", 2_000L),
+                chunk("d", 2L, 20L, 0, "someone else's", 9_000L)));
+
+        // RagService.documentSetFingerprint: size 0, total hits, max createdAt, sum documentId
+        Map<String, Object> response = search(Map.of(
+                "query", Map.of("term", Map.of("userId", 1L)),
+                "size", 0,
+                "track_total_hits", true,
+                "aggregations", Map.of(
+                        "lastIndexed", Map.of("max", Map.of("field", "createdAt")),
+                        "documentIds", Map.of("sum", Map.of("field", "documentId")))));
+
+        Map<String, Object> hitsSection = (Map<String, Object>) response.get("hits");
+        assertThat((Map<String, Object>) hitsSection.get("total")).containsEntry("value", 3).containsEntry("relation", "eq");
+        assertThat((List<?>) hitsSection.get("hits")).isEmpty();
+        // Keys are typed, as the high-level client asks for with typed_keys
+        Map<String, Object> aggregations = (Map<String, Object>) response.get("aggregations");
+        assertThat(aggregations).containsOnlyKeys("max#lastIndexed", "sum#documentIds");
+        assertThat(((Map<?, ?>) aggregations.get("max#lastIndexed")).get("value")).isEqualTo(3_000.0);
+        assertThat(((Map<?, ?>) aggregations.get("sum#documentIds")).get("value")).isEqualTo(32.0);
+
+        Map<String, Object> count = json(send("POST", "/" + INDEX + "/_count", "application/json",
+                HttpExchanges.JSON.writeValueAsBytes(Map.of("query", Map.of("term", Map.of("userId", 1L))))));
+        assertThat(count).containsEntry("count", 3);
+    }
+
+    @Test
+    void aggregatesAnEmptyDocumentSetWithoutValues() throws Exception {
+        Map<String, Object> response = search(Map.of(
+                "query", Map.of("term", Map.of("userId", 1L)),
+                "size", 0,
+                "aggregations", Map.of("lastIndexed", Map.of("max", Map.of("field", "createdAt")))));
+
+        assertThat((Map<String, Object>) ((Map<?, ?>) response.get("hits")).get("total")).containsEntry("value", 0);
+        assertThat(((Map<?, ?>) ((Map<?, ?>) response.get("aggregations")).get("max#lastIndexed")).get("value")).isNull();
+    }
+
+    private Map<String, Object>[] chunk(String id, long userId, long documentId, int chunkIndex, String text) {
+        return chunk(id, userId, documentId, chunkIndex, text, 1_700_000_000_000L + chunkIndex);
+    }
+
+    private Map<String, Object>[] chunk(String id, long userId, long documentId, int chunkIndex, String text,
+                                        long createdAt) {
+        Map<String, Object> source = new LinkedHashMap<>();
+        source.put("userId", userId);
+        source.put("documentId", documentId);
+        source.put("chunkIndex", chunkIndex);
+        source.put("text", text);
+        source.put("createdAt", createdAt);
+        source.put("embedding", toList(embedder.embed(text)));
+        return new Map[]{Map.of("index", Map.of("_index", INDEX, "_id", id)), source};
+    }
+
+    /** Sends a SMILE bulk body: each action and source a SMILE document, separated by 0xFF. */
+    private void bulk(List<Map<String, Object>[]> chunks) throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (Map<String, Object>[] chunk : chunks) {
+            for (Map<String, Object> line : chunk) {
+                body.write(HttpExchanges.SMILE.writeValueAsBytes(line));
+                body.write(0xFF);
+            }
+        }
+        Map<String, Object> response = json(send("POST", "/_bulk", "application/smile", body.toByteArray()));
+        assertThat(response).containsEntry("errors", false);
+        assertThat((List<?>) response.get("items")).hasSize(chunks.size());
+    }
+
+    /** A wrapper query holding a SMILE body, as the services build k-NN queries. */
+    private static Map<String, Object> wrapper(Map<String, Object> query) throws IOException {
+        return Map.of("wrapper", Map.of("query",
+                Base64.getEncoder().encodeToString(HttpExchanges.SMILE.writeValueAsBytes(query))));
+    }
+
+    private Map<String, Object> search(Map<String, Object> body) throws Exception {
+        return json(send("POST", "/" + INDEX + "/_search", "application/json", HttpExchanges.JSON.writeValueAsBytes(body)));
+    }
+
+    private static List<Map<String, Object>> hits(Map<String, Object> response) {
+        return (List<Map<String, Object>>) ((Map<String, Object>) response.get("hits")).get("hits");
+    }
+
+    private HttpResponse<byte[]> send(String method, String path, String contentType, byte[] body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.port() + path))
+                .header("Content-Type", contentType)
+                .method(method, HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private static Map<String, Object> json(HttpResponse<byte[]> response) throws IOException {
+        assertThat(response.statusCode()).as(new String(response.body())).isEqualTo(200);
+        return HttpExchanges.JSON.readValue(response.body(), Map.class);
+    }
+
+    private static List<Float> toList(float[] vector) {
+        List<Float> list = new ArrayList<>(vector.length);
+        for (float value : vector) {
+            list.add(value);
+        }
+        return list;
+    }
+}
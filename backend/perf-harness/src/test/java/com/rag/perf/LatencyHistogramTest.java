@@ -0,0 +1,74 @@
+package com.rag.perf;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class LatencyHistogramTest {
+
+    @Test
+    void keepsSmallValuesExact() {
+        for (long micros = 0; micros < 128; micros++) {
+            int index = LatencyHistogram.index(micros);
+            assertThat(index).isEqualTo(micros);
+            assertThat(LatencyHistogram.upperBound(index)).isEqualTo(micros);
+        }
+    }
+
+    @Test
+    void everyValueFallsInABucketWhoseBoundsContainIt() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100_000; i++) {
+            long micros = 128 + (random.nextLong() >>> (1 + random.nextInt(62)));
+            int index = LatencyHistogram.index(micros);
+
+            assertThat(LatencyHistogram.upperBound(index)).isGreaterThanOrEqualTo(micros);
+            assertThat(LatencyHistogram.upperBound(index - 1)).isLessThan(micros);
+            // 64 sub-buckets per power of two
+            assertThat((double) LatencyHistogram.upperBound(index) / micros).isLessThanOrEqualTo(1 + 1.0 / 64);
+        }
+    }
+
+    @Test
+    void bucketsAreContiguous() {
+        assertThat(LatencyHistogram.index(128)).isEqualTo(128);
+        assertThat(LatencyHistogram.upperBound(128)).isEqualTo(129);
+        assertThat(LatencyHistogram.index(130)).isEqualTo(129);
+        for (int index = 128; index < 2_000; index++) {
+            assertThat(LatencyHistogram.index(LatencyHistogram.upperBound(index))).isEqualTo(index);
+            assertThat(LatencyHistogram.index(LatencyHistogram.upperBound(index) + 1)).isEqualTo(index + 1);
+        }
+        assertThat(LatencyHistogram.index(Long.MAX_VALUE)).isLessThan(64 * 59);
+    }
+
+    @Test
+    void reportsPercentilesWithinTheBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 1ms to 1000ms, one sample each
+        for (int millis = 1; millis <= 1_000; millis++) {
+            histogram.recordNanos(millis * 1_000_000L);
+        }
+
+        assertThat(histogram.count()).isEqualTo(1_000);
+        assertThat(histogram.percentileMillis(50)).isCloseTo(500, within(500 / 64.0));
+        assertThat(histogram.percentileMillis(95)).isCloseTo(950, within(950 / 64.0));
+        assertThat(histogram.percentileMillis(99)).isCloseTo(990, within(990 / 64.0));
+        assertThat(histogram.percentileMillis(50)).isGreaterThanOrEqualTo(500);
+        // Never above the largest value recorded
+        assertThat(histogram.percentileMillis(100)).isEqualTo(1_000);
+        assertThat(histogram.meanMillis()).isEqualTo(500.5);
+        assertThat(histogram.minMillis()).isEqualTo(1);
+    }
+
+    @Test
+    void reportsZeroWhenEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertThat(histogram.percentileMillis(99)).isZero();
+        assertThat(histogram.meanMillis()).isZero();
+        assertThat(histogram.minMillis()).isZero();
+    }
+}
@@ -1,6 +1,6 @@
 import React, { useState, useEffect } from 'react';
 import { useNavigate } from 'react-router-dom';
-import { documentAPI, chatAPI } from '../services/api';
+import { authAPI, documentAPI, chatAPI } from '../services/api';
 import { getUser, logout } from '../utils/auth';
 import './DashboardPage.css';
 
@@ -80,29 +80,60 @@ function DashboardPage() {
     setInputMessage('');
     setLoading(true);
 
+    // Updates the assistant message that is being streamed (always the last one)
+    const updateAnswer = (update) =>
+      setMessages((prev) => [...prev.slice(0, -1), { ...prev[prev.length - 1], ...update(prev[prev.length - 1]) }]);
+
+    // Sources arrive before the first token; the answer bubble replaces the spinner on the first token
+    let sources = [];
+    let started = false;
+    const startAnswer = () => {
+      if (started) return;
+      started = true;
+      setLoading(false);
+      setMessages((prev) => [
+        ...prev,
+        { type: 'ASSISTANT', content: '', sources, timestamp: new Date().toISOString() },
+      ]);
+    };
+
     try {
-      const response = await chatAPI.sendMessage(inputMessage, sessionId);
-      const assistantMessage = {
-        type: 'ASSISTANT',
-        content: response.data.response,
-        sources: response.data.sources,
-        timestamp: response.data.timestamp,
-      };
-      setMessages((prev) => [...prev, assistantMessage]);
+      await chatAPI.streamMessage(inputMessage, sessionId, {
+        onSources: (event) => {
+          sources = event.sources;
+        },
+        onToken: ({ token }) => {
+          startAnswer();
+          updateAnswer((msg) => ({ content: msg.content + token }));
+        },
+        onDone: ({ timestamp }) => {
+          startAnswer();
+          updateAnswer(() => ({ timestamp }));
+        },
+      });
     } catch (err) {
-      const errorMessage = {
-        type: 'ASSISTANT',
-        content: '죄송합니다. 응답을 생성하는 중 오류가 발생했습니다.',
-        timestamp: new Date().toISOString(),
-      };
-      setMessages((prev) => [...prev, errorMessage]);
+      const errorContent = '죄송합니다. 응답을 생성하는 중 오류가 발생했습니다.';
+      if (started) {
+        updateAnswer(() => ({ content: errorContent }));
+      } else {
+        setMessages((prev) => [
+          ...prev,
+          { type: 'ASSISTANT', content: errorContent, timestamp: new Date().toISOString() },
+        ]);
+      }
     } finally {
       setLoading(false);
     }
   };
 
-  const handleLogout = () => {
-    logout();
+  const handleLogout = async () => {
+    try {
+      await authAPI.logout();
+    } catch (err) {
+      console.error('토큰 폐기 실패:', err);
+    } finally {
+      logout();
+    }
   };
 
   return (
@@ -46,6 +46,9 @@ export const authAPI = {
 
   refreshToken: (refreshToken) =>
     api.post('/auth/refresh', { refreshToken }),
+
+  // Revokes the current access token on the server
+  logout: () => api.post('/auth/logout'),
 };
 
 // Document API
@@ -72,8 +75,63 @@ export const chatAPI = {
   sendMessage: (message, sessionId) =>
     api.post('/chat', { message, sessionId }),
 
-  getHistory: (sessionId) =>
-    api.get('/chat/history', { params: { sessionId } }),
+  // Streams the answer over Server-Sent Events. axios cannot read a streaming body in the
+  // browser, so this uses fetch and parses the event stream by hand.
+  streamMessage: async (message, sessionId, { onSources, onToken, onDone }) => {
+    const token = localStorage.getItem('token');
+    const response = await fetch(`${API_BASE_URL}/chat/stream`, {
+      method: 'POST',
+      headers: {
+        'Content-Type': 'application/json',
+        Accept: 'text/event-stream',
+        ...(token ? { Authorization: `Bearer ${token}` } : {}),
+      },
+      body: JSON.stringify({ message, sessionId }),
+    });
+
+    if (response.status === 401) {
+      localStorage.removeItem('token');
+      localStorage.removeItem('user');
+      window.location.href = '/login';
+      return;
+    }
+    if (!response.ok) {
+      throw new Error(`Chat stream failed with status ${response.status}`);
+    }
+
+    const handlers = { sources: onSources, token: onToken, done: onDone };
+    const reader = response.body.getReader();
+    const decoder = new TextDecoder();
+    let buffer = '';
+
+    for (;;) {
+      const { done, value } = await reader.read();
+      if (done) break;
+      buffer += decoder.decode(value, { stream: true }).replace(/\r\n/g, '\n');
+
+      let boundary;
+      while ((boundary = buffer.indexOf('\n\n')) >= 0) {
+        const rawEvent = buffer.slice(0, boundary);
+        buffer = buffer.slice(boundary + 2);
+
+        let name = 'message';
+        const data = [];
+        rawEvent.split('\n').forEach((line) => {
+          if (line.startsWith('event:')) name = line.slice(6).trim();
+          else if (line.startsWith('data:')) data.push(line.slice(5).replace(/^ /, ''));
+        });
+        if (data.length === 0) continue;
+
+        const payload = JSON.parse(data.join('\n'));
+        if (name === 'error') throw new Error(payload.error);
+        handlers[name]?.(payload);
+      }
+    }
+  },
+
+  // Returns { messages, nextCursor }; pass nextCursor back as cursor for older messages
+  getHistory: (sessionId, cursor, limit) =>
+    api.get('/chat/history', { params: { sessionId, cursor, limit } }),
 };
 
 export default api;
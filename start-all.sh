@@ -24,7 +24,8 @@ echo "인프라 준비 완료!"
 echo "=========================================="
 echo ""
 echo "다음 단계:"
-echo "1. 각 백엔드 서비스를 별도 터미널에서 실행:"
+echo "1. 공유 모듈 설치 후 각 백엔드 서비스를 별도 터미널에서 실행:"
+echo "   - cd backend/ollama-client && mvn install"
 echo "   - cd backend/auth-service && mvn spring-boot:run"
 echo "   - cd backend/document-service && mvn spring-boot:run"
 echo "   - cd backend/chat-service && mvn spring-boot:run"